@@ -16,6 +16,7 @@
  */
 package com.offbynull.coroutines.antplugin;
 
+import com.offbynull.coroutines.instrumenter.InstrumentationCache;
 import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
 import com.offbynull.coroutines.instrumenter.Instrumenter;
 import com.offbynull.coroutines.instrumenter.PluginHelper;
@@ -56,6 +57,20 @@ public final class InstrumentTask extends Task {
 
     private boolean autoSerializable = true;
 
+    private boolean methodStateReuse = false;
+
+    private boolean typedStateStorage = false;
+
+    private boolean outlinedStateSaving = false;
+
+    private boolean deadLocalPruning = false;
+
+    private boolean invokeArgumentPruning = false;
+
+    private int parallelism = 1;
+
+    private File cacheDirectory;
+
     private String classpath;
 
     private File sourceDirectory;
@@ -93,6 +108,62 @@ public final class InstrumentTask extends Task {
         this.autoSerializable = autoSerializable;
     }
 
+    /**
+     * Sets the method state reuse flag. Defaults to {@code false}.
+     * @param methodStateReuse method state reuse
+     */
+    public void setMethodStateReuse(boolean methodStateReuse) {
+        this.methodStateReuse = methodStateReuse;
+    }
+
+    /**
+     * Sets the typed state storage flag. Defaults to {@code false}.
+     * @param typedStateStorage typed state storage
+     */
+    public void setTypedStateStorage(boolean typedStateStorage) {
+        this.typedStateStorage = typedStateStorage;
+    }
+
+    /**
+     * Sets the outlined state saving flag. Defaults to {@code false}.
+     * @param outlinedStateSaving outlined state saving
+     */
+    public void setOutlinedStateSaving(boolean outlinedStateSaving) {
+        this.outlinedStateSaving = outlinedStateSaving;
+    }
+
+    /**
+     * Sets the dead local pruning flag. Defaults to {@code false}.
+     * @param deadLocalPruning dead local pruning
+     */
+    public void setDeadLocalPruning(boolean deadLocalPruning) {
+        this.deadLocalPruning = deadLocalPruning;
+    }
+
+    /**
+     * Sets the invoke argument pruning flag. Defaults to {@code false}.
+     * @param invokeArgumentPruning invoke argument pruning
+     */
+    public void setInvokeArgumentPruning(boolean invokeArgumentPruning) {
+        this.invokeArgumentPruning = invokeArgumentPruning;
+    }
+
+    /**
+     * Sets the maximum number of class files to instrument at the same time. Defaults to {@code 1}.
+     * @param parallelism parallelism
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the directory to cache instrumentation results in between builds. Defaults to {@code null} (no caching).
+     * @param cacheDirectory cache directory
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
     /**
      * Sets the classpath -- required by instrumenter when instrumenting class files.
      * @param classpath semicolon delimited classpath
@@ -146,6 +217,9 @@ public final class InstrumentTask extends Task {
         if (markerType == null) {
             throw new BuildException("Marker type not set");
         }
+        if (parallelism <= 0) {
+            throw new BuildException("Parallelism must be greater than 0: " + parallelism);
+        }
 
         List<File> combinedClasspath;
         try {
@@ -161,15 +235,29 @@ public final class InstrumentTask extends Task {
             throw new BuildException("Unable to get compile classpath elements", ex);
         }
 
-        Instrumenter instrumenter;
+        InstrumentationCache cache;
         try {
-            log("Creating instrumenter...", Project.MSG_DEBUG);
+            cache = cacheDirectory == null ? null : new InstrumentationCache(cacheDirectory);
+        } catch (Exception ex) {
+            throw new BuildException("Unable to open instrumentation cache", ex);
+        }
+
+        log("Creating instrumenter...", Project.MSG_DEBUG);
+        try (Instrumenter instrumenter = new Instrumenter(combinedClasspath, cache == null ? null : cache.getClasspathIndexFile())) {
             MarkerType markerTypeEnum = MarkerType.valueOf(markerType);
-            instrumenter = new Instrumenter(combinedClasspath);
-            InstrumentationSettings settings = new InstrumentationSettings(markerTypeEnum, debugMode, autoSerializable);
+            InstrumentationSettings settings = new InstrumentationSettings.Builder(markerTypeEnum)
+                    .debugMode(debugMode)
+                    .autoSerializable(autoSerializable)
+                    .methodStateReuse(methodStateReuse)
+                    .typedStateStorage(typedStateStorage)
+                    .outlinedStateSaving(outlinedStateSaving)
+                    .deadLocalPruning(deadLocalPruning)
+                    .invokeArgumentPruning(invokeArgumentPruning)
+                    .build();
             
             log("Processing " + sourceDirectory.getAbsolutePath() + " ... ", Project.MSG_DEBUG);
-            PluginHelper.instrument(instrumenter, settings, sourceDirectory, targetDirectory, this::log);
+            PluginHelper.instrument(instrumenter, settings, sourceDirectory, targetDirectory, this::log, parallelism, cache);
+            instrumenter.saveClasspathIndex();
         } catch (Exception ex) {
             throw new BuildException("Failed to instrument", ex);
         }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.benchmarks;
+
+import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the cost of a single suspend/resume cycle ({@link CoroutineRunner#execute() }) for differently shaped frames: primitive
+ * locals, object locals, items on the operand stack, suspending inside of a try/catch block, and suspending inside of a synchronized
+ * block.
+ * @author Kasra Faghihi
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameShapeBenchmark {
+
+    //CHECKSTYLE.OFF:VisibilityModifier - JMH sets benchmark parameters directly on the field
+    /**
+     * Shape of the frame that suspends.
+     */
+    @Param({"empty", "primitives", "objects", "operands", "tryCatch", "synchronized"})
+    public String shape;
+    //CHECKSTYLE.ON:VisibilityModifier
+
+    private CoroutineRunner runner;
+
+    /**
+     * Creates the coroutine and runs it up to its first suspension.
+     */
+    @Setup
+    public final void setUp() {
+        Coroutine coroutine;
+        switch (shape) {
+            case "empty":
+                coroutine = new FrameShapeCoroutines.Empty();
+                break;
+            case "primitives":
+                coroutine = new FrameShapeCoroutines.Primitives();
+                break;
+            case "objects":
+                coroutine = new FrameShapeCoroutines.Objects();
+                break;
+            case "operands":
+                coroutine = new FrameShapeCoroutines.Operands();
+                break;
+            case "tryCatch":
+                coroutine = new FrameShapeCoroutines.TryCatch();
+                break;
+            case "synchronized":
+                coroutine = new FrameShapeCoroutines.Synchronized();
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+
+        runner = new CoroutineRunner(coroutine);
+        runner.execute();
+    }
+
+    /**
+     * Resumes the coroutine and lets it suspend again.
+     * @return {@code true} (coroutine never finishes)
+     */
+    @Benchmark
+    public final boolean suspendAndResume() {
+        return runner.execute();
+    }
+}
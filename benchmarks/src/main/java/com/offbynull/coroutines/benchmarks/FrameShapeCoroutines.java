@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.benchmarks;
+
+import com.offbynull.coroutines.user.Continuation;
+import com.offbynull.coroutines.user.Coroutine;
+
+// Coroutines that suspend with differently shaped frames. Each one suspends exactly once per iteration of its loop, and keeps what's on
+// its frame live across the suspension by writing a result to a field (writing it to the continuation's context would box it).
+final class FrameShapeCoroutines {
+
+    private FrameShapeCoroutines() {
+        // do nothing
+    }
+
+    // Nothing but the continuation on the frame
+    static final class Empty implements Coroutine {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void run(Continuation c) {
+            while (true) {
+                c.suspend();
+            }
+        }
+    }
+
+    // Primitives of every type on the frame
+    static final class Primitives implements Coroutine {
+        private static final long serialVersionUID = 1L;
+
+        private long sink;
+
+        @Override
+        public void run(Continuation c) {
+            int i1 = 0;
+            int i2 = 1;
+            long l1 = 2L;
+            long l2 = 3L;
+            float f1 = 4.0f;
+            double d1 = 5.0;
+            while (true) {
+                c.suspend();
+                i1 += i2;
+                l1 += l2;
+                f1 += 1.0f;
+                d1 += 1.0;
+                sink = (long) (i1 + l1 + f1 + d1);
+            }
+        }
+    }
+
+    // Objects on the frame
+    static final class Objects implements Coroutine {
+        private static final long serialVersionUID = 1L;
+
+        private long sink;
+
+        @Override
+        public void run(Continuation c) {
+            String s1 = "a";
+            String s2 = "b";
+            Object o1 = new Object();
+            int[] array1 = new int[1];
+            Object[] array2 = new Object[1];
+            while (true) {
+                c.suspend();
+                array1[0]++;
+                array2[0] = o1;
+                sink = s1.length() + s2.length() + array1[0];
+            }
+        }
+    }
+
+    // Primitives and objects on the frame, as well as items on the operand stack of the frame that invoked the suspending method
+    static final class Operands implements Coroutine {
+        private static final long serialVersionUID = 1L;
+
+        private long sink;
+
+        @Override
+        public void run(Continuation c) {
+            int i1 = 1;
+            long l1 = 2L;
+            double d1 = 3.0;
+            String s1 = "a";
+            long total = 0L;
+            while (true) {
+                total = total + i1 * l1 + s1.length() + (long) d1 + suspendAndGet(c, i1);
+                sink = total;
+            }
+        }
+
+        private int suspendAndGet(Continuation c, int value) {
+            c.suspend();
+            return value;
+        }
+    }
+
+    // Suspends from inside of a try/catch block
+    static final class TryCatch implements Coroutine {
+        private static final long serialVersionUID = 1L;
+
+        private long sink;
+
+        @Override
+        public void run(Continuation c) {
+            int count = 0;
+            while (true) {
+                try {
+                    c.suspend();
+                    count++;
+                } catch (RuntimeException re) {
+                    count--;
+                }
+                sink = count;
+            }
+        }
+    }
+
+    // Suspends from inside of a synchronized block (the monitor has to be exited on suspend and re-entered on resume)
+    static final class Synchronized implements Coroutine {
+        private static final long serialVersionUID = 1L;
+
+        private final Object lock = new Object();
+        private long sink;
+
+        @Override
+        public void run(Continuation c) {
+            int count = 0;
+            while (true) {
+                synchronized (lock) {
+                    c.suspend();
+                    count++;
+                }
+                sink = count;
+            }
+        }
+    }
+}
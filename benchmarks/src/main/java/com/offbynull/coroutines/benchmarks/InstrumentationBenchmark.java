@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.benchmarks;
+
+import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
+import com.offbynull.coroutines.instrumenter.Instrumenter;
+import com.offbynull.coroutines.instrumenter.PluginHelper;
+import com.offbynull.coroutines.instrumenter.asm.ClassInformation;
+import com.offbynull.coroutines.instrumenter.asm.FileSystemClassInformationRepository;
+import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks instrumentation throughput over a synthetic codebase: {@link Instrumenter#instrument(byte[], InstrumentationSettings) }
+ * over every class (in memory), {@link FileSystemClassInformationRepository#create(java.util.List) } over the codebase's directory
+ * followed by a walk up the hierarchy of every class (what the instrumenter needs from the repository), and
+ * {@link PluginHelper#instrument(Instrumenter, InstrumentationSettings, File, File, java.util.function.Consumer) } from the codebase's
+ * directory to another directory (what the build plugins do).
+ * <p>
+ * Alongside the usual operations per second, the number of classes processed per second is reported as the {@code classes} counter. The
+ * peak heap usage is printed out at the end of each iteration.
+ * @author Kasra Faghihi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class InstrumentationBenchmark {
+
+    private static final InstrumentationSettings SETTINGS = new InstrumentationSettings(MarkerType.NONE, false, true);
+
+    //CHECKSTYLE.OFF:VisibilityModifier - JMH sets benchmark parameters directly on the field
+    /**
+     * Number of classes in the codebase.
+     */
+    @Param({"1000", "5000"})
+    public int classCount;
+
+    /**
+     * Length of the inheritance chains that the classes are laid out in.
+     */
+    @Param({"1", "10"})
+    public int hierarchyDepth;
+
+    /**
+     * Fraction of classes that have a coroutine method.
+     */
+    @Param({"0.1", "0.5"})
+    public double coroutineFraction;
+
+    /**
+     * Number of suspend points in each coroutine method.
+     */
+    @Param({"20"})
+    public int suspendPoints;
+    //CHECKSTYLE.ON:VisibilityModifier
+
+    private Path tempDir;
+    private File srcDir;
+    private File dstDir;
+    private List<byte[]> classes;
+    private List<String> classNames;
+    private Instrumenter instrumenter;
+
+    /**
+     * Generates the codebase.
+     * @throws IOException on IO error
+     */
+    @Setup(Level.Trial)
+    public final void setUp() throws IOException {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName());
+        srcDir = Files.createDirectory(tempDir.resolve("src")).toFile();
+        dstDir = Files.createDirectory(tempDir.resolve("dst")).toFile();
+
+        SyntheticCodebase.generate(srcDir.toPath(), classCount, hierarchyDepth, coroutineFraction, suspendPoints);
+
+        try (Stream<Path> files = Files.walk(srcDir.toPath())) {
+            List<Path> classFiles = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            classes = new ArrayList<>(classFiles.size());
+            classNames = new ArrayList<>(classFiles.size());
+            for (Path classFile : classFiles) {
+                classes.add(Files.readAllBytes(classFile));
+                String relativePath = srcDir.toPath().relativize(classFile).toString().replace(File.separatorChar, '/');
+                classNames.add(relativePath.substring(0, relativePath.length() - ".class".length()));
+            }
+        }
+
+        instrumenter = new Instrumenter(Collections.singletonList(srcDir));
+    }
+
+    /**
+     * Closes the instrumenter and deletes the codebase.
+     * @throws IOException on IO error
+     */
+    @TearDown(Level.Trial)
+    public final void tearDown() throws IOException {
+        instrumenter.close();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Resets peak heap usage.
+     */
+    @Setup(Level.Iteration)
+    public final void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Prints out peak heap usage.
+     */
+    @TearDown(Level.Iteration)
+    public final void printPeakHeap() {
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.println("Peak heap: " + (peak / (1024L * 1024L)) + " MB");
+    }
+
+    /**
+     * Instruments every class in the codebase (in memory).
+     * @param counters counters
+     * @param bh blackhole
+     */
+    @Benchmark
+    public final void instrument(ClassCounters counters, Blackhole bh) {
+        for (byte[] classData : classes) {
+            bh.consume(instrumenter.instrument(classData, SETTINGS));
+        }
+        counters.classes += classes.size();
+    }
+
+    /**
+     * Creates a class information repository for the codebase's directory and walks up the hierarchy of every class in it.
+     * @param counters counters
+     * @param bh blackhole
+     * @throws IOException on IO error
+     */
+    @Benchmark
+    public final void createClassInformationRepository(ClassCounters counters, Blackhole bh) throws IOException {
+        try (FileSystemClassInformationRepository repo = FileSystemClassInformationRepository.create(Collections.singletonList(srcDir))) {
+            for (String className : classNames) {
+                ClassInformation info = repo.getInformation(className);
+                while (info != null) {
+                    bh.consume(info);
+                    String superClassName = info.getSuperClassName();
+                    info = superClassName == null ? null : repo.getInformation(superClassName);
+                }
+            }
+        }
+        counters.classes += classes.size();
+    }
+
+    /**
+     * Instruments the codebase's directory in to another directory.
+     * @param counters counters
+     * @throws IOException on IO error
+     */
+    @Benchmark
+    public final void instrumentDirectory(ClassCounters counters) throws IOException {
+        PluginHelper.instrument(instrumenter, SETTINGS, srcDir, dstDir, log -> { });
+        counters.classes += classes.size();
+    }
+
+    /**
+     * Counts the number of classes processed. Reported by JMH as a rate, alongside operations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ClassCounters {
+        //CHECKSTYLE.OFF:VisibilityModifier - JMH reads counters directly from the field
+        /**
+         * Number of classes processed.
+         */
+        public long classes;
+        //CHECKSTYLE.ON:VisibilityModifier
+
+        /**
+         * Resets the counter.
+         */
+        @Setup(Level.Iteration)
+        public final void reset() {
+            classes = 0L;
+        }
+    }
+}
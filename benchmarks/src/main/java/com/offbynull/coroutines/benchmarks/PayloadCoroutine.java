@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.benchmarks;
+
+import com.offbynull.coroutines.user.Continuation;
+import com.offbynull.coroutines.user.Coroutine;
+
+// Suspends at the bottom of a chain of recursive invocations, where each frame in the chain holds on to its own payload array.
+final class PayloadCoroutine implements Coroutine {
+    private static final long serialVersionUID = 1L;
+
+    private final int depth;
+    private final int payloadSize;
+    private long sink;
+
+    PayloadCoroutine(int depth, int payloadSize) {
+        this.depth = depth;
+        this.payloadSize = payloadSize;
+    }
+
+    @Override
+    public void run(Continuation c) {
+        while (true) {
+            descend(c, depth);
+        }
+    }
+
+    private void descend(Continuation c, int remaining) {
+        byte[] payload = new byte[payloadSize];
+        if (remaining <= 1) {
+            c.suspend();
+        } else {
+            descend(c, remaining - 1);
+        }
+        sink += payload.length;
+    }
+}
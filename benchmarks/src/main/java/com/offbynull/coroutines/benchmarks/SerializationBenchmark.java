@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.benchmarks;
+
+import com.offbynull.coroutines.user.BinaryCoroutineDeserializer;
+import com.offbynull.coroutines.user.BinaryCoroutineSerializer;
+import com.offbynull.coroutines.user.CoroutineReader;
+import com.offbynull.coroutines.user.CoroutineReader.CoroutineDeserializer;
+import com.offbynull.coroutines.user.CoroutineReader.DefaultCoroutineDeserializer;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import com.offbynull.coroutines.user.CoroutineWriter;
+import com.offbynull.coroutines.user.CoroutineWriter.CoroutineSerializer;
+import com.offbynull.coroutines.user.CoroutineWriter.DefaultCoroutineSerializer;
+import com.offbynull.coroutines.user.SerializedState;
+import com.offbynull.coroutines.user.SerializedState.FrameInterceptPoint;
+import com.offbynull.coroutines.user.SerializedState.FrameUpdatePoint;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks checkpointing a suspended coroutine ({@link CoroutineWriter#deconstruct(CoroutineRunner) } /
+ * {@link CoroutineWriter#write(CoroutineRunner) }) and restoring it ({@link CoroutineReader#reconstruct(SerializedState) } /
+ * {@link CoroutineReader#read(byte[]) }) across the number of frames, the size of the payload held by each frame, the number of frame
+ * update points registered, and the serializer used.
+ * <p>
+ * Alongside the usual operations per second, {@link #write(ByteCounters) } reports the number of bytes it serialized as the {@code bytes}
+ * counter, so the size of a checkpoint in bytes is that counter's rate divided by {@code write}'s rate (in throughput mode). Allocations
+ * per operation are reported when running with {@code -prof gc}.
+ * @author Kasra Faghihi
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    //CHECKSTYLE.OFF:VisibilityModifier - JMH sets benchmark parameters directly on the field
+    /**
+     * Number of frames on the coroutine's stack.
+     */
+    @Param({"1", "10", "50"})
+    public int depth;
+
+    /**
+     * Size (in bytes) of the payload array held by each frame.
+     */
+    @Param({"0", "1024"})
+    public int payloadSize;
+
+    /**
+     * Number of frame update points given to the writer and reader. None of them match the coroutine's frames -- they're there to measure
+     * the cost of looking them up (e.g. update points that have piled up over several releases).
+     */
+    @Param({"0", "500"})
+    public int updatePointCount;
+
+    /**
+     * Serializer (and matching deserializer) to use.
+     */
+    @Param({"default", "binary"})
+    public String serializer;
+    //CHECKSTYLE.ON:VisibilityModifier
+
+    private CoroutineWriter writer;
+    private CoroutineReader reader;
+    private CoroutineRunner runner;
+    private SerializedState state;
+    private byte[] data;
+
+    /**
+     * Creates the coroutine, runs it up to its first suspension, and checkpoints it once.
+     */
+    @Setup
+    public final void setUp() {
+        FrameUpdatePoint[] updatePoints = new FrameUpdatePoint[updatePointCount];
+        for (int i = 0; i < updatePoints.length; i++) {
+            updatePoints[i] = new FrameUpdatePoint(PayloadCoroutine.class.getName(), i, 0, (frame, mode) -> {
+                throw new IllegalStateException();
+            });
+        }
+
+        CoroutineSerializer coroutineSerializer;
+        CoroutineDeserializer coroutineDeserializer;
+        switch (serializer) {
+            case "default":
+                coroutineSerializer = new DefaultCoroutineSerializer();
+                coroutineDeserializer = new DefaultCoroutineDeserializer();
+                break;
+            case "binary":
+                coroutineSerializer = new BinaryCoroutineSerializer();
+                coroutineDeserializer = new BinaryCoroutineDeserializer();
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+
+        writer = new CoroutineWriter(coroutineSerializer, updatePoints, new FrameInterceptPoint[0]);
+        reader = new CoroutineReader(coroutineDeserializer, updatePoints, new FrameInterceptPoint[0]);
+
+        runner = new CoroutineRunner(new PayloadCoroutine(depth, payloadSize));
+        runner.execute();
+
+        state = writer.deconstruct(runner);
+        data = writer.write(runner);
+    }
+
+    /**
+     * Deconstructs the coroutine (no serialization).
+     * @return deconstructed state
+     */
+    @Benchmark
+    public final SerializedState deconstruct() {
+        return writer.deconstruct(runner);
+    }
+
+    /**
+     * Deconstructs and serializes the coroutine.
+     * @param counters bytes counter
+     * @return serialized state
+     */
+    @Benchmark
+    public final byte[] write(ByteCounters counters) {
+        byte[] ret = writer.write(runner);
+        counters.bytes += ret.length;
+        return ret;
+    }
+
+    /**
+     * Reconstructs the coroutine from deconstructed state (no deserialization).
+     * @return reconstructed coroutine
+     */
+    @Benchmark
+    public final CoroutineRunner reconstruct() {
+        return reader.reconstruct(state);
+    }
+
+    /**
+     * Deserializes and reconstructs the coroutine.
+     * @return reconstructed coroutine
+     */
+    @Benchmark
+    public final CoroutineRunner read() {
+        return reader.read(data);
+    }
+
+    /**
+     * Counts the number of bytes serialized. Reported by JMH as a rate, alongside operations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ByteCounters {
+        //CHECKSTYLE.OFF:VisibilityModifier - JMH reads counters directly from the field
+        /**
+         * Number of bytes serialized.
+         */
+        public long bytes;
+        //CHECKSTYLE.ON:VisibilityModifier
+
+        /**
+         * Resets the counter.
+         */
+        @Setup(Level.Iteration)
+        public final void reset() {
+            bytes = 0L;
+        }
+    }
+}
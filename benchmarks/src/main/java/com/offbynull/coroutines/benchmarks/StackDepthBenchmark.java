@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.benchmarks;
+
+import com.offbynull.coroutines.user.CoroutineRunner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the cost of a single suspend/resume cycle ({@link CoroutineRunner#execute() }) as the number of frames on the coroutine's
+ * stack grows.
+ * @author Kasra Faghihi
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StackDepthBenchmark {
+
+    //CHECKSTYLE.OFF:VisibilityModifier - JMH sets benchmark parameters directly on the field
+    /**
+     * Number of frames on the coroutine's stack when it suspends.
+     */
+    @Param({"1", "10", "100"})
+    public int depth;
+    //CHECKSTYLE.ON:VisibilityModifier
+
+    private CoroutineRunner runner;
+
+    /**
+     * Creates the coroutine and runs it up to its first suspension.
+     */
+    @Setup
+    public final void setUp() {
+        runner = new CoroutineRunner(new DeepStackCoroutine(depth));
+        runner.execute();
+    }
+
+    /**
+     * Resumes the coroutine and lets it suspend again.
+     * @return {@code true} (coroutine never finishes)
+     */
+    @Benchmark
+    public final boolean suspendAndResume() {
+        return runner.execute();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.benchmarks;
+
+import com.offbynull.coroutines.user.Continuation;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+// Generates a synthetic codebase of class files for instrumentation benchmarks. Classes are laid out in inheritance chains, and a fraction
+// of them get a coroutine method (a method that takes in a Continuation) with some number of suspend points. If a coroutine method's
+// superclass also has one, it invokes the superclass's version as well (an invocation continuation point). Generation is deterministic.
+final class SyntheticCodebase {
+
+    private static final String PACKAGE = "synthetic/";
+    private static final String CONTINUATION_NAME = Type.getInternalName(Continuation.class);
+    private static final String COROUTINE_METHOD_DESC = "(L" + CONTINUATION_NAME + ";)V";
+
+    private SyntheticCodebase() {
+        // do nothing
+    }
+
+    static void generate(Path directory, int classCount, int hierarchyDepth, double coroutineFraction, int suspendPoints)
+            throws IOException {
+        Path packageDir = Files.createDirectories(directory.resolve(PACKAGE));
+        Random random = new Random(0L);
+
+        boolean superHasCoroutineMethod = false;
+        for (int i = 0; i < classCount; i++) {
+            boolean extendsPrevious = i % hierarchyDepth != 0;
+            String name = getClassName(i);
+            String superName = extendsPrevious ? getClassName(i - 1) : Type.getInternalName(Object.class);
+            boolean hasCoroutineMethod = random.nextDouble() < coroutineFraction;
+            boolean invokesSuper = extendsPrevious && superHasCoroutineMethod;
+
+            byte[] classData = generateClass(name, superName, hasCoroutineMethod, invokesSuper, suspendPoints);
+            Files.write(packageDir.resolve(name.substring(PACKAGE.length()) + ".class"), classData);
+
+            // A coroutine method gets inherited, so it stays available down the rest of the chain
+            superHasCoroutineMethod = hasCoroutineMethod || invokesSuper;
+        }
+    }
+
+    private static String getClassName(int index) {
+        return String.format(PACKAGE + "Class%06d", index);
+    }
+
+    private static byte[] generateClass(String name, String superName, boolean hasCoroutineMethod, boolean invokesSuper,
+            int suspendPoints) {
+        // No branches are generated, so no frames need to be computed
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "compute", "(I)I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        if (hasCoroutineMethod || invokesSuper) {
+            // locals: 0 = this, 1 = continuation, 2 = int counter, 3-4 = long counter, 5 = object
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", COROUTINE_METHOD_DESC, null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, 2);
+            mv.visitInsn(Opcodes.LCONST_0);
+            mv.visitVarInsn(Opcodes.LSTORE, 3);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ASTORE, 5);
+            if (invokesSuper) {
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "run", COROUTINE_METHOD_DESC, false);
+            }
+            int count = hasCoroutineMethod ? suspendPoints : 0;
+            for (int i = 0; i < count; i++) {
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, CONTINUATION_NAME, "suspend", "()V", false);
+                mv.visitIincInsn(2, 1);
+                mv.visitVarInsn(Opcodes.LLOAD, 3);
+                mv.visitInsn(Opcodes.LCONST_1);
+                mv.visitInsn(Opcodes.LADD);
+                mv.visitVarInsn(Opcodes.LSTORE, 3);
+            }
+            mv.visitVarInsn(Opcodes.ALOAD, 5);
+            mv.visitVarInsn(Opcodes.ILOAD, 2);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, "compute", "(I)I", false);
+            mv.visitInsn(Opcodes.POP);
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.checkpointlog;
+
+import com.offbynull.coroutines.user.CoroutineReader;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import com.offbynull.coroutines.user.CoroutineWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Durable, append-only log of {@link CoroutineRunner} checkpoints, keyed by id.
+ * <p>
+ * Each checkpoint is serialized using the {@link CoroutineWriter} supplied and appended to the current segment file as a record framed
+ * with its length and a CRC-32C checksum. {@link #checkpoint(java.lang.String, com.offbynull.coroutines.user.CoroutineRunner) } doesn't
+ * return until the record has been synced to disk, but records appended concurrently by different threads are synced together (group
+ * commit): while one thread is writing out and syncing a batch of records, records from other threads queue up and get written out as
+ * the next batch. The cost of a sync is shared by every record in the batch.
+ * <p>
+ * Once a segment file grows past the configured size, a new one is started. Segment files that no longer hold the latest checkpoint of
+ * any id (and are older than every segment that does) are deleted. So that an id that stops being checkpointed doesn't keep the oldest
+ * segment file (and every segment file after it) around, the latest checkpoints still in the oldest segment file get copied forward in
+ * to the segment file being appended to once less than half of the log is live, after which the oldest segment file gets deleted.
+ * <p>
+ * When a log is opened, its segment files are scanned and the latest checkpoint of each id is reconstructed using the
+ * {@link CoroutineReader} supplied. Records that are cut off or fail their checksum at the end of the last segment file (e.g. because of
+ * a crash in the middle of a write) are discarded, since they were never acknowledged as being durable.
+ * <p>
+ * This class is thread-safe.
+ * @author Kasra Faghihi
+ */
+public final class CheckpointLog implements Closeable {
+    /**
+     * Default segment file size.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final byte TYPE_CHECKPOINT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final int RECORD_HEADER_SIZE = 8; // length + checksum
+    private static final int PAYLOAD_HEADER_SIZE = 5; // type + id length
+
+    private final Path directory;
+    private final CoroutineWriter writer;
+    private final int segmentSize;
+
+    private final ReentrantLock lock;
+    private final Condition flushed;
+    private List<Record> pending;
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean flushing;
+    private Exception failure;
+    private boolean closed;
+    private long syncCount;
+
+    private final Deque<LogSegment> segments; // oldest first, last one is being appended to
+    private final Map<String, Location> latestLocations; // id -> where its latest checkpoint is
+    
+    private CheckpointLog(Path directory, CoroutineWriter writer, int segmentSize, Deque<LogSegment> segments,
+            Map<String, Location> latestLocations) {
+        this.directory = directory;
+        this.writer = writer;
+        this.segmentSize = segmentSize;
+        this.lock = new ReentrantLock();
+        this.flushed = lock.newCondition();
+        this.pending = new ArrayList<>();
+        this.segments = segments;
+        this.latestLocations = latestLocations;
+    }
+
+    /**
+     * Opens a checkpoint log, creating it if it doesn't exist. Equivalent to calling
+     * {@code open(directory, writer, reader, DEFAULT_SEGMENT_SIZE, recoveryHandler)}.
+     * @param directory directory containing segment files
+     * @param writer writer to serialize runners with
+     * @param reader reader to deserialize runners with
+     * @param recoveryHandler called with the latest checkpoint of each id in the log
+     * @return log
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code directory} isn't a directory, or if a runner failed to deserialize
+     * @throws IOException if an IO error occurs, or if a segment file other than the last one is corrupt
+     */
+    public static CheckpointLog open(Path directory, CoroutineWriter writer, CoroutineReader reader,
+            BiConsumer<String, CoroutineRunner> recoveryHandler) throws IOException {
+        return open(directory, writer, reader, DEFAULT_SEGMENT_SIZE, recoveryHandler);
+    }
+
+    /**
+     * Opens a checkpoint log, creating it if it doesn't exist.
+     * @param directory directory containing segment files
+     * @param writer writer to serialize runners with
+     * @param reader reader to deserialize runners with
+     * @param segmentSize size (in bytes) that a segment file has to reach before a new one is started
+     * @param recoveryHandler called with the latest checkpoint of each id in the log
+     * @return log
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code directory} isn't a directory, if {@code segmentSize <= 0}, or if a runner failed to
+     * deserialize
+     * @throws IOException if an IO error occurs, or if a segment file other than the last one is corrupt
+     */
+    public static CheckpointLog open(Path directory, CoroutineWriter writer, CoroutineReader reader, int segmentSize,
+            BiConsumer<String, CoroutineRunner> recoveryHandler) throws IOException {
+        Validate.notNull(directory);
+        Validate.notNull(writer);
+        Validate.notNull(reader);
+        Validate.notNull(recoveryHandler);
+        Validate.isTrue(Files.isDirectory(directory));
+        Validate.isTrue(segmentSize > 0);
+
+        // Find existing segments, ordered by id
+        TreeMap<Long, Path> files = new TreeMap<>(Long::compareUnsigned);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                long id = LogSegment.fromFileName(file.getFileName().toString());
+                if (id != -1L) {
+                    files.put(id, file);
+                }
+            }
+        }
+
+        // Scan segments for the latest checkpoint of each id
+        Deque<LogSegment> segments = new ArrayDeque<>();
+        Map<String, Location> latestLocations = new HashMap<>();
+        Map<String, byte[]> latestData = new HashMap<>();
+        long nextId = 0L;
+        for (Entry<Long, Path> entry : files.entrySet()) {
+            boolean last = entry.getKey().equals(files.lastKey());
+            LogSegment segment = scan(entry.getKey(), entry.getValue(), last, latestLocations, latestData);
+            if (segment != null) {
+                segments.addLast(segment);
+            }
+            nextId = entry.getKey() + 1L;
+        }
+
+        // Start a new segment to append to -- never append to a segment from before, it may have been repaired
+        segments.addLast(LogSegment.create(directory, nextId));
+        syncDirectory(directory);
+
+        CheckpointLog log = new CheckpointLog(directory, writer, segmentSize, segments, latestLocations);
+        try {
+            log.deleteDeadSegments();
+            for (Entry<String, byte[]> entry : latestData.entrySet()) {
+                recoveryHandler.accept(entry.getKey(), reader.read(entry.getValue()));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    // Returns null if the segment was empty/torn and got deleted
+    private static LogSegment scan(long id, Path file, boolean last, Map<String, Location> latestLocations,
+            Map<String, byte[]> latestData) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        if (buffer.remaining() < LogSegment.HEADER_SIZE || buffer.getInt() != LogSegment.MAGIC) {
+            if (last && data.length < LogSegment.HEADER_SIZE) {
+                // Crashed while creating segment
+                Files.delete(file);
+                return null;
+            }
+            throw new IOException("Not a segment file: " + file);
+        }
+
+        LogSegment segment = new LogSegment(id, file, data.length);
+        CRC32C crc = new CRC32C();
+        while (buffer.hasRemaining()) {
+            int recordStart = buffer.position();
+
+            Record record = null;
+            if (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length >= PAYLOAD_HEADER_SIZE && length <= buffer.remaining()) {
+                    crc.reset();
+                    crc.update(data, buffer.position(), length);
+                    if ((int) crc.getValue() == checksum) {
+                        record = decodePayload(buffer, length);
+                    }
+                }
+            }
+
+            if (record == null) {
+                if (!last) {
+                    throw new IOException("Corrupt record in " + file + " at offset " + recordStart);
+                }
+                // Crashed in the middle of writing out a batch -- nothing from this point on was ever acknowledged, so get rid of it
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(recordStart);
+                    channel.force(false);
+                }
+                break;
+            }
+
+            apply(record, new Location(segment, recordStart, buffer.position() - recordStart), latestLocations);
+            if (record.type == TYPE_CHECKPOINT) {
+                latestData.put(record.id, record.data);
+            } else {
+                latestData.remove(record.id);
+            }
+        }
+
+        return segment;
+    }
+
+    private static Record decodePayload(ByteBuffer buffer, int length) {
+        int end = buffer.position() + length;
+
+        byte type = buffer.get();
+        int idLength = buffer.getInt();
+        if ((type != TYPE_CHECKPOINT && type != TYPE_REMOVE) || idLength < 0 || idLength > end - buffer.position()) {
+            return null;
+        }
+
+        byte[] idData = new byte[idLength];
+        buffer.get(idData);
+        byte[] data = new byte[end - buffer.position()];
+        buffer.get(data);
+
+        return new Record(type, new String(idData, StandardCharsets.UTF_8), data);
+    }
+
+    private static ByteBuffer encode(Record record) {
+        byte[] idData = record.id.getBytes(StandardCharsets.UTF_8);
+        int length = PAYLOAD_HEADER_SIZE + idData.length + record.data.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        buffer.position(RECORD_HEADER_SIZE);
+        buffer.put(record.type);
+        buffer.putInt(idData.length);
+        buffer.put(idData);
+        buffer.put(record.data);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void apply(Record record, Location location, Map<String, Location> latestLocations) {
+        Location oldLocation;
+        if (record.type == TYPE_CHECKPOINT) {
+            oldLocation = latestLocations.put(record.id, location);
+            location.segment.addLiveBytes(location.length);
+        } else {
+            oldLocation = latestLocations.remove(record.id);
+        }
+
+        if (oldLocation != null) {
+            oldLocation.segment.addLiveBytes(-oldLocation.length);
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        // Makes sure a newly created segment file survives a crash. Not all platforms support opening a directory (e.g. Windows), in
+        // which case it's skipped.
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ioe) {
+            // do nothing
+        }
+    }
+
+    /**
+     * Durably writes out a checkpoint of a runner. Once this method returns, the checkpoint will be the one recovered for {@code id}
+     * (unless another checkpoint is written out for {@code id} after it).
+     * @param id id to write the checkpoint under
+     * @param runner runner to checkpoint
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code runner} failed to serialize
+     * @throws IllegalStateException if closed
+     * @throws IOException if an IO error occurs (once this happens, this log becomes unusable)
+     */
+    public void checkpoint(String id, CoroutineRunner runner) throws IOException {
+        Validate.notNull(id);
+        Validate.notNull(runner);
+
+        byte[] data = writer.write(runner); // serialize outside of the lock, so threads can do this in parallel
+        append(new Record(TYPE_CHECKPOINT, id, data));
+    }
+
+    /**
+     * Durably removes an id, such that nothing gets recovered for it.
+     * @param id id to remove
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalStateException if closed
+     * @throws IOException if an IO error occurs (once this happens, this log becomes unusable)
+     */
+    public void remove(String id) throws IOException {
+        Validate.notNull(id);
+
+        append(new Record(TYPE_REMOVE, id, new byte[0]));
+    }
+
+    private void append(Record record) throws IOException {
+        ByteBuffer encoded = encode(record);
+
+        lock.lock();
+        try {
+            Validate.validState(!closed, "Closed");
+            throwIfFailed();
+
+            pending.add(record.withEncoded(encoded));
+            appendedSeq++;
+            long seq = appendedSeq;
+
+            while (durableSeq < seq) {
+                throwIfFailed();
+
+                if (flushing) {
+                    // Someone else is writing out a batch, wait for it to finish. Our record will either be in the batch being written
+                    // out or get picked up as part of the next batch.
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+
+                // Nobody is writing out a batch -- take everything that's queued up and write it out ourselves
+                flushing = true;
+                List<Record> batch = pending;
+                long batchSeq = appendedSeq;
+                pending = new ArrayList<>();
+                LogSegment segment = segments.getLast();
+
+                Exception writeFailure = null;
+                long[] offsets = null;
+                lock.unlock();
+                try {
+                    offsets = writeBatch(segment, batch);
+                } catch (IOException | RuntimeException e) {
+                    writeFailure = e;
+                } finally {
+                    lock.lock();
+                }
+
+                if (writeFailure == null) {
+                    durableSeq = batchSeq;
+                    syncCount++;
+                    flushed.signalAll(); // let the threads whose records made it in to the batch go while the segments are cleaned up
+                    try {
+                        for (int i = 0; i < batch.size(); i++) {
+                            Record batchRecord = batch.get(i);
+                            apply(batchRecord, new Location(segment, offsets[i], batchRecord.encoded.limit()), latestLocations);
+                        }
+                        deleteDeadSegments();
+                        rotateIfNeeded();
+                        compactOldestSegments(); // still flushing, so nobody else appends while this is going on
+                    } catch (IOException | RuntimeException e) {
+                        writeFailure = e;
+                    }
+                }
+                flushing = false;
+                if (writeFailure != null) {
+                    failure = writeFailure;
+                }
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void throwIfFailed() throws IOException {
+        if (failure != null) {
+            throw new IOException("Log failed", failure);
+        }
+    }
+
+    // Returns the offset each record was written to
+    private static long[] writeBatch(LogSegment segment, List<Record> batch) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = batch.get(i).encoded;
+        }
+        return writeAndSync(segment, buffers);
+    }
+
+    private static long[] writeAndSync(LogSegment segment, ByteBuffer[] buffers) throws IOException {
+        long[] offsets = new long[buffers.length];
+        long offset = segment.getSize();
+        for (int i = 0; i < buffers.length; i++) {
+            offsets[i] = offset;
+            offset += buffers[i].remaining();
+        }
+
+        segment.write(buffers);
+        segment.sync();
+        return offsets;
+    }
+
+    private void deleteDeadSegments() throws IOException {
+        // Only delete from the oldest end -- a segment may hold a removal for an id that still has a checkpoint in an older segment, so
+        // it has to stick around for as long as that older segment does.
+        while (segments.size() > 1 && segments.getFirst().getLiveBytes() == 0L) {
+            segments.removeFirst().delete();
+        }
+    }
+
+    private void rotateIfNeeded() throws IOException {
+        LogSegment segment = segments.getLast();
+        if (segment.getSize() >= segmentSize) {
+            segment.close();
+            segments.addLast(LogSegment.create(directory, segment.getId() + 1L));
+            syncDirectory(directory);
+        }
+    }
+
+    private boolean isMostlyDead() {
+        long size = 0L;
+        long liveBytes = 0L;
+        for (LogSegment segment : segments) {
+            size += segment.getSize();
+            liveBytes += segment.getLiveBytes();
+        }
+        return liveBytes * 2L < size;
+    }
+
+    // Must be called while flushing. Releases the lock while copying records over.
+    private void compactOldestSegments() throws IOException {
+        // Copying the live records out of the oldest segment leaves it with nothing but dead records, so it gets deleted (along with any
+        // dead segments after it that it was holding up). Removal records in it don't need to be copied over -- there's no older segment
+        // left for them to hide a checkpoint in.
+        while (segments.size() > 1 && isMostlyDead()) {
+            LogSegment oldest = segments.getFirst();
+            LogSegment target = segments.getLast();
+
+            List<String> ids = new ArrayList<>();
+            List<Location> oldLocations = new ArrayList<>();
+            for (Entry<String, Location> entry : latestLocations.entrySet()) {
+                if (entry.getValue().segment == oldest) {
+                    ids.add(entry.getKey());
+                    oldLocations.add(entry.getValue());
+                }
+            }
+
+            // Records are copied as-is, checksum and all
+            long[] offsets;
+            lock.unlock();
+            try {
+                ByteBuffer[] buffers = new ByteBuffer[oldLocations.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    Location oldLocation = oldLocations.get(i);
+                    buffers[i] = oldest.read(oldLocation.offset, oldLocation.length);
+                }
+                offsets = writeAndSync(target, buffers);
+            } finally {
+                lock.lock();
+            }
+
+            for (int i = 0; i < ids.size(); i++) {
+                Location oldLocation = oldLocations.get(i);
+                latestLocations.put(ids.get(i), new Location(target, offsets[i], oldLocation.length));
+                target.addLiveBytes(oldLocation.length);
+                oldest.addLiveBytes(-oldLocation.length);
+            }
+            deleteDeadSegments();
+            rotateIfNeeded();
+        }
+    }
+
+    /**
+     * Get the number of segment files currently in use.
+     * @return number of segment files
+     */
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Number of times a batch was synced to disk. For testing.
+    long getSyncCount() {
+        lock.lock();
+        try {
+            return syncCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes this log. Waits for any checkpoints that are in the middle of being written out to finish.
+     * @throws IOException if an IO error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            while (flushing || !pending.isEmpty()) {
+                if (failure != null) {
+                    break;
+                }
+                flushed.awaitUninterruptibly();
+            }
+
+            for (LogSegment segment : segments) {
+                segment.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Location {
+        private final LogSegment segment;
+        private final long offset;
+        private final int length; // length of the entire record, header included
+
+        Location(LogSegment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Record {
+        private final byte type;
+        private final String id;
+        private final byte[] data;
+        private final ByteBuffer encoded;
+
+        Record(byte type, String id, byte[] data) {
+            this(type, id, data, null);
+        }
+
+        private Record(byte type, String id, byte[] data, ByteBuffer encoded) {
+            this.type = type;
+            this.id = id;
+            this.data = data;
+            this.encoded = encoded;
+        }
+
+        Record withEncoded(ByteBuffer encoded) {
+            return new Record(type, id, null, encoded);
+        }
+    }
+}
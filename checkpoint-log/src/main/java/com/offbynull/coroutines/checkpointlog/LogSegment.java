@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.checkpointlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.Validate;
+
+// A single log file. Not thread-safe -- access is guarded by CheckpointLog.
+final class LogSegment {
+    static final int MAGIC = 0xC0B1_106F;
+    static final int HEADER_SIZE = 4;
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("checkpoint-([0-9a-f]{16})\\.log");
+    
+    private final long id;
+    private final Path file;
+    private FileChannel channel; // null if not open for writing
+    private long size;
+    private long liveBytes; // size of the records in this segment that are the latest record of some id
+
+    LogSegment(long id, Path file, long size) {
+        this.id = id;
+        this.file = file;
+        this.size = size;
+    }
+
+    static String toFileName(long id) {
+        return String.format("checkpoint-%016x.log", id);
+    }
+
+    // Returns -1 if not a segment file name
+    static long fromFileName(String name) {
+        Matcher matcher = NAME_PATTERN.matcher(name);
+        if (!matcher.matches()) {
+            return -1L;
+        }
+        return Long.parseUnsignedLong(matcher.group(1), 16);
+    }
+
+    static LogSegment create(Path directory, long id) throws IOException {
+        Path file = directory.resolve(toFileName(id));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+
+        LogSegment segment = new LogSegment(id, file, HEADER_SIZE);
+        segment.channel = channel;
+        return segment;
+    }
+
+    void write(ByteBuffer[] buffers) throws IOException {
+        Validate.validState(channel != null);
+
+        long remaining = 0L;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0L) {
+            long written = channel.write(buffers);
+            remaining -= written;
+            size += written;
+        }
+    }
+
+    ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                int read = readChannel.read(buffer, offset + buffer.position());
+                if (read == -1) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    void sync() throws IOException {
+        Validate.validState(channel != null);
+        channel.force(false);
+    }
+
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    void addLiveBytes(long count) {
+        liveBytes += count;
+    }
+}
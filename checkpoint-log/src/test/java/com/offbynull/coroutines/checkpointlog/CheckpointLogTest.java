@@ -0,0 +1,314 @@
+package com.offbynull.coroutines.checkpointlog;
+
+import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
+import com.offbynull.coroutines.instrumenter.Instrumenter;
+import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
+import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineReader;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import com.offbynull.coroutines.user.CoroutineWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import static org.apache.commons.lang3.reflect.ConstructorUtils.invokeConstructor;
+import static org.apache.commons.lang3.reflect.FieldUtils.readField;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CheckpointLogTest {
+    
+    private static final String NORMAL_INVOKE_TEST = "NormalInvokeTest";
+
+    private File tempDir;
+    private Path segmentDir;
+    private URLClassLoader classLoader;
+    private ClassLoader originalClassLoader;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        segmentDir = Files.createDirectory(tempDir.toPath().resolve("segments"));
+        classLoader = instrumentAndLoad(NORMAL_INVOKE_TEST);
+        
+        // Readers look up the coroutine's classes through the thread's classloader
+        originalClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(classLoader);
+    }
+    
+    @AfterEach
+    public void tearDown() throws Exception {
+        Thread.currentThread().setContextClassLoader(originalClassLoader);
+        classLoader.close();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void mustRecoverLatestCheckpointOfEachId() throws Exception {
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, new ConcurrentHashMap<>())) {
+            CoroutineRunner runner1 = new CoroutineRunner(createCoroutine());
+            CoroutineRunner runner2 = new CoroutineRunner(createCoroutine());
+            CoroutineRunner runner3 = new CoroutineRunner(createCoroutine());
+            for (int i = 0; i < 3; i++) {
+                runner1.execute();
+                log.checkpoint("runner1", runner1);
+            }
+            runner2.execute();
+            log.checkpoint("runner2", runner2);
+            log.checkpoint("runner3", runner3);
+            log.remove("runner3");
+        }
+
+        Map<String, CoroutineRunner> recovered = new ConcurrentHashMap<>();
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, recovered)) {
+            assertEquals(2, recovered.size());
+            assertEquals("started\n0\n1\n2\n", readOutput(recovered.get("runner1")));
+            assertEquals("started\n0\n", readOutput(recovered.get("runner2")));
+            assertFalse(recovered.containsKey("runner3"));
+
+            // Recovered runners pick up where they left off
+            CoroutineRunner runner1 = recovered.get("runner1");
+            runner1.execute();
+            assertEquals("started\n0\n1\n2\n3\n", readOutput(runner1));
+        }
+    }
+
+    @Test
+    public void mustSyncConcurrentCheckpointsTogether() throws Exception {
+        int threadCount = 8;
+        int checkpointsPerThread = 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, new ConcurrentHashMap<>())) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                String id = "runner" + i;
+                CoroutineRunner runner = new CoroutineRunner(createCoroutine());
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < checkpointsPerThread; j++) {
+                        runner.execute();
+                        log.checkpoint(id, runner);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            // Can't guarantee that batching happened (depends on timing), but there should never be more syncs than checkpoints
+            assertTrue(log.getSyncCount() <= threadCount * checkpointsPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, CoroutineRunner> recovered = new ConcurrentHashMap<>();
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, recovered)) {
+            assertEquals(threadCount, recovered.size());
+            for (CoroutineRunner runner : recovered.values()) {
+                assertTrue(readOutput(runner).endsWith("9\n"));
+            }
+        }
+    }
+
+    @Test
+    public void mustDiscardTornRecordAtEndOfLastSegment() throws Exception {
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, new ConcurrentHashMap<>())) {
+            CoroutineRunner runner = new CoroutineRunner(createCoroutine());
+            runner.execute();
+            log.checkpoint("runner", runner);
+            runner.execute();
+            log.checkpoint("runner", runner);
+        }
+
+        // Simulate a crash in the middle of writing out the last record
+        Path lastFile = getLastSegmentFile();
+        long size = Files.size(lastFile);
+        try (RandomAccessFile raf = new RandomAccessFile(lastFile.toFile(), "rw")) {
+            raf.setLength(size - 3L);
+        }
+        Files.write(lastFile, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, StandardOpenOption.APPEND);
+
+        Map<String, CoroutineRunner> recovered = new ConcurrentHashMap<>();
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, recovered)) {
+            assertEquals("started\n0\n", readOutput(recovered.get("runner")));
+            assertTrue(Files.size(lastFile) < size);
+        }
+
+        // Repaired file scans cleanly, even once it's no longer the last segment
+        recovered.clear();
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, recovered)) {
+            assertEquals("started\n0\n", readOutput(recovered.get("runner")));
+        }
+    }
+
+    @Test
+    public void mustFailOnCorruptRecordBeforeLastSegment() throws Exception {
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, new ConcurrentHashMap<>())) {
+            log.checkpoint("runner", new CoroutineRunner(createCoroutine()));
+        }
+        Path firstFile = getLastSegmentFile();
+        try (CheckpointLog log = open(CheckpointLog.DEFAULT_SEGMENT_SIZE, new ConcurrentHashMap<>())) {
+            log.checkpoint("other", new CoroutineRunner(createCoroutine()));
+        }
+
+        // Flip a byte in the middle of the first segment's record
+        byte[] data = Files.readAllBytes(firstFile);
+        data[data.length / 2] ^= 0xFF;
+        Files.write(firstFile, data);
+
+        assertThrows(IOException.class, () -> open(CheckpointLog.DEFAULT_SEGMENT_SIZE, new ConcurrentHashMap<>()));
+    }
+
+    @Test
+    public void mustRotateSegmentsAndDeleteOnesThatAreNoLongerNeeded() throws Exception {
+        try (CheckpointLog log = open(1024, new ConcurrentHashMap<>())) {
+            CoroutineRunner runner1 = new CoroutineRunner(createCoroutine());
+            CoroutineRunner runner2 = new CoroutineRunner(createCoroutine());
+            log.checkpoint("runner2", runner2);
+            long lastSegmentId = getLastSegmentId();
+            for (int i = 0; i < 10; i++) {
+                runner1.execute();
+                log.checkpoint("runner1", runner1);
+            }
+            assertTrue(getLastSegmentId() > lastSegmentId + 2L); // rotated more than once
+            assertEquals(log.getSegmentCount(), countSegmentFiles());
+
+            log.remove("runner2");
+            assertTrue(log.getSegmentCount() <= 2);
+            assertEquals(log.getSegmentCount(), countSegmentFiles());
+        }
+
+        Map<String, CoroutineRunner> recovered = new ConcurrentHashMap<>();
+        try (CheckpointLog log = open(1024, recovered)) {
+            assertEquals(1, recovered.size());
+            assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", readOutput(recovered.get("runner1")));
+        }
+    }
+
+    @Test
+    public void mustCopyIdleCheckpointsForwardSoBusyIdsDontPileUpSegments() throws Exception {
+        try (CheckpointLog log = open(1024, new ConcurrentHashMap<>())) {
+            CoroutineRunner idleRunner = new CoroutineRunner(createCoroutine());
+            CoroutineRunner busyRunner = new CoroutineRunner(createCoroutine());
+            idleRunner.execute();
+            log.checkpoint("idle", idleRunner); // never checkpointed again, used to keep every segment after it around
+            long lastSegmentId = getLastSegmentId();
+            for (int i = 0; i < 50; i++) {
+                if (i < 10) {
+                    busyRunner.execute();
+                }
+                log.checkpoint("busy", busyRunner);
+                assertTrue(log.getSegmentCount() <= 5); // at most half of the log is dead, so it stays proportional to what's live
+                assertEquals(log.getSegmentCount(), countSegmentFiles());
+            }
+            assertTrue(getLastSegmentId() > lastSegmentId + 10L); // rotated plenty of times
+        }
+
+        Map<String, CoroutineRunner> recovered = new ConcurrentHashMap<>();
+        try (CheckpointLog log = open(1024, recovered)) {
+            assertEquals(2, recovered.size());
+            assertEquals("started\n0\n", readOutput(recovered.get("idle")));
+            assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", readOutput(recovered.get("busy")));
+
+            // Copy of the idle checkpoint gets removed just like the original would have
+            log.remove("idle");
+        }
+
+        recovered.clear();
+        try (CheckpointLog log = open(1024, recovered)) {
+            assertEquals(1, recovered.size());
+            assertTrue(recovered.containsKey("busy"));
+        }
+    }
+
+    private CheckpointLog open(int segmentSize, Map<String, CoroutineRunner> recovered) throws IOException {
+        return CheckpointLog.open(segmentDir, new CoroutineWriter(), new CoroutineReader(), segmentSize, recovered::put);
+    }
+    
+    private Coroutine createCoroutine() throws Exception {
+        Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+        return invokeConstructor(cls, new StringBuilder());
+    }
+    
+    private static String readOutput(CoroutineRunner runner) throws Exception {
+        Object coroutine = readField(runner, "coroutine", true);
+        return readField(coroutine, "builder", true).toString();
+    }
+    
+    private int countSegmentFiles() {
+        return segmentDir.toFile().list().length;
+    }
+
+    private long getLastSegmentId() throws IOException {
+        return LogSegment.fromFileName(getLastSegmentFile().getFileName().toString());
+    }
+
+    private Path getLastSegmentFile() throws IOException {
+        try (Stream<Path> files = Files.list(segmentDir)) {
+            return files.max(Comparator.naturalOrder()).get();
+        }
+    }
+
+    private URLClassLoader instrumentAndLoad(String className) throws IOException {
+        byte[] classData;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(className + ".zip");
+                ZipInputStream zis = new ZipInputStream(is)) {
+            ZipEntry entry;
+            do {
+                entry = zis.getNextEntry();
+            } while (!entry.getName().equals(className + ".class"));
+            classData = IOUtils.toByteArray(zis);
+        }
+        
+        File originalJar = new File(tempDir, "original.jar");
+        writeJar(originalJar, className, classData);
+
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        byte[] instrumentedClassData;
+        try (Instrumenter instrumenter = new Instrumenter(Collections.singletonList(originalJar))) {
+            instrumentedClassData = instrumenter.instrument(classData, settings).getInstrumentedClass();
+        }
+        
+        File instrumentedJar = new File(tempDir, "instrumented.jar");
+        writeJar(instrumentedJar, className, instrumentedClassData);
+        
+        return URLClassLoader.newInstance(new URL[] { instrumentedJar.toURI().toURL() }, getClass().getClassLoader());
+    }
+    
+    private static void writeJar(File file, String className, byte[] classData) throws IOException {
+        try (OutputStream os = Files.newOutputStream(file.toPath());
+                JarOutputStream jos = new JarOutputStream(os)) {
+            jos.putNextEntry(new JarEntry(className + ".class"));
+            jos.write(classData);
+            jos.closeEntry();
+        }
+    }
+}
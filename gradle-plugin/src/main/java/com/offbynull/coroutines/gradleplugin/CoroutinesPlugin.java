@@ -16,6 +16,7 @@
  */
 package com.offbynull.coroutines.gradleplugin;
 
+import com.offbynull.coroutines.instrumenter.InstrumentationCache;
 import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
 import com.offbynull.coroutines.instrumenter.Instrumenter;
 import com.offbynull.coroutines.instrumenter.PluginHelper;
@@ -137,12 +138,29 @@ public class CoroutinesPlugin implements Plugin<Project> {
             MarkerType markerType = MarkerType.valueOf(config.getMarkerType());
             boolean debugMode = config.isDebugMode();
             boolean autoSerializable = config.isAutoSerializable();
-            InstrumentationSettings settings = new InstrumentationSettings(markerType, debugMode, autoSerializable);
-            Instrumenter instrumenter = new Instrumenter(classpath);
-
-            // This logs to info by default, but info won't show up unless you pass -i to gradle. If you want logs to show up by default,
-            // pass in log::lifecycle instead.
-            PluginHelper.instrument(instrumenter, settings, classesDir, classesDir, log::info);
+            boolean methodStateReuse = config.isMethodStateReuse();
+            boolean typedStateStorage = config.isTypedStateStorage();
+            boolean outlinedStateSaving = config.isOutlinedStateSaving();
+            boolean deadLocalPruning = config.isDeadLocalPruning();
+            boolean invokeArgumentPruning = config.isInvokeArgumentPruning();
+            int parallelism = config.getParallelism();
+            String cacheDirectory = config.getCacheDirectory();
+            InstrumentationSettings settings = new InstrumentationSettings.Builder(markerType)
+                    .debugMode(debugMode)
+                    .autoSerializable(autoSerializable)
+                    .methodStateReuse(methodStateReuse)
+                    .typedStateStorage(typedStateStorage)
+                    .outlinedStateSaving(outlinedStateSaving)
+                    .deadLocalPruning(deadLocalPruning)
+                    .invokeArgumentPruning(invokeArgumentPruning)
+                    .build();
+            InstrumentationCache cache = cacheDirectory == null ? null : new InstrumentationCache(new File(cacheDirectory));
+            try (Instrumenter instrumenter = new Instrumenter(classpath, cache == null ? null : cache.getClasspathIndexFile())) {
+                // This logs to info by default, but info won't show up unless you pass -i to gradle. If you want logs to show up by
+                // default, pass in log::lifecycle instead.
+                PluginHelper.instrument(instrumenter, settings, classesDir, classesDir, log::info, parallelism, cache);
+                instrumenter.saveClasspathIndex();
+            }
         } catch (IOException ioe) {
             throw new IllegalStateException("Failed to instrument", ioe);
         }
@@ -27,6 +27,13 @@ public final class CoroutinesPluginConfiguration {
     private String markerType;
     private boolean debugMode;
     private boolean autoSerializable;
+    private boolean methodStateReuse;
+    private boolean typedStateStorage;
+    private boolean outlinedStateSaving;
+    private boolean deadLocalPruning;
+    private boolean invokeArgumentPruning;
+    private int parallelism;
+    private String cacheDirectory;
 
     /**
      * Constructs a {@link CoroutinesPluginConfiguration} object.
@@ -35,6 +42,13 @@ public final class CoroutinesPluginConfiguration {
         markerType = "NONE";
         debugMode = false;
         autoSerializable = true;
+        methodStateReuse = false;
+        typedStateStorage = false;
+        outlinedStateSaving = false;
+        deadLocalPruning = false;
+        invokeArgumentPruning = false;
+        parallelism = 1;
+        cacheDirectory = null;
     }
 
     /**
@@ -90,5 +104,119 @@ public final class CoroutinesPluginConfiguration {
     public void setAutoSerializable(boolean autoSerializable) {
         this.autoSerializable = autoSerializable;
     }
+
+    /**
+     * Get method state reuse.
+     * @return method state reuse
+     */
+    public boolean isMethodStateReuse() {
+        return methodStateReuse;
+    }
+
+    /**
+     * Set method state reuse.
+     * @param methodStateReuse method state reuse
+     */
+    public void setMethodStateReuse(boolean methodStateReuse) {
+        this.methodStateReuse = methodStateReuse;
+    }
+
+    /**
+     * Get typed state storage.
+     * @return typed state storage
+     */
+    public boolean isTypedStateStorage() {
+        return typedStateStorage;
+    }
+
+    /**
+     * Set typed state storage.
+     * @param typedStateStorage typed state storage
+     */
+    public void setTypedStateStorage(boolean typedStateStorage) {
+        this.typedStateStorage = typedStateStorage;
+    }
+
+    /**
+     * Get outlined state saving.
+     * @return outlined state saving
+     */
+    public boolean isOutlinedStateSaving() {
+        return outlinedStateSaving;
+    }
+
+    /**
+     * Set outlined state saving.
+     * @param outlinedStateSaving outlined state saving
+     */
+    public void setOutlinedStateSaving(boolean outlinedStateSaving) {
+        this.outlinedStateSaving = outlinedStateSaving;
+    }
+
+    /**
+     * Get dead local pruning.
+     * @return dead local pruning
+     */
+    public boolean isDeadLocalPruning() {
+        return deadLocalPruning;
+    }
+
+    /**
+     * Set dead local pruning.
+     * @param deadLocalPruning dead local pruning
+     */
+    public void setDeadLocalPruning(boolean deadLocalPruning) {
+        this.deadLocalPruning = deadLocalPruning;
+    }
+
+    /**
+     * Get invoke argument pruning.
+     * @return invoke argument pruning
+     */
+    public boolean isInvokeArgumentPruning() {
+        return invokeArgumentPruning;
+    }
+
+    /**
+     * Set invoke argument pruning.
+     * @param invokeArgumentPruning invoke argument pruning
+     */
+    public void setInvokeArgumentPruning(boolean invokeArgumentPruning) {
+        this.invokeArgumentPruning = invokeArgumentPruning;
+    }
+
+    /**
+     * Get parallelism.
+     * @return maximum number of class files to instrument at the same time
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set parallelism.
+     * @param parallelism maximum number of class files to instrument at the same time
+     * @throws IllegalArgumentException if {@code parallelism <= 0}
+     */
+    public void setParallelism(int parallelism) {
+        Validate.isTrue(parallelism > 0);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Get cache directory.
+     * @return directory to cache instrumentation results in between builds (may be {@code null})
+     */
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Set cache directory.
+     * @param cacheDirectory directory to cache instrumentation results in between builds, or {@code null} to disable caching
+     */
+    public void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
     
 }
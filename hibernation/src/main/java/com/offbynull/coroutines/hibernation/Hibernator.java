@@ -0,0 +1,719 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.hibernation;
+
+import com.offbynull.coroutines.user.CoroutineReader;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import com.offbynull.coroutines.user.CoroutineWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Keeps a bounded number of {@link CoroutineRunner}s on the heap and pages the rest out to memory-mapped segment files.
+ * <p>
+ * Each {@link CoroutineRunner} added to this class is represented by a small {@link Handle}. When more than the configured number of
+ * runners are resident, runners are picked for eviction using the clock (second chance) policy -- runners that were executed since the
+ * last time the clock hand passed over them are skipped -- and serialized in to the current segment file using the
+ * {@link CoroutineWriter} supplied. Executing a handle that's been evicted transparently reconstructs its runner using the
+ * {@link CoroutineReader} supplied. The runner for a handle is only ever held in one place: on the heap or in a segment file.
+ * <p>
+ * Segment files are append-only. Once a runner is loaded back out of a segment, the space it took up in that segment is dead. When the
+ * amount of live data in a segment that's no longer being appended to drops below the compaction threshold, the remaining live data is
+ * copied over to the current segment in the background (only the final copy in to the current segment holds the internal lock) and the old
+ * segment file is deleted. Segment files are scratch space only -- they
+ * aren't meant to survive this object being closed (or the JVM exiting), and are deleted on {@link #close() }.
+ * <p>
+ * This class is thread-safe. Bookkeeping along with deserialization happens while holding an internal lock, but serialization and the
+ * coroutines themselves happen outside of it (each runner being hibernated is serialized once, in to a heap buffer, and only copied in to
+ * a segment file while holding the lock). A handle can only be executed by one thread at a time, and calls that need a handle whose runner
+ * is in the middle of being hibernated wait for that to finish. Note that the {@link CoroutineReader} supplied may need the thread's
+ * context classloader to be able to find coroutine classes.
+ * <p>
+ * If a runner fails to hibernate when it gets picked to make room (e.g. it isn't serializable at the point it's suspended at), it's left
+ * on the heap and isn't picked again until it's been executed, since its state stays the same until then. Such failures are counted (see
+ * {@link #getHibernateFailureCount() }) rather than thrown from the call that happened to trigger the hibernation.
+ * @author Kasra Faghihi
+ */
+public final class Hibernator implements Closeable {
+    /**
+     * Default compaction threshold.
+     */
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    private final Path directory;
+    private final CoroutineWriter writer;
+    private final CoroutineReader reader;
+    private final int maxResident;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final ExecutorService compactionExecutor;
+
+    private final Object lock;
+    private final List<Handle> clock; // resident handles
+    private int clockHand;
+    private final Set<Segment> segments;
+    private Segment activeSegment;
+    private long nextSegmentId;
+    private int hibernatedCount;
+    private long hibernateFailureCount;
+    private boolean closed;
+
+    /**
+     * Constructs a {@link Hibernator} object. Equivalent to calling
+     * {@code new Hibernator(directory, writer, reader, maxResident, segmentSize, DEFAULT_COMPACTION_THRESHOLD)}.
+     * @param directory directory to create segment files in
+     * @param writer writer to serialize runners with
+     * @param reader reader to deserialize runners with
+     * @param maxResident maximum number of runners to keep on the heap
+     * @param segmentSize size of each segment file (in bytes)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code directory} isn't a directory, if {@code maxResident < 0}, or if {@code segmentSize <= 0}
+     */
+    public Hibernator(Path directory, CoroutineWriter writer, CoroutineReader reader, int maxResident, int segmentSize) {
+        this(directory, writer, reader, maxResident, segmentSize, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Constructs a {@link Hibernator} object.
+     * @param directory directory to create segment files in
+     * @param writer writer to serialize runners with
+     * @param reader reader to deserialize runners with
+     * @param maxResident maximum number of runners to keep on the heap
+     * @param segmentSize size of each segment file (in bytes) -- runners that serialize to more than this get a segment of their own
+     * @param compactionThreshold fraction of a segment that must be live to avoid being compacted
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code directory} isn't a directory, if {@code maxResident < 0}, if {@code segmentSize <= 0}, or
+     * if {@code compactionThreshold} isn't between {@code 0.0} and {@code 1.0}
+     */
+    public Hibernator(Path directory, CoroutineWriter writer, CoroutineReader reader, int maxResident, int segmentSize,
+            double compactionThreshold) {
+        Validate.notNull(directory);
+        Validate.notNull(writer);
+        Validate.notNull(reader);
+        Validate.isTrue(Files.isDirectory(directory));
+        Validate.isTrue(maxResident >= 0);
+        Validate.isTrue(segmentSize > 0);
+        Validate.isTrue(compactionThreshold >= 0.0 && compactionThreshold <= 1.0);
+
+        this.directory = directory;
+        this.writer = writer;
+        this.reader = reader;
+        this.maxResident = maxResident;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "hibernator-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.lock = new Object();
+        this.clock = new ArrayList<>();
+        this.segments = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Adds a runner. The runner starts off resident, but other runners (or the runner itself, if {@code maxResident} is {@code 0}) may
+     * get hibernated to make room for it. Once added, the runner should only be accessed through the {@link Handle} returned. Failing to
+     * hibernate other runners doesn't fail this method (see {@link #getHibernateFailureCount() }), but failing to hibernate {@code runner}
+     * itself does -- in which case {@code runner} isn't added.
+     * @param runner runner to add
+     * @return handle for {@code runner}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code runner} failed to serialize
+     * @throws IllegalStateException if closed
+     * @throws IOException if an IO error occurs while hibernating {@code runner}
+     */
+    public Handle add(CoroutineRunner runner) throws IOException {
+        Validate.notNull(runner);
+
+        Handle handle;
+        List<Handle> victims;
+        synchronized (lock) {
+            Validate.validState(!closed, "Closed");
+
+            handle = new Handle(this, runner);
+            addToClock(handle);
+            victims = startEvictions();
+        }
+
+        for (Handle victim : victims) {
+            try {
+                evict(victim);
+            } catch (IOException | RuntimeException e) {
+                if (victim != handle) {
+                    continue; // left on the heap and counted, the new runner got added just fine
+                }
+
+                // The caller never gets a handle, so nothing would ever be able to execute or remove the runner -- don't keep it around
+                synchronized (lock) {
+                    if (handle.clockIndex != -1) {
+                        removeFromClock(handle);
+                    }
+                    handle.runner = null;
+                    handle.removed = true;
+                }
+                throw e;
+            }
+        }
+        return handle;
+    }
+
+    /**
+     * Executes the runner for a handle (see {@link CoroutineRunner#execute() }), reconstructing it first if it's been hibernated. Other
+     * runners may get hibernated once execution completes. If hibernating those runners fails, they're left on the heap (see
+     * {@link #getHibernateFailureCount() }) and the failure is added as a suppressed exception to whatever the coroutine threw, or ignored
+     * if the coroutine didn't throw anything -- it never replaces the result of the execution.
+     * @param handle handle of runner to execute
+     * @return {@code false} if execution has completed, {@code true} if execution was suspended
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code handle} wasn't created by this object or has been removed, or if a runner failed to
+     * serialize/deserialize
+     * @throws IllegalStateException if closed or if {@code handle} is already being executed
+     * @throws IOException if an IO error occurs
+     * @throws com.offbynull.coroutines.user.CoroutineException if the coroutine throws an exception
+     */
+    public boolean execute(Handle handle) throws IOException {
+        Validate.notNull(handle);
+
+        CoroutineRunner runner;
+        synchronized (lock) {
+            validateHandleAndAwaitEviction(handle);
+            Validate.validState(!handle.executing, "Handle already executing");
+
+            runner = load(handle);
+            handle.executing = true; // pinned, won't get evicted while executing
+            handle.referenced = true;
+            handle.hibernateFailed = false; // state is about to change, so it may hibernate fine next time around
+        }
+
+        boolean ret;
+        try {
+            ret = runner.execute();
+        } catch (Throwable t) {
+            try {
+                finishExecution(handle);
+            } catch (IOException | RuntimeException e) {
+                t.addSuppressed(e);
+            }
+            throw t;
+        }
+
+        try {
+            finishExecution(handle);
+        } catch (IOException | RuntimeException e) {
+            // Runners that failed to hibernate stay on the heap and have already been counted
+        }
+        return ret;
+    }
+
+    private void finishExecution(Handle handle) throws IOException {
+        List<Handle> victims;
+        synchronized (lock) {
+            handle.executing = false;
+            if (closed) {
+                return;
+            }
+            victims = startEvictions();
+        }
+
+        evict(victims);
+    }
+
+    /**
+     * Hibernates the runner for a handle right away, regardless of how many runners are resident. Does nothing if it's already been
+     * hibernated.
+     * @param handle handle of runner to hibernate
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code handle} wasn't created by this object or has been removed, or if the runner failed to
+     * serialize
+     * @throws IllegalStateException if closed or if {@code handle} is being executed
+     * @throws IOException if an IO error occurs
+     */
+    public void hibernate(Handle handle) throws IOException {
+        Validate.notNull(handle);
+
+        synchronized (lock) {
+            validateHandleAndAwaitEviction(handle);
+            Validate.validState(!handle.executing, "Handle executing");
+
+            if (handle.runner == null) {
+                return;
+            }
+            startEviction(handle);
+        }
+
+        evict(handle);
+    }
+
+    /**
+     * Removes the runner for a handle, reconstructing it first if it's been hibernated. The handle can't be used after this method
+     * returns.
+     * @param handle handle of runner to remove
+     * @return runner that was removed
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code handle} wasn't created by this object or has already been removed, or if the runner
+     * failed to deserialize
+     * @throws IllegalStateException if closed or if {@code handle} is being executed
+     */
+    public CoroutineRunner remove(Handle handle) {
+        Validate.notNull(handle);
+
+        synchronized (lock) {
+            validateHandleAndAwaitEviction(handle);
+            Validate.validState(!handle.executing, "Handle executing");
+
+            CoroutineRunner runner = load(handle);
+            removeFromClock(handle);
+            handle.runner = null;
+            handle.removed = true;
+            return runner;
+        }
+    }
+
+    /**
+     * Get the number of runners currently on the heap.
+     * @return number of resident runners
+     */
+    public int getResidentCount() {
+        synchronized (lock) {
+            return clock.size();
+        }
+    }
+
+    /**
+     * Get the number of runners currently hibernated.
+     * @return number of hibernated runners
+     */
+    public int getHibernatedCount() {
+        synchronized (lock) {
+            return hibernatedCount;
+        }
+    }
+
+    /**
+     * Get the number of times a runner failed to hibernate when it was picked to make room for other runners.
+     * @return number of failed hibernations
+     */
+    public long getHibernateFailureCount() {
+        synchronized (lock) {
+            return hibernateFailureCount;
+        }
+    }
+
+    /**
+     * Get the number of segment files currently in use.
+     * @return number of segment files
+     */
+    public int getSegmentCount() {
+        synchronized (lock) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * Closes this object, deleting all segment files. Any runners that are hibernated at this point are lost.
+     * @throws IOException if an IO error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            compactionExecutor.shutdownNow();
+
+            IOException ioe = null;
+            for (Segment segment : segments) {
+                try {
+                    segment.delete();
+                } catch (IOException e) {
+                    ioe = e;
+                }
+            }
+            segments.clear();
+            activeSegment = null;
+            clock.clear();
+
+            if (ioe != null) {
+                throw ioe;
+            }
+        }
+    }
+
+    private void validateHandle(Handle handle) {
+        Validate.validState(!closed, "Closed");
+        Validate.isTrue(handle.owner == this, "Handle not from this hibernator");
+        Validate.isTrue(!handle.removed, "Handle removed");
+    }
+
+    private void validateHandleAndAwaitEviction(Handle handle) {
+        validateHandle(handle);
+        if (!handle.evicting) {
+            return;
+        }
+
+        boolean interrupted = false;
+        while (handle.evicting) {
+            try {
+                lock.wait();
+            } catch (InterruptedException ie) {
+                interrupted = true; // eviction is bounded by the time it takes to serialize one runner, so wait it out
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        validateHandle(handle); // may have been closed while waiting
+    }
+
+    private CoroutineRunner load(Handle handle) {
+        if (handle.runner != null) {
+            return handle.runner;
+        }
+
+        Segment segment = handle.segment;
+        CoroutineRunner runner = reader.read(segment.read(handle.offset, handle.length));
+
+        freeRecord(handle);
+        handle.runner = runner;
+        hibernatedCount--;
+        addToClock(handle);
+        return runner;
+    }
+
+    // Picks the runners that need to be hibernated and takes them off the heap's books. They get serialized by evict() once the lock is
+    // released.
+    private List<Handle> startEvictions() {
+        List<Handle> victims = new ArrayList<>();
+        while (clock.size() > maxResident) {
+            Handle victim = findVictim();
+            if (victim == null) {
+                break; // everything that's resident is being executed or failed to hibernate
+            }
+            startEviction(victim);
+            victims.add(victim);
+        }
+        return victims;
+    }
+
+    private Handle findVictim() {
+        // Clock -- give handles that were referenced since the last time the hand passed over them a second chance. Two full sweeps is
+        // enough to find a victim if there's one to be found.
+        int sweeps = clock.size() * 2;
+        for (int i = 0; i < sweeps; i++) {
+            if (clockHand >= clock.size()) {
+                clockHand = 0;
+            }
+
+            Handle handle = clock.get(clockHand);
+            if (handle.executing || handle.hibernateFailed) {
+                clockHand++;
+            } else if (handle.referenced) {
+                handle.referenced = false;
+                clockHand++;
+            } else {
+                return handle;
+            }
+        }
+
+        return null;
+    }
+
+    private void startEviction(Handle handle) {
+        removeFromClock(handle);
+        handle.evicting = true;
+    }
+
+    // Must be called without holding the lock.
+    private void evict(List<Handle> victims) throws IOException {
+        Exception failure = null;
+        for (Handle victim : victims) {
+            try {
+                evict(victim);
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    // Must be called without holding the lock.
+    private void evict(Handle handle) throws IOException {
+        // Serialize outside of the lock, so threads can do this in parallel. Nothing else touches the runner while it's being evicted.
+        ExposedByteArrayOutputStream data = new ExposedByteArrayOutputStream();
+        try {
+            writer.write(handle.runner, data);
+        } catch (IOException | RuntimeException e) {
+            synchronized (lock) {
+                failEviction(handle);
+            }
+            throw e;
+        }
+
+        synchronized (lock) {
+            try {
+                finishEviction(handle, data.toByteBuffer());
+            } catch (IOException | RuntimeException e) {
+                failEviction(handle);
+                throw e;
+            }
+        }
+    }
+
+    private void failEviction(Handle handle) {
+        // Don't pick it again until it's been executed, otherwise every pass would serialize it only for it to fail all over again
+        handle.hibernateFailed = true;
+        hibernateFailureCount++;
+        cancelEviction(handle);
+    }
+
+    private void cancelEviction(Handle handle) {
+        handle.evicting = false;
+        lock.notifyAll();
+        if (!closed) {
+            addToClock(handle);
+        }
+    }
+
+    private void finishEviction(Handle handle, ByteBuffer data) throws IOException {
+        if (closed) {
+            cancelEviction(handle);
+            return;
+        }
+
+        int length = data.remaining();
+        Segment segment;
+        int offset;
+        if (length > segmentSize) {
+            // Doesn't fit even in an empty segment, give it a segment of its own
+            segment = createSegment(length);
+            offset = segment.append(data);
+        } else {
+            if (activeSegment == null) {
+                activeSegment = createSegment(segmentSize);
+            }
+            segment = activeSegment;
+            offset = segment.append(data);
+            if (offset == -1) {
+                // Didn't fit, start a new active segment. The one that filled up becomes eligible for compaction.
+                Segment fullSegment = activeSegment;
+                segment = activeSegment = createSegment(segmentSize);
+                scheduleCompactionIfNeeded(fullSegment);
+                offset = segment.append(data);
+            }
+        }
+
+        handle.segment = segment;
+        handle.offset = offset;
+        handle.length = length;
+        segment.getHandles().add(handle);
+
+        handle.runner = null;
+        handle.referenced = false;
+        handle.evicting = false;
+        lock.notifyAll();
+        hibernatedCount++;
+    }
+
+    private void freeRecord(Handle handle) {
+        Segment segment = handle.segment;
+        segment.free(handle.length);
+        segment.getHandles().remove(handle);
+        handle.segment = null;
+        handle.offset = 0;
+        handle.length = 0;
+        scheduleCompactionIfNeeded(segment);
+    }
+
+    private void scheduleCompactionIfNeeded(Segment segment) {
+        if (segment == activeSegment || !segments.contains(segment)) {
+            return;
+        }
+
+        if (segment.getLiveBytes() == 0) {
+            // Nothing to copy over, delete right away
+            deleteSegment(segment);
+        } else if (segment.getLiveBytes() < segment.getCapacity() * compactionThreshold && !segment.isCompactionScheduled()) {
+            segment.setCompactionScheduled(true);
+            compactionExecutor.execute(() -> compact(segment));
+        }
+    }
+
+    private void compact(Segment segment) {
+        // Figure out what's live while holding the lock, but copy it out of the segment without holding it. The segment isn't being
+        // appended to anymore and its mapping stays valid even if it gets deleted in the meantime, so what's been written can't change.
+        List<Handle> handles;
+        int[] offsets;
+        int[] lengths;
+        synchronized (lock) {
+            if (closed || !segments.contains(segment)) {
+                return;
+            }
+
+            handles = new ArrayList<>(segment.getHandles());
+            offsets = new int[handles.size()];
+            lengths = new int[handles.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = handles.get(i).offset;
+                lengths[i] = handles.get(i).length;
+            }
+        }
+
+        byte[][] copies = new byte[handles.size()][];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = new byte[lengths[i]];
+            segment.read(offsets[i], copies[i].length).get(copies[i]);
+        }
+
+        synchronized (lock) {
+            if (closed || !segments.contains(segment)) {
+                return;
+            }
+
+            try {
+                for (int i = 0; i < copies.length; i++) {
+                    Handle handle = handles.get(i);
+                    if (handle.segment != segment || handle.offset != offsets[i]) {
+                        continue; // loaded (or removed) while copying, nothing left to move
+                    }
+
+                    ByteBuffer data = ByteBuffer.wrap(copies[i]);
+                    if (activeSegment == null || activeSegment == segment) {
+                        activeSegment = createSegment(segmentSize);
+                    }
+                    int offset = activeSegment.append(data);
+                    if (offset == -1) {
+                        Segment fullSegment = activeSegment;
+                        activeSegment = createSegment(Math.max(segmentSize, handle.length));
+                        scheduleCompactionIfNeeded(fullSegment);
+                        offset = activeSegment.append(data);
+                    }
+
+                    segment.free(handle.length);
+                    segment.getHandles().remove(handle);
+                    handle.segment = activeSegment;
+                    handle.offset = offset;
+                    activeSegment.getHandles().add(handle);
+                }
+                deleteSegment(segment);
+            } catch (IOException ioe) {
+                // Handles that were moved before the failure point to their new location while the rest still point in to this segment,
+                // so everything is still readable. Try again the next time a record in this segment gets freed.
+                segment.setCompactionScheduled(false);
+            }
+        }
+    }
+
+    private Segment createSegment(int capacity) throws IOException {
+        Path file = directory.resolve(String.format("hibernate-%016x.seg", nextSegmentId));
+        nextSegmentId++;
+        Segment segment = Segment.create(file, capacity);
+        segments.add(segment);
+        return segment;
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment);
+        try {
+            segment.delete();
+        } catch (IOException ioe) {
+            // Nothing references this segment anymore, leave the file behind if it can't be deleted
+        }
+    }
+
+    private void addToClock(Handle handle) {
+        handle.clockIndex = clock.size();
+        clock.add(handle);
+    }
+
+    private void removeFromClock(Handle handle) {
+        // Swap with last element so removal is constant time
+        int idx = handle.clockIndex;
+        Handle last = clock.remove(clock.size() - 1);
+        if (last != handle) {
+            clock.set(idx, last);
+            last.clockIndex = idx;
+        }
+        handle.clockIndex = -1;
+    }
+
+    // Gives access to the internal array, so that what's been written can be copied out without making a copy of the array first.
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * Handle to a {@link CoroutineRunner} that's been added to a {@link Hibernator}. Only holds on to the runner while it's resident --
+     * once hibernated, it only holds on to where the runner was written.
+     */
+    public static final class Handle {
+        private final Hibernator owner;
+        private CoroutineRunner runner;
+        private Segment segment;
+        private int offset;
+        private int length;
+        private int clockIndex;
+        private boolean referenced;
+        private boolean executing;
+        private boolean evicting;
+        private boolean hibernateFailed; // won't get picked to be hibernated until executed again
+        private boolean removed;
+
+        private Handle(Hibernator owner, CoroutineRunner runner) {
+            this.owner = owner;
+            this.runner = runner;
+            this.clockIndex = -1;
+            this.referenced = true;
+        }
+
+        /**
+         * Get whether or not the runner for this handle is currently hibernated.
+         * @return {@code true} if hibernated, {@code false} if resident (or removed)
+         */
+        public boolean isHibernated() {
+            synchronized (owner.lock) {
+                return segment != null;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.hibernation;
+
+import com.offbynull.coroutines.hibernation.Hibernator.Handle;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import org.apache.commons.lang3.Validate;
+
+// Memory-mapped, append-only file that hibernated runners get written to. Not thread-safe -- access is guarded by the Hibernator's lock,
+// except for read() of data that's already been written (compaction copies records out without holding the lock).
+final class Segment {
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final Set<Handle> handles;
+    private int position;
+    private int liveBytes;
+    private boolean compactionScheduled;
+
+    static Segment create(Path file, int capacity) throws IOException {
+        Validate.notNull(file);
+        Validate.isTrue(capacity > 0);
+
+        // The mapping stays valid after the channel is closed (and after the file is deleted), it gets released once the buffer is
+        // garbage collected.
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0L, capacity);
+            return new Segment(file, buffer);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private Segment(Path file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.handles = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // Copies already serialized data in to the mapped file. Returns offset it was written to, or -1 if there wasn't enough space left.
+    int append(ByteBuffer src) {
+        if (src.remaining() > buffer.capacity() - position) {
+            return -1;
+        }
+        ByteBuffer dst = buffer.duplicate();
+        dst.position(position);
+        dst.put(src);
+        return advance(dst.position());
+    }
+    
+    private int advance(int newPosition) {
+        int offset = position;
+        liveBytes += newPosition - position;
+        position = newPosition;
+        return offset;
+    }
+
+    ByteBuffer read(int offset, int length) {
+        ByteBuffer src = buffer.duplicate();
+        src.limit(offset + length);
+        src.position(offset);
+        return src.slice();
+    }
+
+    void free(int length) {
+        liveBytes -= length;
+    }
+
+    Set<Handle> getHandles() {
+        return handles;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    int getLiveBytes() {
+        return liveBytes;
+    }
+
+    boolean isCompactionScheduled() {
+        return compactionScheduled;
+    }
+
+    void setCompactionScheduled(boolean compactionScheduled) {
+        this.compactionScheduled = compactionScheduled;
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+}
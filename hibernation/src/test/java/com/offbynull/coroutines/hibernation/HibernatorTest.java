@@ -0,0 +1,337 @@
+package com.offbynull.coroutines.hibernation;
+
+import com.offbynull.coroutines.hibernation.Hibernator.Handle;
+import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
+import com.offbynull.coroutines.instrumenter.Instrumenter;
+import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
+import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineException;
+import com.offbynull.coroutines.user.CoroutineReader;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import com.offbynull.coroutines.user.CoroutineWriter;
+import com.offbynull.coroutines.user.CoroutineWriter.CoroutineSerializer;
+import com.offbynull.coroutines.user.CoroutineWriter.DefaultCoroutineSerializer;
+import com.offbynull.coroutines.user.SerializedState;
+import com.offbynull.coroutines.user.SerializedState.FrameInterceptPoint;
+import com.offbynull.coroutines.user.SerializedState.FrameUpdatePoint;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import static org.apache.commons.lang3.reflect.ConstructorUtils.invokeConstructor;
+import static org.apache.commons.lang3.reflect.FieldUtils.readField;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HibernatorTest {
+    
+    private static final String NORMAL_INVOKE_TEST = "NormalInvokeTest";
+    private static final String EXPECTED_OUTPUT = "started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n";
+
+    private File tempDir;
+    private Path segmentDir;
+    private URLClassLoader classLoader;
+    private ClassLoader originalClassLoader;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        segmentDir = Files.createDirectory(tempDir.toPath().resolve("segments"));
+        classLoader = instrumentAndLoad(NORMAL_INVOKE_TEST);
+        
+        // Readers look up the coroutine's classes through the thread's classloader
+        originalClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(classLoader);
+    }
+    
+    @AfterEach
+    public void tearDown() throws Exception {
+        Thread.currentThread().setContextClassLoader(originalClassLoader);
+        classLoader.close();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void mustHibernateIdleRunnersAndRestoreThemWhenExecuted() throws Exception {
+        try (Hibernator hibernator = new Hibernator(segmentDir, new CoroutineWriter(), new CoroutineReader(), 2, 64 * 1024)) {
+            List<Handle> handles = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                handles.add(hibernator.add(new CoroutineRunner(createCoroutine())));
+                assertTrue(hibernator.getResidentCount() <= 2);
+            }
+            assertEquals(8, hibernator.getHibernatedCount());
+
+            for (int i = 0; i < 10; i++) {
+                for (Handle handle : handles) {
+                    assertTrue(hibernator.execute(handle));
+                    assertFalse(handle.isHibernated());
+                    assertEquals(2, hibernator.getResidentCount());
+                    assertEquals(8, hibernator.getHibernatedCount());
+                }
+            }
+            for (Handle handle : handles) {
+                assertFalse(hibernator.execute(handle));
+            }
+
+            for (Handle handle : handles) {
+                CoroutineRunner runner = hibernator.remove(handle);
+                assertEquals(EXPECTED_OUTPUT, readOutput(runner));
+            }
+            assertEquals(0, hibernator.getResidentCount());
+            assertEquals(0, hibernator.getHibernatedCount());
+        }
+    }
+
+    @Test
+    public void mustGiveRecentlyExecutedRunnersASecondChance() throws Exception {
+        try (Hibernator hibernator = new Hibernator(segmentDir, new CoroutineWriter(), new CoroutineReader(), 2, 64 * 1024)) {
+            Handle handle1 = hibernator.add(new CoroutineRunner(createCoroutine()));
+            Handle handle2 = hibernator.add(new CoroutineRunner(createCoroutine()));
+            Handle handle3 = hibernator.add(new CoroutineRunner(createCoroutine()));
+            assertTrue(handle1.isHibernated()); // all were referenced, so the clock hand went all the way around before evicting
+
+            hibernator.execute(handle2);
+            Handle handle4 = hibernator.add(new CoroutineRunner(createCoroutine()));
+            assertFalse(handle2.isHibernated()); // executed since the last sweep, so it gets a second chance
+            assertTrue(handle3.isHibernated());
+            assertFalse(handle4.isHibernated());
+            assertEquals(2, hibernator.getResidentCount());
+        }
+    }
+
+    @Test
+    public void mustCompactSegmentsOnceMostOfTheirDataIsDead() throws Exception {
+        try (Hibernator hibernator = new Hibernator(segmentDir, new CoroutineWriter(), new CoroutineReader(), 0, 4 * 1024)) {
+            List<Handle> handles = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                Handle handle = hibernator.add(new CoroutineRunner(createCoroutine()));
+                assertTrue(handle.isHibernated());
+                handles.add(handle);
+            }
+            int segmentCount = hibernator.getSegmentCount();
+            assertTrue(segmentCount > 2);
+            assertEquals(segmentCount, countSegmentFiles());
+
+            // Pull out most of the runners -- what's left of them is spread out across all segments
+            for (int i = 0; i < handles.size(); i++) {
+                if (i % 10 != 0) {
+                    assertEquals("", readOutput(hibernator.remove(handles.get(i))));
+                }
+            }
+
+            long end = System.currentTimeMillis() + 10000L;
+            while (hibernator.getSegmentCount() > 2 && System.currentTimeMillis() < end) {
+                Thread.sleep(10L);
+            }
+            assertTrue(hibernator.getSegmentCount() <= 2);
+            assertEquals(hibernator.getSegmentCount(), countSegmentFiles());
+
+            // What's left is still readable after being moved around
+            for (int i = 0; i < handles.size(); i += 10) {
+                assertTrue(hibernator.execute(handles.get(i)));
+                assertEquals("started\n0\n", readOutput(hibernator.remove(handles.get(i))));
+            }
+        }
+        assertEquals(0, countSegmentFiles());
+    }
+
+    @Test
+    public void mustGiveOversizedRunnersTheirOwnSegment() throws Exception {
+        try (Hibernator hibernator = new Hibernator(segmentDir, new CoroutineWriter(), new CoroutineReader(), 0, 16)) {
+            Handle handle = hibernator.add(new CoroutineRunner(createCoroutine()));
+            assertTrue(handle.isHibernated());
+            assertTrue(hibernator.execute(handle));
+            assertTrue(handle.isHibernated());
+            assertEquals("started\n0\n", readOutput(hibernator.remove(handle)));
+        }
+    }
+
+    @Test
+    public void mustKeepCoroutineExceptionAndAddHibernateFailureAsSuppressed() throws Exception {
+        FailingSerializer serializer = new FailingSerializer();
+        CoroutineWriter writer = new CoroutineWriter(serializer, new FrameUpdatePoint[0], new FrameInterceptPoint[0]);
+        try (Hibernator hibernator = new Hibernator(segmentDir, writer, new CoroutineReader(), 0, 64 * 1024)) {
+            Handle handle = hibernator.add(new CoroutineRunner(createCoroutine(null))); // no builder, so it fails when it runs
+
+            serializer.fail = true;
+            CoroutineException ce = assertThrows(CoroutineException.class, () -> hibernator.execute(handle));
+            assertEquals(1, ce.getSuppressed().length);
+            assertTrue(ce.getSuppressed()[0] instanceof IllegalArgumentException);
+            assertFalse(handle.isHibernated());
+            assertEquals(1, hibernator.getResidentCount());
+        }
+    }
+
+    @Test
+    public void mustKeepResultAndLeaveRunnersOnHeapWhenHibernateFails() throws Exception {
+        FailingSerializer serializer = new FailingSerializer();
+        CoroutineWriter writer = new CoroutineWriter(serializer, new FrameUpdatePoint[0], new FrameInterceptPoint[0]);
+        try (Hibernator hibernator = new Hibernator(segmentDir, writer, new CoroutineReader(), 0, 64 * 1024)) {
+            Handle handle = hibernator.add(new CoroutineRunner(createCoroutine()));
+            assertTrue(handle.isHibernated());
+
+            serializer.fail = true;
+            assertTrue(hibernator.execute(handle));
+            assertFalse(handle.isHibernated());
+            assertEquals(1, hibernator.getResidentCount());
+            assertEquals(0, hibernator.getHibernatedCount());
+            assertEquals(1L, hibernator.getHibernateFailureCount());
+
+            serializer.fail = false;
+            assertTrue(hibernator.execute(handle));
+            assertTrue(handle.isHibernated());
+            assertEquals(0, hibernator.getResidentCount());
+            assertEquals(1, hibernator.getHibernatedCount());
+            assertEquals("started\n0\n1\n", readOutput(hibernator.remove(handle)));
+        }
+    }
+
+    @Test
+    public void mustNotPickRunnersThatFailedToHibernateAgainUntilExecuted() throws Exception {
+        FailingSerializer serializer = new FailingSerializer();
+        CoroutineWriter writer = new CoroutineWriter(serializer, new FrameUpdatePoint[0], new FrameInterceptPoint[0]);
+        try (Hibernator hibernator = new Hibernator(segmentDir, writer, new CoroutineReader(), 1, 64 * 1024)) {
+            Handle handle1 = hibernator.add(new CoroutineRunner(createCoroutine()));
+
+            // Failing to make room doesn't fail the add
+            serializer.fail = true;
+            Handle handle2 = hibernator.add(new CoroutineRunner(createCoroutine()));
+            assertFalse(handle1.isHibernated());
+            assertFalse(handle2.isHibernated());
+            assertEquals(1L, hibernator.getHibernateFailureCount());
+            assertEquals(1, serializer.callCount);
+
+            // Runner that failed gets skipped over, so it isn't serialized again
+            serializer.fail = false;
+            for (int i = 0; i < 5; i++) {
+                hibernator.execute(handle2);
+            }
+            Handle handle3 = hibernator.add(new CoroutineRunner(createCoroutine()));
+            assertFalse(handle1.isHibernated());
+            assertTrue(handle2.isHibernated() || handle3.isHibernated());
+            assertEquals(1L, hibernator.getHibernateFailureCount());
+
+            // Once executed, it's fair game again
+            hibernator.execute(handle1);
+            hibernator.execute(handle3);
+            hibernator.execute(handle2);
+            assertTrue(handle1.isHibernated());
+            assertEquals("started\n0\n", readOutput(hibernator.remove(handle1)));
+        }
+    }
+
+    @Test
+    public void mustNotAddRunnerThatFailedToHibernateItself() throws Exception {
+        FailingSerializer serializer = new FailingSerializer();
+        CoroutineWriter writer = new CoroutineWriter(serializer, new FrameUpdatePoint[0], new FrameInterceptPoint[0]);
+        try (Hibernator hibernator = new Hibernator(segmentDir, writer, new CoroutineReader(), 0, 64 * 1024)) {
+            serializer.fail = true;
+            assertThrows(IllegalArgumentException.class, () -> hibernator.add(new CoroutineRunner(createCoroutine())));
+            assertEquals(0, hibernator.getResidentCount());
+            assertEquals(0, hibernator.getHibernatedCount());
+
+            serializer.fail = false;
+            Handle handle = hibernator.add(new CoroutineRunner(createCoroutine()));
+            assertTrue(handle.isHibernated());
+            assertEquals(0, hibernator.getResidentCount());
+        }
+    }
+
+    @Test
+    public void mustRejectHandlesFromOtherHibernatorsOrThatWereRemoved() throws Exception {
+        try (Hibernator hibernator1 = new Hibernator(segmentDir, new CoroutineWriter(), new CoroutineReader(), 2, 4 * 1024);
+                Hibernator hibernator2 = new Hibernator(segmentDir, new CoroutineWriter(), new CoroutineReader(), 2, 4 * 1024)) {
+            Handle handle = hibernator1.add(new CoroutineRunner(createCoroutine()));
+            assertThrows(IllegalArgumentException.class, () -> hibernator2.execute(handle));
+            
+            hibernator1.remove(handle);
+            assertThrows(IllegalArgumentException.class, () -> hibernator1.execute(handle));
+        }
+    }
+    
+    private Coroutine createCoroutine() throws Exception {
+        return createCoroutine(new StringBuilder());
+    }
+    
+    private Coroutine createCoroutine(StringBuilder builder) throws Exception {
+        Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+        return invokeConstructor(cls, new Object[] { builder }, new Class[] { StringBuilder.class });
+    }
+    
+    private static String readOutput(CoroutineRunner runner) throws Exception {
+        Object coroutine = readField(runner, "coroutine", true);
+        return readField(coroutine, "builder", true).toString();
+    }
+    
+    private int countSegmentFiles() {
+        return segmentDir.toFile().list().length;
+    }
+
+    private URLClassLoader instrumentAndLoad(String className) throws IOException {
+        byte[] classData;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(className + ".zip");
+                ZipInputStream zis = new ZipInputStream(is)) {
+            ZipEntry entry;
+            do {
+                entry = zis.getNextEntry();
+            } while (!entry.getName().equals(className + ".class"));
+            classData = IOUtils.toByteArray(zis);
+        }
+        
+        File originalJar = new File(tempDir, "original.jar");
+        writeJar(originalJar, className, classData);
+
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        byte[] instrumentedClassData;
+        try (Instrumenter instrumenter = new Instrumenter(Collections.singletonList(originalJar))) {
+            instrumentedClassData = instrumenter.instrument(classData, settings).getInstrumentedClass();
+        }
+        
+        File instrumentedJar = new File(tempDir, "instrumented.jar");
+        writeJar(instrumentedJar, className, instrumentedClassData);
+        
+        return URLClassLoader.newInstance(new URL[] { instrumentedJar.toURI().toURL() }, getClass().getClassLoader());
+    }
+    
+    private static final class FailingSerializer implements CoroutineSerializer {
+        private final CoroutineSerializer backingSerializer = new DefaultCoroutineSerializer();
+        private volatile boolean fail;
+        private volatile int callCount;
+
+        @Override
+        public byte[] serialize(SerializedState serializedState) {
+            callCount++;
+            if (fail) {
+                throw new IllegalArgumentException("Failing on purpose");
+            }
+            return backingSerializer.serialize(serializedState);
+        }
+    }
+    
+    private static void writeJar(File file, String className, byte[] classData) throws IOException {
+        try (OutputStream os = Files.newOutputStream(file.toPath());
+                JarOutputStream jos = new JarOutputStream(os)) {
+            jos.putNextEntry(new JarEntry(className + ".class"));
+            jos.write(classData);
+            jos.closeEntry();
+        }
+    }
+}
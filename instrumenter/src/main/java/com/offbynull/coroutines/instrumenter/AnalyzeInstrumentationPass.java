@@ -20,7 +20,7 @@ import static com.offbynull.coroutines.instrumenter.InstrumentationState.Control
 import com.offbynull.coroutines.instrumenter.asm.ClassInformationRepository;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import org.apache.commons.lang3.Validate;
 
@@ -52,9 +52,9 @@ final class AnalyzeInstrumentationPass implements InstrumentationPass {
 
         MethodAnalyzer analyzer = new MethodAnalyzer(classRepo);
 
-        Set<MethodNode> methodNodes = new HashSet<>(state.methodAttributes().keySet()); // create a copy and iterate of that,
-                                                                                       // otherwise we are modifying and iterating
-                                                                                       // over the collection at the same time
+        Set<MethodNode> methodNodes = new LinkedHashSet<>(state.methodAttributes().keySet()); // create a copy and iterate of that,
+                                                                                             // otherwise we are modifying and iterating
+                                                                                             // over the collection at the same time
         for (MethodNode methodNode : methodNodes) {
             MethodAttributes methodAttrs = analyzer.analyze(classNode, methodNode, settings);
             
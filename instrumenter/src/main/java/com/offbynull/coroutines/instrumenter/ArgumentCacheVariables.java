@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2016, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.instrumenter;
+
+import com.offbynull.coroutines.instrumenter.asm.VariableTable.Variable;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.collections4.list.UnmodifiableList;
+import org.apache.commons.lang3.Validate;
+import org.objectweb.asm.Type;
+
+final class ArgumentCacheVariables {
+    private final UnmodifiableList<Variable> intCacheVars;
+    private final UnmodifiableList<Variable> longCacheVars;
+    private final UnmodifiableList<Variable> floatCacheVars;
+    private final UnmodifiableList<Variable> doubleCacheVars;
+    private final UnmodifiableList<Variable> objectCacheVars;
+
+    ArgumentCacheVariables(
+            List<Variable> intCacheVars,
+            List<Variable> longCacheVars,
+            List<Variable> floatCacheVars,
+            List<Variable> doubleCacheVars,
+            List<Variable> objectCacheVars) {
+        // cache var lists CAN BE EMPTY -- if they're empty it means it was determined that they weren't required
+        Validate.noNullElements(intCacheVars);
+        Validate.noNullElements(longCacheVars);
+        Validate.noNullElements(floatCacheVars);
+        Validate.noNullElements(doubleCacheVars);
+        Validate.noNullElements(objectCacheVars);
+        Validate.isTrue(intCacheVars.stream().allMatch(x -> x.getType().equals(Type.INT_TYPE)));
+        Validate.isTrue(longCacheVars.stream().allMatch(x -> x.getType().equals(Type.LONG_TYPE)));
+        Validate.isTrue(floatCacheVars.stream().allMatch(x -> x.getType().equals(Type.FLOAT_TYPE)));
+        Validate.isTrue(doubleCacheVars.stream().allMatch(x -> x.getType().equals(Type.DOUBLE_TYPE)));
+        Validate.isTrue(objectCacheVars.stream().allMatch(x -> x.getType().equals(Type.getType(Object.class))));
+
+        this.intCacheVars = (UnmodifiableList<Variable>) UnmodifiableList.unmodifiableList(new ArrayList<>(intCacheVars));
+        this.longCacheVars = (UnmodifiableList<Variable>) UnmodifiableList.unmodifiableList(new ArrayList<>(longCacheVars));
+        this.floatCacheVars = (UnmodifiableList<Variable>) UnmodifiableList.unmodifiableList(new ArrayList<>(floatCacheVars));
+        this.doubleCacheVars = (UnmodifiableList<Variable>) UnmodifiableList.unmodifiableList(new ArrayList<>(doubleCacheVars));
+        this.objectCacheVars = (UnmodifiableList<Variable>) UnmodifiableList.unmodifiableList(new ArrayList<>(objectCacheVars));
+    }
+
+    public UnmodifiableList<Variable> getIntCacheVars() {
+        return intCacheVars;
+    }
+
+    public UnmodifiableList<Variable> getLongCacheVars() {
+        return longCacheVars;
+    }
+
+    public UnmodifiableList<Variable> getFloatCacheVars() {
+        return floatCacheVars;
+    }
+
+    public UnmodifiableList<Variable> getDoubleCacheVars() {
+        return doubleCacheVars;
+    }
+
+    public UnmodifiableList<Variable> getObjectCacheVars() {
+        return objectCacheVars;
+    }
+}
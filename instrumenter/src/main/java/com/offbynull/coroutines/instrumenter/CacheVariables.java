@@ -27,6 +27,7 @@ final class CacheVariables {
     private final Variable doubleReturnCacheVar;
     private final Variable objectReturnCacheVar;
     private final Variable throwableCacheVar;
+    private final ArgumentCacheVariables argumentCacheVars;
     
     CacheVariables(
             Variable intReturnCacheVar,
@@ -34,7 +35,8 @@ final class CacheVariables {
             Variable floatReturnCacheVar,
             Variable doubleReturnCacheVar,
             Variable objectReturnCacheVar,
-            Variable throwableCacheVar) {
+            Variable throwableCacheVar,
+            ArgumentCacheVariables argumentCacheVars) {
         // cache vars CAN BE NULL -- if they weren't created it means it was determined that it wasn't required
         Validate.isTrue(intReturnCacheVar == null || intReturnCacheVar.getType().equals(Type.INT_TYPE));
         Validate.isTrue(longReturnCacheVar == null || longReturnCacheVar.getType().equals(Type.LONG_TYPE));
@@ -42,6 +44,7 @@ final class CacheVariables {
         Validate.isTrue(doubleReturnCacheVar == null || doubleReturnCacheVar.getType().equals(Type.DOUBLE_TYPE));
         Validate.isTrue(objectReturnCacheVar == null || objectReturnCacheVar.getType().equals(Type.getType(Object.class)));
         Validate.isTrue(throwableCacheVar == null || throwableCacheVar.getType().equals(Type.getType(Throwable.class)));
+        Validate.notNull(argumentCacheVars);
 
         this.intReturnCacheVar = intReturnCacheVar;
         this.longReturnCacheVar = longReturnCacheVar;
@@ -50,6 +53,8 @@ final class CacheVariables {
         this.objectReturnCacheVar = objectReturnCacheVar;
         
         this.throwableCacheVar = throwableCacheVar;
+        
+        this.argumentCacheVars = argumentCacheVars;
     }
 
     public Variable getIntReturnCacheVar() {
@@ -82,6 +87,10 @@ final class CacheVariables {
         return throwableCacheVar;
     }
     
+    public ArgumentCacheVariables getArgumentCacheVariables() {
+        return argumentCacheVars;
+    }
+    
     public Variable getReturnCacheVar(Type type) {
         Validate.notNull(type);
 
@@ -17,6 +17,7 @@
 package com.offbynull.coroutines.instrumenter;
 
 import static com.offbynull.coroutines.instrumenter.InternalUtils.validateAndGetContinuationPoint;
+import static com.offbynull.coroutines.instrumenter.LocalsStateGenerators.allocateLocalsStorage;
 import static com.offbynull.coroutines.instrumenter.LocalsStateGenerators.loadLocals;
 import static com.offbynull.coroutines.instrumenter.LocalsStateGenerators.saveLocals;
 import static com.offbynull.coroutines.instrumenter.SynchronizationGenerators.enterStoredMonitors;
@@ -26,6 +27,7 @@ import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.cloneInvokeNode;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.construct;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.ifIntegersEqual;
+import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.ifObjectsEqual;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.jumpTo;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.loadIntConst;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.loadNull;
@@ -66,16 +68,34 @@ import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerTy
 import static com.offbynull.coroutines.instrumenter.generators.DebugGenerators.debugMarker;
 import static com.offbynull.coroutines.instrumenter.SynchronizationGenerators.createMonitorContainer;
 import static com.offbynull.coroutines.instrumenter.PackStateGenerators.packStorageArrays;
+import static com.offbynull.coroutines.instrumenter.PackStateGenerators.storeStorageArraysInMethodState;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.lineNumber;
+import static com.offbynull.coroutines.instrumenter.OperandStackStateGenerators.allocateOperandStackStorage;
 import static com.offbynull.coroutines.instrumenter.OperandStackStateGenerators.loadOperandStack;
+import static com.offbynull.coroutines.instrumenter.OperandStackStateGenerators.loadOperandStackFromCache;
 import static com.offbynull.coroutines.instrumenter.OperandStackStateGenerators.saveOperandStack;
+import static com.offbynull.coroutines.instrumenter.OperandStackStateGenerators.saveOperandStackToCache;
 import static com.offbynull.coroutines.instrumenter.PackStateGenerators.unpackLocalsStorageArrays;
+import static com.offbynull.coroutines.instrumenter.PackStateGenerators.unpackLocalsStorageArraysFromMethodState;
 import static com.offbynull.coroutines.instrumenter.PackStateGenerators.unpackOperandStackStorageArrays;
+import static com.offbynull.coroutines.instrumenter.PackStateGenerators.unpackOperandStackStorageArraysFromMethodState;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.loadStringConst;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.pop;
+import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.returnVoid;
+import static com.offbynull.coroutines.instrumenter.InternalFields.OUTLINED_SAVESTATE_METHOD_ACCESS;
+import static com.offbynull.coroutines.instrumenter.InternalFields.getOutlinedSaveStateMethodName;
+import static java.util.Collections.emptyList;
+import com.offbynull.coroutines.instrumenter.asm.VariableTable;
+import java.util.ArrayList;
+import java.util.List;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
 
 final class ContinuationGenerators {
     
+    private static final Type CONTINUATION_TYPE = Type.getType(Continuation.class);
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+    
     private static final Method CONTINUATION_GETMODE_METHOD
             = MethodUtils.getAccessibleMethod(Continuation.class, "getMode");
     private static final Method CONTINUATION_SETMODE_METHOD
@@ -91,10 +111,15 @@ final class ContinuationGenerators {
             = MethodUtils.getAccessibleMethod(Continuation.class, "unloadMethodStateToBefore", MethodState.class);
     private static final Method CONTINUATION_PUSHNEWMETHODSTATE_METHOD
             = MethodUtils.getAccessibleMethod(Continuation.class, "pushNewMethodState", MethodState.class);
+    private static final Method CONTINUATION_REUSEMETHODSTATE_METHOD
+            = MethodUtils.getAccessibleMethod(Continuation.class, "reuseMethodState", String.class, Integer.TYPE, Integer.TYPE,
+                    LockState.class);
 
     private static final Constructor<MethodState> METHODSTATE_INIT_METHOD
             = ConstructorUtils.getAccessibleConstructor(MethodState.class, String.class, Integer.TYPE, Integer.TYPE,
                     Object[].class, LockState.class);
+    private static final Constructor<MethodState> METHODSTATE_TYPEDINIT_METHOD
+            = ConstructorUtils.getAccessibleConstructor(MethodState.class, String.class, Integer.TYPE, Integer.TYPE, LockState.class);
     private static final Method METHODSTATE_GETCONTINUATIONPOINT_METHOD
             = MethodUtils.getAccessibleMethod(MethodState.class, "getContinuationPoint");
     private static final Method METHODSTATE_GETDATA_METHOD
@@ -119,6 +144,7 @@ final class ContinuationGenerators {
         int numOfContinuationPoints = attrs.getContinuationPoints().size();
 
         MarkerType markerType = attrs.getSettings().getMarkerType();
+        boolean typedStateStorage = attrs.getSettings().isTypedStateStorage();
         String dbgSig = getLogPrefix(attrs);
         
         LabelNode startOfMethodLabelNode = new LabelNode();
@@ -152,9 +178,11 @@ final class ContinuationGenerators {
                                 debugMarker(markerType, dbgSig + "Loading method state"),
                                 call(CONTINUATION_LOADNEXTMETHODSTATE_METHOD, loadVar(contArg)),
                                 saveVar(methodStateVar),
-                                debugMarker(markerType, dbgSig + "Getting method state data"),
-                                call(METHODSTATE_GETDATA_METHOD, loadVar(methodStateVar)),
-                                saveVar(storageContainerVar),
+                                mergeIf(!typedStateStorage, () -> new Object[] {
+                                    debugMarker(markerType, dbgSig + "Getting method state data"),
+                                    call(METHODSTATE_GETDATA_METHOD, loadVar(methodStateVar)),
+                                    saveVar(storageContainerVar)
+                                }),
                                 // get lockstate if method actually has monitorenter/exit in it (var != null if this were the case)
                                 mergeIf(lockStateVar != null, () -> new Object[] {
                                         debugMarker(markerType, dbgSig + "Method has synch points, so loading lockstate as well"),
@@ -216,8 +244,6 @@ final class ContinuationGenerators {
         StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
         StorageVariables savedStackVars = attrs.getStackStorageVariables();
         
-        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
-        
         LockVariables lockVars = attrs.getLockVariables();
         Variable lockStateVar = lockVars.getLockStateVar();
         
@@ -235,9 +261,9 @@ final class ContinuationGenerators {
         return merge(
                 debugMarker(markerType, dbgSig + "Restoring SUSPEND " + idx),
                 debugMarker(markerType, dbgSig + "Unpacking operand stack storage variables"),
-                unpackOperandStackStorageArrays(markerType, frame, storageContainerVar, savedStackVars),
+                unpackOperandStackStorage(attrs, frame),
                 debugMarker(markerType, dbgSig + "Unpacking locals storage variables"),
-                unpackLocalsStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars),
+                unpackLocalsStorage(attrs, frame),
                 debugMarker(markerType, dbgSig + "Restoring operand stack"),
                 loadOperandStack(markerType, savedStackVars, frame),
                 debugMarker(markerType, dbgSig + "Restoring locals"),
@@ -278,8 +304,6 @@ final class ContinuationGenerators {
         Variable contArg = attrs.getCoreVariables().getContinuationArgVar();
         StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
         StorageVariables savedStackVars = attrs.getStackStorageVariables();
-        
-        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
 
         LockVariables lockVars = attrs.getLockVariables();
         Variable lockStateVar = lockVars.getLockStateVar();
@@ -328,15 +352,16 @@ final class ContinuationGenerators {
                 }),
                 // Only unpack operand stack storage vars, we unpack the locals afterwards if we need to
                 debugMarker(markerType, dbgSig + "Unpacking operand stack storage variables"),
-                unpackOperandStackStorageArrays(markerType, frame, storageContainerVar, savedStackVars),
+                unpackOperandStackStorage(attrs, frame),
                 debugMarker(markerType, dbgSig + "Restoring top " + invokeArgCount + " items of operand stack (just enough to invoke)"),
+                // Object args that the invoked method restores on its own weren't saved -- nulls are loaded in their place
                 loadOperandStack(markerType, savedStackVars, frame, 0, frame.getStackSize() - invokeArgCount, invokeArgCount),
                 mergeIf(debugMode, () -> new Object[]{
                     // If in debug mode, load up the locals. This is useful if you're stepping through your coroutine in a debugger... you
                     // can look at method frames above the current one and introspect the variables (what the user expects if they're
                     // running in a debugger).
                     debugMarker(markerType, dbgSig + "Unpacking locals storage variables (for debugMode)"),
-                    unpackLocalsStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars),
+                    unpackLocalsStorage(attrs, frame),
                     debugMarker(markerType, dbgSig + "Restoring locals (for debugMode)"),
                     loadLocals(markerType, savedLocalsVars, frame),
                 }),
@@ -368,7 +393,7 @@ final class ContinuationGenerators {
                     saveVar(returnCacheVar)
                 }),
                 debugMarker(markerType, dbgSig + "Unpacking locals storage variables"),
-                unpackLocalsStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars),
+                unpackLocalsStorage(attrs, frame),
                 debugMarker(markerType, dbgSig + "Restoring operand stack (without invoke args)"),
                 loadOperandStack(markerType, savedStackVars, frame, 0, 0, frame.getStackSize() - invokeArgCount),
                 debugMarker(markerType, dbgSig + "Restoring locals"),
@@ -396,8 +421,6 @@ final class ContinuationGenerators {
         Variable methodStateVar = attrs.getCoreVariables().getMethodStateVar();
         StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
         StorageVariables savedStackVars = attrs.getStackStorageVariables();
-        
-        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
 
         LockVariables lockVars = attrs.getLockVariables();
         Variable lockStateVar = lockVars.getLockStateVar();
@@ -460,15 +483,16 @@ final class ContinuationGenerators {
                 }),
                 // Only unpack operand stack storage vars, we unpack the locals afterwards if we need to
                 debugMarker(markerType, dbgSig + "Unpacking operand stack storage variables"),
-                unpackOperandStackStorageArrays(markerType, frame, storageContainerVar, savedStackVars),
+                unpackOperandStackStorage(attrs, frame),
                 debugMarker(markerType, dbgSig + "Restoring top " + invokeArgCount + " items of operand stack (just enough to invoke)"),
+                // Object args that the invoked method restores on its own weren't saved -- nulls are loaded in their place
                 loadOperandStack(markerType, savedStackVars, frame, 0, frame.getStackSize() - invokeArgCount, invokeArgCount),
                 mergeIf(debugMode, () -> new Object[]{
                     // If in debug mode, load up the locals. This is useful if you're stepping through your coroutine in a debugger... you
                     // can look at method frames above the current one and introspect the variables (what the user expects if they're
                     // running in a debugger).
                     debugMarker(markerType, dbgSig + "Unpacking locals storage variables (for debugMode)"),
-                    unpackLocalsStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars),
+                    unpackLocalsStorage(attrs, frame),
                     debugMarker(markerType, dbgSig + "Restoring locals (for debugMode)"),
                     loadLocals(markerType, savedLocalsVars, frame),
                 }),
@@ -488,7 +512,7 @@ final class ContinuationGenerators {
                                 debugMarker(markerType, dbgSig + "Saving caught throwable"),
                                 saveVar(throwableVar),
                                 debugMarker(markerType, dbgSig + "Unpacking locals storage variables"),
-                                unpackLocalsStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars),
+                                unpackLocalsStorage(attrs, frame),
                                 debugMarker(markerType, dbgSig + "Restoring operand stack (without invoke args)"),
                                 loadOperandStack(markerType, savedStackVars, frame, 0, 0, frame.getStackSize() - invokeArgCount),
                                 debugMarker(markerType, dbgSig + "Restoring locals"),
@@ -523,7 +547,7 @@ final class ContinuationGenerators {
                     saveVar(returnCacheVar)
                 }),
                 debugMarker(markerType, dbgSig + "Unpacking locals storage variables"),
-                unpackLocalsStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars),
+                unpackLocalsStorage(attrs, frame),
                 debugMarker(markerType, dbgSig + "Restoring operand stack (without invoke args)"),
                 loadOperandStack(markerType, savedStackVars, frame, 0, 0, frame.getStackSize() - invokeArgCount),
                 debugMarker(markerType, dbgSig + "Restoring locals"),
@@ -573,21 +597,430 @@ final class ContinuationGenerators {
         return saveInsnList;
     }
     
-    private static InsnList saveStateFromSuspend(MethodAttributes attrs, int idx) {
+    private static InsnList saveStateToReusableMethodState(MethodAttributes attrs, int idx, Frame<BasicValue> frame) {
+        String friendlyClassName = attrs.getSignature().getClassName().replace('/', '.'); // '/' -> '.'   because it's non-internal format
+        int methodId = attrs.getSignature().getMethodId();
+
+        Variable contArg = attrs.getCoreVariables().getContinuationArgVar();
+        Variable methodStateVar = attrs.getCoreVariables().getMethodStateVar();
+        StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
+        StorageVariables savedStackVars = attrs.getStackStorageVariables();
+        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
+        
+        Variable lockStateVar = attrs.getLockVariables().getLockStateVar();
+        
+        MarkerType markerType = attrs.getSettings().getMarkerType();
+        boolean typedStateStorage = attrs.getSettings().isTypedStateStorage();
+        String dbgSig = getLogPrefix(attrs);
+        
+        //          MethodState methodState = continuation.reuseMethodState(<class>, <methodId>, <number>, lockState);
+        //          if (methodState == null) {
+        //              <create storage arrays for operand stack and locals>
+        //              Object[] container = pack(<storage arrays>);
+        //              methodState = new MethodState(<class>, <methodId>, <number>, container, lockState);
+        //          } else {
+        //              <unpack storage arrays from methodState.getData()>
+        //          }
+        //          saveOperandStack(); // in to storage arrays, no allocation
+        //          saveLocals();       // in to storage arrays, no allocation
+        //
+        // The storage arrays of a method state are always sized for the continuation point they were created at, so arrays from a recycled
+        // method state for the same continuation point will always be large enough.
+        return merge(
+                debugMarker(markerType, dbgSig + "Requesting recycled method state"),
+                call(CONTINUATION_REUSEMETHODSTATE_METHOD, loadVar(contArg),
+                        loadStringConst(friendlyClassName),
+                        loadIntConst(methodId),
+                        loadIntConst(idx),
+                        // load lockstate for last arg if method actually has monitorenter/exit in it
+                        // (var != null if this were the case), otherwise load null for that arg
+                        mergeIf(lockStateVar != null, () -> new Object[] {
+                            loadVar(lockStateVar)
+                        }).mergeIf(lockStateVar == null, () -> new Object[] {
+                            loadNull()
+                        }).generate()
+                ),
+                saveVar(methodStateVar),
+                ifObjectsEqual(loadVar(methodStateVar), loadNull(),
+                        merge(
+                                debugMarker(markerType, dbgSig + "No recycled method state available, creating storage arrays"),
+                                allocateOperandStackStorage(markerType, savedStackVars, frame, frame.getStackSize()),
+                                allocateLocalsStorage(markerType, savedLocalsVars, frame),
+                                mergeIf(!typedStateStorage, () -> new Object[] {
+                                    debugMarker(markerType, dbgSig + "Packing locals and operand stack in to container"),
+                                    packStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars, savedStackVars)
+                                }),
+                                debugMarker(markerType, dbgSig + "Creating method state"),
+                                createMethodState(attrs, idx, frame),
+                                saveVar(methodStateVar)
+                        ),
+                        merge(
+                                debugMarker(markerType, dbgSig + "Recycled method state available, unpacking its storage arrays"),
+                                mergeIf(!typedStateStorage, () -> new Object[] {
+                                    call(METHODSTATE_GETDATA_METHOD, loadVar(methodStateVar)),
+                                    saveVar(storageContainerVar)
+                                }),
+                                unpackOperandStackStorage(attrs, frame),
+                                unpackLocalsStorage(attrs, frame)
+                        )
+                ),
+                debugMarker(markerType, dbgSig + "Saving operand stack"),
+                saveOperandStack(markerType, savedStackVars, frame, frame.getStackSize(), false),
+                debugMarker(markerType, dbgSig + "Saving locals"),
+                saveLocals(markerType, savedLocalsVars, frame, false)
+        );
+    }
+    
+    private static InsnList saveFullState(MethodAttributes attrs, int idx, Frame<BasicValue> frame) {
+        String className = attrs.getSignature().getClassName();
+        int methodId = attrs.getSignature().getMethodId();
+        
+        Variable lockStateVar = attrs.getLockVariables().getLockStateVar();
+        
+        MarkerType markerType = attrs.getSettings().getMarkerType();
+        String dbgSig = getLogPrefix(attrs);
+        
+        // Operand stack must match frame -- REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS.
+        //
+        // If outlined state saving is off (or if this continuation point can't be outlined), the state gets saved directly within the
+        // method. Otherwise, the locals get loaded on top of the operand stack and the synthetic method generated for this continuation
+        // point gets invoked (see outlinedSaveStateMethodBody()).
+        Type outlinedMethodType = getOutlinedSaveStateMethodType(attrs, frame);
+        if (outlinedMethodType == null) {
+            return saveAndPushMethodState(attrs, idx, frame);
+        }
+        
+        InsnList ret = new InsnList();
+        ret.add(debugMarker(markerType, dbgSig + "Loading locals on to operand stack (for outlined save)"));
+        for (int i = 0; i < frame.getLocals(); i++) {
+            Type type = frame.getLocal(i).getType();
+            if (isOutlinedLocal(type)) {
+                ret.add(new VarInsnNode(type.getOpcode(Opcodes.ILOAD), i));
+            }
+        }
+        if (lockStateVar != null) {
+            ret.add(loadVar(lockStateVar));
+        }
+        ret.add(debugMarker(markerType, dbgSig + "Invoking outlined save"));
+        ret.add(new MethodInsnNode(Opcodes.INVOKESTATIC, className, getOutlinedSaveStateMethodName(methodId, idx),
+                outlinedMethodType.getDescriptor(), false));
+        
+        return ret;
+    }
+    
+    private static InsnList saveAndPushMethodState(MethodAttributes attrs, int idx, Frame<BasicValue> frame) {
+        Variable contArg = attrs.getCoreVariables().getContinuationArgVar();
+        Variable methodStateVar = attrs.getCoreVariables().getMethodStateVar();
+        StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
+        StorageVariables savedStackVars = attrs.getStackStorageVariables();
+        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
+        
+        MarkerType markerType = attrs.getSettings().getMarkerType();
+        boolean methodStateReuse = attrs.getSettings().isMethodStateReuse();
+        boolean typedStateStorage = attrs.getSettings().isTypedStateStorage();
+        String dbgSig = getLogPrefix(attrs);
+        
+        return merge(
+                mergeIf(!methodStateReuse, () -> new Object[] {
+                    debugMarker(markerType, dbgSig + "Saving operand stack"),
+                    saveOperandStack(markerType, savedStackVars, frame), // REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS
+                    debugMarker(markerType, dbgSig + "Saving locals"),
+                    saveLocals(markerType, savedLocalsVars, frame),
+                    mergeIf(!typedStateStorage, () -> new Object[] {
+                        debugMarker(markerType, dbgSig + "Packing locals and operand stack in to container"),
+                        packStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars, savedStackVars)
+                    }),
+                    debugMarker(markerType, dbgSig + "Creating and pushing method state"),
+                    call(CONTINUATION_PUSHNEWMETHODSTATE_METHOD, loadVar(contArg),
+                            createMethodState(attrs, idx, frame)
+                    )
+                }),
+                mergeIf(methodStateReuse, () -> new Object[] {
+                    saveStateToReusableMethodState(attrs, idx, frame), // REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS
+                    debugMarker(markerType, dbgSig + "Pushing method state"),
+                    call(CONTINUATION_PUSHNEWMETHODSTATE_METHOD, loadVar(contArg), loadVar(methodStateVar))
+                })
+        );
+    }
+    
+    /**
+     * Generates the header for the synthetic method that saves state for a continuation point when outlined state saving is on. The
+     * method returned takes in the operand stack (bottom to top), followed by the locals that need saving (in order of their index within
+     * the local variable table), followed by the lock state (only if the method has monitorenter/exit in it). The instructions for the
+     * method must be generated via {@link #outlinedSaveStateMethodBody(MethodAttributes, int, VariableTable) } once the method has been
+     * added to the class.
+     * @param attrs method attributes
+     * @param idx continuation point index
+     * @return method with no instructions, or {@code null} if outlined state saving is off or the continuation point has too much state
+     * to pass in as arguments
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code idx} is not a valid continuation point index
+     */
+    public static MethodNode outlinedSaveStateMethod(MethodAttributes attrs, int idx) {
         Validate.notNull(attrs);
         Validate.isTrue(idx >= 0);
-        SuspendContinuationPoint cp = validateAndGetContinuationPoint(attrs, idx, SuspendContinuationPoint.class);
+        ContinuationPoint cp = validateAndGetContinuationPoint(attrs, idx, ContinuationPoint.class);
+        
+        int methodId = attrs.getSignature().getMethodId();
+        
+        Type methodType = getOutlinedSaveStateMethodType(attrs, cp.getFrame());
+        if (methodType == null) {
+            return null;
+        }
+        
+        MethodNode ret = new MethodNode(OUTLINED_SAVESTATE_METHOD_ACCESS, getOutlinedSaveStateMethodName(methodId, idx),
+                methodType.getDescriptor(), null, null);
+        ret.maxLocals = (Type.getArgumentsAndReturnSizes(ret.desc) >> 2) - 1; // -1 because size includes implicit this
+        return ret;
+    }
+    
+    /**
+     * Generates the instructions for the synthetic method returned by {@link #outlinedSaveStateMethod(MethodAttributes, int) }.
+     * @param attrs method attributes
+     * @param idx continuation point index
+     * @param varTable variable table for the synthetic method
+     * @return instructions for the synthetic method
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code idx} is not a valid continuation point index, or if the continuation point can't be
+     * outlined
+     */
+    public static InsnList outlinedSaveStateMethodBody(MethodAttributes attrs, int idx, VariableTable varTable) {
+        Validate.notNull(attrs);
+        Validate.notNull(varTable);
+        Validate.isTrue(idx >= 0);
+        ContinuationPoint cp = validateAndGetContinuationPoint(attrs, idx, ContinuationPoint.class);
+        Validate.isTrue(getOutlinedSaveStateMethodType(attrs, cp.getFrame()) != null);
 
+        int contArgIdx = attrs.getCoreVariables().getContinuationArgVar().getIndex();
+        StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
+        StorageVariables savedStackVars = attrs.getStackStorageVariables();
+        boolean hasLockState = attrs.getLockVariables().getLockStateVar() != null;
+        
+        Frame<BasicValue> frame = cp.getFrame();
+        
+        MarkerType markerType = attrs.getSettings().getMarkerType();
+        String dbgSig = getLogPrefix(attrs);
+        
+        // The locals come in as arguments, but they're shifted over because the operand stack items come in as arguments before them. So,
+        // create a copy of the frame where the locals are at the same index as the arguments they were passed in as -- everything else in
+        // that frame is marked as uninitialized, meaning that it doesn't get saved. Locals get placed in to the storage arrays in the order
+        // they appear, so the storage arrays produced from this frame line up with the original frame.
+        int argSlotCount = lastArgSlot(varTable);
+        Frame<BasicValue> savedFrame = new Frame<>(argSlotCount, frame.getStackSize());
+        for (int i = 0; i < argSlotCount; i++) {
+            savedFrame.setLocal(i, BasicValue.UNINITIALIZED_VALUE);
+        }
+        
+        InsnList loadStackInsnList = new InsnList();
+        int argIdx = 0;
+        for (int i = 0; i < frame.getStackSize(); i++) {
+            loadStackInsnList.add(loadVar(varTable.getArgument(argIdx)));
+            savedFrame.push(frame.getStack(i));
+            argIdx++;
+        }
+        
+        Variable contArgVar = null;
+        for (int i = 0; i < frame.getLocals(); i++) {
+            BasicValue basicValue = frame.getLocal(i);
+            if (!isOutlinedLocal(basicValue.getType())) {
+                continue;
+            }
+            
+            Variable argVar = varTable.getArgument(argIdx);
+            savedFrame.setLocal(argVar.getIndex(), basicValue);
+            if (i == contArgIdx) {
+                contArgVar = argVar;
+            }
+            argIdx++;
+        }
+        Validate.validState(contArgVar != null); // should never happen -- continuation object is never discarded from the frame
+        
+        Variable lockStateVar = hasLockState ? varTable.getArgument(argIdx) : null;
+        
+        // Extra variables needed for saving -- same as the storage variables of the method being instrumented
+        MethodAttributes saveAttrs = new MethodAttributes(
+                attrs.getSignature(),
+                attrs.getSettings(),
+                attrs.getContinuationPoints(),
+                attrs.getSynchronizationPoints(),
+                new CoreVariables(contArgVar, varTable.acquireExtra(MethodState.class)),
+                new CacheVariables(null, null, null, null, null, null,
+                        new ArgumentCacheVariables(emptyList(), emptyList(), emptyList(), emptyList(), emptyList())),
+                new StorageContainerVariables(varTable.acquireExtra(Object[].class)),
+                acquireStorageVariables(varTable, savedLocalsVars),
+                acquireStorageVariables(varTable, savedStackVars),
+                new LockVariables(lockStateVar, null, null));
+        
+        return merge(
+                debugMarker(markerType, dbgSig + "Outlined save for continuation point " + idx),
+                debugMarker(markerType, dbgSig + "Loading operand stack from arguments"),
+                loadStackInsnList,
+                saveAndPushMethodState(saveAttrs, idx, savedFrame),
+                returnVoid()
+        );
+    }
+    
+    private static Type getOutlinedSaveStateMethodType(MethodAttributes attrs, Frame<BasicValue> frame) {
+        if (!attrs.getSettings().isOutlinedStateSaving()) {
+            return null;
+        }
+        
+        List<Type> argTypes = new ArrayList<>();
+        for (int i = 0; i < frame.getStackSize(); i++) {
+            argTypes.add(getOutlinedArgumentType(frame.getStack(i).getType()));
+        }
+        for (int i = 0; i < frame.getLocals(); i++) {
+            Type type = frame.getLocal(i).getType();
+            if (isOutlinedLocal(type)) {
+                argTypes.add(getOutlinedArgumentType(type));
+            }
+        }
+        if (attrs.getLockVariables().getLockStateVar() != null) {
+            argTypes.add(Type.getType(LockState.class));
+        }
+        
+        // A method can take in at most 255 slots worth of arguments -- if there's more state than that, it can't be outlined
+        int argSlotCount = argTypes.stream().mapToInt(x -> x.getSize()).sum();
+        if (argSlotCount > 255) {
+            return null;
+        }
+        
+        return Type.getMethodType(Type.VOID_TYPE, argTypes.toArray(new Type[argTypes.size()]));
+    }
+    
+    private static boolean isOutlinedLocal(Type type) {
+        // Uninitialized (null) and 'Lnull;' locals don't get saved (see LocalsStateGenerators.saveLocals()), so they don't get passed in
+        return type != null && !"Lnull;".equals(type.getDescriptor());
+    }
+    
+    private static Type getOutlinedArgumentType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+            case Type.BYTE:
+            case Type.SHORT:
+            case Type.CHAR:
+            case Type.INT:
+                return Type.INT_TYPE;
+            case Type.FLOAT:
+            case Type.LONG:
+            case Type.DOUBLE:
+                return type;
+            case Type.ARRAY:
+            case Type.OBJECT:
+                // Everything gets passed as an Object (it all ends up in an Object[] anyways) except for the continuation object, which
+                // needs to be invoked on.
+                return CONTINUATION_TYPE.equals(type) ? CONTINUATION_TYPE : OBJECT_TYPE;
+            case Type.METHOD:
+            case Type.VOID:
+            default:
+                throw new IllegalStateException(); // should never happen
+        }
+    }
+    
+    private static int lastArgSlot(VariableTable varTable) {
+        Variable lastArgVar = varTable.getArgument(varTable.getArgCount() - 1);
+        return lastArgVar.getIndex() + lastArgVar.getType().getSize();
+    }
+    
+    private static StorageVariables acquireStorageVariables(VariableTable varTable, StorageVariables storageVars) {
+        return new StorageVariables(
+                storageVars.getIntStorageVar() == null ? null : varTable.acquireExtra(int[].class),
+                storageVars.getLongStorageVar() == null ? null : varTable.acquireExtra(long[].class),
+                storageVars.getFloatStorageVar() == null ? null : varTable.acquireExtra(float[].class),
+                storageVars.getDoubleStorageVar() == null ? null : varTable.acquireExtra(double[].class),
+                storageVars.getObjectStorageVar() == null ? null : varTable.acquireExtra(Object[].class));
+    }
+    
+    private static InsnList createMethodState(MethodAttributes attrs, int idx, Frame<BasicValue> frame) {
         String friendlyClassName = attrs.getSignature().getClassName().replace('/', '.'); // '/' -> '.'   because it's non-internal format
         int methodId = attrs.getSignature().getMethodId();
+
+        Variable methodStateVar = attrs.getCoreVariables().getMethodStateVar();
+        StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
+        StorageVariables savedStackVars = attrs.getStackStorageVariables();
+        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
         
-        Integer lineNumber = cp.getLineNumber();
+        Variable lockStateVar = attrs.getLockVariables().getLockStateVar();
+        
+        MarkerType markerType = attrs.getSettings().getMarkerType();
+        boolean typedStateStorage = attrs.getSettings().isTypedStateStorage();
 
-        Variable contArg = attrs.getCoreVariables().getContinuationArgVar();
+        // Leaves the new method state on the top of the stack. If typed state storage is on, the storage arrays get assigned directly to
+        // the method state (uses methodStateVar as a temporary). Otherwise, the storage arrays must have already been packed in to the
+        // container.
+        //
+        // load lockstate for last arg if method actually has monitorenter/exit in it (var != null if this were the case), otherwise load
+        // null for that arg
+        InsnList lockStateInsnList = mergeIf(lockStateVar != null, () -> new Object[] {
+            loadVar(lockStateVar)
+        }).mergeIf(lockStateVar == null, () -> new Object[] {
+            loadNull()
+        }).generate();
+        return merge(
+                mergeIf(!typedStateStorage, () -> new Object[] {
+                    construct(METHODSTATE_INIT_METHOD,
+                            loadStringConst(friendlyClassName),
+                            loadIntConst(methodId),
+                            loadIntConst(idx),
+                            loadVar(storageContainerVar),
+                            lockStateInsnList
+                    )
+                }),
+                mergeIf(typedStateStorage, () -> new Object[] {
+                    construct(METHODSTATE_TYPEDINIT_METHOD,
+                            loadStringConst(friendlyClassName),
+                            loadIntConst(methodId),
+                            loadIntConst(idx),
+                            lockStateInsnList
+                    ),
+                    saveVar(methodStateVar),
+                    storeStorageArraysInMethodState(markerType, frame, methodStateVar, savedLocalsVars, savedStackVars),
+                    loadVar(methodStateVar)
+                })
+        );
+    }
+    
+    private static InsnList unpackLocalsStorage(MethodAttributes attrs, Frame<BasicValue> frame) {
+        Variable methodStateVar = attrs.getCoreVariables().getMethodStateVar();
         StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
+        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
+        
+        MarkerType markerType = attrs.getSettings().getMarkerType();
+        
+        // If typed state storage is on, the storage arrays are taken directly from the method state. Otherwise, they're taken from the
+        // container (which must have already been pulled out of the method state).
+        if (attrs.getSettings().isTypedStateStorage()) {
+            return unpackLocalsStorageArraysFromMethodState(markerType, frame, methodStateVar, savedLocalsVars);
+        } else {
+            return unpackLocalsStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars);
+        }
+    }
+    
+    private static InsnList unpackOperandStackStorage(MethodAttributes attrs, Frame<BasicValue> frame) {
+        Variable methodStateVar = attrs.getCoreVariables().getMethodStateVar();
         StorageVariables savedStackVars = attrs.getStackStorageVariables();
         Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
         
+        MarkerType markerType = attrs.getSettings().getMarkerType();
+        
+        // If typed state storage is on, the storage arrays are taken directly from the method state. Otherwise, they're taken from the
+        // container (which must have already been pulled out of the method state).
+        if (attrs.getSettings().isTypedStateStorage()) {
+            return unpackOperandStackStorageArraysFromMethodState(markerType, frame, methodStateVar, savedStackVars);
+        } else {
+            return unpackOperandStackStorageArrays(markerType, frame, storageContainerVar, savedStackVars);
+        }
+    }
+    
+    private static InsnList saveStateFromSuspend(MethodAttributes attrs, int idx) {
+        Validate.notNull(attrs);
+        Validate.isTrue(idx >= 0);
+        SuspendContinuationPoint cp = validateAndGetContinuationPoint(attrs, idx, SuspendContinuationPoint.class);
+
+        Integer lineNumber = cp.getLineNumber();
+
+        Variable contArg = attrs.getCoreVariables().getContinuationArgVar();
+        
         LockVariables lockVars = attrs.getLockVariables();
         Variable lockStateVar = lockVars.getLockStateVar();
         
@@ -613,29 +1046,8 @@ final class ContinuationGenerators {
                     lineNumber(lineNumber)
                 }),
                 debugMarker(markerType, dbgSig + "Saving SUSPEND " + idx),
-                debugMarker(markerType, dbgSig + "Saving operand stack"),
-                saveOperandStack(markerType, savedStackVars, frame), // REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS. ALSO, DON'T FORGET THAT
-                                                                     // Continuation OBJECT WILL BE TOP ITEM, NEEDS TO BE DISCARDED ON LOAD
-                debugMarker(markerType, dbgSig + "Saving locals"),
-                saveLocals(markerType, savedLocalsVars, frame),
-                debugMarker(markerType, dbgSig + "Packing locals and operand stack in to container"),
-                packStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars, savedStackVars),
-                debugMarker(markerType, dbgSig + "Creating and pushing method state"),
-                call(CONTINUATION_PUSHNEWMETHODSTATE_METHOD, loadVar(contArg),
-                        construct(METHODSTATE_INIT_METHOD,
-                                loadStringConst(friendlyClassName),
-                                loadIntConst(methodId),
-                                loadIntConst(idx),
-                                loadVar(storageContainerVar),
-                                // load lockstate for last arg if method actually has monitorenter/exit in it
-                                // (var != null if this were the case), otherwise load null for that arg
-                                mergeIf(lockStateVar != null, () -> new Object[] {
-                                    loadVar(lockStateVar)
-                                }).mergeIf(lockStateVar == null, () -> new Object[] {
-                                    loadNull()
-                                }).generate()
-                        )
-                ),
+                saveFullState(attrs, idx, frame), // REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS. ALSO, DON'T FORGET THAT Continuation
+                                                  // OBJECT WILL BE TOP ITEM, NEEDS TO BE DISCARDED ON LOAD
                 debugMarker(markerType, dbgSig + "Setting mode to save"),
                 call(CONTINUATION_SETMODE_METHOD, loadVar(contArg), loadIntConst(MODE_SAVING)),
                 // attempt to exit monitors only if method has monitorenter/exit in it (var != null if this were the case)
@@ -658,15 +1070,12 @@ final class ContinuationGenerators {
         Validate.isTrue(idx >= 0);
         NormalInvokeContinuationPoint cp = validateAndGetContinuationPoint(attrs, idx, NormalInvokeContinuationPoint.class);
 
-        String friendlyClassName = attrs.getSignature().getClassName().replace('/', '.'); // '/' -> '.'   because it's non-internal format
-        int methodId = attrs.getSignature().getMethodId();
-
         Integer lineNumber = cp.getLineNumber();
 
         Variable contArg = attrs.getCoreVariables().getContinuationArgVar();
-        StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
         StorageVariables savedStackVars = attrs.getStackStorageVariables();
-        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
+        
+        ArgumentCacheVariables argCacheVars = attrs.getCacheVariables().getArgumentCacheVariables();
         
         LockVariables lockVars = attrs.getLockVariables();
         Variable lockStateVar = lockVars.getLockStateVar();
@@ -674,10 +1083,12 @@ final class ContinuationGenerators {
         Type returnType = attrs.getSignature().getReturnType();
         
         Frame<BasicValue> frame = cp.getFrame();
+        Frame<BasicValue> invokeFrame = cp.getInvokeFrame(); // frame with invoke args intact -- used before invocation
         MethodInsnNode invokeNode = cp.getInvokeInstruction();
         LabelNode continueExecLabelNode = cp.getContinueExecutionLabel();
         
         MarkerType markerType = attrs.getSettings().getMarkerType();
+        boolean methodStateReuse = attrs.getSettings().isMethodStateReuse();
         String dbgSig = getLogPrefix(attrs);
         
         //          Object[] duplicatedArgs = saveOperandStack(<method param count>); -- Why do we do this? because when we want to save the
@@ -706,12 +1117,19 @@ final class ContinuationGenerators {
                 }),
                 debugMarker(markerType, dbgSig + "Saving INVOKE " + idx),
                 debugMarker(markerType, dbgSig + "Saving top " + invokeArgCount + " items of operand stack (args for invoke)"),
-                saveOperandStack(markerType, savedStackVars, frame, invokeArgCount),
-                debugMarker(markerType, dbgSig + "Reloading invoke arguments back on to the stack (for invoke)"),
-                loadOperandStack(markerType, savedStackVars, frame,
-                        frame.getStackSize() - invokeArgCount,
-                        frame.getStackSize() - invokeArgCount,
-                        invokeArgCount),
+                mergeIf(!methodStateReuse, () -> new Object[] {
+                    saveOperandStack(markerType, savedStackVars, invokeFrame, invokeArgCount),
+                    debugMarker(markerType, dbgSig + "Reloading invoke arguments back on to the stack (for invoke)"),
+                    loadOperandStack(markerType, savedStackVars, invokeFrame,
+                            frame.getStackSize() - invokeArgCount,
+                            frame.getStackSize() - invokeArgCount,
+                            invokeArgCount)
+                }),
+                mergeIf(methodStateReuse, () -> new Object[] {
+                    saveOperandStackToCache(markerType, argCacheVars, invokeFrame, invokeArgCount),
+                    debugMarker(markerType, dbgSig + "Reloading invoke arguments back on to the stack (for invoke)"),
+                    loadOperandStackFromCache(markerType, argCacheVars, invokeFrame, invokeArgCount)
+                }),
                 debugMarker(markerType, dbgSig + "Invoking"),
                 cloneInvokeNode(invokeNode), // invoke method  (ADDED MULTIPLE TIMES -- MUST BE CLONED)
                 ifIntegersEqual(// if we're saving after invoke
@@ -722,37 +1140,21 @@ final class ContinuationGenerators {
                                 debugMarker(markerType, dbgSig + "Popping dummy return value off stack"),
                                 popMethodResult(invokeNode),
                                 debugMarker(markerType, dbgSig + "Reloading invoke arguments back on to the stack (for full save)"),
-                                loadOperandStack(markerType, savedStackVars, frame,
-                                        frame.getStackSize() - invokeArgCount,
-                                        frame.getStackSize() - invokeArgCount,
-                                        invokeArgCount),
-                                debugMarker(markerType, dbgSig + "Saving operand stack"),
-                                saveOperandStack(markerType, savedStackVars, frame), // REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS
-                                debugMarker(markerType, dbgSig + "Saving locals"),
-                                saveLocals(markerType, savedLocalsVars, frame),
-                                debugMarker(markerType, dbgSig + "Packing locals and operand stack in to container"),
-                                packStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars, savedStackVars),
+                                mergeIf(!methodStateReuse, () -> new Object[] {
+                                    loadOperandStack(markerType, savedStackVars, invokeFrame,
+                                            frame.getStackSize() - invokeArgCount,
+                                            frame.getStackSize() - invokeArgCount,
+                                            invokeArgCount)
+                                }),
+                                mergeIf(methodStateReuse, () -> new Object[] {
+                                    loadOperandStackFromCache(markerType, argCacheVars, invokeFrame, invokeArgCount)
+                                }),
+                                saveFullState(attrs, idx, frame), // REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS
                                 // attempt to exit monitors only if method has monitorenter/exit in it (var != null if this were the case)
                                 mergeIf(lockStateVar != null, () -> new Object[]{
                                     debugMarker(markerType, dbgSig + "Exiting monitors"),
                                     exitStoredMonitors(markerType, lockVars),
                                 }),
-                                debugMarker(markerType, dbgSig + "Creating and pushing method state"),
-                                call(CONTINUATION_PUSHNEWMETHODSTATE_METHOD, loadVar(contArg),
-                                        construct(METHODSTATE_INIT_METHOD,
-                                                loadStringConst(friendlyClassName),
-                                                loadIntConst(methodId),
-                                                loadIntConst(idx),
-                                                loadVar(storageContainerVar),
-                                                // load lockstate for last arg if method actually has monitorenter/exit in it
-                                                // (var != null if this were the case), otherwise load null for that arg
-                                                mergeIf(lockStateVar != null, () -> new Object[] {
-                                                    loadVar(lockStateVar)
-                                                }).mergeIf(lockStateVar == null, () -> new Object[] {
-                                                    loadNull()
-                                                }).generate()
-                                        )
-                                ),
                                 debugMarker(markerType, dbgSig + "Returning (dummy return value if not void)"),
                                 returnDummy(returnType)
                         )
@@ -771,15 +1173,12 @@ final class ContinuationGenerators {
         Validate.isTrue(idx >= 0);
         TryCatchInvokeContinuationPoint cp = validateAndGetContinuationPoint(attrs, idx, TryCatchInvokeContinuationPoint.class);
 
-        String friendlyClassName = attrs.getSignature().getClassName().replace('/', '.'); // '/' -> '.'   because it's non-internal format
-        int methodId = attrs.getSignature().getMethodId();
-
         Integer lineNumber = cp.getLineNumber();
 
         Variable contArg = attrs.getCoreVariables().getContinuationArgVar();
-        StorageVariables savedLocalsVars = attrs.getLocalsStorageVariables();
         StorageVariables savedStackVars = attrs.getStackStorageVariables();
-        Variable storageContainerVar = attrs.getStorageContainerVariables().getContainerVar();
+        
+        ArgumentCacheVariables argCacheVars = attrs.getCacheVariables().getArgumentCacheVariables();
         
         LockVariables lockVars = attrs.getLockVariables();
         Variable lockStateVar = lockVars.getLockStateVar();
@@ -789,11 +1188,13 @@ final class ContinuationGenerators {
         Type returnType = attrs.getSignature().getReturnType();
         
         Frame<BasicValue> frame = cp.getFrame();
+        Frame<BasicValue> invokeFrame = cp.getInvokeFrame(); // frame with invoke args intact -- used before invocation
         MethodInsnNode invokeNode = cp.getInvokeInstruction();
         LabelNode continueExecLabelNode = cp.getContinueExecutionLabel();
         LabelNode exceptionExecutionLabelNode = cp.getExceptionExecutionLabel();
         
         MarkerType markerType = attrs.getSettings().getMarkerType();
+        boolean methodStateReuse = attrs.getSettings().isMethodStateReuse();
         String dbgSig = getLogPrefix(attrs);
 
         int invokeArgCount = getArgumentCountRequiredForInvocation(invokeNode);
@@ -803,12 +1204,19 @@ final class ContinuationGenerators {
                 }),
                 debugMarker(markerType, dbgSig + "Saving INVOKE WITHIN TRYCATCH " + idx),
                 debugMarker(markerType, dbgSig + "Saving top " + invokeArgCount + " items of operand stack (args for invoke)"),
-                saveOperandStack(markerType, savedStackVars, frame, invokeArgCount),
-                debugMarker(markerType, dbgSig + "Reloading invoke arguments back on to the stack (for invoke)"),
-                loadOperandStack(markerType, savedStackVars, frame,
-                        frame.getStackSize() - invokeArgCount,
-                        frame.getStackSize() - invokeArgCount,
-                        invokeArgCount),
+                mergeIf(!methodStateReuse, () -> new Object[] {
+                    saveOperandStack(markerType, savedStackVars, invokeFrame, invokeArgCount),
+                    debugMarker(markerType, dbgSig + "Reloading invoke arguments back on to the stack (for invoke)"),
+                    loadOperandStack(markerType, savedStackVars, invokeFrame,
+                            frame.getStackSize() - invokeArgCount,
+                            frame.getStackSize() - invokeArgCount,
+                            invokeArgCount)
+                }),
+                mergeIf(methodStateReuse, () -> new Object[] {
+                    saveOperandStackToCache(markerType, argCacheVars, invokeFrame, invokeArgCount),
+                    debugMarker(markerType, dbgSig + "Reloading invoke arguments back on to the stack (for invoke)"),
+                    loadOperandStackFromCache(markerType, argCacheVars, invokeFrame, invokeArgCount)
+                }),
                 debugMarker(markerType, dbgSig + "Invoking"),
                 cloneInvokeNode(invokeNode), // invoke method  (ADDED MULTIPLE TIMES -- MUST BE CLONED)
                 ifIntegersEqual(// if we're saving after invoke, return dummy value
@@ -818,37 +1226,21 @@ final class ContinuationGenerators {
                                 debugMarker(markerType, dbgSig + "Popping dummy return value off stack"),
                                 popMethodResult(invokeNode),
                                 debugMarker(markerType, dbgSig + "Reloading invoke arguments back on to the stack"),
-                                loadOperandStack(markerType, savedStackVars, frame,
-                                        frame.getStackSize() - invokeArgCount,
-                                        frame.getStackSize() - invokeArgCount,
-                                        invokeArgCount),
-                                debugMarker(markerType, dbgSig + "Saving operand stack"),
-                                saveOperandStack(markerType, savedStackVars, frame), // REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS
-                                debugMarker(markerType, dbgSig + "Saving locals"),
-                                saveLocals(markerType, savedLocalsVars, frame),
-                                debugMarker(markerType, dbgSig + "Packing locals and operand stack in to container"),
-                                packStorageArrays(markerType, frame, storageContainerVar, savedLocalsVars, savedStackVars),
+                                mergeIf(!methodStateReuse, () -> new Object[] {
+                                    loadOperandStack(markerType, savedStackVars, invokeFrame,
+                                            frame.getStackSize() - invokeArgCount,
+                                            frame.getStackSize() - invokeArgCount,
+                                            invokeArgCount)
+                                }),
+                                mergeIf(methodStateReuse, () -> new Object[] {
+                                    loadOperandStackFromCache(markerType, argCacheVars, invokeFrame, invokeArgCount)
+                                }),
+                                saveFullState(attrs, idx, frame), // REMEMBER: STACK IS TOTALLY EMPTY AFTER THIS
                                 // attempt to exit monitors only if method has monitorenter/exit in it (var != null if this were the case)
                                 mergeIf(lockStateVar != null, () -> new Object[]{
                                     debugMarker(markerType, dbgSig + "Exiting monitors"),
                                     exitStoredMonitors(markerType, lockVars),
                                 }),
-                                debugMarker(markerType, dbgSig + "Creating and pushing method state"),
-                                call(CONTINUATION_PUSHNEWMETHODSTATE_METHOD, loadVar(contArg),
-                                        construct(METHODSTATE_INIT_METHOD,
-                                                loadStringConst(friendlyClassName),
-                                                loadIntConst(methodId),
-                                                loadIntConst(idx),
-                                                loadVar(storageContainerVar),
-                                                // load lockstate for last arg if method actually has monitorenter/exit in it
-                                                // (var != null if this were the case), otherwise load null for that arg
-                                                mergeIf(lockStateVar != null, () -> new Object[] {
-                                                    loadVar(lockStateVar)
-                                                }).mergeIf(lockStateVar == null, () -> new Object[] {
-                                                    loadNull()
-                                                }).generate()
-                                        )
-                                ),
                                 debugMarker(markerType, dbgSig + "Returning (dummy return value if not void)"),
                                 returnDummy(returnType)
                         )
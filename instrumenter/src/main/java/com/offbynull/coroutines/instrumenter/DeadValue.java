@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.instrumenter;
+
+import org.apache.commons.lang3.Validate;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.analysis.BasicValue;
+
+// Stands in for a local that's dead at a continuation point (never read again before being overwritten). It has no type, so anything that
+// saves/sizes/details locals treats it the same as an uninitialized slot (BasicValue.UNINITIALIZED_VALUE). The one exception is
+// LocalsStateGenerators.loadLocals(), which restores it as the default value of the type it had (0 / 0L / 0.0f / 0.0 / null) so that
+// the restored frame doesn't hang on to anything stale.
+final class DeadValue extends BasicValue {
+
+    private final Type deadType;
+
+    DeadValue(Type deadType) {
+        super(null);
+        Validate.notNull(deadType);
+        this.deadType = deadType;
+    }
+
+    public Type getDeadType() {
+        return deadType;
+    }
+}
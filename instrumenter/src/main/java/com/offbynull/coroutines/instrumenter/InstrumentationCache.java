@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.instrumenter;
+
+import static com.offbynull.coroutines.instrumenter.InternalFields.INSTRUMENTED_MARKER_FIELD_VALUE;
+import com.offbynull.coroutines.instrumenter.asm.ClassInformation;
+import com.offbynull.coroutines.instrumenter.asm.ClassInformationRepository;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * On-disk cache of instrumentation results, meant to be kept between builds such that class files that haven't changed don't get
+ * instrumented again.
+ * <p>
+ * Entries are keyed by a hash of the class file contents, the instrumentation settings, and a hash of the instrumenter's code. Each entry
+ * also records the information of every class that was looked up while instrumenting (e.g. supertypes needed to compute stack map
+ * frames). An entry is only used if that information is still the same, otherwise the class gets instrumented again and the entry gets
+ * replaced.
+ * <p>
+ * This class is thread-safe -- entries are written out to a temporary file and moved in to place. Entries are never removed, so the cache
+ * directory should be placed somewhere it gets cleaned up along with the rest of the build output (e.g. Maven's target directory).
+ * @author Kasra Faghihi
+ */
+public final class InstrumentationCache {
+    private static final int FORMAT_VERSION = 1;
+    private static final String CLASSPATH_INDEX_FILENAME = "classpath.index";
+    private static final String INSTRUMENTER_VERSION = hashInstrumenterCode();
+    
+    private final Path directory;
+    private final String instrumenterVersion;
+
+    /**
+     * Constructs a {@link InstrumentationCache} object. The directory gets created if it doesn't exist.
+     * @param directory directory to hold cache entries
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IOException if {@code directory} couldn't be created
+     */
+    public InstrumentationCache(File directory) throws IOException {
+        this(directory, INSTRUMENTER_VERSION);
+    }
+
+    // instrumenterVersion is only ever anything other than INSTRUMENTER_VERSION in tests
+    InstrumentationCache(File directory, String instrumenterVersion) throws IOException {
+        Validate.notNull(directory);
+        Validate.notNull(instrumenterVersion);
+        this.directory = directory.toPath();
+        this.instrumenterVersion = instrumenterVersion;
+        Files.createDirectories(this.directory);
+    }
+
+    /**
+     * Get the location of the classpath index file within this cache's directory. Meant to be passed in to
+     * {@link Instrumenter#Instrumenter(java.util.List, java.io.File) } such that class information for the classpath also gets reused
+     * between builds.
+     * @return classpath index file
+     */
+    public File getClasspathIndexFile() {
+        return directory.resolve(CLASSPATH_INDEX_FILENAME).toFile();
+    }
+
+    /**
+     * Instruments a class, or gets the results of instrumenting that class from the cache if it was previously instrumented with the same
+     * settings.
+     * @param instrumenter instrumenter
+     * @param input class file contents
+     * @param settings instrumentation settings
+     * @return instrumentation results
+     * @throws IllegalArgumentException if the class could not be instrumented for some reason
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IOException if the cache entry could not be written
+     */
+    public InstrumentationResult instrument(Instrumenter instrumenter, byte[] input, InstrumentationSettings settings) throws IOException {
+        Validate.notNull(instrumenter);
+        Validate.notNull(input);
+        Validate.notNull(settings);
+
+        ClassInformationRepository repo = instrumenter.getClassInformationRepository();
+
+        String key = generateKey(input, settings, instrumenterVersion);
+        Path entryFile = directory.resolve(key.substring(0, 2)).resolve(key);
+        
+        // Try to use the cache entry
+        if (Files.isRegularFile(entryFile)) {
+            Entry<InstrumentationResult, Map<String, ClassInformation>> cached;
+            try {
+                cached = readEntry(Files.readAllBytes(entryFile), input);
+            } catch (IOException | RuntimeException e) {
+                cached = null; // entry is corrupt or was written by some other version, ignore it and overwrite it
+            }
+            
+            if (cached != null && isStillValid(repo, cached.getValue())) {
+                return cached.getKey();
+            }
+        }
+
+        // Instrument and write the cache entry
+        RecordingClassInformationRepository recordingRepo = new RecordingClassInformationRepository(repo);
+        InstrumentationResult result = instrumenter.instrument(input, settings, recordingRepo);
+        
+        byte[] entryData = writeEntry(result, input, recordingRepo.getRecorded());
+        Files.createDirectories(entryFile.getParent());
+        Path tempFile = Files.createTempFile(entryFile.getParent(), key, ".tmp");
+        try {
+            Files.write(tempFile, entryData);
+            try {
+                Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        return result;
+    }
+    
+    private static boolean isStillValid(ClassInformationRepository repo, Map<String, ClassInformation> dependencies) {
+        for (Entry<String, ClassInformation> dependency : dependencies.entrySet()) {
+            if (!Objects.equals(repo.getInformation(dependency.getKey()), dependency.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The manifest's Implementation-Version can't be used to tell instrumenter versions apart -- it isn't set for this project's JARs (and
+    // it'd be the same between SNAPSHOT builds even if it were). Instead, hash the code that the instrumenter was loaded from. That's the
+    // instrumenter JAR (or a shaded JAR that also includes the libraries the instrumenter uses, which can change the output as well), or
+    // the classes directory when running from an IDE or this project's own tests.
+    private static String hashInstrumenterCode() {
+        MessageDigest md = createDigest();
+        try {
+            CodeSource codeSource = InstrumentationCache.class.getProtectionDomain().getCodeSource();
+            Validate.validState(codeSource != null && codeSource.getLocation() != null, "Unable to locate instrumenter code");
+
+            Path location = Paths.get(codeSource.getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                List<Path> files;
+                try (Stream<Path> stream = Files.walk(location)) {
+                    files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    md.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    md.update(Files.readAllBytes(file));
+                }
+            } else {
+                md.update(Files.readAllBytes(location));
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // The code couldn't be hashed, so there's no way to know if entries were written by this version of the instrumenter. Use a
+            // value that's unique to this JVM instead -- entries written by anything else will never be used.
+            md.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(md.digest());
+    }
+
+    private static String generateKey(byte[] input, InstrumentationSettings settings, String instrumenterVersion) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeLong(INSTRUMENTED_MARKER_FIELD_VALUE);
+            dos.writeUTF(instrumenterVersion);
+            
+            // Every setting that changes the output must be included here
+            dos.writeUTF(settings.getMarkerType().name());
+            dos.writeBoolean(settings.isDebugMode());
+            dos.writeBoolean(settings.isAutoSerializable());
+            dos.writeBoolean(settings.isMethodStateReuse());
+            dos.writeBoolean(settings.isTypedStateStorage());
+            dos.writeBoolean(settings.isOutlinedStateSaving());
+            dos.writeBoolean(settings.isDeadLocalPruning());
+            dos.writeBoolean(settings.isInvokeArgumentPruning());
+        }
+
+        MessageDigest md = createDigest();
+        md.update(baos.toByteArray());
+        md.update(input);
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae); // should never happen -- SHA-256 is required to be supported by all JVMs
+        }
+    }
+
+    private static String toHex(byte[] data) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : data) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] writeEntry(InstrumentationResult result, byte[] input, Map<String, ClassInformation> dependencies)
+            throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(FORMAT_VERSION);
+
+            byte[] output = result.getInstrumentedClass();
+            boolean unchanged = input.length == output.length; // same condition PluginHelper uses to determine no instrumentation happened
+            dos.writeBoolean(unchanged);
+            if (!unchanged) {
+                dos.writeInt(output.length);
+                dos.write(output);
+            }
+            
+            Map<String, byte[]> extraFiles = result.getExtraFiles();
+            dos.writeInt(extraFiles.size());
+            for (Entry<String, byte[]> extraFile : extraFiles.entrySet()) {
+                dos.writeUTF(extraFile.getKey());
+                dos.writeInt(extraFile.getValue().length);
+                dos.write(extraFile.getValue());
+            }
+            
+            dos.writeInt(dependencies.size());
+            for (Entry<String, ClassInformation> dependency : dependencies.entrySet()) {
+                dos.writeUTF(dependency.getKey());
+                ClassInformation info = dependency.getValue();
+                dos.writeBoolean(info != null);
+                if (info == null) {
+                    continue;
+                }
+                dos.writeUTF(info.getName());
+                dos.writeBoolean(info.getSuperClassName() != null);
+                if (info.getSuperClassName() != null) {
+                    dos.writeUTF(info.getSuperClassName());
+                }
+                List<String> interfaces = info.getInterfaces();
+                dos.writeInt(interfaces.size());
+                for (String iface : interfaces) {
+                    dos.writeUTF(iface);
+                }
+                dos.writeBoolean(info.isInterface());
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private static Entry<InstrumentationResult, Map<String, ClassInformation>> readEntry(byte[] data, byte[] input) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (dis.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            byte[] output;
+            if (dis.readBoolean()) {
+                output = input;
+            } else {
+                output = new byte[dis.readInt()];
+                dis.readFully(output);
+            }
+
+            int extraFileCount = dis.readInt();
+            Map<String, byte[]> extraFiles = new LinkedHashMap<>();
+            for (int i = 0; i < extraFileCount; i++) {
+                String name = dis.readUTF();
+                byte[] extraData = new byte[dis.readInt()];
+                dis.readFully(extraData);
+                extraFiles.put(name, extraData);
+            }
+
+            int dependencyCount = dis.readInt();
+            Map<String, ClassInformation> dependencies = new LinkedHashMap<>();
+            for (int i = 0; i < dependencyCount; i++) {
+                String key = dis.readUTF();
+                if (!dis.readBoolean()) {
+                    dependencies.put(key, null);
+                    continue;
+                }
+                String name = dis.readUTF();
+                String superClassName = dis.readBoolean() ? dis.readUTF() : null;
+                int interfaceCount = dis.readInt();
+                List<String> interfaces = new ArrayList<>(interfaceCount);
+                for (int j = 0; j < interfaceCount; j++) {
+                    interfaces.add(dis.readUTF());
+                }
+                boolean interfaceMarker = dis.readBoolean();
+                dependencies.put(key, new ClassInformation(name, superClassName, interfaces, interfaceMarker));
+            }
+
+            InstrumentationResult result = new InstrumentationResult(output, extraFiles);
+            return new SimpleImmutableEntry<>(result, dependencies);
+        }
+    }
+    
+    private static final class RecordingClassInformationRepository implements ClassInformationRepository {
+        private final ClassInformationRepository backingRepo;
+        private final Map<String, ClassInformation> recorded;
+
+        RecordingClassInformationRepository(ClassInformationRepository backingRepo) {
+            this.backingRepo = backingRepo;
+            this.recorded = new LinkedHashMap<>(); // instrumenting a class happens on a single thread
+        }
+
+        @Override
+        public ClassInformation getInformation(String internalClassName) {
+            Validate.notNull(internalClassName);
+            ClassInformation info = backingRepo.getInformation(internalClassName);
+            recorded.put(internalClassName, info);
+            return info;
+        }
+
+        Map<String, ClassInformation> getRecorded() {
+            return recorded;
+        }
+    }
+}
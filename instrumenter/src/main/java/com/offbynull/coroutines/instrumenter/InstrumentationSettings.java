@@ -28,19 +28,32 @@ public final class InstrumentationSettings {
     private final MarkerType markerType;
     private final boolean debugMode;
     private final boolean autoSerializable;
+    private final boolean methodStateReuse;
+    private final boolean typedStateStorage;
+    private final boolean outlinedStateSaving;
+    private final boolean deadLocalPruning;
+    private final boolean invokeArgumentPruning;
 
     /**
-     * Constructs a {@link InstrumentationSettings} object.
+     * Constructs a {@link InstrumentationSettings} object. All optional features are turned off -- use {@link Builder} to turn them on.
      * @param markerType marker type
      * @param debugMode debug mode
      * @param autoSerializable auto-serializable
      * @throws NullPointerException if any argument is {@code null}
      */
     public InstrumentationSettings(MarkerType markerType, boolean debugMode, boolean autoSerializable) {
-        Validate.notNull(markerType);
-        this.markerType = markerType;
-        this.debugMode = debugMode;
-        this.autoSerializable = autoSerializable;
+        this(new Builder(markerType).debugMode(debugMode).autoSerializable(autoSerializable));
+    }
+
+    private InstrumentationSettings(Builder builder) {
+        this.markerType = builder.markerType;
+        this.debugMode = builder.debugMode;
+        this.autoSerializable = builder.autoSerializable;
+        this.methodStateReuse = builder.methodStateReuse;
+        this.typedStateStorage = builder.typedStateStorage;
+        this.outlinedStateSaving = builder.outlinedStateSaving;
+        this.deadLocalPruning = builder.deadLocalPruning;
+        this.invokeArgumentPruning = builder.invokeArgumentPruning;
     }
 
     /**
@@ -73,4 +86,168 @@ public final class InstrumentationSettings {
         return autoSerializable;
     }
 
+    /**
+     * Get method state reuse. Method state reuse has the instrumented code recycle the method states (and the storage arrays inside of
+     * them) that were discarded by the coroutine's {@link com.offbynull.coroutines.user.Continuation} rather than allocating new ones each
+     * time a method suspends. It also caches the arguments of invocations that may suspend in extra local variables rather than in
+     * temporary arrays. Once warmed up, a coroutine that keeps suspending at the same points no longer generates garbage when it
+     * suspends/resumes.
+     * @return method state reuse
+     */
+    public boolean isMethodStateReuse() {
+        return methodStateReuse;
+    }
+
+    /**
+     * Get typed state storage. Typed state storage has the instrumented code assign the storage arrays for a method's locals and operand
+     * stack directly to typed fields of {@link com.offbynull.coroutines.user.MethodState} rather than packing them in to an
+     * {@code Object[]} container. This avoids allocating the container when a method suspends, and avoids the array lookup and cast for
+     * each storage array when a method resumes. Serialization is unaffected.
+     * @return typed state storage
+     */
+    public boolean isTypedStateStorage() {
+        return typedStateStorage;
+    }
+
+    /**
+     * Get outlined state saving. Outlined state saving moves the code that saves a method's locals and operand stack (and creates its
+     * {@link com.offbynull.coroutines.user.MethodState}) out of the instrumented method and in to a private static synthetic method per
+     * continuation point. The instrumented method passes its state in as arguments, which keeps rarely executed code from bloating the
+     * instrumented method to the point where the JIT refuses to inline or compile it.
+     * @return outlined state saving
+     */
+    public boolean isOutlinedStateSaving() {
+        return outlinedStateSaving;
+    }
+
+    /**
+     * Get dead local pruning. Dead local pruning has the instrumented code skip saving locals that are never read again after the point
+     * where a method suspends (before being overwritten). On restore, those locals are set to the default value for their type
+     * ({@code 0} / {@code null}). This shrinks the saved state and stops it from keeping large temporaries (e.g. buffers) reachable while
+     * the coroutine is suspended. Ignored in debug mode.
+     * <p>
+     * This changes the layout of the saved locals, so methods instrumented with it get a different method id than methods instrumented
+     * without it. State saved by one can't be loaded by the other.
+     * @return dead local pruning
+     */
+    public boolean isDeadLocalPruning() {
+        return deadLocalPruning;
+    }
+
+    /**
+     * Get invoke argument pruning. Invoke argument pruning has the instrumented code skip saving the object arguments of an invocation
+     * that suspended (other than the {@link com.offbynull.coroutines.user.Continuation}) as part of the caller's operand stack. The invoked
+     * method saves those as its own locals (if it still needs them) and restores them itself, so the caller passes in {@code null}s for
+     * them when it re-invokes the method on restore. Ignored in debug mode.
+     * <p>
+     * This changes the layout of the saved operand stack, so methods instrumented with it get a different method id than methods
+     * instrumented without it. State saved by one can't be loaded by the other.
+     * @return invoke argument pruning
+     */
+    public boolean isInvokeArgumentPruning() {
+        return invokeArgumentPruning;
+    }
+
+    /**
+     * Builder for {@link InstrumentationSettings}. Everything other than the marker type defaults to {@code false}.
+     * @author Kasra Faghihi
+     */
+    public static final class Builder {
+        private final MarkerType markerType;
+        private boolean debugMode;
+        private boolean autoSerializable;
+        private boolean methodStateReuse;
+        private boolean typedStateStorage;
+        private boolean outlinedStateSaving;
+        private boolean deadLocalPruning;
+        private boolean invokeArgumentPruning;
+
+        /**
+         * Constructs a {@link Builder} object.
+         * @param markerType marker type
+         * @throws NullPointerException if any argument is {@code null}
+         */
+        public Builder(MarkerType markerType) {
+            Validate.notNull(markerType);
+            this.markerType = markerType;
+        }
+
+        /**
+         * Set debug mode. See {@link InstrumentationSettings#isDebugMode() }.
+         * @param debugMode debug mode
+         * @return this builder
+         */
+        public Builder debugMode(boolean debugMode) {
+            this.debugMode = debugMode;
+            return this;
+        }
+
+        /**
+         * Set auto-serializable. See {@link InstrumentationSettings#isAutoSerializable() }.
+         * @param autoSerializable auto-serializable
+         * @return this builder
+         */
+        public Builder autoSerializable(boolean autoSerializable) {
+            this.autoSerializable = autoSerializable;
+            return this;
+        }
+
+        /**
+         * Set method state reuse. See {@link InstrumentationSettings#isMethodStateReuse() }.
+         * @param methodStateReuse method state reuse
+         * @return this builder
+         */
+        public Builder methodStateReuse(boolean methodStateReuse) {
+            this.methodStateReuse = methodStateReuse;
+            return this;
+        }
+
+        /**
+         * Set typed state storage. See {@link InstrumentationSettings#isTypedStateStorage() }.
+         * @param typedStateStorage typed state storage
+         * @return this builder
+         */
+        public Builder typedStateStorage(boolean typedStateStorage) {
+            this.typedStateStorage = typedStateStorage;
+            return this;
+        }
+
+        /**
+         * Set outlined state saving. See {@link InstrumentationSettings#isOutlinedStateSaving() }.
+         * @param outlinedStateSaving outlined state saving
+         * @return this builder
+         */
+        public Builder outlinedStateSaving(boolean outlinedStateSaving) {
+            this.outlinedStateSaving = outlinedStateSaving;
+            return this;
+        }
+
+        /**
+         * Set dead local pruning. See {@link InstrumentationSettings#isDeadLocalPruning() }.
+         * @param deadLocalPruning dead local pruning
+         * @return this builder
+         */
+        public Builder deadLocalPruning(boolean deadLocalPruning) {
+            this.deadLocalPruning = deadLocalPruning;
+            return this;
+        }
+
+        /**
+         * Set invoke argument pruning. See {@link InstrumentationSettings#isInvokeArgumentPruning() }.
+         * @param invokeArgumentPruning invoke argument pruning
+         * @return this builder
+         */
+        public Builder invokeArgumentPruning(boolean invokeArgumentPruning) {
+            this.invokeArgumentPruning = invokeArgumentPruning;
+            return this;
+        }
+
+        /**
+         * Build the {@link InstrumentationSettings} object.
+         * @return new instrumentation settings
+         */
+        public InstrumentationSettings build() {
+            return new InstrumentationSettings(this);
+        }
+    }
 }
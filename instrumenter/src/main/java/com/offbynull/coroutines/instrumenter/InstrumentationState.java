@@ -18,6 +18,7 @@ package com.offbynull.coroutines.instrumenter;
 
 import com.offbynull.coroutines.instrumenter.asm.ClassInformationRepository;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import org.apache.commons.lang3.Validate;
 import org.objectweb.asm.tree.MethodNode;
@@ -37,7 +38,7 @@ final class InstrumentationState {
         this.instrumentationSettings = instrumentationSettings;
         this.classInformationRepository = classInformationRepository;
         
-        this.methodAttributes = new HashMap<>();
+        this.methodAttributes = new LinkedHashMap<>(); // keep methods in the order they're found, so the output is always the same
         this.extraFiles = new HashMap<>();
         
         this.stop = ControlFlag.CONTINUE_INSTRUMENT;
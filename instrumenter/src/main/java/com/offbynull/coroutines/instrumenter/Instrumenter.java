@@ -24,15 +24,19 @@ import com.offbynull.coroutines.instrumenter.asm.FileSystemClassInformationRepos
 import com.offbynull.coroutines.instrumenter.asm.SimpleClassWriter;
 import com.offbynull.coroutines.instrumenter.asm.SimpleClassNode;
 import com.offbynull.coroutines.instrumenter.asm.SimpleVerifier;
+import com.offbynull.coroutines.user.Continuation;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.lang3.Validate;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
@@ -46,11 +50,18 @@ import org.objectweb.asm.util.TraceMethodVisitor;
 /**
  * Instruments methods in Java classes that are intended to be run as coroutines. Tested with Java 1.4 and Java 8, so hopefully thing should
  * work with all versions of Java inbetween.
+ * <p>
+ * This class is thread-safe so long as the {@link ClassInformationRepository} it's using is. The repository created from a filesystem
+ * classpath is. Instances created from a filesystem classpath keep the JARs on that classpath open until {@link #close() } is called.
  * @author Kasra Faghihi
  */
-public final class Instrumenter {
+public final class Instrumenter implements Closeable {
 
-    private ClassInformationRepository classRepo;
+    private static final int CONSTANT_UTF8_TAG = 1;
+    private static final byte[] CONTINUATION_DESCRIPTOR = Type.getDescriptor(Continuation.class).getBytes(StandardCharsets.US_ASCII);
+
+    private final ClassInformationRepository classRepo;
+    private final FileSystemClassInformationRepository classpathRepo;
 
     /**
      * Constructs a {@link Instrumenter} object from a filesystem classpath (folders and JARs).
@@ -59,12 +70,27 @@ public final class Instrumenter {
      * @throws NullPointerException if any argument is {@code null} or contains {@code null}
      */
     public Instrumenter(List<File> classpath) throws IOException {
+        this(classpath, null);
+    }
+
+    /**
+     * Constructs a {@link Instrumenter} object from a filesystem classpath (folders and JARs), reusing class information saved in an
+     * index file by a previous instance. Call {@link #saveClasspathIndex() } once done instrumenting to update that index file.
+     * @param classpath classpath JARs and folders to use for instrumentation (this is needed by ASM to generate stack map frames).
+     * @param classpathIndexFile index file for class information of classpath JARs (can be {@code null}, can be a file that doesn't exist
+     * yet)
+     * @throws IOException if classes in the classpath could not be loaded up
+     * @throws NullPointerException if {@code classpath} is {@code null} or contains {@code null}
+     * @see FileSystemClassInformationRepository#create(java.util.List, java.io.File)
+     */
+    public Instrumenter(List<File> classpath, File classpathIndexFile) throws IOException {
         Validate.notNull(classpath);
         Validate.noNullElements(classpath);
 
+        classpathRepo = FileSystemClassInformationRepository.create(classpath, classpathIndexFile);
         classRepo = new CompositeClassInformationRepository(
                 new ClassResourceClassInformationRepository(Instrumenter.class.getClassLoader()), // access to core JRE classes
-                FileSystemClassInformationRepository.create(classpath)                            // access to user classes
+                classpathRepo                                                                     // access to user classes
         );
     }
 
@@ -77,6 +103,30 @@ public final class Instrumenter {
         Validate.notNull(repo);
 
         classRepo = repo;
+        classpathRepo = null;
+    }
+
+    /**
+     * Writes out class information parsed from classpath JARs to the index file passed in to
+     * {@link #Instrumenter(java.util.List, java.io.File) }. Does nothing if this instrumenter wasn't created with an index file.
+     * @throws IOException if an IO error occurs
+     */
+    public void saveClasspathIndex() throws IOException {
+        if (classpathRepo != null) {
+            classpathRepo.saveIndex();
+        }
+    }
+
+    /**
+     * Closes the JARs opened for the filesystem classpath passed in to {@link #Instrumenter(java.util.List, java.io.File) }. Does nothing
+     * if this instrumenter wasn't created from a filesystem classpath.
+     * @throws IOException if an IO error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (classpathRepo != null) {
+            classpathRepo.close();
+        }
     }
 
     /**
@@ -88,21 +138,47 @@ public final class Instrumenter {
      * @throws NullPointerException if any argument is {@code null}
      */
     public InstrumentationResult instrument(byte[] input, InstrumentationSettings settings) {
+        return instrument(input, settings, classRepo);
+    }
+
+    /**
+     * Get the class information repository used by this instrumenter.
+     * @return class information repository
+     */
+    ClassInformationRepository getClassInformationRepository() {
+        return classRepo;
+    }
+
+    // Same as instrument(byte[], InstrumentationSettings), but takes the class information repository to use as a parameter. This allows
+    // callers in this package to wrap the repository (e.g. to track which classes were looked up).
+    InstrumentationResult instrument(byte[] input, InstrumentationSettings settings, ClassInformationRepository repo) {
         Validate.notNull(input);
         Validate.notNull(settings);
+        Validate.notNull(repo);
         Validate.isTrue(input.length > 0);
 
 
 
-        // Read class as tree model -- because we're using SimpleClassNode, JSR blocks get inlined
+        // Check the constant pool before doing anything else. A class that has methods that take in a Continuation must have the
+        // Continuation type descriptor somewhere in its constant pool. Most classes don't, and for those there's no point in building the
+        // tree model.
         ClassReader cr = new ClassReader(input);
+        if (!containsUtf8Constant(cr, CONTINUATION_DESCRIPTOR)) {
+            return new InstrumentationResult(input); // class should not be instrumented -- return original data.
+        }
+
+
+
+        // Read class as tree model -- because we're using SimpleClassNode, JSR blocks get inlined
         ClassNode classNode = new SimpleClassNode();
         cr.accept(classNode, 0);
         
         
         
-        // Recompute stackmap frames.
-        classNode = reconstructStackMapFrames(classNode);
+        // Remove stackmap frames. The class gets written out with COMPUTE_FRAMES once instrumented, which generates all stackmap frames
+        // from scratch -- the original frames would only go stale as instructions get added. Nothing is written out and read back in at
+        // this point, so each class is only parsed once and (only if it gets instrumented) written once.
+        removeStackMapFrames(classNode);
 
 
 
@@ -115,7 +191,7 @@ public final class Instrumenter {
             new SerializationPostInstrumentationPass(), // add fields needed for serializer/deserializer to identify versioning info
             new AutoSerializableInstrumentationPass()   // make class serializable + give serializationuid
         };
-        InstrumentationState passState = new InstrumentationState(settings, classRepo);
+        InstrumentationState passState = new InstrumentationState(settings, repo);
 
         for (InstrumentationPass pass : passes) {
             pass.pass(classNode, passState);
@@ -139,7 +215,7 @@ public final class Instrumenter {
         // RE-ENABLE ONLY IF JVM COMPLAINS ABOUT INSTRUMENTED CLASSES AND YOU NEED TO DEBUG, KEEP COMMENTED OUT FOR PRODUCTION
         // verifyClassIntegrity(classNode);
 
-        ClassWriter cw = new SimpleClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES, classRepo);
+        ClassWriter cw = new SimpleClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES, repo);
         classNode.accept(cw);
         
         byte[] classData = cw.toByteArray();
@@ -149,6 +225,31 @@ public final class Instrumenter {
     }
 
 
+    private static boolean containsUtf8Constant(ClassReader cr, byte[] needle) {
+        // Constant pool entries are scanned in their raw form (no strings get decoded). Needle is expected to be ASCII, which is encoded
+        // the same way in the class file's modified UTF-8.
+        for (int i = 1; i < cr.getItemCount(); i++) {
+            int offset = cr.getItem(i); // offset of entry + 1 (skips over tag), or 0 if index is 2nd slot of a long/double
+            if (offset == 0 || cr.readByte(offset - 1) != CONSTANT_UTF8_TAG) {
+                continue;
+            }
+            
+            int len = cr.readUnsignedShort(offset);
+            int start = offset + 2;
+            int end = start + len - needle.length;
+            for (int j = start; j <= end; j++) {
+                int k = 0;
+                while (k < needle.length && cr.readByte(j + k) == needle[k]) {
+                    k++;
+                }
+                if (k == needle.length) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private void verifyClassIntegrity(ClassNode classNode) {
         // Do not COMPUTE_FRAMES. If you COMPUTE_FRAMES and you pop too many items off the stack or do other weird things that mess up the
         // stack map frames, it'll crash on classNode.accept(cw).
@@ -191,8 +292,7 @@ public final class Instrumenter {
         }
     }
     
-    private ClassNode reconstructStackMapFrames(ClassNode classNode) {
-        // Remove stackmap frames from method
+    private void removeStackMapFrames(ClassNode classNode) {
         for (MethodNode methodNode : classNode.methods) {
             if (methodNode.instructions == null) {
                 continue;
@@ -207,19 +307,5 @@ public final class Instrumenter {
                 insn = nextInsn;
             }
         }
-        
-        // Write out the class (recomputes stackmap frames)
-        ClassWriter cw = new SimpleClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES, classRepo);
-        classNode.accept(cw);
-        
-        byte[] temp = cw.toByteArray();
-        
-        // Read the class back in
-        ClassReader cr = new ClassReader(temp);
-        ClassNode newClassNode = new SimpleClassNode();
-        cr.accept(newClassNode, 0);
-        
-        // Return the class with newly computed stackmap frames
-        return newClassNode;
     }
 }
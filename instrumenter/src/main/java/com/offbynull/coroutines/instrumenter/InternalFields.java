@@ -54,4 +54,12 @@ final class InternalFields {
     static final int INSTRUMENTED_METHODID_FIELD_ACCESS = Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_STATIC;
     static final Type INSTRUMENTED_METHODID_FIELD_TYPE = Type.INT_TYPE;
     static final Integer INSTRUMENTED_METHODID_FIELD_VALUE = 0;
+
+    // The following consts are used to generate the methods that continuation points call in to when saving state (only if outlined state
+    // saving is on). One of these methods is generated per continuation point.
+    static final int OUTLINED_SAVESTATE_METHOD_ACCESS = Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC;
+    static String getOutlinedSaveStateMethodName(int methodId, int continuationPointId) {
+        String methodIdStr = Integer.toString(methodId).replace('-', 'N');
+        return "__COROUTINES_SAVE_" + methodIdStr + "_" + continuationPointId;
+    }
 }
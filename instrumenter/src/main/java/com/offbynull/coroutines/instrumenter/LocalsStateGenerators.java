@@ -76,6 +76,14 @@ final class LocalsStateGenerators {
             BasicValue basicValue = frame.getLocal(i);
             Type type = basicValue.getType();
 
+            // If basicValue is a DeadValue, this slot had a value that never gets read again (see MethodAnalyzer), so it wasn't saved. Put
+            // the default value for its type in to that slot rather than leaving whatever was there before.
+            if (basicValue instanceof DeadValue) {
+                ret.add(debugMarker(markerType, "Putting default value at " + i));
+                ret.add(loadDefaultValue(((DeadValue) basicValue).getDeadType(), i));
+                continue;
+            }
+
             // If type == null, basicValue is pointing to uninitialized var -- basicValue.toString() will return ".". This means that this
             // slot contains nothing to load. So, skip this slot if we encounter it (such that it will remain uninitialized).
             if (type == null) {
@@ -155,6 +163,42 @@ final class LocalsStateGenerators {
         return ret;
     }
     
+    private static InsnList loadDefaultValue(Type type, int idx) {
+        InsnList ret = new InsnList();
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+            case Type.BYTE:
+            case Type.SHORT:
+            case Type.CHAR:
+            case Type.INT:
+                ret.add(new InsnNode(Opcodes.ICONST_0));
+                ret.add(new VarInsnNode(Opcodes.ISTORE, idx));
+                break;
+            case Type.FLOAT:
+                ret.add(new InsnNode(Opcodes.FCONST_0));
+                ret.add(new VarInsnNode(Opcodes.FSTORE, idx));
+                break;
+            case Type.LONG:
+                ret.add(new InsnNode(Opcodes.LCONST_0));
+                ret.add(new VarInsnNode(Opcodes.LSTORE, idx));
+                break;
+            case Type.DOUBLE:
+                ret.add(new InsnNode(Opcodes.DCONST_0));
+                ret.add(new VarInsnNode(Opcodes.DSTORE, idx));
+                break;
+            case Type.ARRAY:
+            case Type.OBJECT:
+                ret.add(new InsnNode(Opcodes.ACONST_NULL));
+                ret.add(new VarInsnNode(Opcodes.ASTORE, idx));
+                break;
+            case Type.METHOD:
+            case Type.VOID:
+            default:
+                throw new IllegalStateException();
+        }
+        return ret;
+    }
+
     /**
      * Generates instructions to save the local variables table.
      * @param markerType debug marker type
@@ -164,6 +208,23 @@ final class LocalsStateGenerators {
      * @throws NullPointerException if any argument is {@code null}
      */
     public static InsnList saveLocals(MarkerType markerType, StorageVariables storageVars, Frame<BasicValue> frame) {
+        return saveLocals(markerType, storageVars, frame, true);
+    }
+    
+    /**
+     * Generates instructions to save the local variables table, optionally without creating the storage arrays. If
+     * {@code allocateStorageArrays} is {@code false}, the storage variables must already point to arrays large enough to hold the locals
+     * being saved (e.g. arrays created via {@link #allocateLocalsStorage(MarkerType, StorageVariables, Frame) } or arrays unpacked from a
+     * recycled method state).
+     * @param markerType debug marker type
+     * @param storageVars variables to store locals in to
+     * @param frame execution frame at the instruction where the local variables table is to be saved
+     * @param allocateStorageArrays if {@code true}, storage arrays are created before saving
+     * @return instructions to save the local variables table in to an array
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static InsnList saveLocals(MarkerType markerType, StorageVariables storageVars, Frame<BasicValue> frame,
+            boolean allocateStorageArrays) {
         Validate.notNull(markerType);
         Validate.notNull(storageVars);
         Validate.notNull(frame);
@@ -185,40 +246,10 @@ final class LocalsStateGenerators {
 
         InsnList ret = new InsnList();
                 
-        // Create storage arrays and save them in respective storage vars
-        ret.add(merge(
-                debugMarker(markerType, "Saving locals"),
-                mergeIf(intsVar != null, () -> new Object[] {
-                    debugMarker(markerType, "Generating ints container (" + storageSizes.getIntsSize() + ")"),
-                    new LdcInsnNode(storageSizes.getIntsSize()),
-                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_INT),
-                    new VarInsnNode(Opcodes.ASTORE, intsVar.getIndex())
-                }),
-                mergeIf(floatsVar != null, () -> new Object[] {
-                    debugMarker(markerType, "Generating floats container (" + storageSizes.getFloatsSize() + ")"),
-                    new LdcInsnNode(storageSizes.getFloatsSize()),
-                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_FLOAT),
-                    new VarInsnNode(Opcodes.ASTORE, floatsVar.getIndex())
-                }),
-                mergeIf(longsVar != null, () -> new Object[] {
-                    debugMarker(markerType, "Generating longs container (" + storageSizes.getLongsSize() + ")"),
-                    new LdcInsnNode(storageSizes.getLongsSize()),
-                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_LONG),
-                    new VarInsnNode(Opcodes.ASTORE, longsVar.getIndex())
-                }),
-                mergeIf(doublesVar != null, () -> new Object[] {
-                    debugMarker(markerType, "Generating doubles container (" + storageSizes.getDoublesSize() + ")"),
-                    new LdcInsnNode(storageSizes.getDoublesSize()),
-                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_DOUBLE),
-                    new VarInsnNode(Opcodes.ASTORE, doublesVar.getIndex())
-                }),
-                mergeIf(objectsVar != null, () -> new Object[] {
-                    debugMarker(markerType, "Generating objects container (" + storageSizes.getObjectsSize() + ")"),
-                    new LdcInsnNode(storageSizes.getObjectsSize()),
-                    new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"),
-                    new VarInsnNode(Opcodes.ASTORE, objectsVar.getIndex())
-                })
-        ));
+        ret.add(debugMarker(markerType, "Saving locals"));
+        if (allocateStorageArrays) {
+            ret.add(allocateLocalsStorage(markerType, storageVars, frame));
+        }
 
         // Save the locals
         for (int i = 0; i < frame.getLocals(); i++) {
@@ -298,6 +329,66 @@ final class LocalsStateGenerators {
         return ret;
     }
 
+    /**
+     * Generates instructions to create the storage arrays needed to save the local variables table.
+     * @param markerType debug marker type
+     * @param storageVars variables to assign the storage arrays to
+     * @param frame execution frame at the instruction where the local variables table is to be saved
+     * @return instructions to create the storage arrays
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static InsnList allocateLocalsStorage(MarkerType markerType, StorageVariables storageVars, Frame<BasicValue> frame) {
+        Validate.notNull(markerType);
+        Validate.notNull(storageVars);
+        Validate.notNull(frame);
+
+        Variable intsVar = storageVars.getIntStorageVar();
+        Variable floatsVar = storageVars.getFloatStorageVar();
+        Variable longsVar = storageVars.getLongStorageVar();
+        Variable doublesVar = storageVars.getDoubleStorageVar();
+        Variable objectsVar = storageVars.getObjectStorageVar();
+
+        StorageSizes storageSizes = computeSizes(frame);
+
+        InsnList ret = new InsnList();
+
+        // Create storage arrays and save them in respective storage vars
+        ret.add(merge(
+                mergeIf(intsVar != null, () -> new Object[] {
+                    debugMarker(markerType, "Generating ints container (" + storageSizes.getIntsSize() + ")"),
+                    new LdcInsnNode(storageSizes.getIntsSize()),
+                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_INT),
+                    new VarInsnNode(Opcodes.ASTORE, intsVar.getIndex())
+                }),
+                mergeIf(floatsVar != null, () -> new Object[] {
+                    debugMarker(markerType, "Generating floats container (" + storageSizes.getFloatsSize() + ")"),
+                    new LdcInsnNode(storageSizes.getFloatsSize()),
+                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_FLOAT),
+                    new VarInsnNode(Opcodes.ASTORE, floatsVar.getIndex())
+                }),
+                mergeIf(longsVar != null, () -> new Object[] {
+                    debugMarker(markerType, "Generating longs container (" + storageSizes.getLongsSize() + ")"),
+                    new LdcInsnNode(storageSizes.getLongsSize()),
+                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_LONG),
+                    new VarInsnNode(Opcodes.ASTORE, longsVar.getIndex())
+                }),
+                mergeIf(doublesVar != null, () -> new Object[] {
+                    debugMarker(markerType, "Generating doubles container (" + storageSizes.getDoublesSize() + ")"),
+                    new LdcInsnNode(storageSizes.getDoublesSize()),
+                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_DOUBLE),
+                    new VarInsnNode(Opcodes.ASTORE, doublesVar.getIndex())
+                }),
+                mergeIf(objectsVar != null, () -> new Object[] {
+                    debugMarker(markerType, "Generating objects container (" + storageSizes.getObjectsSize() + ")"),
+                    new LdcInsnNode(storageSizes.getObjectsSize()),
+                    new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"),
+                    new VarInsnNode(Opcodes.ASTORE, objectsVar.getIndex())
+                })
+        ));
+
+        return ret;
+    }
+    
     /**
      * Compute sizes required for the storage arrays that will contain the local variables table at this frame.
      * @param frame frame to compute for
@@ -17,6 +17,8 @@
 package com.offbynull.coroutines.instrumenter;
 
 import com.offbynull.coroutines.instrumenter.asm.ClassInformationRepository;
+import static com.offbynull.coroutines.instrumenter.asm.LivenessUtils.findLiveLocals;
+import static com.offbynull.coroutines.instrumenter.asm.MethodInvokeUtils.getArgumentCountRequiredForInvocation;
 import static com.offbynull.coroutines.instrumenter.asm.MethodInvokeUtils.getReturnTypeOfInvocation;
 import static com.offbynull.coroutines.instrumenter.asm.SearchUtils.findInvocationsOf;
 import static com.offbynull.coroutines.instrumenter.asm.SearchUtils.findInvocationsWithParameter;
@@ -30,6 +32,9 @@ import com.offbynull.coroutines.user.Continuation;
 import com.offbynull.coroutines.user.LockState;
 import com.offbynull.coroutines.user.MethodState;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.BitSet;
+import static java.util.Collections.emptyList;
 import java.util.LinkedList;
 import java.util.List;
 import static org.apache.commons.collections4.CollectionUtils.union;
@@ -52,6 +57,7 @@ import org.objectweb.asm.tree.analysis.Frame;
 final class MethodAnalyzer {
     
     private static final Type CONTINUATION_CLASS_TYPE = Type.getType(Continuation.class);
+    private static final BasicValue NULL_VALUE = new BasicValue(Type.getObjectType("null")); // how SimpleVerifier types null constants
     private static final Method CONTINUATION_SUSPEND_METHOD = MethodUtils.getAccessibleMethod(Continuation.class, "suspend");
     
     private final ClassInformationRepository classInfoRepo;
@@ -87,7 +93,13 @@ final class MethodAnalyzer {
         ///////////////////////////////////////////////////////////////////////////////////////////
         // CREATE METHOD SIGNATURE
         ///////////////////////////////////////////////////////////////////////////////////////////
-        int methodId = new MethodHasher().generateMethodHash(classNode, methodNode);
+        // Settings that change which locals/operands get saved change the layout of the saved state, so they're mixed in to the method
+        // id. That way state saved by a method instrumented one way can't be silently loaded in to the same method instrumented the other
+        // way. Nothing is mixed in if neither is enabled, so method ids are the same as they were before these settings existed.
+        boolean pruneDeadLocals = settings.isDeadLocalPruning() && !settings.isDebugMode();
+        boolean pruneInvokeArguments = settings.isInvokeArgumentPruning() && !settings.isDebugMode();
+        String layoutVariant = (pruneDeadLocals ? "L" : "") + (pruneInvokeArguments ? "A" : "");
+        int methodId = new MethodHasher().generateMethodHash(classNode, methodNode, layoutVariant);
         MethodSignature signature = new MethodSignature(methodId, classNode.name, methodNode.name,
                 Type.getMethodType(methodNode.desc));
         
@@ -134,6 +146,43 @@ final class MethodAnalyzer {
         }
 
 
+        // The analyzer doesn't produce frames for instructions that are unreachable. Unreachable instructions never run and the class
+        // writer replaces them when the instrumented class gets written out (COMPUTE_FRAMES swaps unreachable code for NOPs followed by an
+        // ATHROW), so ignore any suspend/continuation/synchronization instructions within them. If that leaves no continuation points, the
+        // method doesn't need to be instrumented.
+        suspendInvocationInsnNodes = removeUnreachable(methodNode, frames, suspendInvocationInsnNodes);
+        contInvocationInsnNodes = removeUnreachable(methodNode, frames, contInvocationInsnNodes);
+        monitorInsnNodes = removeUnreachable(methodNode, frames, monitorInsnNodes);
+        if (suspendInvocationInsnNodes.isEmpty() && contInvocationInsnNodes.isEmpty()) {
+            return null;
+        }
+
+
+
+
+        ///////////////////////////////////////////////////////////////////////////////////////////
+        // REMOVE DEAD LOCALS FROM FRAMES AT SUSPEND / CONTINUATION POINTS
+        ///////////////////////////////////////////////////////////////////////////////////////////
+
+        // Locals that are never read again after a continuation point (before being overwritten) don't need to be saved. Replace them
+        // with DeadValues in the frame for that continuation point -- everything downstream (storage array sizes, save generators,
+        // serialization details) treats those as uninitialized locals and skips them, and the load generator restores them as the default
+        // value for their type.
+        //
+        // This is opt-in because it changes the layout of the saved locals. Skip it in debug mode. The point of debug mode is to have all
+        // locals visible when stepping through with a debugger.
+        if (pruneDeadLocals) {
+            BitSet[] liveLocals = findLiveLocals(methodNode);
+            int contArgIdx = getLocalVariableIndexOfContinuationParameter(methodNode);
+            boolean isStatic = (methodNode.access & Opcodes.ACC_STATIC) == Opcodes.ACC_STATIC;
+            for (AbstractInsnNode invokeInsnNode : union(contInvocationInsnNodes, suspendInvocationInsnNodes)) {
+                int instructionIndex = methodNode.instructions.indexOf(invokeInsnNode);
+                Frame<BasicValue> frame = frames[instructionIndex];
+                frames[instructionIndex] = removeDeadLocals(frame, liveLocals[instructionIndex], contArgIdx, isStatic);
+            }
+        }
+
+
 
 
         ///////////////////////////////////////////////////////////////////////////////////////////
@@ -167,13 +216,25 @@ final class MethodAnalyzer {
             LineNumberNode lineNumberNode = findLineNumberForInstruction(methodNode.instructions, contInvocationInsnNode);
             Integer lineNumber = lineNumberNode != null ? lineNumberNode.line : null;
 
+            // Object arguments being passed in to the invoked method (other than the Continuation) end up as locals in the invoked method.
+            // The invoked method saves those locals itself (if it still needs them) and restores them before it reads any of them, so
+            // there's no need to save them again here as part of the operand stack. Mark them as null in the frame used for saving/loading
+            // so that they get popped off on save and nulls get passed in when the method is re-invoked on restore.
+            //
+            // This is opt-in because it changes the layout of the saved operand stack. Skip it in debug mode. The point of debug mode is to
+            // have all arguments visible when stepping through with a debugger.
+            Frame<BasicValue> savedFrame = frame;
+            if (pruneInvokeArguments) {
+                savedFrame = removeArgumentsRestoredByInvokedMethod(frame, (MethodInsnNode) contInvocationInsnNode);
+            }
+
             ContinuationPoint continuationPoint;
             if (withinTryCatch) {
                 continuationPoint = new TryCatchInvokeContinuationPoint(
-                        lineNumber, (MethodInsnNode) contInvocationInsnNode, frame);
+                        lineNumber, (MethodInsnNode) contInvocationInsnNode, savedFrame, frame);
             } else {
                 continuationPoint = new NormalInvokeContinuationPoint(
-                        lineNumber, (MethodInsnNode) contInvocationInsnNode, frame);
+                        lineNumber, (MethodInsnNode) contInvocationInsnNode, savedFrame, frame);
             }
             continuationPoints.add(continuationPoint);
         }
@@ -319,8 +380,18 @@ final class MethodAnalyzer {
         // Create variables to locals and operand stack storage containers -- these must exist
         StorageContainerVariables storageContainerVars = allocateStorageContainerVariableSlots(varTable);
 
+        // Create variables to cache invocation arguments in (instead of temporary storage arrays) -- only create if method state reuse is
+        // on, otherwise it'll be empty
+        ArgumentCacheVariables argCacheVars;
+        if (settings.isMethodStateReuse()) {
+            argCacheVars = allocateArgumentCacheVariableSlots(varTable, contInvocationInsnNodes, methodNode, frames);
+        } else {
+            argCacheVars = new ArgumentCacheVariables(emptyList(), emptyList(), emptyList(), emptyList(), emptyList());
+        }
+
         // Create variables to cache return values and thrown exceptions of invocations -- only create ones we need
-        CacheVariables cacheVars = allocateCacheVariableSlots(varTable, invocationReturnTypes, invocationFoundWrappedInTryCatch);
+        CacheVariables cacheVars = allocateCacheVariableSlots(varTable, invocationReturnTypes, invocationFoundWrappedInTryCatch,
+                argCacheVars);
         
         // Create variables to for holding on to monitors -- only create if we need them
         LockVariables lockVars = allocateLockVariableSlots(varTable, !synchPoints.isEmpty());
@@ -346,6 +417,55 @@ final class MethodAnalyzer {
                 lockVars);
     }
     
+    private List<AbstractInsnNode> removeUnreachable(MethodNode methodNode, Frame<BasicValue>[] frames, List<AbstractInsnNode> insnNodes) {
+        List<AbstractInsnNode> ret = new ArrayList<>(insnNodes.size());
+        for (AbstractInsnNode insnNode : insnNodes) {
+            if (frames[methodNode.instructions.indexOf(insnNode)] != null) {
+                ret.add(insnNode);
+            }
+        }
+        return ret;
+    }
+    
+    private Frame<BasicValue> removeDeadLocals(Frame<BasicValue> frame, BitSet liveLocals, int contArgIdx, boolean isStatic) {
+        Frame<BasicValue> ret = new Frame<>(frame);
+        for (int i = 0; i < ret.getLocals(); i++) {
+            // Always keep the continuation object -- the instrumented code relies on it even if the original code doesn't. Always keep the
+            // this pointer as well -- it's cheap to save and debuggers/stack traces expect it to be there.
+            if (i == contArgIdx || (!isStatic && i == 0) || liveLocals.get(i)) {
+                continue;
+            }
+
+            Type type = ret.getLocal(i).getType();
+            if (type == null) {
+                continue; // already uninitialized (or the second half of a long/double)
+            }
+            
+            ret.setLocal(i, new DeadValue(type));
+        }
+        
+        return ret;
+    }
+    
+    private Frame<BasicValue> removeArgumentsRestoredByInvokedMethod(Frame<BasicValue> frame, MethodInsnNode invokeInsnNode) {
+        Type[] argumentTypes = Type.getArgumentTypes(invokeInsnNode.desc);
+        int argumentsStartIdx = frame.getStackSize() - argumentTypes.length; // if not static, the object being invoked is right before this
+
+        Frame<BasicValue> ret = new Frame<>(frame);
+        for (int i = 0; i < argumentTypes.length; i++) {
+            // Always keep primitives -- we can't push nulls for those. Always keep the continuation object -- the invoked method needs it
+            // to figure out that it's restoring.
+            int sort = argumentTypes[i].getSort();
+            if ((sort != Type.OBJECT && sort != Type.ARRAY) || argumentTypes[i].equals(CONTINUATION_CLASS_TYPE)) {
+                continue;
+            }
+
+            ret.setStack(argumentsStartIdx + i, NULL_VALUE);
+        }
+
+        return ret;
+    }
+    
     private int getLocalVariableIndexOfContinuationParameter(MethodNode methodNode) {
         // If it is NOT static, the first index in the local variables table is always the "this" pointer, followed by the arguments passed
         // in to the method.
@@ -372,7 +492,8 @@ final class MethodAnalyzer {
     private CacheVariables allocateCacheVariableSlots(
             VariableTable varTable,
             TypeTracker invocationReturnTypes,
-            boolean invocationFoundWrappedInTryCatch) {
+            boolean invocationFoundWrappedInTryCatch,
+            ArgumentCacheVariables argCacheVars) {
         Variable intReturnCacheVar = null;
         Variable longReturnCacheVar = null;
         Variable floatReturnCacheVar = null;
@@ -404,7 +525,62 @@ final class MethodAnalyzer {
                 floatReturnCacheVar,
                 doubleReturnCacheVar,
                 objectReturnCacheVar,
-                throwableCacheVar);
+                throwableCacheVar,
+                argCacheVars);
+    }
+    
+    private ArgumentCacheVariables allocateArgumentCacheVariableSlots(
+            VariableTable varTable,
+            List<AbstractInsnNode> contInvocationInsnNodes,
+            MethodNode methodNode,
+            Frame<BasicValue>[] frames) {
+        // Each invocation only needs its own arguments cached, and only up until it returns, so the same variables can be shared by all
+        // invocations. Figure out the most of each type any one invocation needs.
+        int maxInts = 0;
+        int maxLongs = 0;
+        int maxFloats = 0;
+        int maxDoubles = 0;
+        int maxObjects = 0;
+        for (AbstractInsnNode invokeInsnNode : contInvocationInsnNodes) {
+            int instructionIndex = methodNode.instructions.indexOf(invokeInsnNode);
+            Frame<BasicValue> frame = frames[instructionIndex];
+            int argCount = getArgumentCountRequiredForInvocation(invokeInsnNode);
+            
+            StorageSizes argSizes = OperandStackStateGenerators.computeSizes(frame, frame.getStackSize() - argCount, argCount);
+            maxInts = Math.max(maxInts, argSizes.getIntsSize());
+            maxLongs = Math.max(maxLongs, argSizes.getLongsSize());
+            maxFloats = Math.max(maxFloats, argSizes.getFloatsSize());
+            maxDoubles = Math.max(maxDoubles, argSizes.getDoublesSize());
+            maxObjects = Math.max(maxObjects, argSizes.getObjectsSize());
+        }
+        
+        List<Variable> intCacheVars = new ArrayList<>();
+        List<Variable> longCacheVars = new ArrayList<>();
+        List<Variable> floatCacheVars = new ArrayList<>();
+        List<Variable> doubleCacheVars = new ArrayList<>();
+        List<Variable> objectCacheVars = new ArrayList<>();
+        for (int i = 0; i < maxInts; i++) {
+            intCacheVars.add(varTable.acquireExtra(Integer.TYPE));
+        }
+        for (int i = 0; i < maxLongs; i++) {
+            longCacheVars.add(varTable.acquireExtra(Long.TYPE));
+        }
+        for (int i = 0; i < maxFloats; i++) {
+            floatCacheVars.add(varTable.acquireExtra(Float.TYPE));
+        }
+        for (int i = 0; i < maxDoubles; i++) {
+            doubleCacheVars.add(varTable.acquireExtra(Double.TYPE));
+        }
+        for (int i = 0; i < maxObjects; i++) {
+            objectCacheVars.add(varTable.acquireExtra(Object.class));
+        }
+        
+        return new ArgumentCacheVariables(
+                intCacheVars,
+                longCacheVars,
+                floatCacheVars,
+                doubleCacheVars,
+                objectCacheVars);
     }
     
     private StorageVariables allocateStorageVariableSlots(
@@ -39,11 +39,21 @@ import org.objectweb.asm.tree.MethodNode;
 final class MethodHasher {
 
     int generateMethodHash(ClassNode classNode, MethodNode methodNode) {
+        return generateMethodHash(classNode, methodNode, "");
+    }
+
+    // variant is mixed in to the hash if it isn't empty -- used to get a different id for the same method if it's instrumented such that
+    // the layout of its saved state is different
+    int generateMethodHash(ClassNode classNode, MethodNode methodNode, String variant) {
         Validate.notNull(classNode);
         Validate.notNull(methodNode);
+        Validate.notNull(variant);
         Validate.isTrue(classNode.methods.contains(methodNode)); // sanity check
 
         String signature = classNode.name + '\u0000' + methodNode.name + '\u0000' + methodNode.desc;
+        if (!variant.isEmpty()) {
+            signature += '\u0000' + variant;
+        }
         byte[] signatureBytes = signature.getBytes(StandardCharsets.UTF_8);
         byte[] contentBytes = dumpBytecode(methodNode);
 
@@ -18,6 +18,9 @@ package com.offbynull.coroutines.instrumenter;
 
 import static com.offbynull.coroutines.instrumenter.ContinuationGenerators.entryPointLoader;
 import static com.offbynull.coroutines.instrumenter.ContinuationGenerators.saveState;
+import static com.offbynull.coroutines.instrumenter.ContinuationGenerators.outlinedSaveStateMethod;
+import static com.offbynull.coroutines.instrumenter.ContinuationGenerators.outlinedSaveStateMethodBody;
+import com.offbynull.coroutines.instrumenter.asm.VariableTable;
 import java.util.List;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.InsnList;
@@ -60,8 +63,20 @@ final class MethodInstrumenter {
         InsnList entryPoint = entryPointLoader(attrs);
         methodNode.instructions.insert(entryPoint);
         
-        // Add continuation save points
+        // Add outlined save methods (only generated if outlined state saving is on) -- continuation save points call in to these
         List<ContinuationPoint> continuationPoints = attrs.getContinuationPoints();
+        for (int i = 0; i < continuationPoints.size(); i++) {
+            MethodNode saveMethodNode = outlinedSaveStateMethod(attrs, i);
+            if (saveMethodNode == null) {
+                continue;
+            }
+            
+            classNode.methods.add(saveMethodNode);
+            VariableTable saveMethodVarTable = new VariableTable(classNode, saveMethodNode);
+            saveMethodNode.instructions.add(outlinedSaveStateMethodBody(attrs, i, saveMethodVarTable));
+        }
+        
+        // Add continuation save points
         for (int i = 0; i < continuationPoints.size(); i++) {
             ContinuationPoint cp = continuationPoints.get(i);
 
@@ -28,20 +28,25 @@ class NormalInvokeContinuationPoint implements ContinuationPoint {
     private final MethodInsnNode invokeInstruction;
     private final LabelNode continueExecutionLabel;
     private final Frame<BasicValue> frame;
+    private final Frame<BasicValue> invokeFrame;
 
     NormalInvokeContinuationPoint(
             Integer lineNumber,
             MethodInsnNode invokeInstruction,
-            Frame<BasicValue> frame) {
+            Frame<BasicValue> frame,
+            Frame<BasicValue> invokeFrame) {
         // lineNumber is null if it doesn't exist
         Validate.notNull(invokeInstruction);
         // stateModifierMethod is null if it doesn't exist
         Validate.notNull(frame);
+        Validate.notNull(invokeFrame);
+        Validate.isTrue(frame.getStackSize() == invokeFrame.getStackSize());
 
         this.lineNumber = lineNumber;
         this.invokeInstruction = invokeInstruction;
         this.continueExecutionLabel = new LabelNode();
         this.frame = frame;
+        this.invokeFrame = invokeFrame;
     }
 
     @Override
@@ -63,5 +68,11 @@ class NormalInvokeContinuationPoint implements ContinuationPoint {
     public Frame<BasicValue> getFrame() {
         return frame;
     }
+
+    // Same as getFrame(), except that invocation arguments which don't get saved (because the invoked method restores them itself) are
+    // still listed with their real types. Use this for the arguments that need to be on the stack when the method is invoked normally.
+    public Frame<BasicValue> getInvokeFrame() {
+        return invokeFrame;
+    }
     
 }
@@ -295,6 +295,28 @@ final class OperandStackStateGenerators {
      * or if {@code count} is larger than {@code top} (or is negative)
      */
     public static InsnList saveOperandStack(MarkerType markerType, StorageVariables storageVars, Frame<BasicValue> frame, int count) {
+        return saveOperandStack(markerType, storageVars, frame, count, true);
+    }
+
+    /**
+     * Generates instructions to save a certain number of items from the top of the operand stack, optionally without creating the storage
+     * arrays. If {@code allocateStorageArrays} is {@code false}, the storage variables must already point to arrays large enough to hold
+     * the items being saved (e.g. arrays created via {@link #allocateOperandStackStorage(MarkerType, StorageVariables, Frame, int) } or
+     * arrays unpacked from a recycled method state).
+     * <p>
+     * The instructions generated here expect the operand stack to be fully loaded. The stack items specified by {@code frame} must actually
+     * all be on the operand stack.
+     * @param markerType debug marker type
+     * @param storageVars variables to store operand stack in to
+     * @param frame execution frame at the instruction where the operand stack is to be saved
+     * @param count number of items to store from the stack
+     * @param allocateStorageArrays if {@code true}, storage arrays are created before saving
+     * @return instructions to save the operand stack to the storage variables
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code count} is larger than the number of items in the stack at {@code frame} (or is negative)
+     */
+    public static InsnList saveOperandStack(MarkerType markerType, StorageVariables storageVars, Frame<BasicValue> frame, int count,
+            boolean allocateStorageArrays) {
         Validate.notNull(markerType);
         Validate.notNull(storageVars);
         Validate.notNull(frame);
@@ -319,40 +341,10 @@ final class OperandStackStateGenerators {
 
         InsnList ret = new InsnList();
                 
-        // Create stack storage arrays and save them
-        ret.add(merge(
-                debugMarker(markerType, "Saving operand stack (" + count + " items)"),
-                mergeIf(storageSizes.getIntsSize() > 0, () -> new Object[] {
-                    debugMarker(markerType, "Generating ints container (" + storageSizes.getIntsSize() + ")"),
-                    new LdcInsnNode(storageSizes.getIntsSize()),
-                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_INT),
-                    new VarInsnNode(Opcodes.ASTORE, intsVar.getIndex())
-                }),
-                mergeIf(storageSizes.getFloatsSize() > 0, () -> new Object[] {
-                    debugMarker(markerType, "Generating floats container (" + storageSizes.getFloatsSize() + ")"),
-                    new LdcInsnNode(storageSizes.getFloatsSize()),
-                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_FLOAT),
-                    new VarInsnNode(Opcodes.ASTORE, floatsVar.getIndex())
-                }),
-                mergeIf(storageSizes.getLongsSize() > 0, () -> new Object[] {
-                    debugMarker(markerType, "Generating longs container (" + storageSizes.getLongsSize() + ")"),
-                    new LdcInsnNode(storageSizes.getLongsSize()),
-                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_LONG),
-                    new VarInsnNode(Opcodes.ASTORE, longsVar.getIndex())
-                }),
-                mergeIf(storageSizes.getDoublesSize() > 0, () -> new Object[] {
-                    debugMarker(markerType, "Generating doubles container (" + storageSizes.getDoublesSize() + ")"),
-                    new LdcInsnNode(storageSizes.getDoublesSize()),
-                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_DOUBLE),
-                    new VarInsnNode(Opcodes.ASTORE, doublesVar.getIndex())
-                }),
-                mergeIf(storageSizes.getObjectsSize() > 0, () -> new Object[] {
-                    debugMarker(markerType, "Generating objects container (" + storageSizes.getObjectsSize() + ")"),
-                    new LdcInsnNode(storageSizes.getObjectsSize()),
-                    new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"),
-                    new VarInsnNode(Opcodes.ASTORE, objectsVar.getIndex())
-                })
-        ));
+        ret.add(debugMarker(markerType, "Saving operand stack (" + count + " items)"));
+        if (allocateStorageArrays) {
+            ret.add(allocateOperandStackStorage(markerType, storageVars, frame, count));
+        }
 
         // Save the stack
         int start = frame.getStackSize() - 1;
@@ -445,6 +437,256 @@ final class OperandStackStateGenerators {
     }
     
 
+    /**
+     * Generates instructions to create the storage arrays needed to save a certain number of items from the top of the operand stack.
+     * Storage arrays that would end up empty aren't created.
+     * @param markerType debug marker type
+     * @param storageVars variables to assign the storage arrays to
+     * @param frame execution frame at the instruction where the operand stack is to be saved
+     * @param count number of items from the top of the stack that the storage arrays need to hold
+     * @return instructions to create the storage arrays
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code count} is larger than the number of items in the stack at {@code frame} (or is negative)
+     */
+    public static InsnList allocateOperandStackStorage(MarkerType markerType, StorageVariables storageVars, Frame<BasicValue> frame,
+            int count) {
+        Validate.notNull(markerType);
+        Validate.notNull(storageVars);
+        Validate.notNull(frame);
+        Validate.isTrue(count >= 0);
+        Validate.isTrue(count <= frame.getStackSize());
+
+        Variable intsVar = storageVars.getIntStorageVar();
+        Variable floatsVar = storageVars.getFloatStorageVar();
+        Variable longsVar = storageVars.getLongStorageVar();
+        Variable doublesVar = storageVars.getDoubleStorageVar();
+        Variable objectsVar = storageVars.getObjectStorageVar();
+
+        StorageSizes storageSizes = computeSizes(frame, frame.getStackSize() - count, count);
+
+        InsnList ret = new InsnList();
+
+        // Create stack storage arrays and save them in respective storage vars
+        ret.add(merge(
+                mergeIf(storageSizes.getIntsSize() > 0, () -> new Object[] {
+                    debugMarker(markerType, "Generating ints container (" + storageSizes.getIntsSize() + ")"),
+                    new LdcInsnNode(storageSizes.getIntsSize()),
+                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_INT),
+                    new VarInsnNode(Opcodes.ASTORE, intsVar.getIndex())
+                }),
+                mergeIf(storageSizes.getFloatsSize() > 0, () -> new Object[] {
+                    debugMarker(markerType, "Generating floats container (" + storageSizes.getFloatsSize() + ")"),
+                    new LdcInsnNode(storageSizes.getFloatsSize()),
+                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_FLOAT),
+                    new VarInsnNode(Opcodes.ASTORE, floatsVar.getIndex())
+                }),
+                mergeIf(storageSizes.getLongsSize() > 0, () -> new Object[] {
+                    debugMarker(markerType, "Generating longs container (" + storageSizes.getLongsSize() + ")"),
+                    new LdcInsnNode(storageSizes.getLongsSize()),
+                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_LONG),
+                    new VarInsnNode(Opcodes.ASTORE, longsVar.getIndex())
+                }),
+                mergeIf(storageSizes.getDoublesSize() > 0, () -> new Object[] {
+                    debugMarker(markerType, "Generating doubles container (" + storageSizes.getDoublesSize() + ")"),
+                    new LdcInsnNode(storageSizes.getDoublesSize()),
+                    new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_DOUBLE),
+                    new VarInsnNode(Opcodes.ASTORE, doublesVar.getIndex())
+                }),
+                mergeIf(storageSizes.getObjectsSize() > 0, () -> new Object[] {
+                    debugMarker(markerType, "Generating objects container (" + storageSizes.getObjectsSize() + ")"),
+                    new LdcInsnNode(storageSizes.getObjectsSize()),
+                    new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"),
+                    new VarInsnNode(Opcodes.ASTORE, objectsVar.getIndex())
+                })
+        ));
+
+        return ret;
+    }
+
+    /**
+     * Generates instructions to save a certain number of items from the top of the operand stack in to local variables rather than in to
+     * storage arrays. Unlike {@link #saveOperandStack(MarkerType, StorageVariables, Frame, int) }, nothing gets allocated on the heap.
+     * <p>
+     * The instructions generated here expect the operand stack to be fully loaded. The stack items specified by {@code frame} must actually
+     * all be on the operand stack.
+     * <p>
+     * REMEMBER: The items aren't returned to the operand stack after they've been saved (they have been popped off the stack). If you want
+     * them back on the operand stack, reload using {@code loadOperandStackFromCache(markerType, cacheVars, frame, count)}.
+     * @param markerType debug marker type
+     * @param cacheVars variables to store operand stack items in to (must have enough variables of each type to hold {@code count} items)
+     * @param frame execution frame at the instruction where the operand stack is to be saved
+     * @param count number of items to store from the stack
+     * @return instructions to save the operand stack to the cache variables
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code count} is larger than the number of items in the stack at {@code frame} (or is negative),
+     * or if {@code cacheVars} doesn't have enough variables to hold the items
+     */
+    public static InsnList saveOperandStackToCache(MarkerType markerType, ArgumentCacheVariables cacheVars, Frame<BasicValue> frame,
+            int count) {
+        Validate.notNull(markerType);
+        Validate.notNull(cacheVars);
+        Validate.notNull(frame);
+        Validate.isTrue(count >= 0);
+        Validate.isTrue(count <= frame.getStackSize());
+
+        StorageSizes storageSizes = computeSizes(frame, frame.getStackSize() - count, count);
+        Validate.isTrue(storageSizes.getIntsSize() <= cacheVars.getIntCacheVars().size());
+        Validate.isTrue(storageSizes.getFloatsSize() <= cacheVars.getFloatCacheVars().size());
+        Validate.isTrue(storageSizes.getLongsSize() <= cacheVars.getLongCacheVars().size());
+        Validate.isTrue(storageSizes.getDoublesSize() <= cacheVars.getDoubleCacheVars().size());
+        Validate.isTrue(storageSizes.getObjectsSize() <= cacheVars.getObjectCacheVars().size());
+
+        int intsCounter = storageSizes.getIntsSize() - 1;
+        int floatsCounter = storageSizes.getFloatsSize() - 1;
+        int longsCounter = storageSizes.getLongsSize() - 1;
+        int doublesCounter = storageSizes.getDoublesSize() - 1;
+        int objectsCounter = storageSizes.getObjectsSize() - 1;
+
+        InsnList ret = new InsnList();
+        
+        ret.add(debugMarker(markerType, "Caching operand stack (" + count + " items)"));
+        int start = frame.getStackSize() - 1;
+        int end = frame.getStackSize() - count;
+        for (int i = start; i >= end; i--) {
+            BasicValue basicValue = frame.getStack(i);
+            Type type = basicValue.getType();
+            
+            // Same deal as saveOperandStack() -- 'Lnull;' is always null, so just POP it and push a null back in when loading
+            if ("Lnull;".equals(type.getDescriptor())) {
+                ret.add(debugMarker(markerType, "Skipping null value at " + i));
+                ret.add(new InsnNode(Opcodes.POP));
+                continue;
+            }
+
+            switch (type.getSort()) {
+                case Type.BOOLEAN:
+                case Type.BYTE:
+                case Type.SHORT:
+                case Type.CHAR:
+                case Type.INT:
+                    ret.add(debugMarker(markerType, "Popping/caching int at " + i + " to cache var " + intsCounter));
+                    ret.add(new VarInsnNode(Opcodes.ISTORE, cacheVars.getIntCacheVars().get(intsCounter).getIndex()));
+                    intsCounter--;
+                    break;
+                case Type.FLOAT:
+                    ret.add(debugMarker(markerType, "Popping/caching float at " + i + " to cache var " + floatsCounter));
+                    ret.add(new VarInsnNode(Opcodes.FSTORE, cacheVars.getFloatCacheVars().get(floatsCounter).getIndex()));
+                    floatsCounter--;
+                    break;
+                case Type.LONG:
+                    ret.add(debugMarker(markerType, "Popping/caching long at " + i + " to cache var " + longsCounter));
+                    ret.add(new VarInsnNode(Opcodes.LSTORE, cacheVars.getLongCacheVars().get(longsCounter).getIndex()));
+                    longsCounter--;
+                    break;
+                case Type.DOUBLE:
+                    ret.add(debugMarker(markerType, "Popping/caching double at " + i + " to cache var " + doublesCounter));
+                    ret.add(new VarInsnNode(Opcodes.DSTORE, cacheVars.getDoubleCacheVars().get(doublesCounter).getIndex()));
+                    doublesCounter--;
+                    break;
+                case Type.ARRAY:
+                case Type.OBJECT:
+                    ret.add(debugMarker(markerType, "Popping/caching object at " + i + " to cache var " + objectsCounter));
+                    ret.add(new VarInsnNode(Opcodes.ASTORE, cacheVars.getObjectCacheVars().get(objectsCounter).getIndex()));
+                    objectsCounter--;
+                    break;
+                case Type.METHOD:
+                case Type.VOID:
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Generates instructions to load items cached by {@link #saveOperandStackToCache(MarkerType, ArgumentCacheVariables, Frame, int) } back
+     * on to the operand stack.
+     * @param markerType debug marker type
+     * @param cacheVars variables the operand stack items were cached in to
+     * @param frame execution frame at the instruction where the operand stack was saved
+     * @param count number of items that were cached from the top of the stack
+     * @return instructions to load the cached items back on to the operand stack
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code count} is larger than the number of items in the stack at {@code frame} (or is negative),
+     * or if {@code cacheVars} doesn't have enough variables to hold the items
+     */
+    public static InsnList loadOperandStackFromCache(MarkerType markerType, ArgumentCacheVariables cacheVars, Frame<BasicValue> frame,
+            int count) {
+        Validate.notNull(markerType);
+        Validate.notNull(cacheVars);
+        Validate.notNull(frame);
+        Validate.isTrue(count >= 0);
+        Validate.isTrue(count <= frame.getStackSize());
+
+        StorageSizes storageSizes = computeSizes(frame, frame.getStackSize() - count, count);
+        Validate.isTrue(storageSizes.getIntsSize() <= cacheVars.getIntCacheVars().size());
+        Validate.isTrue(storageSizes.getFloatsSize() <= cacheVars.getFloatCacheVars().size());
+        Validate.isTrue(storageSizes.getLongsSize() <= cacheVars.getLongCacheVars().size());
+        Validate.isTrue(storageSizes.getDoublesSize() <= cacheVars.getDoubleCacheVars().size());
+        Validate.isTrue(storageSizes.getObjectsSize() <= cacheVars.getObjectCacheVars().size());
+
+        int intsCounter = 0;
+        int floatsCounter = 0;
+        int longsCounter = 0;
+        int doublesCounter = 0;
+        int objectsCounter = 0;
+
+        InsnList ret = new InsnList();
+        
+        ret.add(debugMarker(markerType, "Loading cached stack items"));
+        for (int i = frame.getStackSize() - count; i < frame.getStackSize(); i++) {
+            BasicValue basicValue = frame.getStack(i);
+            Type type = basicValue.getType();
+            
+            if (type.getSort() == Type.OBJECT && "Lnull;".equals(type.getDescriptor())) {
+                ret.add(debugMarker(markerType, "Loading null value at " + i));
+                ret.add(new InsnNode(Opcodes.ACONST_NULL));
+                continue;
+            }
+
+            switch (type.getSort()) {
+                case Type.BOOLEAN:
+                case Type.BYTE:
+                case Type.SHORT:
+                case Type.CHAR:
+                case Type.INT:
+                    ret.add(debugMarker(markerType, "Loading int at " + i + " from cache var " + intsCounter));
+                    ret.add(new VarInsnNode(Opcodes.ILOAD, cacheVars.getIntCacheVars().get(intsCounter).getIndex()));
+                    intsCounter++;
+                    break;
+                case Type.FLOAT:
+                    ret.add(debugMarker(markerType, "Loading float at " + i + " from cache var " + floatsCounter));
+                    ret.add(new VarInsnNode(Opcodes.FLOAD, cacheVars.getFloatCacheVars().get(floatsCounter).getIndex()));
+                    floatsCounter++;
+                    break;
+                case Type.LONG:
+                    ret.add(debugMarker(markerType, "Loading long at " + i + " from cache var " + longsCounter));
+                    ret.add(new VarInsnNode(Opcodes.LLOAD, cacheVars.getLongCacheVars().get(longsCounter).getIndex()));
+                    longsCounter++;
+                    break;
+                case Type.DOUBLE:
+                    ret.add(debugMarker(markerType, "Loading double at " + i + " from cache var " + doublesCounter));
+                    ret.add(new VarInsnNode(Opcodes.DLOAD, cacheVars.getDoubleCacheVars().get(doublesCounter).getIndex()));
+                    doublesCounter++;
+                    break;
+                case Type.ARRAY:
+                case Type.OBJECT:
+                    ret.add(debugMarker(markerType, "Loading object at " + i + " from cache var " + objectsCounter));
+                    ret.add(new VarInsnNode(Opcodes.ALOAD, cacheVars.getObjectCacheVars().get(objectsCounter).getIndex()));
+                    ret.add(new TypeInsnNode(Opcodes.CHECKCAST, basicValue.getType().getInternalName()));
+                    objectsCounter++;
+                    break;
+                case Type.METHOD:
+                case Type.VOID:
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+
+        return ret;
+    }
+
     /**
      * Compute sizes required for the storage arrays that will contain the operand stack at this frame.
      * @param frame frame to compute for
@@ -19,9 +19,16 @@ package com.offbynull.coroutines.instrumenter;
 import com.offbynull.coroutines.instrumenter.asm.VariableTable.Variable;
 import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
 import static com.offbynull.coroutines.instrumenter.generators.DebugGenerators.debugMarker;
+import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.call;
+import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.loadNull;
+import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.loadVar;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.merge;
 import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.mergeIf;
+import static com.offbynull.coroutines.instrumenter.generators.GenericGenerators.saveVar;
+import com.offbynull.coroutines.user.MethodState;
+import java.lang.reflect.Method;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.reflect.MethodUtils;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
@@ -37,6 +44,33 @@ import org.objectweb.asm.tree.analysis.Frame;
  * @author Kasra Faghihi
  */
 final class PackStateGenerators {
+    private static final Method METHODSTATE_SETLOCALS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "setLocals", int[].class, float[].class, long[].class, double[].class,
+                    Object[].class);
+    private static final Method METHODSTATE_SETOPERANDS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "setOperands", int[].class, float[].class, long[].class, double[].class,
+                    Object[].class);
+    private static final Method METHODSTATE_GETLOCALINTS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getLocalInts");
+    private static final Method METHODSTATE_GETLOCALFLOATS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getLocalFloats");
+    private static final Method METHODSTATE_GETLOCALLONGS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getLocalLongs");
+    private static final Method METHODSTATE_GETLOCALDOUBLES_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getLocalDoubles");
+    private static final Method METHODSTATE_GETLOCALOBJECTS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getLocalObjects");
+    private static final Method METHODSTATE_GETOPERANDINTS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getOperandInts");
+    private static final Method METHODSTATE_GETOPERANDFLOATS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getOperandFloats");
+    private static final Method METHODSTATE_GETOPERANDLONGS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getOperandLongs");
+    private static final Method METHODSTATE_GETOPERANDDOUBLES_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getOperandDoubles");
+    private static final Method METHODSTATE_GETOPERANDOBJECTS_METHOD
+            = MethodUtils.getAccessibleMethod(MethodState.class, "getOperandObjects");
+    
     private PackStateGenerators() {
         // do nothing
     }
@@ -52,6 +86,10 @@ final class PackStateGenerators {
     // exploit this micro-optimization for the time being.
     //
     // See ObjectArrayVsHolderBenchmark class to see the benchmark used to determine this.
+    //
+    // That said, the Object[] costs an extra allocation when saving along with an extra dereference + a CHECKCAST per storage array when
+    // restoring. If typed state storage is enabled in the instrumentation settings, the storage arrays are assigned directly to the
+    // typed fields in MethodState instead (see the *MethodState() methods at the bottom of this class).
     
     public static InsnList packStorageArrays(MarkerType markerType, Frame<BasicValue> frame, Variable containerVar,
             StorageVariables localsStorageVars, StorageVariables operandStackStorageVars) {
@@ -355,4 +393,109 @@ final class PackStateGenerators {
                 })
         );
     }
+
+    
+    public static InsnList storeStorageArraysInMethodState(MarkerType markerType, Frame<BasicValue> frame, Variable methodStateVar,
+            StorageVariables localsStorageVars, StorageVariables operandStackStorageVars) {
+        Validate.notNull(markerType);
+        Validate.notNull(frame);
+        Validate.notNull(methodStateVar);
+        Validate.notNull(localsStorageVars);
+        Validate.notNull(operandStackStorageVars);
+        
+        StorageSizes stackSizes = OperandStackStateGenerators.computeSizes(frame, 0, frame.getStackSize());
+        StorageSizes localsSizes = LocalsStateGenerators.computeSizes(frame);
+        
+        // Same as packStorageArrays() -- storage arrays that don't exist at this continuation point are set to null
+        return merge(
+                debugMarker(markerType, "Setting storage arrays for locals in to method state"),
+                call(METHODSTATE_SETLOCALS_METHOD, loadVar(methodStateVar),
+                        loadStorageVarIfUsed(localsSizes.getIntsSize() > 0, localsStorageVars.getIntStorageVar()),
+                        loadStorageVarIfUsed(localsSizes.getFloatsSize() > 0, localsStorageVars.getFloatStorageVar()),
+                        loadStorageVarIfUsed(localsSizes.getLongsSize() > 0, localsStorageVars.getLongStorageVar()),
+                        loadStorageVarIfUsed(localsSizes.getDoublesSize() > 0, localsStorageVars.getDoubleStorageVar()),
+                        loadStorageVarIfUsed(localsSizes.getObjectsSize() > 0, localsStorageVars.getObjectStorageVar())),
+                debugMarker(markerType, "Setting storage arrays for operand stack in to method state"),
+                call(METHODSTATE_SETOPERANDS_METHOD, loadVar(methodStateVar),
+                        loadStorageVarIfUsed(stackSizes.getIntsSize() > 0, operandStackStorageVars.getIntStorageVar()),
+                        loadStorageVarIfUsed(stackSizes.getFloatsSize() > 0, operandStackStorageVars.getFloatStorageVar()),
+                        loadStorageVarIfUsed(stackSizes.getLongsSize() > 0, operandStackStorageVars.getLongStorageVar()),
+                        loadStorageVarIfUsed(stackSizes.getDoublesSize() > 0, operandStackStorageVars.getDoubleStorageVar()),
+                        loadStorageVarIfUsed(stackSizes.getObjectsSize() > 0, operandStackStorageVars.getObjectStorageVar()))
+        );
+    }
+    
+    public static InsnList unpackLocalsStorageArraysFromMethodState(MarkerType markerType, Frame<BasicValue> frame, Variable methodStateVar,
+            StorageVariables localsStorageVars) {
+        Validate.notNull(markerType);
+        Validate.notNull(frame);
+        Validate.notNull(methodStateVar);
+        Validate.notNull(localsStorageVars);
+        
+        StorageSizes localsSizes = LocalsStateGenerators.computeSizes(frame);
+        
+        // Same as unpackLocalsStorageArrays() -- only unpack storage arrays that exist at this continuation point
+        return merge(
+                debugMarker(markerType, "Unpacking storage arrays for locals from method state"),
+                mergeIf(localsSizes.getIntsSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETLOCALINTS_METHOD, loadVar(methodStateVar)),
+                    saveVar(localsStorageVars.getIntStorageVar())
+                }),
+                mergeIf(localsSizes.getFloatsSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETLOCALFLOATS_METHOD, loadVar(methodStateVar)),
+                    saveVar(localsStorageVars.getFloatStorageVar())
+                }),
+                mergeIf(localsSizes.getLongsSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETLOCALLONGS_METHOD, loadVar(methodStateVar)),
+                    saveVar(localsStorageVars.getLongStorageVar())
+                }),
+                mergeIf(localsSizes.getDoublesSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETLOCALDOUBLES_METHOD, loadVar(methodStateVar)),
+                    saveVar(localsStorageVars.getDoubleStorageVar())
+                }),
+                mergeIf(localsSizes.getObjectsSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETLOCALOBJECTS_METHOD, loadVar(methodStateVar)),
+                    saveVar(localsStorageVars.getObjectStorageVar())
+                })
+        );
+    }
+    
+    public static InsnList unpackOperandStackStorageArraysFromMethodState(MarkerType markerType, Frame<BasicValue> frame,
+            Variable methodStateVar, StorageVariables operandStackStorageVars) {
+        Validate.notNull(markerType);
+        Validate.notNull(frame);
+        Validate.notNull(methodStateVar);
+        Validate.notNull(operandStackStorageVars);
+        
+        StorageSizes stackSizes = OperandStackStateGenerators.computeSizes(frame, 0, frame.getStackSize());
+        
+        // Same as unpackOperandStackStorageArrays() -- only unpack storage arrays that exist at this continuation point
+        return merge(
+                debugMarker(markerType, "Unpacking storage arrays for operand stack from method state"),
+                mergeIf(stackSizes.getIntsSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETOPERANDINTS_METHOD, loadVar(methodStateVar)),
+                    saveVar(operandStackStorageVars.getIntStorageVar())
+                }),
+                mergeIf(stackSizes.getFloatsSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETOPERANDFLOATS_METHOD, loadVar(methodStateVar)),
+                    saveVar(operandStackStorageVars.getFloatStorageVar())
+                }),
+                mergeIf(stackSizes.getLongsSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETOPERANDLONGS_METHOD, loadVar(methodStateVar)),
+                    saveVar(operandStackStorageVars.getLongStorageVar())
+                }),
+                mergeIf(stackSizes.getDoublesSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETOPERANDDOUBLES_METHOD, loadVar(methodStateVar)),
+                    saveVar(operandStackStorageVars.getDoubleStorageVar())
+                }),
+                mergeIf(stackSizes.getObjectsSize() > 0, () -> new Object[] {
+                    call(METHODSTATE_GETOPERANDOBJECTS_METHOD, loadVar(methodStateVar)),
+                    saveVar(operandStackStorageVars.getObjectStorageVar())
+                })
+        );
+    }
+    
+    private static InsnList loadStorageVarIfUsed(boolean used, Variable storageVar) {
+        return used ? loadVar(storageVar) : loadNull();
+    }
 }
@@ -19,9 +19,17 @@ package com.offbynull.coroutines.instrumenter;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.Validate;
@@ -74,7 +82,10 @@ public final class PluginHelper {
 
     /**
      * Instruments class files and generates detail files. Detail files are placed alongside destination class files -- they have the same
-     * name but the extension will be changed to {@code .coroutinesinfo}.
+     * name but the extension will be changed to {@code .coroutinesinfo}. This method is equivalent to calling...
+     * <pre>
+     * instrument(instrumenter, settings, srcDstMapping, logger, 1);
+     * </pre>
      * @param instrumenter instrumenter
      * @param settings instrumentation settings
      * @param srcDstMapping class files to instrument mapped to destination files where the final instrumented results will be placed
@@ -85,44 +96,163 @@ public final class PluginHelper {
      */
     public static void instrument(Instrumenter instrumenter, InstrumentationSettings settings, Map<File, File> srcDstMapping,
             Consumer<String> logger) throws IOException {
+        instrument(instrumenter, settings, srcDstMapping, logger, 1);
+    }
+
+    /**
+     * Instruments class files and generates detail files. Detail files are placed alongside destination class files -- they have the same
+     * name but the extension will be changed to {@code .coroutinesinfo}.
+     * <p>
+     * Class files are instrumented independently of each other, so if {@code parallelism} is greater than 1 they're spread out over that
+     * many threads. {@code instrumenter} must be safe to use from multiple threads when that happens (it is so long as the
+     * {@link com.offbynull.coroutines.instrumenter.asm.ClassInformationRepository} it was created with is). Regardless of the parallelism,
+     * class files are logged in order of their source paths and {@code logger} is only ever called from the invoking thread.
+     * <p>
+     * If instrumenting a class file fails, class files that haven't started being instrumented by then are skipped (regardless of where
+     * they are in the order) and the failure is thrown once all class files that are in progress have finished (failures from those other
+     * class files are added to it as suppressed exceptions). Class files that did get written out are still logged.
+     * @param instrumenter instrumenter
+     * @param settings instrumentation settings
+     * @param srcDstMapping class files to instrument mapped to destination files where the final instrumented results will be placed
+     * @param logger logger to dump messages to (if any)
+     * @param parallelism maximum number of class files to instrument at the same time
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if a source class file doesn't exist, or if {@code parallelism <= 0}
+     * @throws IOException on IO error
+     */
+    public static void instrument(Instrumenter instrumenter, InstrumentationSettings settings, Map<File, File> srcDstMapping,
+            Consumer<String> logger, int parallelism) throws IOException {
+        instrument(instrumenter, settings, srcDstMapping, logger, parallelism, null);
+    }
+
+    /**
+     * Instruments class files and generates detail files. This method is equivalent to
+     * {@link #instrument(com.offbynull.coroutines.instrumenter.Instrumenter, com.offbynull.coroutines.instrumenter.InstrumentationSettings,
+     * java.util.Map, java.util.function.Consumer, int) }, except that results are taken from / put in to {@code cache} if it's
+     * non-{@code null}.
+     * @param instrumenter instrumenter
+     * @param settings instrumentation settings
+     * @param srcDstMapping class files to instrument mapped to destination files where the final instrumented results will be placed
+     * @param logger logger to dump messages to (if any)
+     * @param parallelism maximum number of class files to instrument at the same time
+     * @param cache instrumentation cache (can be {@code null})
+     * @throws NullPointerException if any argument other than {@code cache} is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if a source class file doesn't exist, or if {@code parallelism <= 0}
+     * @throws IOException on IO error
+     */
+    public static void instrument(Instrumenter instrumenter, InstrumentationSettings settings, Map<File, File> srcDstMapping,
+            Consumer<String> logger, int parallelism, InstrumentationCache cache) throws IOException {
         Validate.notNull(instrumenter);
+        Validate.notNull(settings);
         Validate.notNull(srcDstMapping);
         Validate.notNull(logger);
+        Validate.isTrue(parallelism > 0);
+
+        List<Entry<File, File>> entries = new ArrayList<>(srcDstMapping.entrySet());
+        for (Entry<File, File> e : entries) {
+            Validate.notNull(e.getKey());
+            Validate.notNull(e.getValue());
+        }
+        entries.sort(Comparator.comparing(e -> e.getKey().getPath()));
+
+        // Single-threaded -- no need to spin up threads
+        if (parallelism == 1 || entries.size() <= 1) {
+            for (Entry<File, File> e : entries) {
+                String message = instrumentFile(instrumenter, settings, cache, e.getKey(), e.getValue());
+                if (message != null) {
+                    logger.accept(message);
+                }
+            }
+            return;
+        }
 
-        for (Entry<File, File> e : srcDstMapping.entrySet()) {
-            File inputFile = e.getKey();
-            File outputFile = e.getValue();
-            File outputDir = outputFile.getParentFile();
-
-            Validate.notNull(inputFile);
-            Validate.notNull(outputFile);
-            Validate.isTrue(inputFile.isFile());
-            // output file may not exists or it may exist (e.g. if we're writing out to the same location)
-
-            byte[] input = FileUtils.readFileToByteArray(inputFile);
-            
-            InstrumentationResult result = instrumenter.instrument(input, settings);
-            
-            byte[] output = result.getInstrumentedClass();
-            Map<String, byte[]> extraOutputs = result.getExtraFiles();
-            
-            if (input.length == output.length) { // condition that determines if no instrumentation happened
-                continue;
+        // Multi-threaded -- results are collected in the same order as the entries were submitted, so logging is deterministic. The task
+        // that fails flags it right away, so that every task that starts after that point (no matter where it is in the order) bails out
+        // without touching anything.
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, entries.size()));
+        try {
+            AtomicBoolean failed = new AtomicBoolean();
+            List<Future<String>> futures = new ArrayList<>(entries.size());
+            for (Entry<File, File> e : entries) {
+                futures.add(executor.submit(() -> {
+                    if (failed.get()) {
+                        return null;
+                    }
+                    try {
+                        return instrumentFile(instrumenter, settings, cache, e.getKey(), e.getValue());
+                    } catch (Throwable t) {
+                        failed.set(true);
+                        throw t;
+                    }
+                }));
             }
 
-            FileUtils.writeByteArrayToFile(outputFile, output);
-            for (Entry<String, byte[]> extraOutput : extraOutputs.entrySet()) {
-                File extraFile = new File(outputDir, extraOutput.getKey());
-                byte[] extraData = extraOutput.getValue();
-                FileUtils.writeByteArrayToFile(extraFile, extraData);
+            Throwable failure = null;
+            for (Future<String> future : futures) {
+                try {
+                    String message = future.get();
+                    if (message != null) {
+                        logger.accept(message); // log even if something else failed, the file was still written out
+                    }
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while instrumenting", ie);
+                }
             }
-            
-            logger.accept("Instrumenting " + inputFile.getAbsolutePath()
-                    + " (" + input.length + " bytes -> " + output.length + " bytes)"
-                    + (extraOutputs.isEmpty() ? "" : " with extra files " + extraOutputs.keySet()));
+
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new IllegalStateException(failure); // should never happen
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
+    private static String instrumentFile(Instrumenter instrumenter, InstrumentationSettings settings, InstrumentationCache cache,
+            File inputFile, File outputFile) throws IOException {
+        File outputDir = outputFile.getParentFile();
+
+        Validate.isTrue(inputFile.isFile());
+        // output file may not exists or it may exist (e.g. if we're writing out to the same location)
+
+        byte[] input = FileUtils.readFileToByteArray(inputFile);
+
+        InstrumentationResult result = cache == null
+                ? instrumenter.instrument(input, settings)
+                : cache.instrument(instrumenter, input, settings);
+
+        byte[] output = result.getInstrumentedClass();
+        Map<String, byte[]> extraOutputs = result.getExtraFiles();
+
+        if (input.length == output.length) { // condition that determines if no instrumentation happened
+            return null;
+        }
+
+        FileUtils.writeByteArrayToFile(outputFile, output);
+        for (Entry<String, byte[]> extraOutput : extraOutputs.entrySet()) {
+            File extraFile = new File(outputDir, extraOutput.getKey());
+            byte[] extraData = extraOutput.getValue();
+            FileUtils.writeByteArrayToFile(extraFile, extraData);
+        }
+
+        return "Instrumenting " + inputFile.getAbsolutePath()
+                + " (" + input.length + " bytes -> " + output.length + " bytes)"
+                + (extraOutputs.isEmpty() ? "" : " with extra files " + extraOutputs.keySet());
+    }
+
     /**
      * Instruments class files and generates detail files. This method is equivalent to calling...
      * <pre>
@@ -144,4 +274,51 @@ public final class PluginHelper {
         Map<File, File> srcDstMapping = mapPaths(srcDir, dstDir);
         instrument(instrumenter, settings, srcDstMapping, logger);
     }
+
+    /**
+     * Instruments class files and generates detail files. This method is equivalent to calling...
+     * <pre>
+     * Map&lt;File, File&gt; srcDstMapping = mapPaths(srcDir, dstDir);
+     * instrument(instrumenter, settings, srcDstMapping, logger, parallelism);
+     * </pre>
+     * @param instrumenter instrumenter
+     * @param settings instrumentation settings
+     * @param srcDir source directory
+     * @param dstDir destination directory
+     * @param logger logger to dump messages to (if any)
+     * @param parallelism maximum number of class files to instrument at the same time
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if either of the paths passed in are not directories (or if a file in {@code srcDir} was removed
+     * while this method is executing), or if {@code parallelism <= 0}
+     * @throws IOException on IO error
+     */
+    public static void instrument(Instrumenter instrumenter, InstrumentationSettings settings, File srcDir, File dstDir,
+            Consumer<String> logger, int parallelism) throws IOException {
+        Map<File, File> srcDstMapping = mapPaths(srcDir, dstDir);
+        instrument(instrumenter, settings, srcDstMapping, logger, parallelism);
+    }
+
+    /**
+     * Instruments class files and generates detail files. This method is equivalent to calling...
+     * <pre>
+     * Map&lt;File, File&gt; srcDstMapping = mapPaths(srcDir, dstDir);
+     * instrument(instrumenter, settings, srcDstMapping, logger, parallelism, cache);
+     * </pre>
+     * @param instrumenter instrumenter
+     * @param settings instrumentation settings
+     * @param srcDir source directory
+     * @param dstDir destination directory
+     * @param logger logger to dump messages to (if any)
+     * @param parallelism maximum number of class files to instrument at the same time
+     * @param cache instrumentation cache (can be {@code null})
+     * @throws NullPointerException if any argument other than {@code cache} is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if either of the paths passed in are not directories (or if a file in {@code srcDir} was removed
+     * while this method is executing), or if {@code parallelism <= 0}
+     * @throws IOException on IO error
+     */
+    public static void instrument(Instrumenter instrumenter, InstrumentationSettings settings, File srcDir, File dstDir,
+            Consumer<String> logger, int parallelism, InstrumentationCache cache) throws IOException {
+        Map<File, File> srcDstMapping = mapPaths(srcDir, dstDir);
+        instrument(instrumenter, settings, srcDstMapping, logger, parallelism, cache);
+    }
 }
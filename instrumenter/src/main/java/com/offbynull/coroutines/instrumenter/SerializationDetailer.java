@@ -153,6 +153,11 @@ final class SerializationDetailer {
         for (int j = 0; j < cp.getFrame().getStackSize(); j++) {
             BasicValue operand = cp.getFrame().getStack(j);
 
+            if ("Lnull;".equals(operand.getType().getDescriptor())) {
+                // always null (or restored by the invoked method), so never stored -- skip over it
+                continue;
+            }
+
             String accessor;
             String type = "";
             switch (operand.getType().getSort()) {
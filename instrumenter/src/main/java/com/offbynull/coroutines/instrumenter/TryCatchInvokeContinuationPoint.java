@@ -31,14 +31,18 @@ class TryCatchInvokeContinuationPoint implements ContinuationPoint {
     private final LabelNode exceptionExecutionLabel;
     private final TryCatchBlockNode tryCatchBlock;
     private final Frame<BasicValue> frame;
+    private final Frame<BasicValue> invokeFrame;
 
     TryCatchInvokeContinuationPoint(
             Integer lineNumber,
             MethodInsnNode invokeInstruction,
-            Frame<BasicValue> frame) {
+            Frame<BasicValue> frame,
+            Frame<BasicValue> invokeFrame) {
         // lineNumber is null if it doesn't exist
         Validate.notNull(invokeInstruction);
         Validate.notNull(frame);
+        Validate.notNull(invokeFrame);
+        Validate.isTrue(frame.getStackSize() == invokeFrame.getStackSize());
 
         this.lineNumber = lineNumber;
         this.invokeInstruction = invokeInstruction;
@@ -46,6 +50,7 @@ class TryCatchInvokeContinuationPoint implements ContinuationPoint {
         this.exceptionExecutionLabel = new LabelNode();
         this.tryCatchBlock = new TryCatchBlockNode(null, null, null, null);
         this.frame = frame;
+        this.invokeFrame = invokeFrame;
     }
 
     @Override
@@ -75,5 +80,10 @@ class TryCatchInvokeContinuationPoint implements ContinuationPoint {
     public Frame<BasicValue> getFrame() {
         return frame;
     }
+
+    // See NormalInvokeContinuationPoint.getInvokeFrame()
+    public Frame<BasicValue> getInvokeFrame() {
+        return invokeFrame;
+    }
     
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.instrumenter.asm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Thread-safe cache of class information loaded through {@link ClassResourceClassInformationRepository}, kept separately for each
+ * {@link ClassLoader}. Meant to be shared between instrumentations that happen within the same JVM (e.g. the Java Agent), such that the
+ * class resources of commonly encountered types (e.g. {@link Object}, common interfaces, framework base classes) only get read and parsed
+ * once per class loader instead of once per class being instrumented.
+ * <p>
+ * Class loaders are held weakly, so cached information is dropped once its class loader is garbage collected (e.g. when a web application
+ * gets redeployed). The number of entries cached for each class loader is bounded -- once that limit is reached, the least recently used
+ * entries get evicted. Classes that can't be found aren't cached.
+ * @author Kasra Faghihi
+ */
+public final class ClassResourceClassInformationCache {
+    private final int maxEntriesPerClassLoader;
+    private final Map<ClassLoader, Map<String, ClassInformation>> cache;
+
+    /**
+     * Constructs a {@link ClassResourceClassInformationCache} object.
+     * @param maxEntriesPerClassLoader maximum number of classes to cache for each class loader
+     * @throws IllegalArgumentException if {@code maxEntriesPerClassLoader <= 0}
+     */
+    public ClassResourceClassInformationCache(int maxEntriesPerClassLoader) {
+        Validate.isTrue(maxEntriesPerClassLoader > 0);
+        this.maxEntriesPerClassLoader = maxEntriesPerClassLoader;
+        this.cache = new WeakHashMap<>();
+    }
+
+    /**
+     * Get a class information repository for a class loader that's backed by this cache. The returned repository is thread-safe.
+     * It holds on to {@code classLoader} strongly, so it shouldn't be kept around longer than it's needed.
+     * @param classLoader classloader to extract information from
+     * @return class information repository for {@code classLoader}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public ClassInformationRepository getRepository(ClassLoader classLoader) {
+        Validate.notNull(classLoader);
+        
+        Map<String, ClassInformation> loaderCache = getLoaderCache(classLoader);
+        ClassResourceClassInformationRepository backingRepo = new ClassResourceClassInformationRepository(classLoader);
+        return internalClassName -> {
+            Validate.notNull(internalClassName);
+
+            ClassInformation classInfo;
+            synchronized (loaderCache) {
+                classInfo = loaderCache.get(internalClassName);
+            }
+            if (classInfo != null) {
+                return classInfo;
+            }
+
+            // Load outside of the lock -- if multiple threads end up loading the same class at the same time, they'll all get the same
+            // information back.
+            classInfo = backingRepo.getInformation(internalClassName);
+            if (classInfo != null) {
+                synchronized (loaderCache) {
+                    loaderCache.put(internalClassName, classInfo);
+                }
+            }
+
+            return classInfo;
+        };
+    }
+
+    private Map<String, ClassInformation> getLoaderCache(ClassLoader classLoader) {
+        synchronized (cache) {
+            return cache.computeIfAbsent(classLoader, x -> new LruMap(maxEntriesPerClassLoader));
+        }
+    }
+    
+    private static final class LruMap extends LinkedHashMap<String, ClassInformation> {
+        private static final long serialVersionUID = 1L;
+        
+        private final int maxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, ClassInformation> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -17,24 +17,57 @@
 package com.offbynull.coroutines.instrumenter.asm;
 
 import static com.offbynull.coroutines.instrumenter.asm.InternalUtils.getClassInformation;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
-import org.apache.commons.compress.archivers.jar.JarArchiveInputStream;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.Validate;
 
 /**
- * Provides information on classes contained within JARs and folders.
+ * Provides information on classes contained within JARs and folders. Safe to query from multiple threads so long as classes aren't being
+ * added at the same time.
+ * <p>
+ * Classes in folders are read and parsed as soon as the folder is added. Folders are typically build output that gets instrumented (and
+ * rewritten) in place, so the original class files have to be read before that happens. Adding a JAR only indexes the names of the
+ * classes it contains (only the central directory is read). Those class files are read and parsed the first time information for that
+ * class is requested. JAR files are kept open until this repository is closed.
+ * <p>
+ * Optionally, information parsed from JAR files can be saved to an index file and reused by a later instance (e.g. by the next build).
+ * Information saved for a JAR is only reused if that JAR's size and last modified time haven't changed.
  * @author Kasra Faghihi
  */
-public final class FileSystemClassInformationRepository implements ClassInformationRepository {
-    private final Map<String, ClassInformation> hierarchyMap = new HashMap<>();
+public final class FileSystemClassInformationRepository implements ClassInformationRepository, Closeable {
+    private static final int INDEX_FORMAT_VERSION = 1;
+    
+    private final Map<String, JarClassSource> classSources = new HashMap<>();
+    private final Map<String, ClassInformation> hierarchyMap = new ConcurrentHashMap<>();
+    private final Map<File, JarSource> jarSources = new LinkedHashMap<>();
+    private final File indexFile;
+    private final Map<String, IndexedJar> indexedJars;
+
+    private FileSystemClassInformationRepository(File indexFile) {
+        this.indexFile = indexFile;
+        this.indexedJars = indexFile == null ? new HashMap<>() : readIndex(indexFile);
+    }
 
     /**
      * Constructs a {@link FileSystemClassInformationRepository} object and loads it up with the classes in a classpath.
@@ -44,9 +77,23 @@ public final class FileSystemClassInformationRepository implements ClassInformat
      * @throws IOException if an IO error occurs
      */
     public static FileSystemClassInformationRepository create(List<File> initialClasspath) throws IOException {
+        return create(initialClasspath, null);
+    }
+
+    /**
+     * Constructs a {@link FileSystemClassInformationRepository} object and loads it up with the classes in a classpath. Information for
+     * JARs that's present in {@code indexFile} gets reused. Call {@link #saveIndex() } to write information parsed by this repository back
+     * out to {@code indexFile}.
+     * @param initialClasspath classpath to scan for class information (can be JAR files and/or folders)
+     * @param indexFile index file to read from and write to (can be {@code null}, can be a file that doesn't exist yet)
+     * @return newly created {@link FileSystemClassInformationRepository} object
+     * @throws NullPointerException if {@code initialClasspath} is {@code null} or contains {@code null} elements
+     * @throws IOException if an IO error occurs
+     */
+    public static FileSystemClassInformationRepository create(List<File> initialClasspath, File indexFile) throws IOException {
         Validate.notNull(initialClasspath);
         Validate.noNullElements(initialClasspath);
-        FileSystemClassInformationRepository repo = new FileSystemClassInformationRepository();
+        FileSystemClassInformationRepository repo = new FileSystemClassInformationRepository(indexFile);
         repo.addClasspath(initialClasspath);
         return repo;
     }
@@ -54,7 +101,30 @@ public final class FileSystemClassInformationRepository implements ClassInformat
     @Override
     public ClassInformation getInformation(String internalClassName) {
         Validate.notNull(internalClassName);
-        return hierarchyMap.get(internalClassName);
+        
+        ClassInformation info = hierarchyMap.get(internalClassName);
+        if (info != null) {
+            return info;
+        }
+        
+        JarClassSource source = classSources.get(internalClassName);
+        if (source == null) {
+            return null;
+        }
+
+        try (InputStream is = source.open()) {
+            info = getClassInformation(is);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+        
+        // Classes in JARs are indexed by the path of their class file, so the class has to be at the path that matches its name. Fail
+        // loudly if it isn't, otherwise the class would seem to be missing.
+        Validate.validState(info.getName().equals(internalClassName), "Class file %s in %s contains class %s", source.entry.getName(),
+                source.jarSource.path, info.getName());
+
+        ClassInformation existing = hierarchyMap.putIfAbsent(internalClassName, info);
+        return existing != null ? existing : info;
     }
 
     /**
@@ -67,7 +137,7 @@ public final class FileSystemClassInformationRepository implements ClassInformat
     public void addIndividual(String className, ClassInformation classInformation) {
         Validate.notNull(className);
         Validate.notNull(classInformation);
-        Validate.isTrue(!hierarchyMap.containsKey(className));
+        Validate.isTrue(!hierarchyMap.containsKey(className) && !classSources.containsKey(className));
         
         hierarchyMap.put(className, classInformation);
     }
@@ -92,45 +162,230 @@ public final class FileSystemClassInformationRepository implements ClassInformat
             }
         }
     }
+
+    /**
+     * Closes the JAR files held open by this repository. Information for classes that were already parsed (and {@link #saveIndex() })
+     * can still be used after this method is called, but requesting information for any other class in those JARs fails.
+     * @throws IOException if an IO error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (JarSource jarSource : jarSources.values()) {
+            try {
+                jarSource.zipFile.close();
+            } catch (IOException ioe) {
+                if (exception == null) {
+                    exception = ioe;
+                } else {
+                    exception.addSuppressed(ioe);
+                }
+            }
+        }
+        
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Write out information parsed from JARs to the index file passed in when this repository was created. Does nothing if no index file
+     * was passed in.
+     * @throws IOException if an IO error occurs
+     */
+    public void saveIndex() throws IOException {
+        if (indexFile == null) {
+            return;
+        }
+        
+        Map<JarSource, List<ClassInformation>> parsedByJar = new LinkedHashMap<>();
+        jarSources.values().forEach(x -> parsedByJar.put(x, new ArrayList<>()));
+        for (Entry<String, ClassInformation> entry : hierarchyMap.entrySet()) {
+            JarClassSource source = classSources.get(entry.getKey());
+            if (source != null) {
+                parsedByJar.get(source.jarSource).add(entry.getValue());
+            }
+        }
+
+        Path indexPath = indexFile.toPath().toAbsolutePath();
+        Files.createDirectories(indexPath.getParent());
+        Path tempPath = Files.createTempFile(indexPath.getParent(), indexPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                dos.writeInt(INDEX_FORMAT_VERSION);
+                dos.writeInt(parsedByJar.size());
+                for (Entry<JarSource, List<ClassInformation>> entry : parsedByJar.entrySet()) {
+                    JarSource jarSource = entry.getKey();
+                    dos.writeUTF(jarSource.path);
+                    dos.writeLong(jarSource.length);
+                    dos.writeLong(jarSource.lastModified);
+                    dos.writeInt(entry.getValue().size());
+                    for (ClassInformation info : entry.getValue()) {
+                        writeClassInformation(dos, info);
+                    }
+                }
+            }
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
     
     private void addDirectory(File directory) throws IOException {
         Validate.notNull(directory);
         Validate.isTrue(directory.isDirectory());
         for (File file : FileUtils.listFiles(directory, new String[] {"class"}, true)) {
-            if (!file.getName().endsWith(".class")) {
-                continue;
+            ClassInformation info;
+            try (InputStream is = new FileInputStream(file)) {
+                info = getClassInformation(is);
             }
             
-            try (InputStream is = new FileInputStream(file)) {
-                populateSuperClassMapping(is);
+            String className = info.getName();
+            if (classSources.containsKey(className)) {
+                continue; // duplicate encounter, ignore
             }
+            hierarchyMap.putIfAbsent(className, info); // if duplicate encounter, ignore
         }
     }
 
     private void addJar(File file) throws IOException {
         Validate.notNull(file);
         Validate.isTrue(file.isFile());
-        try (FileInputStream fis = new FileInputStream(file);
-                JarArchiveInputStream jais = new JarArchiveInputStream(fis)) {
-            JarArchiveEntry entry;
-            while ((entry = jais.getNextJarEntry()) != null) {
-                if (!entry.getName().endsWith(".class") || entry.isDirectory()) {
-                    continue;
-                }
+        
+        File absoluteFile = file.getAbsoluteFile();
+        if (jarSources.containsKey(absoluteFile)) {
+            return; // duplicate encounter, ignore
+        }
+        
+        JarSource jarSource = new JarSource(absoluteFile);
+        jarSources.put(absoluteFile, jarSource);
 
-                populateSuperClassMapping(jais);
+        Enumeration<? extends ZipEntry> entries = jarSource.zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory() || entry.getName().startsWith("META-INF/")) { // skip META-INF -- has multi-release versions of classes
+                continue;
+            }
+            addClassSource(entry.getName(), new JarClassSource(jarSource, entry));
+        }
+
+        // Reuse information for this JAR from the index file, if the JAR hasn't changed since it was written
+        IndexedJar indexedJar = indexedJars.get(jarSource.path);
+        if (indexedJar != null && indexedJar.length == jarSource.length && indexedJar.lastModified == jarSource.lastModified) {
+            for (ClassInformation info : indexedJar.classes) {
+                JarClassSource source = classSources.get(info.getName());
+                if (source != null && source.jarSource == jarSource) {
+                    hierarchyMap.putIfAbsent(info.getName(), info);
+                }
             }
         }
     }
     
-    private void populateSuperClassMapping(final InputStream is) throws IOException {
-        ClassInformation ci = getClassInformation(is);
-        
-        if (hierarchyMap.containsKey(ci.getName())) {
-            // duplicate encounter, ignore
+    private void addClassSource(String path, JarClassSource source) {
+        if (!path.endsWith(".class")) {
             return;
         }
 
-        hierarchyMap.put(ci.getName(), ci);
+        String className = path.substring(0, path.length() - ".class".length());
+        if (hierarchyMap.containsKey(className)) {
+            return; // duplicate encounter, ignore
+        }
+        classSources.putIfAbsent(className, source); // if duplicate encounter, ignore
+    }
+
+    private static Map<String, IndexedJar> readIndex(File indexFile) {
+        Map<String, IndexedJar> ret = new HashMap<>();
+        if (!indexFile.isFile()) {
+            return ret;
+        }
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (dis.readInt() != INDEX_FORMAT_VERSION) {
+                return ret;
+            }
+            
+            int jarCount = dis.readInt();
+            for (int i = 0; i < jarCount; i++) {
+                String path = dis.readUTF();
+                long length = dis.readLong();
+                long lastModified = dis.readLong();
+                int classCount = dis.readInt();
+                List<ClassInformation> classes = new ArrayList<>(classCount);
+                for (int j = 0; j < classCount; j++) {
+                    classes.add(readClassInformation(dis));
+                }
+                ret.put(path, new IndexedJar(length, lastModified, classes));
+            }
+        } catch (IOException | RuntimeException e) {
+            return new HashMap<>(); // index file is corrupt or was written by some other version, ignore it
+        }
+        
+        return ret;
+    }
+
+    private static void writeClassInformation(DataOutputStream dos, ClassInformation info) throws IOException {
+        dos.writeUTF(info.getName());
+        dos.writeBoolean(info.getSuperClassName() != null);
+        if (info.getSuperClassName() != null) {
+            dos.writeUTF(info.getSuperClassName());
+        }
+        List<String> interfaces = info.getInterfaces();
+        dos.writeInt(interfaces.size());
+        for (String iface : interfaces) {
+            dos.writeUTF(iface);
+        }
+        dos.writeBoolean(info.isInterface());
+    }
+
+    private static ClassInformation readClassInformation(DataInputStream dis) throws IOException {
+        String name = dis.readUTF();
+        String superClassName = dis.readBoolean() ? dis.readUTF() : null;
+        int interfaceCount = dis.readInt();
+        List<String> interfaces = new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(dis.readUTF());
+        }
+        boolean interfaceMarker = dis.readBoolean();
+        return new ClassInformation(name, superClassName, interfaces, interfaceMarker);
+    }
+    
+    private static final class JarClassSource {
+        private final JarSource jarSource;
+        private final ZipEntry entry;
+
+        JarClassSource(JarSource jarSource, ZipEntry entry) {
+            this.jarSource = jarSource;
+            this.entry = entry;
+        }
+
+        InputStream open() throws IOException {
+            return jarSource.zipFile.getInputStream(entry); // ZipFile is safe to read from multiple threads
+        }
+    }
+    
+    private static final class JarSource {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final ZipFile zipFile;
+
+        JarSource(File file) throws IOException {
+            this.path = file.getPath();
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.zipFile = new ZipFile(file);
+        }
+    }
+    
+    private static final class IndexedJar {
+        private final long length;
+        private final long lastModified;
+        private final List<ClassInformation> classes;
+
+        IndexedJar(long length, long lastModified, List<ClassInformation> classes) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.classes = classes;
+        }
     }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.instrumenter.asm;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * Utility class to determine which local variables are live (may be read before being written) at each instruction of a method.
+ * @author Kasra Faghihi
+ */
+public final class LivenessUtils {
+
+    private LivenessUtils() {
+        // do nothing
+    }
+
+    /**
+     * Computes the local variable slots that are live going in to each instruction of a method. A slot is live at an instruction if there
+     * exists some path from that instruction (including paths through exception handlers) that reads the slot before writing to it.
+     * <p>
+     * For long/double locals, only the first slot of the pair is ever marked as live.
+     * @param methodNode method to analyze
+     * @return array with one entry per instruction in {@code methodNode.instructions} (same indexing as ASM's {@code Analyzer}), where each
+     * entry contains the indices of the local variable slots live at that instruction
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code methodNode} contains JSR/RET instructions
+     */
+    public static BitSet[] findLiveLocals(MethodNode methodNode) {
+        Validate.notNull(methodNode);
+
+        InsnList insnList = methodNode.instructions;
+        int insnCount = insnList.size();
+
+        // Build control flow graph -- normal successors and exception handler successors are kept separate. When an instruction throws,
+        // whatever it was going to write hasn't been written yet, so the live vars of its exception handlers flow straight through.
+        List<List<Integer>> normalSuccessors = new ArrayList<>(insnCount);
+        List<List<Integer>> exceptionSuccessors = new ArrayList<>(insnCount);
+        for (int i = 0; i < insnCount; i++) {
+            normalSuccessors.add(new ArrayList<>(2));
+            exceptionSuccessors.add(new ArrayList<>(1));
+        }
+
+        for (int i = 0; i < insnCount; i++) {
+            AbstractInsnNode insnNode = insnList.get(i);
+            List<Integer> successors = normalSuccessors.get(i);
+
+            int opcode = insnNode.getOpcode();
+            Validate.isTrue(opcode != Opcodes.JSR && opcode != Opcodes.RET, "JSR/RET instructions not allowed");
+
+            if (insnNode instanceof JumpInsnNode) {
+                successors.add(insnList.indexOf(((JumpInsnNode) insnNode).label));
+                if (opcode != Opcodes.GOTO) {
+                    addIfInRange(successors, i + 1, insnCount);
+                }
+            } else if (insnNode instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode switchInsnNode = (TableSwitchInsnNode) insnNode;
+                successors.add(insnList.indexOf(switchInsnNode.dflt));
+                for (LabelNode labelNode : switchInsnNode.labels) {
+                    successors.add(insnList.indexOf(labelNode));
+                }
+            } else if (insnNode instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode switchInsnNode = (LookupSwitchInsnNode) insnNode;
+                successors.add(insnList.indexOf(switchInsnNode.dflt));
+                for (LabelNode labelNode : switchInsnNode.labels) {
+                    successors.add(insnList.indexOf(labelNode));
+                }
+            } else if (!isExit(opcode)) {
+                addIfInRange(successors, i + 1, insnCount);
+            }
+        }
+
+        for (TryCatchBlockNode tryCatchBlockNode : methodNode.tryCatchBlocks) {
+            int start = insnList.indexOf(tryCatchBlockNode.start);
+            int end = insnList.indexOf(tryCatchBlockNode.end);
+            int handler = insnList.indexOf(tryCatchBlockNode.handler);
+            for (int i = start; i < end; i++) {
+                exceptionSuccessors.get(i).add(handler);
+            }
+        }
+
+        // Build predecessors (used to know what to revisit when live set of an instruction changes)
+        List<List<Integer>> predecessors = new ArrayList<>(insnCount);
+        for (int i = 0; i < insnCount; i++) {
+            predecessors.add(new ArrayList<>(2));
+        }
+        for (int i = 0; i < insnCount; i++) {
+            for (int successor : normalSuccessors.get(i)) {
+                predecessors.get(successor).add(i);
+            }
+            for (int successor : exceptionSuccessors.get(i)) {
+                predecessors.get(successor).add(i);
+            }
+        }
+
+        // Iterate backwards until nothing changes: liveIn = use + (liveOut(normal) - def) + liveOut(exception)
+        BitSet[] liveIn = new BitSet[insnCount];
+        for (int i = 0; i < insnCount; i++) {
+            liveIn[i] = new BitSet();
+        }
+
+        LinkedList<Integer> worklist = new LinkedList<>();
+        boolean[] queued = new boolean[insnCount];
+        for (int i = insnCount - 1; i >= 0; i--) {
+            worklist.add(i);
+            queued[i] = true;
+        }
+
+        while (!worklist.isEmpty()) {
+            int i = worklist.removeFirst();
+            queued[i] = false;
+
+            AbstractInsnNode insnNode = insnList.get(i);
+
+            BitSet newLiveIn = new BitSet();
+            for (int successor : normalSuccessors.get(i)) {
+                newLiveIn.or(liveIn[successor]);
+            }
+            applyInstruction(insnNode, newLiveIn);
+            for (int successor : exceptionSuccessors.get(i)) {
+                newLiveIn.or(liveIn[successor]);
+            }
+
+            if (!newLiveIn.equals(liveIn[i])) {
+                liveIn[i] = newLiveIn;
+                for (int predecessor : predecessors.get(i)) {
+                    if (!queued[predecessor]) {
+                        worklist.add(predecessor);
+                        queued[predecessor] = true;
+                    }
+                }
+            }
+        }
+
+        return liveIn;
+    }
+
+    private static void applyInstruction(AbstractInsnNode insnNode, BitSet live) {
+        switch (insnNode.getOpcode()) {
+            case Opcodes.ILOAD:
+            case Opcodes.LLOAD:
+            case Opcodes.FLOAD:
+            case Opcodes.DLOAD:
+            case Opcodes.ALOAD:
+                live.set(((VarInsnNode) insnNode).var); // use
+                break;
+            case Opcodes.ISTORE:
+            case Opcodes.LSTORE:
+            case Opcodes.FSTORE:
+            case Opcodes.DSTORE:
+            case Opcodes.ASTORE:
+                live.clear(((VarInsnNode) insnNode).var); // def
+                break;
+            case Opcodes.IINC:
+                live.set(((IincInsnNode) insnNode).var); // use (and def, but use wins because it happens first)
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static boolean isExit(int opcode) {
+        switch (opcode) {
+            case Opcodes.IRETURN:
+            case Opcodes.LRETURN:
+            case Opcodes.FRETURN:
+            case Opcodes.DRETURN:
+            case Opcodes.ARETURN:
+            case Opcodes.RETURN:
+            case Opcodes.ATHROW:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void addIfInRange(List<Integer> successors, int idx, int insnCount) {
+        if (idx < insnCount) {
+            successors.add(idx);
+        }
+    }
+}
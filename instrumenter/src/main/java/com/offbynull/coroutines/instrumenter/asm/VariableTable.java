@@ -62,10 +62,13 @@ public final class VariableTable {
             argVars.add(0, new Variable(objectType, 0, true));
         }
         
+        // Remember that LONG and DOUBLE primitives take up 2 LVT slots -- the index of an argument is the sum of the sizes of the arguments
+        // before it
         Type[] argTypes = methodType.getArgumentTypes();
+        int idx = isStatic ? 0 : 1;
         for (int i = 0; i < argTypes.length; i++) {
-            int idx = isStatic ? i : i + 1;
             argVars.add(new Variable(argTypes[i], idx, true));
+            idx += argTypes[i].getSize();
         }
     }
 
@@ -663,6 +663,42 @@ public final class GenericGenerators {
         
         return ret;
     }
+    /**
+     * Compares two objects and performs one action if the objects are the same (uses == to check if same, not the equals method) and
+     * another action if they aren't. Unlike calling {@link #ifObjectsEqual(InsnList, InsnList, InsnList) } followed by
+     * {@link #ifObjectsNotEqual(InsnList, InsnList, InsnList) }, the verifier knows that exactly one of the actions executes -- local
+     * variables assigned in both actions are considered assigned after this block.
+     * @param lhs left hand side instruction list -- must leave an object on the stack
+     * @param rhs right hand side instruction list -- must leave an object on the stack
+     * @param action action to perform if results of {@code lhs} and {@code rhs} are equal
+     * @param elseAction action to perform if results of {@code lhs} and {@code rhs} are not equal
+     * @return instructions instruction list to perform one of two actions depending on if two objects are equal
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static InsnList ifObjectsEqual(InsnList lhs, InsnList rhs, InsnList action, InsnList elseAction) {
+        Validate.notNull(lhs);
+        Validate.notNull(rhs);
+        Validate.notNull(action);
+        Validate.notNull(elseAction);
+        
+        
+        InsnList ret = new InsnList();
+        
+        LabelNode notEqualLabelNode = new LabelNode();
+        LabelNode endLabelNode = new LabelNode();
+        
+        ret.add(lhs);
+        ret.add(rhs);
+        ret.add(new JumpInsnNode(Opcodes.IF_ACMPNE, notEqualLabelNode));
+        ret.add(action);
+        ret.add(new JumpInsnNode(Opcodes.GOTO, endLabelNode));
+        ret.add(notEqualLabelNode);
+        ret.add(elseAction);
+        ret.add(endLabelNode);
+        
+        return ret;
+    }
+    
     /**
      * Compares two objects and performs some action if the objects are NOT the same (uses != to check if not same).
      * @param lhs left hand side instruction list -- must leave an object on the stack
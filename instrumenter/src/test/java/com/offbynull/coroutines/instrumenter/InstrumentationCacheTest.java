@@ -0,0 +1,144 @@
+package com.offbynull.coroutines.instrumenter;
+
+import static com.offbynull.coroutines.instrumenter.SharedConstants.MONITOR_INVOKE_TEST;
+import com.offbynull.coroutines.instrumenter.asm.ClassInformation;
+import com.offbynull.coroutines.instrumenter.asm.ClassInformationRepository;
+import com.offbynull.coroutines.instrumenter.asm.ClassResourceClassInformationRepository;
+import com.offbynull.coroutines.instrumenter.asm.CompositeClassInformationRepository;
+import com.offbynull.coroutines.instrumenter.asm.FileSystemClassInformationRepository;
+import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
+import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.getClasspath;
+import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.readZipFromResource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public final class InstrumentationCacheTest {
+    
+    private static final InstrumentationSettings SETTINGS = new InstrumentationSettings(MarkerType.NONE, false, true);
+    
+    private File cacheDir;
+    private byte[] classContent;
+    private ClassInformationRepository baseRepo;
+    
+    @BeforeEach
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        classContent = readZipFromResource(MONITOR_INVOKE_TEST + ".zip").get(MONITOR_INVOKE_TEST + ".class");
+        baseRepo = new CompositeClassInformationRepository(
+                new ClassResourceClassInformationRepository(getClass().getClassLoader()),
+                FileSystemClassInformationRepository.create(getClasspath()));
+    }
+    
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    @Test
+    public void mustReturnSameResultsFromCache() throws IOException {
+        InstrumentationCache cache = new InstrumentationCache(cacheDir);
+
+        CountingClassInformationRepository repo1 = new CountingClassInformationRepository(baseRepo, null);
+        InstrumentationResult result1 = cache.instrument(new Instrumenter(repo1), classContent, SETTINGS);
+        CountingClassInformationRepository repo2 = new CountingClassInformationRepository(baseRepo, null);
+        InstrumentationResult result2 = cache.instrument(new Instrumenter(repo2), classContent, SETTINGS);
+
+        assertArrayEquals(new Instrumenter(baseRepo).instrument(classContent, SETTINGS).getInstrumentedClass(),
+                result1.getInstrumentedClass());
+        assertArrayEquals(result1.getInstrumentedClass(), result2.getInstrumentedClass());
+        assertEquals(result1.getExtraFiles().keySet(), result2.getExtraFiles().keySet());
+        for (String name : result1.getExtraFiles().keySet()) {
+            assertArrayEquals(result1.getExtraFiles().get(name), result2.getExtraFiles().get(name));
+        }
+        
+        // 2nd time around only looks up the classes the 1st time around looked up (to make sure that they haven't changed)
+        assertEquals(repo1.names, repo2.names);
+        assertEquals(repo1.names.size(), repo2.count);
+        assertTrue(repo1.count > repo2.count);
+    }
+
+    @Test
+    public void mustReinstrumentWhenLookedUpClassChanges() throws IOException {
+        InstrumentationCache cache = new InstrumentationCache(cacheDir);
+
+        CountingClassInformationRepository repo1 = new CountingClassInformationRepository(baseRepo, null);
+        cache.instrument(new Instrumenter(repo1), classContent, SETTINGS);
+        
+        String changedName = repo1.names.stream()
+                .filter(x -> baseRepo.getInformation(x) != null && !baseRepo.getInformation(x).getInterfaces().isEmpty())
+                .findFirst().get();
+        CountingClassInformationRepository repo2 = new CountingClassInformationRepository(baseRepo, changedName);
+        cache.instrument(new Instrumenter(repo2), classContent, SETTINGS);
+
+        assertTrue(repo2.count > repo1.names.size());
+    }
+
+    @Test
+    public void mustReinstrumentWhenInstrumenterVersionChanges() throws IOException {
+        InstrumentationCache cache1 = new InstrumentationCache(cacheDir, "version1");
+        CountingClassInformationRepository repo1 = new CountingClassInformationRepository(baseRepo, null);
+        cache1.instrument(new Instrumenter(repo1), classContent, SETTINGS);
+
+        // Different version -- must not pick up the entry written by version1
+        InstrumentationCache cache2 = new InstrumentationCache(cacheDir, "version2");
+        CountingClassInformationRepository repo2 = new CountingClassInformationRepository(baseRepo, null);
+        cache2.instrument(new Instrumenter(repo2), classContent, SETTINGS);
+        assertEquals(repo1.count, repo2.count);
+
+        // Same version -- must pick up the entry written by version1
+        InstrumentationCache cache3 = new InstrumentationCache(cacheDir, "version1");
+        CountingClassInformationRepository repo3 = new CountingClassInformationRepository(baseRepo, null);
+        cache3.instrument(new Instrumenter(repo3), classContent, SETTINGS);
+        assertEquals(repo1.names.size(), repo3.count);
+    }
+
+    @Test
+    public void mustIgnoreCorruptEntries() throws IOException {
+        InstrumentationCache cache = new InstrumentationCache(cacheDir);
+
+        InstrumentationResult result1 = cache.instrument(new Instrumenter(baseRepo), classContent, SETTINGS);
+        for (File file : FileUtils.listFiles(cacheDir, null, true)) {
+            FileUtils.writeByteArrayToFile(file, new byte[] { 0, 0, 0, 1, 0 });
+        }
+        InstrumentationResult result2 = cache.instrument(new Instrumenter(baseRepo), classContent, SETTINGS);
+
+        assertArrayEquals(result1.getInstrumentedClass(), result2.getInstrumentedClass());
+    }
+    
+    private static final class CountingClassInformationRepository implements ClassInformationRepository {
+        private final ClassInformationRepository backingRepo;
+        private final String changedName;
+        private final Set<String> names = new HashSet<>();
+        private int count;
+
+        CountingClassInformationRepository(ClassInformationRepository backingRepo, String changedName) {
+            this.backingRepo = backingRepo;
+            this.changedName = changedName;
+        }
+
+        @Override
+        public ClassInformation getInformation(String internalClassName) {
+            names.add(internalClassName);
+            count++;
+            ClassInformation info = backingRepo.getInformation(internalClassName);
+            if (info != null && internalClassName.equals(changedName)) {
+                List<String> interfaces = new ArrayList<>(info.getInterfaces());
+                interfaces.addAll(info.getInterfaces()); // different from what was cached, but the hierarchy stays the same
+                info = new ClassInformation(info.getName(), info.getSuperClassName(), interfaces, info.isInterface());
+            }
+            return info;
+        }
+    }
+}
@@ -26,19 +26,29 @@ import static com.offbynull.coroutines.instrumenter.SharedConstants.SANITY_TEST;
 import static com.offbynull.coroutines.instrumenter.SharedConstants.STATIC_INVOKE_TEST;
 import static com.offbynull.coroutines.instrumenter.SharedConstants.UNINITIALIZED_VARIABLE_INVOKE_TEST;
 import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
+import com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.JarEntry;
+import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.createJarAndLoad;
 import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.getClasspath;
+import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.getResource;
 import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.loadClassesInZipResourceAndInstrument;
 import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.readZipFromResource;
 import com.offbynull.coroutines.user.Continuation;
 import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineException;
 import com.offbynull.coroutines.user.CoroutineRunner;
+import com.offbynull.coroutines.user.CoroutineScheduler;
 import com.offbynull.coroutines.user.MethodState;
 import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import static org.apache.commons.lang3.reflect.ConstructorUtils.invokeConstructor;
 import static org.apache.commons.lang3.reflect.FieldUtils.readField;
 import static org.apache.commons.lang3.reflect.MethodUtils.invokeStaticMethod;
@@ -50,6 +60,10 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 public final class InstrumentationTest {
 
@@ -72,6 +86,108 @@ public final class InstrumentationTest {
         }
     }
 
+    @Test
+    public void mustProperlyExecuteCoroutinesThroughScheduler() throws Exception {
+        int count = 200;
+        StringBuilder[] builders = new StringBuilder[count];
+        CountDownLatch latch = new CountDownLatch(count);
+        List<CoroutineException> failures = Collections.synchronizedList(new ArrayList<>());
+
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip")) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+
+            CoroutineScheduler scheduler = new CoroutineScheduler(4, new CoroutineScheduler.Listener() {
+                @Override
+                public void completed(CoroutineRunner runner) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void failed(CoroutineRunner runner, CoroutineException exception) {
+                    failures.add(exception);
+                    latch.countDown();
+                }
+            });
+            try {
+                for (int i = 0; i < count; i++) {
+                    builders[i] = new StringBuilder();
+                    scheduler.schedule((Coroutine) invokeConstructor(cls, builders[i]));
+                }
+                assertTrue(latch.await(30L, TimeUnit.SECONDS));
+                assertEquals(0, scheduler.getScheduledCount());
+            } finally {
+                scheduler.shutdown();
+                assertTrue(scheduler.awaitTermination(10000L));
+            }
+        }
+
+        assertTrue(failures.isEmpty());
+        for (StringBuilder builder : builders) {
+            assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", builder.toString());
+        }
+    }
+
+    @Test
+    public void mustReportErrorsThrownByScheduledCoroutinesAndKeepWorkerAlive() throws Exception {
+        CountDownLatch latch = new CountDownLatch(2);
+        List<CoroutineException> failures = Collections.synchronizedList(new ArrayList<>());
+        StringBuilder builder = new StringBuilder();
+
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip")) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+
+            CoroutineScheduler scheduler = new CoroutineScheduler(1, new CoroutineScheduler.Listener() {
+                @Override
+                public void completed(CoroutineRunner runner) {
+                    latch.countDown();
+                    throw new AssertionError("listener error, must be ignored");
+                }
+
+                @Override
+                public void failed(CoroutineRunner runner, CoroutineException exception) {
+                    failures.add(exception);
+                    latch.countDown();
+                    throw new AssertionError("listener error, must be ignored");
+                }
+            });
+            try {
+                scheduler.schedule(c -> {
+                    throw new AssertionError("coroutine error");
+                });
+                scheduler.schedule((Coroutine) invokeConstructor(cls, builder)); // same (only) worker has to survive to run this
+                assertTrue(latch.await(30L, TimeUnit.SECONDS));
+                assertEquals(0, scheduler.getScheduledCount());
+            } finally {
+                scheduler.shutdown();
+                assertTrue(scheduler.awaitTermination(10000L));
+            }
+        }
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0).getCause() instanceof AssertionError);
+        assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", builder.toString());
+    }
+
+    @Test
+    public void mustDiscardQueuedRunnersWhenSchedulerShutsDown() throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip")) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+
+            CoroutineScheduler scheduler = new CoroutineScheduler(1);
+            try {
+                for (int i = 0; i < 1000; i++) {
+                    scheduler.schedule((Coroutine) invokeConstructor(cls, new StringBuilder()));
+                }
+            } finally {
+                scheduler.shutdown();
+                assertTrue(scheduler.awaitTermination(10000L));
+            }
+
+            assertEquals(0, scheduler.getScheduledCount());
+            assertThrows(IllegalStateException.class, () -> scheduler.schedule((Coroutine) invokeConstructor(cls, new StringBuilder())));
+        }
+    }
+
     @Test
     public void mustProperlySuspendInDifferentStackAndLocalsStatesTest() throws Exception {
         StringBuilder builder = new StringBuilder();
@@ -159,6 +275,422 @@ public final class InstrumentationTest {
         performCountTest(COMPLEX_TEST, new InstrumentationSettings(MarkerType.CONSTANT, true, true));
     }
     
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenMethodStatesReused() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithRecursiveMethodsWhenMethodStatesReused() throws Exception {
+        performCountTest(RECURSIVE_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnLongsWhenMethodStatesReused() throws Exception {
+        performCountTest(LONG_RETURN_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnDoublesWhenMethodStatesReused() throws Exception {
+        performDoubleCountTest(DOUBLE_RETURN_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithBasicTypesInLocalVariableTableAndOperandStackWhenMethodStatesReused() throws Exception {
+        performCountTest(BASIC_TYPE_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithNullTypeInLocalVariableTableWhenMethodStatesReused() throws Exception {
+        performCountTest(NULL_TYPE_IN_LOCAL_VARIABLE_TABLE_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenDeadLocalsPruned() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .deadLocalPruning(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnLongsWhenDeadLocalsPruned() throws Exception {
+        performCountTest(LONG_RETURN_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .deadLocalPruning(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenDeadLocalsPrunedAndMethodStatesReused() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .deadLocalPruning(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenInvokeArgumentsPruned() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .invokeArgumentPruning(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenDeadLocalsAndInvokeArgumentsPruned() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .deadLocalPruning(true)
+                .invokeArgumentPruning(true)
+                .build());
+    }
+
+    @Test
+    public void mustRecycleDiscardedMethodStatesWhenMethodStatesReused() throws Exception {
+        StringBuilder builder = new StringBuilder();
+
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip",
+                new InstrumentationSettings.Builder(MarkerType.CONSTANT).autoSerializable(true).methodStateReuse(true).build())) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, builder);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            Continuation continuation = (Continuation) readField(runner, "continuation", true);
+
+            // The method state for the innermost frame gets discarded on the cycle after it was created, so it's recycled at the end of
+            // that cycle and picked back up by the suspend in the cycle after that.
+            assertTrue(runner.execute());
+            MethodState firstInnermost = continuation.getSaved(continuation.getSize() - 1);
+            assertTrue(runner.execute());
+            MethodState secondInnermost = continuation.getSaved(continuation.getSize() - 1);
+            assertTrue(runner.execute());
+            MethodState thirdInnermost = continuation.getSaved(continuation.getSize() - 1);
+
+            assertTrue(firstInnermost != secondInnermost);
+            assertTrue(firstInnermost == thirdInnermost);
+
+            while (runner.execute()) { // run until finished
+                
+            }
+            assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", builder.toString());
+        }
+    }
+    
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenTypedStateStorageSet() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .typedStateStorage(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnLongsWhenTypedStateStorageSet() throws Exception {
+        performCountTest(LONG_RETURN_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .typedStateStorage(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnDoublesWhenTypedStateStorageSet() throws Exception {
+        performDoubleCountTest(DOUBLE_RETURN_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .typedStateStorage(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithBasicTypesInLocalVariableTableAndOperandStackWhenTypedStateStorageSet() throws Exception {
+        performCountTest(BASIC_TYPE_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .typedStateStorage(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenTypedStateStorageSetAndMethodStatesReused() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .typedStateStorage(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenTypedStateStorageSetAndDebugModeSet() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .debugMode(true)
+                .autoSerializable(true)
+                .typedStateStorage(true)
+                .build());
+    }
+
+    @Test
+    public void mustExposeTypedStorageArraysThroughDataWhenTypedStateStorageSet() throws Exception {
+        StringBuilder builder = new StringBuilder();
+
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(STATIC_INVOKE_TEST + ".zip",
+                new InstrumentationSettings.Builder(MarkerType.CONSTANT).autoSerializable(true).typedStateStorage(true).build())) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(STATIC_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, builder);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            Continuation continuation = (Continuation) readField(runner, "continuation", true);
+
+            // The Object[] container isn't created by the instrumented code in this mode, but getData() (used by serialization) must still
+            // hand back the same storage arrays.
+            assertTrue(runner.execute());
+            MethodState methodState = continuation.getSaved(0);
+            Object[] data = methodState.getData();
+            assertTrue(data[4] == methodState.getLocalObjects());
+            assertTrue(data[5] == methodState.getOperandInts());
+            assertTrue(data[9] == methodState.getOperandObjects());
+            assertEquals(0, ((int[]) data[5])[0]);
+        }
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenStateSavingOutlined() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .outlinedStateSaving(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnLongsWhenStateSavingOutlined() throws Exception {
+        performCountTest(LONG_RETURN_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .outlinedStateSaving(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnDoublesWhenStateSavingOutlined() throws Exception {
+        performDoubleCountTest(DOUBLE_RETURN_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .outlinedStateSaving(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithBasicTypesInLocalVariableTableAndOperandStackWhenStateSavingOutlined() throws Exception {
+        performCountTest(BASIC_TYPE_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .outlinedStateSaving(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithNullTypeInLocalVariableTableWhenStateSavingOutlined() throws Exception {
+        performCountTest(NULL_TYPE_IN_LOCAL_VARIABLE_TABLE_INVOKE_TEST,
+                new InstrumentationSettings.Builder(MarkerType.CONSTANT).autoSerializable(true).outlinedStateSaving(true).build());
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenStateSavingOutlinedAndMethodStatesReusedAndTypedStateStorageSet()
+            throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .methodStateReuse(true)
+                .typedStateStorage(true)
+                .outlinedStateSaving(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendInNonTrivialCoroutineWhenStateSavingOutlinedAndDebugModeSet() throws Exception {
+        performCountTest(COMPLEX_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .debugMode(true)
+                .autoSerializable(true)
+                .outlinedStateSaving(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithinTryCatchWhenStateSavingOutlined() throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(EXCEPTION_THEN_CONTINUE_INVOKE_TEST + ".zip",
+                new InstrumentationSettings.Builder(MarkerType.CONSTANT).autoSerializable(true).outlinedStateSaving(true).build())) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(EXCEPTION_THEN_CONTINUE_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+
+            assertTrue(runner.execute());
+            assertTrue(runner.execute());
+            assertFalse(runner.execute());
+        }
+    }
+
+    @Test
+    public void mustKeepTrackOfSynchronizedBlocksWhenStateSavingOutlined() throws Exception {
+        LinkedList<String> tracker = new LinkedList<>();
+        
+        Object mon1 = new ArrayList<>();
+        Object mon2 = new ArrayList<>();
+        Object mon3 = new ArrayList<>();
+
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(MONITOR_INVOKE_TEST + ".zip",
+                new InstrumentationSettings.Builder(MarkerType.CONSTANT).autoSerializable(true).outlinedStateSaving(true).build())) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(MONITOR_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, tracker, mon1, mon2, mon3);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            Continuation continuation = (Continuation) readField(runner, "continuation", true);
+
+            // The lockstate gets passed in to the outlined save method, so it must still end up in the method states
+            assertTrue(runner.execute());
+            assertEquals(Arrays.asList("mon1", "mon2", "mon3", "mon1"), tracker);
+            assertArrayEquals(new Object[] { mon1 }, continuation.getSaved(0).getLockState().toArray());
+            assertArrayEquals(new Object[] { mon2, mon3, mon1 }, continuation.getSaved(1).getLockState().toArray());
+            
+            while (runner.execute()) { // run until finished
+                
+            }
+            assertEquals(Arrays.<String>asList(), tracker);
+        }
+    }
+
+    @Test
+    public void mustGenerateOutlinedSaveMethodsWhenStateSavingOutlined() throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(STATIC_INVOKE_TEST + ".zip",
+                new InstrumentationSettings.Builder(MarkerType.CONSTANT).autoSerializable(true).outlinedStateSaving(true).build())) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(STATIC_INVOKE_TEST);
+
+            List<Method> saveMethods = new ArrayList<>();
+            for (Method method : cls.getDeclaredMethods()) {
+                if (method.getName().startsWith("__COROUTINES_SAVE_")) {
+                    saveMethods.add(method);
+                }
+            }
+            
+            assertFalse(saveMethods.isEmpty());
+            for (Method method : saveMethods) {
+                assertTrue(Modifier.isPrivate(method.getModifiers()));
+                assertTrue(Modifier.isStatic(method.getModifiers()));
+                assertTrue(method.isSynthetic());
+            }
+        }
+        
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(STATIC_INVOKE_TEST + ".zip")) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(STATIC_INVOKE_TEST);
+            for (Method method : cls.getDeclaredMethods()) {
+                assertFalse(method.getName().startsWith("__COROUTINES_SAVE_"));
+            }
+        }
+    }
+
+    @Test
+    public void mustKeepMethodStatesOfRestoredCallersWhenSuspendingAgain() throws Exception {
+        StringBuilder builder = new StringBuilder();
+
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(RECURSIVE_INVOKE_TEST + ".zip")) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(RECURSIVE_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, builder);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            Continuation continuation = (Continuation) readField(runner, "continuation", true);
+
+            assertTrue(runner.execute());
+            int size = continuation.getSize();
+            MethodState[] before = new MethodState[size];
+            for (int i = 0; i < size; i++) {
+                before[i] = continuation.getSaved(i);
+            }
+
+            // Callers that were restored and are still waiting on the invocation when it suspends again shouldn't create new method
+            // states -- only the frames that were entered after the restore should.
+            assertTrue(runner.execute());
+            int unchangedCount = 0;
+            for (int i = 0; i < Math.min(size, continuation.getSize()) - 1; i++) {
+                if (before[i] != continuation.getSaved(i)) {
+                    break;
+                }
+                unchangedCount++;
+            }
+            assertTrue(unchangedCount > 0);
+            assertTrue(before[size - 1] != continuation.getSaved(continuation.getSize() - 1));
+        }
+    }
+
+    @Test
+    public void mustNotSaveObjectInvocationArgumentsInCallerWhenInvokeArgumentsPruned() throws Exception {
+        StringBuilder builder = new StringBuilder();
+
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(STATIC_INVOKE_TEST + ".zip",
+                new InstrumentationSettings.Builder(MarkerType.CONSTANT).autoSerializable(true).invokeArgumentPruning(true).build())) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(STATIC_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, builder);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            Continuation continuation = (Continuation) readField(runner, "continuation", true);
+
+            // run() invokes echo(c, i, builder). The builder arg gets restored by echo() (if echo() still needs it), so the operand stack
+            // saved for run() should only hold on to the continuation (the int goes in to the int storage array).
+            assertTrue(runner.execute());
+            Object[] callerOperandObjects = (Object[]) continuation.getSaved(0).getData()[9];
+            assertEquals(1, callerOperandObjects.length);
+            assertTrue(callerOperandObjects[0] instanceof Continuation);
+
+            while (runner.execute()) { // run until finished
+
+            }
+            assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", builder.toString());
+        }
+    }
+
+    @Test
+    public void mustSaveObjectInvocationArgumentsInCaller() throws Exception {
+        performSaveObjectInvocationArgumentsInCallerTest(new InstrumentationSettings(MarkerType.CONSTANT, false, true));
+    }
+
+    @Test
+    public void mustSaveObjectInvocationArgumentsInCallerWhenInvokeArgumentsPrunedButDebugModeSet() throws Exception {
+        performSaveObjectInvocationArgumentsInCallerTest(new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .debugMode(true)
+                .autoSerializable(true)
+                .invokeArgumentPruning(true)
+                .build());
+    }
+
+    private void performSaveObjectInvocationArgumentsInCallerTest(InstrumentationSettings settings) throws Exception {
+        StringBuilder builder = new StringBuilder();
+
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(STATIC_INVOKE_TEST + ".zip", settings)) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(STATIC_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, builder);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            Continuation continuation = (Continuation) readField(runner, "continuation", true);
+
+            assertTrue(runner.execute());
+            Object[] callerOperandObjects = (Object[]) continuation.getSaved(0).getData()[9];
+            assertEquals(2, callerOperandObjects.length);
+            assertTrue(callerOperandObjects[1] == builder);
+        }
+    }
+
     @Test
     public void mustProperlyContinueWhenExceptionOccursButIsCaughtBeforeReachingRunner() throws Exception {
         try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(EXCEPTION_THEN_CONTINUE_INVOKE_TEST + ".zip")) {
@@ -387,6 +919,17 @@ public final class InstrumentationTest {
         assertArrayEquals(classInstrumented1stPass, classInstrumented2stPass);
     }
 
+    @Test
+    public void mustReturnClassUnchangedIfContinuationNeverReferenced() throws Exception {
+        byte[] classContent = getResource(SharedConstants.class.getName().replace('.', '/') + ".class");
+
+        Instrumenter instrumenter = new Instrumenter(getClasspath());
+        InstrumentationResult result = instrumenter.instrument(classContent, new InstrumentationSettings(MarkerType.NONE, false, true));
+
+        assertArrayEquals(classContent, result.getInstrumentedClass());
+        assertTrue(result.getExtraFiles().isEmpty());
+    }
+
     @Test
     public void mustProperlySuspendInTryCatchFinally() throws Exception {
         StringBuilder builder = new StringBuilder();
@@ -504,4 +1047,45 @@ public final class InstrumentationTest {
             }
         }
     }
+
+    @Test
+    public void mustIgnoreContinuationPointsInUnreachableCode() throws Exception {
+        // public final class DeadCodeTest implements Coroutine { public void run(Continuation c) { c.suspend(); return; c.suspend(); } }
+        String continuationName = Type.getInternalName(Continuation.class);
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS); // no COMPUTE_FRAMES -- that would replace the dead code with NOP/ATHROW
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, "DeadCodeTest", null, "java/lang/Object",
+                new String[] { Type.getInternalName(Coroutine.class) });
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", "(L" + continuationName + ";)V", null, new String[] { "java/lang/Exception" });
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, continuationName, "suspend", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, continuationName, "suspend", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        Instrumenter instrumenter = new Instrumenter(getClasspath());
+        byte[] classInstrumented = instrumenter.instrument(cw.toByteArray(), new InstrumentationSettings(MarkerType.NONE, false, true))
+                .getInstrumentedClass();
+
+        try (URLClassLoader classLoader = createJarAndLoad(new JarEntry("DeadCodeTest.class", classInstrumented))) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass("DeadCodeTest");
+            Coroutine coroutine = invokeConstructor(cls);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+
+            assertTrue(runner.execute());
+            assertFalse(runner.execute()); // coroutine finished executing here
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package com.offbynull.coroutines.instrumenter;
+
+import static com.offbynull.coroutines.instrumenter.SharedConstants.COMPLEX_TEST;
+import static com.offbynull.coroutines.instrumenter.SharedConstants.NORMAL_INVOKE_TEST;
+import static com.offbynull.coroutines.instrumenter.SharedConstants.RECURSIVE_INVOKE_TEST;
+import static com.offbynull.coroutines.instrumenter.SharedConstants.STATIC_INVOKE_TEST;
+import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
+import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.getClasspath;
+import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.readZipFromResource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.commons.io.FileUtils;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public final class PluginHelperTest {
+    
+    private File srcDir;
+    private File serialDstDir;
+    private File parallelDstDir;
+    
+    @BeforeEach
+    public void setUp() throws IOException {
+        srcDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        serialDstDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        parallelDstDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+
+        for (String testClass : new String[] { COMPLEX_TEST, NORMAL_INVOKE_TEST, RECURSIVE_INVOKE_TEST, STATIC_INVOKE_TEST }) {
+            for (Entry<String, byte[]> entry : readZipFromResource(testClass + ".zip").entrySet()) {
+                FileUtils.writeByteArrayToFile(new File(srcDir, entry.getKey()), entry.getValue());
+            }
+        }
+    }
+    
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(serialDstDir);
+        FileUtils.deleteDirectory(parallelDstDir);
+    }
+
+    @Test
+    public void mustInstrumentSameWhenParallel() throws IOException {
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        
+        List<String> serialLog = new ArrayList<>();
+        PluginHelper.instrument(createInstrumenter(), settings, srcDir, serialDstDir, serialLog::add, 1);
+        List<String> parallelLog = new ArrayList<>();
+        PluginHelper.instrument(createInstrumenter(), settings, srcDir, parallelDstDir, parallelLog::add, 4);
+        
+        assertFalse(serialLog.isEmpty());
+        assertEquals(serialLog, parallelLog);
+        
+        Map<File, File> serialMapping = PluginHelper.mapPaths(serialDstDir, parallelDstDir);
+        assertFalse(serialMapping.isEmpty());
+        for (Entry<File, File> e : serialMapping.entrySet()) {
+            assertArrayEquals(FileUtils.readFileToByteArray(e.getKey()), FileUtils.readFileToByteArray(e.getValue()), e.getKey().getName());
+        }
+        assertEquals(
+                FileUtils.listFiles(serialDstDir, null, true).size(),
+                FileUtils.listFiles(parallelDstDir, null, true).size());
+    }
+
+    @Test
+    public void mustFailWhenParallelAndClassFileIsBad() throws IOException {
+        FileUtils.writeByteArrayToFile(new File(srcDir, "Bad.class"), new byte[] { 1, 2, 3, 4 });
+        
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        assertThrows(RuntimeException.class,
+                () -> PluginHelper.instrument(createInstrumenter(), settings, srcDir, parallelDstDir, x -> { }, 4));
+    }
+
+    @Test
+    public void mustStopStartingClassFilesOnceOneFailsAndLogThoseThatWereWritten() throws IOException {
+        byte[] classData = readZipFromResource(NORMAL_INVOKE_TEST + ".zip").get(NORMAL_INVOKE_TEST + ".class");
+        int count = 200;
+        for (int i = 0; i < count; i++) {
+            FileUtils.writeByteArrayToFile(new File(srcDir, "z/" + NORMAL_INVOKE_TEST + i + ".class"), classData);
+        }
+        FileUtils.writeByteArrayToFile(new File(srcDir, "Bad.class"), new byte[] { 1, 2, 3, 4 }); // sorts before everything else
+
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        List<String> log = new ArrayList<>();
+        assertThrows(RuntimeException.class,
+                () -> PluginHelper.instrument(createInstrumenter(), settings, srcDir, parallelDstDir, log::add, 2));
+
+        // Failure was at the start of the order, so most of the class files after it must never have been started
+        int written = FileUtils.listFiles(parallelDstDir, new String[] { "class" }, true).size();
+        assertTrue(written < count / 2);
+        assertEquals(written, log.size());
+    }
+
+    private Instrumenter createInstrumenter() throws IOException {
+        List<File> classpath = getClasspath();
+        classpath.add(srcDir);
+        return new Instrumenter(classpath);
+    }
+}
@@ -13,20 +13,42 @@ import static com.offbynull.coroutines.instrumenter.SharedConstants.RETURN_INVOK
 import static com.offbynull.coroutines.instrumenter.SharedConstants.STATIC_INVOKE_TEST;
 import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
 import static com.offbynull.coroutines.instrumenter.testhelpers.TestUtils.loadClassesInZipResourceAndInstrument;
+import com.offbynull.coroutines.user.BinaryCoroutineDeserializer;
+import com.offbynull.coroutines.user.BinaryCoroutineSerializer;
 import com.offbynull.coroutines.user.Coroutine;
 import com.offbynull.coroutines.user.CoroutineReader;
 import com.offbynull.coroutines.user.CoroutineRunner;
 import com.offbynull.coroutines.user.CoroutineWriter;
+import com.offbynull.coroutines.user.CoroutineWriter.DefaultCoroutineSerializer;
+import com.offbynull.coroutines.user.SerializedState;
+import com.offbynull.coroutines.user.SerializedState.FrameInterceptPoint;
+import com.offbynull.coroutines.user.SerializedState.FrameUpdatePoint;
+import com.offbynull.coroutines.user.SerializedStateDelta;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.net.URLClassLoader;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import static org.apache.commons.lang3.reflect.ConstructorUtils.invokeConstructor;
 import static org.apache.commons.lang3.reflect.FieldUtils.readField;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 public final class SerializationTest {
+    
+    private static final byte[] TRAILING_DATA = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
 
     @Test
     public void mustProperlySuspendWithVirtualMethods() throws Exception {
@@ -83,7 +105,398 @@ public final class SerializationTest {
         performIntCountTest(EMPTY_CONTINUATION_POINT_INVOKE_TEST, new InstrumentationSettings(MarkerType.CONSTANT, false, true));
     }
 
+    @Test
+    public void mustProperlySuspendWithStaticMethodsWhenTypedStateStorageSet() throws Exception {
+        performIntCountTest(STATIC_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .typedStateStorage(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnDoublesWhenTypedStateStorageSet() throws Exception {
+        performDoubleCountTest(DOUBLE_RETURN_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .typedStateStorage(true)
+                .build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnDoublesWhenStateSavingOutlined() throws Exception {
+        performDoubleCountTest(DOUBLE_RETURN_INVOKE_TEST,
+                new InstrumentationSettings.Builder(MarkerType.CONSTANT).autoSerializable(true).outlinedStateSaving(true).build());
+    }
+
+    @Test
+    public void mustProperlySuspendWithVirtualMethodsUsingBinarySerializer() throws Exception {
+        performIntCountTest(NORMAL_INVOKE_TEST, new InstrumentationSettings(MarkerType.CONSTANT, false, true),
+                new CoroutineWriter(new BinaryCoroutineSerializer(), new FrameUpdatePoint[0], new FrameInterceptPoint[0]),
+                new CoroutineReader(new BinaryCoroutineDeserializer(), new FrameUpdatePoint[0], new FrameInterceptPoint[0]));
+    }
+
+    @Test
+    public void mustProperlySuspendWithBasicTypesInLocalVariableTableAndOperandStackUsingBinarySerializer() throws Exception {
+        performIntCountTest(BASIC_TYPE_INVOKE_TEST, new InstrumentationSettings(MarkerType.CONSTANT, false, true),
+                new CoroutineWriter(new BinaryCoroutineSerializer(), new FrameUpdatePoint[0], new FrameInterceptPoint[0]),
+                new CoroutineReader(new BinaryCoroutineDeserializer(), new FrameUpdatePoint[0], new FrameInterceptPoint[0]));
+    }
+
+    @Test
+    public void mustProperlySuspendWithMethodsThatOperateOnDoublesUsingBinarySerializer() throws Exception {
+        performDoubleCountTest(DOUBLE_RETURN_INVOKE_TEST, new InstrumentationSettings(MarkerType.CONSTANT, false, true),
+                new CoroutineWriter(new BinaryCoroutineSerializer(), new FrameUpdatePoint[0], new FrameInterceptPoint[0]),
+                new CoroutineReader(new BinaryCoroutineDeserializer(), new FrameUpdatePoint[0], new FrameInterceptPoint[0]));
+    }
+
+    @Test
+    public void mustWriteLessDataUsingBinarySerializer() throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip",
+                new InstrumentationSettings(MarkerType.CONSTANT, false, true))) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, new StringBuilder());
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            assertTrue(runner.execute());
+            assertTrue(runner.execute());
+
+            // Writers look up the coroutine's classes through the thread's classloader
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            try {
+                byte[] defaultData = new CoroutineWriter().write(runner);
+                byte[] binaryData = new CoroutineWriter(new BinaryCoroutineSerializer(), new FrameUpdatePoint[0],
+                        new FrameInterceptPoint[0]).write(runner);
+                assertTrue(binaryData.length < defaultData.length);
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+            }
+        }
+    }
+
+    @Test
+    public void mustStreamSameDataAsByteArrayUsingDefaultSerializer() throws Exception {
+        performStreamingTest(new CoroutineWriter(), new CoroutineReader());
+    }
+
+    @Test
+    public void mustStreamSameDataAsByteArrayUsingBinarySerializer() throws Exception {
+        performStreamingTest(
+                new CoroutineWriter(new BinaryCoroutineSerializer(), new FrameUpdatePoint[0], new FrameInterceptPoint[0]),
+                new CoroutineReader(new BinaryCoroutineDeserializer(), new FrameUpdatePoint[0], new FrameInterceptPoint[0]));
+    }
+
+    private void performStreamingTest(CoroutineWriter writer, CoroutineReader reader) throws Exception {
+        performStreamingTest(writer, reader, new StringBuilder());
+        performStreamingTest(writer, reader, new StringBuilder(StringUtils.repeat('x', 50000))); // spans multiple stream buffers
+    }
+
+    private void performStreamingTest(CoroutineWriter writer, CoroutineReader reader, StringBuilder builder) throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip",
+                new InstrumentationSettings(MarkerType.CONSTANT, false, true))) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, builder);
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            assertTrue(runner.execute());
+            assertTrue(runner.execute());
+
+            // Writers/readers look up the coroutine's classes through the thread's classloader
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            try {
+                byte[] expected = writer.write(runner);
+
+                // OutputStream / InputStream (with other data after the serialized state, which must be left unread)
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                writer.write(runner, baos);
+                assertArrayEquals(expected, baos.toByteArray());
+                baos.write(TRAILING_DATA);
+                ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+                assertTrue(reader.read(bais).execute());
+                assertArrayEquals(TRAILING_DATA, IOUtils.toByteArray(bais));
+
+                // ByteBuffer (direct, with other data after the serialized state)
+                ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length + 4);
+                writer.write(runner, buffer);
+                assertEquals(expected.length, buffer.position());
+                buffer.putInt(0xDEADBEEF);
+                buffer.flip();
+                assertTrue(reader.read(buffer).execute());
+                assertEquals(0xDEADBEEF, buffer.getInt());
+
+                ByteBuffer tooSmallBuffer = ByteBuffer.allocate(expected.length - 1);
+                assertThrows(BufferOverflowException.class, () -> writer.write(runner, tooSmallBuffer));
+
+                // WritableByteChannel / ReadableByteChannel (with other data after the serialized state, which must be left unread)
+                baos = new ByteArrayOutputStream();
+                writer.write(runner, Channels.newChannel(baos));
+                assertArrayEquals(expected, baos.toByteArray());
+                baos.write(TRAILING_DATA);
+                bais = new ByteArrayInputStream(baos.toByteArray());
+                assertTrue(reader.read(Channels.newChannel(bais)).execute());
+                assertArrayEquals(TRAILING_DATA, IOUtils.toByteArray(bais));
+
+                // Truncated stream
+                ByteArrayInputStream truncatedBais = new ByteArrayInputStream(Arrays.copyOf(expected, expected.length - 1));
+                assertThrows(Exception.class, () -> reader.read(truncatedBais));
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+            }
+        }
+    }
+
+    @Test
+    public void mustRebuildStateFromCheckpointAndDeltas() throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(RECURSIVE_INVOKE_TEST + ".zip",
+                new InstrumentationSettings(MarkerType.CONSTANT, false, true))) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(RECURSIVE_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, new StringBuilder());
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            assertTrue(runner.execute());
+
+            // Writers/readers look up the coroutine's classes through the thread's classloader
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            try {
+                CoroutineWriter writer = new CoroutineWriter();
+                CoroutineReader reader = new CoroutineReader();
+                DefaultCoroutineSerializer serializer = new DefaultCoroutineSerializer();
+
+                byte[] checkpoint = writer.writeCheckpoint(runner);
+                List<byte[]> deltas = new ArrayList<>();
+                for (int i = 0; i < 9; i++) {
+                    assertTrue(runner.execute());
+
+                    // Each cycle leaves run() and all but the last start() sitting in their restored invocations -- only the last
+                    // start() continued on and the new start() it called should be written out in full
+                    SerializedStateDelta delta = writer.deconstructDelta(runner);
+                    assertEquals(i + 2, delta.getBaseFrameCount());
+                    assertEquals(i + 1, delta.getRetainedFrames().length);
+                    assertEquals(2, delta.getFrames().length);
+                    deltas.add(serializer.serialize(delta));
+                }
+                assertTrue(deltas.get(deltas.size() - 1).length < writer.write(runner).length);
+
+                CoroutineRunner reconstructedRunner = reader.read(checkpoint, deltas.toArray(new byte[0][]));
+                assertFalse(reconstructedRunner.execute());
+
+                Object deserializedCoroutine = readField(reconstructedRunner, "coroutine", true);
+                StringBuilder deserializedBuilder = (StringBuilder) readField(deserializedCoroutine, "builder", true);
+                assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", deserializedBuilder.toString());
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+            }
+        }
+    }
+
+    @Test
+    public void mustApplyDeltaToCheckpointWhenOrdinaryWritesAndReadsHappenInBetween() throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(RECURSIVE_INVOKE_TEST + ".zip",
+                new InstrumentationSettings(MarkerType.CONSTANT, false, true))) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(RECURSIVE_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, new StringBuilder());
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            assertTrue(runner.execute());
+
+            // Writers/readers look up the coroutine's classes through the thread's classloader
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            try {
+                CoroutineWriter writer = new CoroutineWriter();
+                CoroutineReader reader = new CoroutineReader();
+
+                SerializedState checkpoint = writer.deconstructCheckpoint(runner);
+                assertTrue(runner.execute());
+
+                // Ordinary writes/reads between the checkpoint and the delta must not move the checkpoint the delta is relative to
+                byte[] data = writer.write(runner);
+                writer.deconstruct(runner);
+                CoroutineRunner readRunner = reader.read(data);
+                assertThrows(IllegalStateException.class, () -> writer.deconstructDelta(readRunner));
+                assertTrue(runner.execute());
+
+                SerializedStateDelta delta = writer.deconstructDelta(runner);
+                assertEquals(checkpoint.getFrames().length, delta.getBaseFrameCount());
+                CoroutineRunner reconstructedRunner = reader.reconstruct(reader.applyDelta(checkpoint, delta));
+                while (reconstructedRunner.execute()) {
+                    // do nothing
+                }
+
+                Object deserializedCoroutine = readField(reconstructedRunner, "coroutine", true);
+                StringBuilder deserializedBuilder = (StringBuilder) readField(deserializedCoroutine, "builder", true);
+                assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", deserializedBuilder.toString());
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+            }
+        }
+    }
+
+    @Test
+    public void mustFailToWriteOrApplyDeltasWithoutMatchingCheckpoint() throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(RECURSIVE_INVOKE_TEST + ".zip",
+                new InstrumentationSettings(MarkerType.CONSTANT, false, true))) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(RECURSIVE_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, new StringBuilder());
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            assertTrue(runner.execute());
+
+            // Writers/readers look up the coroutine's classes through the thread's classloader
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            try {
+                CoroutineWriter writer = new CoroutineWriter();
+                CoroutineReader reader = new CoroutineReader();
+
+                assertThrows(IllegalStateException.class, () -> writer.deconstructDelta(runner));
+
+                writer.deconstruct(runner); // not a checkpoint
+                assertThrows(IllegalStateException.class, () -> writer.deconstructDelta(runner));
+
+                SerializedState state = writer.deconstructCheckpoint(runner);
+                assertTrue(runner.execute());
+                writer.deconstructDelta(runner);
+                assertTrue(runner.execute());
+                SerializedStateDelta delta = writer.deconstructDelta(runner); // relative to previous delta, not state
+                assertThrows(IllegalArgumentException.class, () -> reader.applyDelta(state, delta));
+
+                CoroutineWriter binaryWriter = new CoroutineWriter(new BinaryCoroutineSerializer(), new FrameUpdatePoint[0],
+                        new FrameInterceptPoint[0]);
+                assertThrows(IllegalStateException.class, () -> binaryWriter.writeDelta(runner));
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+            }
+        }
+    }
+
+    @Test
+    public void mustProperlySuspendWithBasicTypesInLocalVariableTableAndOperandStackWhenDeadLocalsPruned() throws Exception {
+        performIntCountTest(BASIC_TYPE_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .deadLocalPruning(true)
+                .build());
+    }
+
+    @Test
+    public void mustOnlyRestoreStateSavedWithSameDeadLocalPruningSetting() throws Exception {
+        InstrumentationSettings defaultSettings = new InstrumentationSettings(MarkerType.CONSTANT, false, true);
+        InstrumentationSettings prunedSettings = new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .deadLocalPruning(true)
+                .build();
+        performRestoreAcrossSettingsTest(defaultSettings, defaultSettings, true);
+        performRestoreAcrossSettingsTest(prunedSettings, prunedSettings, true);
+        performRestoreAcrossSettingsTest(defaultSettings, prunedSettings, false);
+        performRestoreAcrossSettingsTest(prunedSettings, defaultSettings, false);
+    }
+
+    @Test
+    public void mustProperlySuspendWithStaticMethodsWhenInvokeArgumentsPruned() throws Exception {
+        performIntCountTest(STATIC_INVOKE_TEST, new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .invokeArgumentPruning(true)
+                .build());
+    }
+
+    @Test
+    public void mustOnlyRestoreStateSavedWithSameInvokeArgumentPruningSetting() throws Exception {
+        InstrumentationSettings defaultSettings = new InstrumentationSettings(MarkerType.CONSTANT, false, true);
+        InstrumentationSettings prunedSettings = new InstrumentationSettings.Builder(MarkerType.CONSTANT)
+                .autoSerializable(true)
+                .invokeArgumentPruning(true)
+                .build();
+        performRestoreAcrossSettingsTest(defaultSettings, defaultSettings, true);
+        performRestoreAcrossSettingsTest(prunedSettings, prunedSettings, true);
+        performRestoreAcrossSettingsTest(defaultSettings, prunedSettings, false);
+        performRestoreAcrossSettingsTest(prunedSettings, defaultSettings, false);
+    }
+
+    private void performRestoreAcrossSettingsTest(InstrumentationSettings writeSettings, InstrumentationSettings readSettings,
+            boolean expectRestorable) throws Exception {
+        // The same classes get instrumented twice, each in to its own classloader. State written out by the first gets read back in with
+        // the second. If the settings change what gets saved, the method ids differ and the reader must reject the state rather than
+        // restoring it in to the wrong slots.
+        try (URLClassLoader writeClassLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip", writeSettings);
+                URLClassLoader readClassLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip", readSettings)) {
+            Class<Coroutine> cls = (Class<Coroutine>) writeClassLoader.loadClass(NORMAL_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, new StringBuilder());
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            assertTrue(runner.execute());
+            assertTrue(runner.execute());
+
+            // Writers/readers look up the coroutine's classes through the thread's classloader
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                Thread.currentThread().setContextClassLoader(writeClassLoader);
+                byte[] data = new CoroutineWriter().write(runner);
+
+                Thread.currentThread().setContextClassLoader(readClassLoader);
+                CoroutineReader reader = new CoroutineReader();
+                if (!expectRestorable) {
+                    assertThrows(IllegalStateException.class, () -> reader.read(data)); // no loadable frame
+                    return;
+                }
+
+                CoroutineRunner reconstructedRunner = reader.read(data);
+                while (reconstructedRunner.execute()) { // run until finished
+                    
+                }
+
+                Object deserializedCoroutine = readField(reconstructedRunner, "coroutine", true);
+                StringBuilder deserializedBuilder = (StringBuilder) readField(deserializedCoroutine, "builder", true);
+                assertEquals("started\n0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", deserializedBuilder.toString());
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+            }
+        }
+    }
+
+    @Test
+    public void mustFailToDeserializeCorruptDataUsingBinarySerializer() throws Exception {
+        BinaryCoroutineDeserializer deserializer = new BinaryCoroutineDeserializer();
+        assertThrows(IllegalArgumentException.class, () -> deserializer.deserialize(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> deserializer.deserialize(new byte[] { 1, 2, 3, 4, 5 }));
+        assertThrows(IllegalArgumentException.class, () -> deserializer.deserialize(new byte[] { (byte) 0xC0, (byte) 0xB1, 1, 127 }));
+        assertThrows(IllegalArgumentException.class, () -> deserializer.deserialize(new byte[] { (byte) 0xC0, (byte) 0xB1, 2, 127 }));
+        assertThrows(IllegalArgumentException.class,
+                () -> deserializer.deserialize(new ByteArrayInputStream(new byte[] { (byte) 0xC0, (byte) 0xB1, 2, 127 })));
+    }
+
+    @Test
+    public void mustFailToDeserializeTruncatedDataUsingDefaultSerializer() throws Exception {
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(NORMAL_INVOKE_TEST + ".zip",
+                new InstrumentationSettings(MarkerType.CONSTANT, false, true))) {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(NORMAL_INVOKE_TEST);
+            Coroutine coroutine = invokeConstructor(cls, new StringBuilder());
+
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+            assertTrue(runner.execute());
+
+            // Writers/readers look up the coroutine's classes through the thread's classloader
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            try {
+                byte[] data = new CoroutineWriter().write(runner);
+                byte[] truncatedData = Arrays.copyOf(data, data.length / 2);
+
+                CoroutineReader reader = new CoroutineReader();
+                assertThrows(IllegalStateException.class, () -> reader.read(truncatedData));
+                assertThrows(EOFException.class, () -> reader.read(new ByteArrayInputStream(truncatedData)));
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+            }
+        }
+    }
+
     private void performIntCountTest(String testClass, InstrumentationSettings settings) throws Exception {
+        performIntCountTest(testClass, settings, new CoroutineWriter(), new CoroutineReader());
+    }
+
+    private void performIntCountTest(String testClass, InstrumentationSettings settings, CoroutineWriter writer, CoroutineReader reader)
+            throws Exception {
         // This test is being wrapped in a new thread where the thread's context classlaoder is being set to the classloader of the zip
         // we're dynamically loading. We need to do this being ObjectInputStream uses the system classloader by default, not the thread's
         // classloader. CoroutineReader has been modified to use the thread's classloader if the system's classloader fails.
@@ -97,20 +510,20 @@ public final class SerializationTest {
                     // Create and run original for a few cycles
                     CoroutineRunner runner = new CoroutineRunner(coroutine);
 
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertFalse((runner = writeReadExecute(runner)).execute()); // coroutine finished executing here
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertFalse((runner = writeReadExecute(runner, writer, reader)).execute()); // coroutine finished executing here
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
 
                     // Assert everything continued fine with deserialized version
                     Object deserializedCoroutine = readField(runner, "coroutine", true);
@@ -152,13 +565,18 @@ public final class SerializationTest {
         }
     }
 
-    private CoroutineRunner writeReadExecute(CoroutineRunner runner) {
-        byte[] data = new CoroutineWriter().write(runner);
-        CoroutineRunner reconstructedRunner = new CoroutineReader().read(data);
+    private CoroutineRunner writeReadExecute(CoroutineRunner runner, CoroutineWriter writer, CoroutineReader reader) {
+        byte[] data = writer.write(runner);
+        CoroutineRunner reconstructedRunner = reader.read(data);
         return reconstructedRunner;
     }
 
     private void performDoubleCountTest(String testClass, InstrumentationSettings settings) throws Exception {
+        performDoubleCountTest(testClass, settings, new CoroutineWriter(), new CoroutineReader());
+    }
+
+    private void performDoubleCountTest(String testClass, InstrumentationSettings settings, CoroutineWriter writer,
+            CoroutineReader reader) throws Exception {
         // This test is being wrapped in a new thread where the thread's context classlaoder is being set to the classloader of the zip
         // we're dynamically loading. We need to do this being ObjectInputStream uses the system classloader by default, not the thread's
         // classloader. CoroutineReader has been modified to use the thread's classloader if the system's classloader fails.
@@ -173,20 +591,20 @@ public final class SerializationTest {
                     CoroutineRunner runner = new CoroutineRunner(coroutine);
 
 
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertFalse((runner = writeReadExecute(runner)).execute()); // coroutine finished executing here
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
-                    assertTrue((runner = writeReadExecute(runner)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertFalse((runner = writeReadExecute(runner, writer, reader)).execute()); // coroutine finished executing here
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
+                    assertTrue((runner = writeReadExecute(runner, writer, reader)).execute());
 
                     // Assert everything continued fine with deserialized version
                     Object deserializedCoroutine = readField(runner, "coroutine", true);
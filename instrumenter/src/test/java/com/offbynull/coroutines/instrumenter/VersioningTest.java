@@ -6,22 +6,34 @@ import com.offbynull.coroutines.user.Coroutine;
 import com.offbynull.coroutines.user.CoroutineReader;
 import com.offbynull.coroutines.user.CoroutineRunner;
 import com.offbynull.coroutines.user.CoroutineWriter;
+import com.offbynull.coroutines.user.CoroutineWriter.DefaultCoroutineSerializer;
+import com.offbynull.coroutines.user.MethodState;
+import com.offbynull.coroutines.user.SerializedState;
 import com.offbynull.coroutines.user.SerializedState.FrameInterceptPoint;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
 import java.net.URLClassLoader;
 import java.util.concurrent.ArrayBlockingQueue;
 import static org.apache.commons.lang3.reflect.ConstructorUtils.invokeConstructor;
 import static org.apache.commons.lang3.reflect.FieldUtils.readField;
+import static org.apache.commons.lang3.reflect.FieldUtils.readStaticField;
 import static com.offbynull.coroutines.user.SerializedState.FrameModifier.WRITE;
 import static com.offbynull.coroutines.user.SerializedState.FrameModifier.READ;
 import com.offbynull.coroutines.user.SerializedState.FrameUpdatePoint;
+import com.offbynull.coroutines.user.SerializedState.VersionedFrame;
 import static com.offbynull.coroutines.instrumenter.SharedConstants.INTERCEPT_TEST;
 import static com.offbynull.coroutines.instrumenter.SharedConstants.UPDATE_TEST;
 import static com.offbynull.coroutines.instrumenter.SharedConstants.UPDATE_TEST_MODIFIED;
 import static com.offbynull.coroutines.instrumenter.SharedConstants.UPDATE_TEST_ORIGINAL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang3.mutable.MutableObject;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -174,6 +186,55 @@ public final class VersioningTest {
         });
     }
 
+    @Test
+    public void mustProperlyVersionUpWhenManyUnrelatedUpdatePointsExist() throws Exception {
+        MutableObject<byte[]> dataPlaceholder = new MutableObject<>();
+
+
+        // Run the original and execute it once (there's only 1 suspend in this class)
+        runWrapped(UPDATE_TEST_ORIGINAL, (classLoader) -> {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(UPDATE_TEST);
+
+            Coroutine coroutine = invokeConstructor(cls);
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+
+            assertTrue(runner.execute());
+
+            CoroutineWriter writer = new CoroutineWriter();
+
+            byte[] data = writer.write(runner);
+            dataPlaceholder.setValue(data);
+        });
+
+
+        // Read it back in to the modified version along with lots of update points for other methods (e.g. left over from older releases),
+        // none of which should get invoked
+        runWrapped(UPDATE_TEST_MODIFIED, (classLoader) -> {
+            FrameUpdatePoint[] updatePoints = new FrameUpdatePoint[501];
+            for (int i = 0; i < 500; i++) {
+                updatePoints[i] = new FrameUpdatePoint(UPDATE_TEST, i, 0, (frame, mode) -> {
+                    throw new IllegalStateException();
+                });
+            }
+            updatePoints[500] = new FrameUpdatePoint(UPDATE_TEST, -526669244, 0, (frame, mode) -> {
+                Object[] varObjects =  frame.getVariables().getObjects();
+                
+                varObjects = Arrays.copyOf(varObjects, 4);
+                varObjects[3] = "_";
+                
+                return frame
+                        .withMethodId(-1238526627)
+                        .withObjectVariables(varObjects);
+            });
+            CoroutineReader reader = new CoroutineReader(updatePoints);
+            
+            byte[] data = dataPlaceholder.getValue();
+            CoroutineRunner runner = reader.read(data);
+            
+            assertFalse(runner.execute());
+        });
+    }
+
     @Test
     public void mustProperlyVersionDown() throws Exception {
         MutableObject<byte[]> dataPlaceholder = new MutableObject<>();
@@ -242,6 +303,64 @@ public final class VersioningTest {
     
     
     
+    @Test
+    public void mustOnlyVersionDownFramesAcceptedByPolicy() throws Exception {
+        MutableObject<byte[]> dataPlaceholder = new MutableObject<>();
+
+
+        // Run the modified version and execute it once, then write it out with down-versioning turned off and with down-versioning limited
+        // to UPDATE_TEST
+        runWrapped(UPDATE_TEST_MODIFIED, (classLoader) -> {
+            Class<Coroutine> cls = (Class<Coroutine>) classLoader.loadClass(UPDATE_TEST);
+
+            Coroutine coroutine = invokeConstructor(cls);
+            CoroutineRunner runner = new CoroutineRunner(coroutine);
+
+            assertTrue(runner.execute());
+
+            FrameUpdatePoint downgradeEchoPoint = new FrameUpdatePoint(UPDATE_TEST, -1238526627, 0, (frame, mode) -> {
+                Object[] varObjects =  frame.getVariables().getObjects();
+                
+                varObjects = Arrays.copyOf(varObjects, 3); // trim the last item
+                
+                return frame
+                        .withMethodId(-526669244)
+                        .withObjectVariables(varObjects);
+            });
+
+            CoroutineWriter noneWriter = new CoroutineWriter(
+                    new DefaultCoroutineSerializer(),
+                    new FrameUpdatePoint[] { downgradeEchoPoint },
+                    new FrameInterceptPoint[0],
+                    CoroutineWriter.NO_DOWN_VERSIONS);
+            SerializedState noneState = noneWriter.deconstruct(runner);
+            for (VersionedFrame versionedFrame : noneState.getFrames()) {
+                assertEquals(1, versionedFrame.getFrames().length);
+            }
+
+            CoroutineWriter selectiveWriter = new CoroutineWriter(
+                    new DefaultCoroutineSerializer(),
+                    new FrameUpdatePoint[] { downgradeEchoPoint },
+                    new FrameInterceptPoint[0],
+                    (className, methodId, continuationPointId) -> className.equals(UPDATE_TEST));
+            SerializedState selectiveState = selectiveWriter.deconstruct(runner);
+            assertTrue(Arrays.stream(selectiveState.getFrames()).anyMatch(vf -> vf.getFrames().length == 2));
+
+            dataPlaceholder.setValue(selectiveWriter.write(runner));
+        });
+
+
+        // Read it back in to the ORIGINAL version -- works because the policy accepted the frame that needed down-versioning
+        runWrapped(UPDATE_TEST_ORIGINAL, (classLoader) -> {
+            CoroutineReader reader = new CoroutineReader();
+            
+            byte[] data = dataPlaceholder.getValue();
+            CoroutineRunner runner = reader.read(data);
+            
+            assertFalse(runner.execute());
+        });
+    }
+
     @Test
     public void mustNotAllowMultipleInterceptsOnSameKeyForRead() throws Exception {
         assertThrows(IllegalArgumentException.class, () -> {
@@ -313,6 +432,90 @@ public final class VersioningTest {
     
     
     
+    @Test
+    public void mustCacheClassAndIdentifiersWhenValidatingFrame() throws Exception {
+        InstrumentationSettings settings = new InstrumentationSettings(DebugGenerators.MarkerType.NONE, false, true);
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(UPDATE_TEST_ORIGINAL + ".zip", settings)) {
+            Class<?> cls = classLoader.loadClass(UPDATE_TEST);
+            int[] ids = getIdentifiers(cls).get(0);
+
+            assertTrue(MethodState.isValid(classLoader, UPDATE_TEST, ids[0], ids[1]));
+            Map<?, ?> classCache = (Map<?, ?>) ((Map<?, ?>) readStaticField(MethodState.class, "EXPLICIT_CLASS_CACHE", true))
+                    .get(classLoader);
+            assertSame(cls, ((WeakReference<?>) classCache.get(UPDATE_TEST)).get());
+            Object identifiers = ((Map<?, ?>) readStaticField(MethodState.class, "IDENTIFIER_CACHE", true)).get(cls);
+            assertNotNull(identifiers);
+
+            // second lookup must be served from the caches
+            assertTrue(MethodState.isValid(classLoader, UPDATE_TEST, ids[0], ids[1]));
+            assertFalse(MethodState.isValid(classLoader, UPDATE_TEST, ids[0] + 1, ids[1]));
+            assertSame(classCache, ((Map<?, ?>) readStaticField(MethodState.class, "EXPLICIT_CLASS_CACHE", true)).get(classLoader));
+            assertSame(identifiers, ((Map<?, ?>) readStaticField(MethodState.class, "IDENTIFIER_CACHE", true)).get(cls));
+        }
+    }
+
+    @Test
+    public void mustNotKeepClassLoaderAliveOrReuseItsClassesOnceReleased() throws Exception {
+        List<int[]> originalIdsList = new ArrayList<>();
+        WeakReference<ClassLoader> originalClassLoaderRef = validateUsingContextClassLoader(UPDATE_TEST_ORIGINAL, originalIdsList);
+
+        long end = System.currentTimeMillis() + 10000L;
+        while (originalClassLoaderRef.get() != null) {
+            assertTrue(System.currentTimeMillis() < end, "Classloader kept alive by MethodState's caches");
+            System.gc();
+            Thread.sleep(10L);
+        }
+
+        // same class name, different methodId -- the class must be looked up again from the new classloader, not served from the cache
+        InstrumentationSettings settings = new InstrumentationSettings(DebugGenerators.MarkerType.NONE, false, true);
+        ClassLoader oldContextClassLoader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(UPDATE_TEST_MODIFIED + ".zip", settings)) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            List<int[]> modifiedIdsList = getIdentifiers(classLoader.loadClass(UPDATE_TEST));
+            int[] modifiedIds = modifiedIdsList.get(0);
+            int[] originalIds = originalIdsList.stream()
+                    .filter(x -> modifiedIdsList.stream().noneMatch(y -> Arrays.equals(x, y)))
+                    .findFirst().get();
+
+            assertFalse(MethodState.isValid(null, UPDATE_TEST, originalIds[0], originalIds[1]));
+            assertTrue(MethodState.isValid(null, UPDATE_TEST, modifiedIds[0], modifiedIds[1]));
+            assertFalse(MethodState.isValid(classLoader, UPDATE_TEST, originalIds[0], originalIds[1]));
+            assertTrue(MethodState.isValid(classLoader, UPDATE_TEST, modifiedIds[0], modifiedIds[1]));
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldContextClassLoader);
+        }
+    }
+
+    private WeakReference<ClassLoader> validateUsingContextClassLoader(String name, List<int[]> outIds) throws Exception {
+        InstrumentationSettings settings = new InstrumentationSettings(DebugGenerators.MarkerType.NONE, false, true);
+        ClassLoader oldContextClassLoader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = loadClassesInZipResourceAndInstrument(name + ".zip", settings)) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            outIds.addAll(getIdentifiers(classLoader.loadClass(UPDATE_TEST)));
+            for (int[] ids : outIds) {
+                assertTrue(MethodState.isValid(null, UPDATE_TEST, ids[0], ids[1]));
+                assertTrue(MethodState.isValid(classLoader, UPDATE_TEST, ids[0], ids[1]));
+            }
+            return new WeakReference<>(classLoader);
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldContextClassLoader);
+        }
+    }
+
+    private static List<int[]> getIdentifiers(Class<?> cls) {
+        String prefix = MethodState.getIdentifyingFieldName(0, 0);
+        prefix = prefix.substring(0, prefix.length() - "0_0".length());
+        List<int[]> ret = new ArrayList<>();
+        for (Field field : cls.getDeclaredFields()) {
+            if (field.getName().startsWith(prefix)) {
+                String[] ids = field.getName().substring(prefix.length()).replace('N', '-').split("_");
+                ret.add(new int[] { Integer.parseInt(ids[0]), Integer.parseInt(ids[1]) });
+            }
+        }
+        assertFalse(ret.isEmpty());
+        return ret;
+    }
+
     // Wrap in a new thread where the thread's context classlaoder is being set to the classloader of the zip we're dynamically loading. We
     // need to do this being ObjectInputStream uses the system classloader by default, not the thread's classloader. CoroutineReader has
     // been modified to use the thread's classloader if the system's classloader fails.
@@ -0,0 +1,81 @@
+package com.offbynull.coroutines.instrumenter.asm;
+
+import java.io.InputStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+
+public final class ClassResourceClassInformationCacheTest {
+
+    @Test
+    public void mustReadClassResourceOnlyOnce() {
+        CountingClassLoader classLoader = new CountingClassLoader();
+        ClassResourceClassInformationCache cache = new ClassResourceClassInformationCache(10);
+
+        ClassInformation info1 = cache.getRepository(classLoader).getInformation("java/lang/Integer");
+        ClassInformation info2 = cache.getRepository(classLoader).getInformation("java/lang/Integer");
+
+        assertEquals("java/lang/Number", info1.getSuperClassName());
+        assertSame(info1, info2);
+        assertEquals(1, classLoader.count);
+    }
+
+    @Test
+    public void mustKeepSeparateEntriesPerClassLoader() {
+        CountingClassLoader classLoader1 = new CountingClassLoader();
+        CountingClassLoader classLoader2 = new CountingClassLoader();
+        ClassResourceClassInformationCache cache = new ClassResourceClassInformationCache(10);
+
+        cache.getRepository(classLoader1).getInformation("java/lang/Integer");
+        cache.getRepository(classLoader2).getInformation("java/lang/Integer");
+
+        assertEquals(1, classLoader1.count);
+        assertEquals(1, classLoader2.count);
+    }
+
+    @Test
+    public void mustEvictLeastRecentlyUsedEntryWhenFull() {
+        CountingClassLoader classLoader = new CountingClassLoader();
+        ClassResourceClassInformationCache cache = new ClassResourceClassInformationCache(2);
+        ClassInformationRepository repo = cache.getRepository(classLoader);
+
+        repo.getInformation("java/lang/Integer");
+        repo.getInformation("java/lang/Boolean");
+        repo.getInformation("java/lang/Integer"); // Boolean is now least recently used
+        repo.getInformation("java/lang/Object");  // evicts Boolean
+        assertEquals(3, classLoader.count);
+
+        repo.getInformation("java/lang/Integer");
+        assertEquals(3, classLoader.count);
+
+        repo.getInformation("java/lang/Boolean");
+        assertEquals(4, classLoader.count);
+    }
+
+    @Test
+    public void mustNotCacheUnknownClasses() {
+        CountingClassLoader classLoader = new CountingClassLoader();
+        ClassResourceClassInformationCache cache = new ClassResourceClassInformationCache(10);
+        ClassInformationRepository repo = cache.getRepository(classLoader);
+
+        assertNull(repo.getInformation("2huowhf9w37fy9fhnwfwfwefasef"));
+        assertNull(repo.getInformation("2huowhf9w37fy9fhnwfwfwefasef"));
+        assertEquals(2, classLoader.count);
+    }
+
+    private static final class CountingClassLoader extends ClassLoader {
+        private int count;
+
+        CountingClassLoader() {
+            super(CountingClassLoader.class.getClassLoader());
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            count++;
+            return super.getResourceAsStream(name);
+        }
+    }
+}
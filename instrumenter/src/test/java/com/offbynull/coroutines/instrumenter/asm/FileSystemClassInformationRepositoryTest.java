@@ -2,12 +2,22 @@ package com.offbynull.coroutines.instrumenter.asm;
 
 import com.offbynull.coroutines.instrumenter.testhelpers.TestUtils;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
 import static java.util.Arrays.asList;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.FileUtils;
+import static org.apache.commons.lang3.reflect.FieldUtils.readField;
 import org.junit.jupiter.api.AfterAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -29,7 +39,8 @@ public final class FileSystemClassInformationRepositoryTest {
     }
     
     @AfterAll
-    public static void afterClass() {
+    public static void afterClass() throws Exception {
+        repo.close();
         jarFile.delete();
     }
 
@@ -71,5 +82,147 @@ public final class FileSystemClassInformationRepositoryTest {
         
         assertNull(info);
     }
-    
+
+    @Test
+    public void mustOnlyParseClassesWhenLookedUp() throws Exception {
+        FileSystemClassInformationRepository lazyRepo = FileSystemClassInformationRepository.create(asList(jarFile));
+        Map<?, ?> parsed = (Map<?, ?>) readField(lazyRepo, "hierarchyMap", true);
+        assertTrue(parsed.isEmpty());
+        
+        lazyRepo.getInformation("fake/java/lang/Integer");
+        assertEquals(1, parsed.size());
+        assertTrue(parsed.containsKey("fake/java/lang/Integer"));
+    }
+
+    @Test
+    public void mustReuseIndexFileWhenJarUnchanged() throws Exception {
+        File tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        try {
+            File indexFile = new File(tempDir, "classpath.index");
+
+            FileSystemClassInformationRepository firstRepo = FileSystemClassInformationRepository.create(asList(jarFile), indexFile);
+            ClassInformation expected = firstRepo.getInformation("fake/java/lang/Boolean");
+            firstRepo.saveIndex();
+            assertTrue(indexFile.isFile());
+
+            FileSystemClassInformationRepository secondRepo = FileSystemClassInformationRepository.create(asList(jarFile), indexFile);
+            Map<?, ?> parsed = (Map<?, ?>) readField(secondRepo, "hierarchyMap", true);
+            assertEquals(1, parsed.size());
+            ClassInformation actual = secondRepo.getInformation("fake/java/lang/Boolean");
+            assertEquals(expected.getSuperClassName(), actual.getSuperClassName());
+            assertEquals(expected.getInterfaces(), actual.getInterfaces());
+            assertEquals(expected.isInterface(), actual.isInterface());
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void mustIgnoreIndexFileWhenJarChanged() throws Exception {
+        File tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        try {
+            File copiedJarFile = new File(tempDir, "classes.jar");
+            FileUtils.copyFile(jarFile, copiedJarFile);
+            File indexFile = new File(tempDir, "classpath.index");
+
+            FileSystemClassInformationRepository firstRepo = FileSystemClassInformationRepository.create(asList(copiedJarFile), indexFile);
+            firstRepo.getInformation("fake/java/lang/Boolean");
+            firstRepo.saveIndex();
+
+            assertTrue(copiedJarFile.setLastModified(copiedJarFile.lastModified() - 10000L));
+
+            FileSystemClassInformationRepository secondRepo = FileSystemClassInformationRepository.create(asList(copiedJarFile), indexFile);
+            Map<?, ?> parsed = (Map<?, ?>) readField(secondRepo, "hierarchyMap", true);
+            assertTrue(parsed.isEmpty());
+            assertEquals("java/lang/Object", secondRepo.getInformation("fake/java/lang/Boolean").getSuperClassName());
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void mustIgnoreCorruptIndexFile() throws Exception {
+        File tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        try {
+            File indexFile = new File(tempDir, "classpath.index");
+            FileUtils.writeByteArrayToFile(indexFile, new byte[] { 0, 0, 0, 1, 5, 5, 5 });
+
+            FileSystemClassInformationRepository corruptRepo = FileSystemClassInformationRepository.create(asList(jarFile), indexFile);
+            assertEquals("fake/java/lang/Number", corruptRepo.getInformation("fake/java/lang/Integer").getSuperClassName());
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void mustParseDirectoryClassesWhenDirectoryAdded() throws Exception {
+        File tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        try {
+            File classFile = new File(tempDir, "fake/java/lang/Integer.class");
+            FileUtils.writeByteArrayToFile(classFile, readJarEntry("fake/java/lang/Integer.class"));
+
+            try (FileSystemClassInformationRepository dirRepo = FileSystemClassInformationRepository.create(asList(tempDir))) {
+                // directories get instrumented in place, so what gets returned must be what was there when the directory was added
+                FileUtils.writeByteArrayToFile(classFile, readJarEntry("fake/java/lang/Boolean.class"));
+
+                ClassInformation info = dirRepo.getInformation("fake/java/lang/Integer");
+                assertEquals("fake/java/lang/Number", info.getSuperClassName());
+                assertNull(dirRepo.getInformation("fake/java/lang/Boolean"));
+            }
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void mustKeyDirectoryClassesByClassName() throws Exception {
+        File tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        try {
+            File classFile = new File(tempDir, "wrong/path/Integer.class");
+            FileUtils.writeByteArrayToFile(classFile, readJarEntry("fake/java/lang/Integer.class"));
+
+            try (FileSystemClassInformationRepository dirRepo = FileSystemClassInformationRepository.create(asList(tempDir))) {
+                assertEquals("fake/java/lang/Number", dirRepo.getInformation("fake/java/lang/Integer").getSuperClassName());
+                assertNull(dirRepo.getInformation("wrong/path/Integer"));
+            }
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void mustFailWhenJarClassIsAtWrongPath() throws Exception {
+        File tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        try {
+            File badJarFile = new File(tempDir, "bad.jar");
+            try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(badJarFile))) {
+                zos.putNextEntry(new ZipEntry("wrong/path/Integer.class"));
+                zos.write(readJarEntry("fake/java/lang/Integer.class"));
+                zos.closeEntry();
+            }
+
+            try (FileSystemClassInformationRepository badRepo = FileSystemClassInformationRepository.create(asList(badJarFile))) {
+                assertThrows(IllegalStateException.class, () -> badRepo.getInformation("wrong/path/Integer"));
+            }
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void mustCloseJarFiles() throws Exception {
+        FileSystemClassInformationRepository closedRepo = FileSystemClassInformationRepository.create(asList(jarFile));
+        ClassInformation parsed = closedRepo.getInformation("fake/java/lang/Integer");
+        closedRepo.close();
+        
+        assertEquals(parsed, closedRepo.getInformation("fake/java/lang/Integer"));
+        assertThrows(IllegalStateException.class, () -> closedRepo.getInformation("fake/java/lang/Boolean"));
+    }
+
+    private static byte[] readJarEntry(String name) throws Exception {
+        try (ZipFile zipFile = new ZipFile(jarFile);
+                InputStream is = zipFile.getInputStream(zipFile.getEntry(name))) {
+            return IOUtils.toByteArray(is);
+        }
+    }
 }
@@ -0,0 +1,110 @@
+package com.offbynull.coroutines.instrumenter.asm;
+
+import static com.offbynull.coroutines.instrumenter.asm.LivenessUtils.findLiveLocals;
+import java.util.BitSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+public final class LivenessUtilsTest {
+
+    @Test
+    public void mustFindLiveLocalsInStraightLineCode() {
+        // static void method(int a, Object b) { int c = a; b.hashCode(); c++; }
+        MethodNode methodNode = new MethodNode(Opcodes.ACC_STATIC, "method", "(ILjava/lang/Object;)V", null, null);
+        methodNode.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));  // 0
+        methodNode.instructions.add(new VarInsnNode(Opcodes.ISTORE, 2)); // 1
+        methodNode.instructions.add(new VarInsnNode(Opcodes.ALOAD, 1));  // 2
+        methodNode.instructions.add(new InsnNode(Opcodes.POP));          // 3
+        methodNode.instructions.add(new IincInsnNode(2, 1));             // 4
+        methodNode.instructions.add(new InsnNode(Opcodes.RETURN));       // 5
+
+        BitSet[] liveLocals = findLiveLocals(methodNode);
+
+        assertEquals(bits(0, 1), liveLocals[0]);
+        assertEquals(bits(1), liveLocals[1]);
+        assertEquals(bits(1, 2), liveLocals[2]);
+        assertEquals(bits(2), liveLocals[3]);
+        assertEquals(bits(2), liveLocals[4]);
+        assertEquals(bits(), liveLocals[5]);
+    }
+
+    @Test
+    public void mustKeepLocalsLiveAcrossLoopBackEdges() {
+        // static void method(int a, Object b) { while (true) { if (a == 0) return; b = null; } }
+        MethodNode methodNode = new MethodNode(Opcodes.ACC_STATIC, "method", "(ILjava/lang/Object;)V", null, null);
+        LabelNode loopLabel = new LabelNode();
+        LabelNode exitLabel = new LabelNode();
+        methodNode.instructions.add(loopLabel);                               // 0
+        methodNode.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));       // 1
+        methodNode.instructions.add(new JumpInsnNode(Opcodes.IFEQ, exitLabel)); // 2
+        methodNode.instructions.add(new InsnNode(Opcodes.ACONST_NULL));       // 3
+        methodNode.instructions.add(new VarInsnNode(Opcodes.ASTORE, 1));      // 4
+        methodNode.instructions.add(new JumpInsnNode(Opcodes.GOTO, loopLabel)); // 5
+        methodNode.instructions.add(exitLabel);                               // 6
+        methodNode.instructions.add(new InsnNode(Opcodes.RETURN));            // 7
+
+        BitSet[] liveLocals = findLiveLocals(methodNode);
+
+        assertEquals(bits(0), liveLocals[0]);
+        assertEquals(bits(0), liveLocals[3]);
+        assertEquals(bits(0), liveLocals[5]);
+        assertEquals(bits(), liveLocals[6]);
+    }
+
+    @Test
+    public void mustKeepLocalsReadByExceptionHandlersLive() {
+        // static void method(int a, Object b) { try { a = 0; <throw> } catch (Throwable t) { b.hashCode(); } }
+        MethodNode methodNode = new MethodNode(Opcodes.ACC_STATIC, "method", "(ILjava/lang/Object;)V", null, null);
+        LabelNode tryStartLabel = new LabelNode();
+        LabelNode tryEndLabel = new LabelNode();
+        LabelNode handlerLabel = new LabelNode();
+        methodNode.instructions.add(tryStartLabel);                      // 0
+        methodNode.instructions.add(new InsnNode(Opcodes.ICONST_0));     // 1
+        methodNode.instructions.add(new VarInsnNode(Opcodes.ISTORE, 0)); // 2
+        methodNode.instructions.add(new InsnNode(Opcodes.ACONST_NULL));  // 3
+        methodNode.instructions.add(new InsnNode(Opcodes.ATHROW));       // 4
+        methodNode.instructions.add(tryEndLabel);                        // 5
+        methodNode.instructions.add(handlerLabel);                       // 6
+        methodNode.instructions.add(new InsnNode(Opcodes.POP));          // 7
+        methodNode.instructions.add(new VarInsnNode(Opcodes.ALOAD, 1));  // 8
+        methodNode.instructions.add(new InsnNode(Opcodes.POP));          // 9
+        methodNode.instructions.add(new InsnNode(Opcodes.RETURN));       // 10
+        methodNode.tryCatchBlocks.add(new TryCatchBlockNode(tryStartLabel, tryEndLabel, handlerLabel, null));
+
+        BitSet[] liveLocals = findLiveLocals(methodNode);
+
+        assertEquals(bits(1), liveLocals[1]);
+        assertEquals(bits(1), liveLocals[4]);
+        assertEquals(bits(1), liveLocals[6]);
+        assertEquals(bits(), liveLocals[9]);
+    }
+
+    @Test
+    public void mustRejectJsrInstructions() {
+        MethodNode methodNode = new MethodNode(Opcodes.ACC_STATIC, "method", "()V", null, null);
+        LabelNode subroutineLabel = new LabelNode();
+        methodNode.instructions.add(new JumpInsnNode(Opcodes.JSR, subroutineLabel));
+        methodNode.instructions.add(new InsnNode(Opcodes.RETURN));
+        methodNode.instructions.add(subroutineLabel);
+        methodNode.instructions.add(new VarInsnNode(Opcodes.RET, 0));
+
+        assertThrows(IllegalArgumentException.class, () -> findLiveLocals(methodNode));
+    }
+
+    private static BitSet bits(int... indices) {
+        BitSet ret = new BitSet();
+        for (int index : indices) {
+            ret.set(index);
+        }
+        return ret;
+    }
+}
@@ -195,6 +195,51 @@ public final class GenericGeneratorsTest {
         }
     }
 
+    @Test
+    public void mustCreateAndRunIfElseObjectStatements() throws Exception {
+        // Augment signature
+        methodNode.desc = Type.getMethodDescriptor(
+                Type.getType(String.class),
+                new Type[] { Type.getType(Object.class), Type.getType(Object.class) });
+        
+        // Initialize variable table
+        VariableTable varTable = new VariableTable(classNode, methodNode);
+        Variable objVar1 = varTable.getArgument(1);
+        Variable objVar2 = varTable.getArgument(2);
+        Variable resultVar = varTable.acquireExtra(String.class);
+        
+        // Update method logic
+        /**
+         * String result;
+         * if (arg1 == arg2) {
+         *     result = "match";
+         * } else {
+         *     result = "nomatch";
+         * }
+         * return result;
+         */
+        methodNode.instructions
+                = merge(
+                        ifObjectsEqual(
+                                loadVar(objVar1),
+                                loadVar(objVar2),
+                                merge(loadStringConst("match"), saveVar(resultVar)),
+                                merge(loadStringConst("nomatch"), saveVar(resultVar))),
+                        returnValue(Type.getType(String.class), loadVar(resultVar))
+                );
+        
+        Object testObj1 = "test1";
+        Object testObj2 = "test2";
+        // Write to JAR file + load up in classloader -- then execute tests
+        try (URLClassLoader cl = createJarAndLoad(classNode)) {
+            Object obj = cl.loadClass(STUB_CLASSNAME).newInstance();
+            
+            assertEquals("match", MethodUtils.invokeMethod(obj, STUB_METHOD_NAME, testObj1, testObj1));
+            assertEquals("nomatch", MethodUtils.invokeMethod(obj, STUB_METHOD_NAME, testObj1, testObj2));
+            assertEquals("match", MethodUtils.invokeMethod(obj, STUB_METHOD_NAME, testObj2, testObj2));
+        }
+    }
+
     @Test
     public void mustCreateAndRunForEachStatement() throws Exception {
         // Augment signature
@@ -103,14 +103,15 @@ public final class TestUtils {
         classpath.add(originalJarFile);
         
         // Instrument classes and write out new jar
-        Instrumenter instrumenter = new Instrumenter(classpath);
         List<JarEntry> instrumentedJarEntries = new ArrayList<>(classContents.size());
-        for (Entry<String, byte[]> entry : classContents.entrySet()) {
-            byte[] content = entry.getValue();
-            if (entry.getKey().endsWith(".class")) {
-                content = instrumenter.instrument(classModifier.apply(content), settings).getInstrumentedClass();
+        try (Instrumenter instrumenter = new Instrumenter(classpath)) {
+            for (Entry<String, byte[]> entry : classContents.entrySet()) {
+                byte[] content = entry.getValue();
+                if (entry.getKey().endsWith(".class")) {
+                    content = instrumenter.instrument(classModifier.apply(content), settings).getInstrumentedClass();
+                }
+                instrumentedJarEntries.add(new JarEntry(entry.getKey(), content));
             }
-            instrumentedJarEntries.add(new JarEntry(entry.getKey(), content));
         }
         File instrumentedJarFile = createJar(instrumentedJarEntries.toArray(new JarEntry[0]));
         
@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.jarinstrumenter;
+
+import com.offbynull.coroutines.instrumenter.InstrumentationCache;
+import com.offbynull.coroutines.instrumenter.InstrumentationResult;
+import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
+import com.offbynull.coroutines.instrumenter.Instrumenter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Instruments the class files inside of a JAR and writes the results out to a new JAR, without having to extract the JAR to disk first.
+ * <p>
+ * Entries in the new JAR are written out in the same order as they appear in the original JAR. Entries that don't need instrumentation
+ * (resources, directories, classes that don't make use of coroutines, etc..) are copied over as-is: their compressed bytes get
+ * transferred directly without being inflated and deflated again. Instrumented classes have their detail files (files with the same name
+ * but a {@code .coroutinesinfo} extension) written out directly after them.
+ * <p>
+ * Signed JARs can't stay signed once their classes change, so if any class in a signed JAR gets instrumented, the signature files
+ * ({@code META-INF/*.SF}, {@code META-INF/*.RSA}, {@code META-INF/*.DSA}, {@code META-INF/*.EC} and {@code META-INF/SIG-*}) are left out
+ * of the new JAR and the per-entry digests are removed from its manifest. Otherwise, the JVM would refuse to load the instrumented
+ * classes. If nothing in a signed JAR gets instrumented, the new JAR is an exact copy of the original (signature intact).
+ * @author Kasra Faghihi
+ */
+public final class JarInstrumenter {
+    
+    // Maximum number of entries (per thread) that can be read in and instrumented ahead of the entry currently being written out. Keeps
+    // memory usage bounded for large JARs while still giving threads enough work to stay busy.
+    private static final int LOOKAHEAD_PER_THREAD = 16;
+
+    private JarInstrumenter() {
+        // do nothing
+    }
+
+    /**
+     * Instruments the class files inside of a JAR. This method is equivalent to calling...
+     * <pre>
+     * instrument(instrumenter, settings, srcJar, dstJar, logger, parallelism, null);
+     * </pre>
+     * @param instrumenter instrumenter (its classpath should include {@code srcJar})
+     * @param settings instrumentation settings
+     * @param srcJar JAR to instrument
+     * @param dstJar JAR to write results out to
+     * @param logger logger to dump messages to (if any)
+     * @param parallelism maximum number of class files to instrument at the same time
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code srcJar} isn't a file, if {@code srcJar} and {@code dstJar} are the same file, if
+     * {@code parallelism <= 0}, or if a class could not be instrumented
+     * @throws IOException on IO error
+     */
+    public static void instrument(Instrumenter instrumenter, InstrumentationSettings settings, File srcJar, File dstJar,
+            Consumer<String> logger, int parallelism) throws IOException {
+        instrument(instrumenter, settings, srcJar, dstJar, logger, parallelism, null);
+    }
+
+    /**
+     * Instruments the class files inside of a JAR.
+     * <p>
+     * Class files are instrumented independently of each other, so if {@code parallelism} is greater than 1 they're spread out over that
+     * many threads ({@code instrumenter} must be safe to use from multiple threads when that happens). Regardless of the parallelism, the
+     * output JAR has the same entry order and {@code logger} is only ever called from the invoking thread.
+     * <p>
+     * {@code dstJar} is written to a temporary file first and then moved in to place, so it's never left partially written. If
+     * instrumentation fails, {@code dstJar} is left untouched.
+     * @param instrumenter instrumenter (its classpath should include {@code srcJar})
+     * @param settings instrumentation settings
+     * @param srcJar JAR to instrument
+     * @param dstJar JAR to write results out to
+     * @param logger logger to dump messages to (if any)
+     * @param parallelism maximum number of class files to instrument at the same time
+     * @param cache instrumentation cache (can be {@code null})
+     * @throws NullPointerException if any argument other than {@code cache} is {@code null}
+     * @throws IllegalArgumentException if {@code srcJar} isn't a file, if {@code srcJar} and {@code dstJar} are the same file, if
+     * {@code parallelism <= 0}, or if a class could not be instrumented
+     * @throws IOException on IO error
+     */
+    public static void instrument(Instrumenter instrumenter, InstrumentationSettings settings, File srcJar, File dstJar,
+            Consumer<String> logger, int parallelism, InstrumentationCache cache) throws IOException {
+        Validate.notNull(instrumenter);
+        Validate.notNull(settings);
+        Validate.notNull(srcJar);
+        Validate.notNull(dstJar);
+        Validate.notNull(logger);
+        Validate.isTrue(srcJar.isFile());
+        Validate.isTrue(!srcJar.getAbsoluteFile().equals(dstJar.getAbsoluteFile()));
+        Validate.isTrue(parallelism > 0);
+
+        Path dstPath = dstJar.toPath().toAbsolutePath();
+        Files.createDirectories(dstPath.getParent());
+        Path tempPath = Files.createTempFile(dstPath.getParent(), dstPath.getFileName().toString(), ".tmp");
+        
+        // Single-threaded -- no need to spin up threads, each entry gets instrumented right before it gets written
+        ExecutorService executor = parallelism == 1 ? null : Executors.newFixedThreadPool(parallelism);
+        try {
+            boolean signed;
+            boolean changed = false;
+            List<String> signatureMessages = new ArrayList<>();
+            try (ZipFile zipFile = new ZipFile(srcJar);
+                    ZipArchiveOutputStream zos = new ZipArchiveOutputStream(tempPath.toFile())) {
+                int lookahead = parallelism == 1 ? 1 : parallelism * LOOKAHEAD_PER_THREAD;
+                List<ZipArchiveEntry> entries = Collections.list(zipFile.getEntriesInPhysicalOrder());
+                signed = entries.stream().anyMatch(x -> isSignatureFile(x.getName()));
+                Iterator<ZipArchiveEntry> it = entries.iterator();
+                Deque<PendingEntry> pending = new ArrayDeque<>();
+                Set<String> writtenNames = new HashSet<>();
+
+                try {
+                    while (it.hasNext() || !pending.isEmpty()) {
+                        while (it.hasNext() && pending.size() < lookahead) {
+                            ZipArchiveEntry entry = it.next();
+                            Future<InstrumentedEntry> future = null;
+                            if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                                future = submit(executor, () -> instrumentEntry(instrumenter, settings, cache, zipFile, entry));
+                            }
+                            pending.add(new PendingEntry(entry, future));
+                        }
+
+                        PendingEntry next = pending.remove();
+                        InstrumentedEntry instrumented = next.future == null ? null : getResult(next.future);
+                        changed |= instrumented != null;
+                        String message = writeEntry(zos, zipFile, srcJar, next.entry, instrumented, signed, writtenNames);
+                        if (message == null) {
+                            continue;
+                        }
+                        
+                        // Signed -- whether the signature needs to go isn't known until every class has been looked at, so hold off on
+                        // saying it's being removed
+                        if (signed && (isSignatureFile(next.entry.getName())
+                                || next.entry.getName().equalsIgnoreCase(JarFile.MANIFEST_NAME))) {
+                            signatureMessages.add(message);
+                        } else {
+                            logger.accept(message);
+                        }
+                    }
+                } finally {
+                    pending.stream().filter(x -> x.future != null).forEach(x -> x.future.cancel(false)); // fail fast
+                }
+            }
+
+            if (signed && !changed) {
+                // Signed but nothing was instrumented -- the original signature is still valid, so keep the JAR exactly as it was instead
+                // of the copy that had its signature stripped
+                Files.copy(srcJar.toPath(), tempPath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                signatureMessages.forEach(logger);
+            }
+
+            Files.move(tempPath, dstPath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private static <T> Future<T> submit(ExecutorService executor, Callable<T> callable) {
+        if (executor != null) {
+            return executor.submit(callable);
+        }
+
+        FutureTask<T> task = new FutureTask<>(callable);
+        task.run();
+        return task;
+    }
+    
+    private static InstrumentedEntry getResult(Future<InstrumentedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause); // should never happen
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while instrumenting", ie);
+        }
+    }
+
+    private static InstrumentedEntry instrumentEntry(Instrumenter instrumenter, InstrumentationSettings settings,
+            InstrumentationCache cache, ZipFile zipFile, ZipArchiveEntry entry) throws IOException {
+        byte[] input;
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            input = IOUtils.toByteArray(is);
+        }
+
+        if (input.length == 0) {
+            return null;
+        }
+
+        InstrumentationResult result = cache == null
+                ? instrumenter.instrument(input, settings)
+                : cache.instrument(instrumenter, input, settings);
+
+        if (input.length == result.getInstrumentedClass().length) { // condition that determines if no instrumentation happened
+            return null;
+        }
+
+        return new InstrumentedEntry(input.length, result);
+    }
+
+    private static String writeEntry(ZipArchiveOutputStream zos, ZipFile zipFile, File srcJar, ZipArchiveEntry entry,
+            InstrumentedEntry instrumented, boolean signed, Set<String> writtenNames) throws IOException {
+        String name = entry.getName();
+        if (!writtenNames.add(name)) {
+            return null; // already written out (e.g. a detail file that was generated for a class earlier on), skip
+        }
+
+        // Signed -- signature no longer matches once classes are instrumented, so get rid of it (the caller puts the original JAR back if
+        // nothing ends up being instrumented)
+        if (signed && isSignatureFile(name)) {
+            return "Removing signature file " + srcJar.getAbsolutePath() + "!/" + name;
+        }
+        if (signed && name.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+            writeNewEntry(zos, name, entry.getTime(), removeDigests(zipFile, entry));
+            return "Removing digests from " + srcJar.getAbsolutePath() + "!/" + name;
+        }
+
+        // Nothing changed -- copy the compressed bytes over directly
+        if (instrumented == null) {
+            try (InputStream is = zipFile.getRawInputStream(entry)) {
+                zos.addRawArchiveEntry(entry, is);
+            }
+            return null;
+        }
+
+        byte[] output = instrumented.result.getInstrumentedClass();
+        Map<String, byte[]> extraOutputs = instrumented.result.getExtraFiles();
+        writeNewEntry(zos, name, entry.getTime(), output);
+
+        String dir = name.substring(0, name.lastIndexOf('/') + 1);
+        for (Entry<String, byte[]> extraOutput : extraOutputs.entrySet()) {
+            String extraName = dir + extraOutput.getKey();
+            if (writtenNames.add(extraName)) {
+                writeNewEntry(zos, extraName, entry.getTime(), extraOutput.getValue());
+            }
+        }
+
+        return "Instrumenting " + srcJar.getAbsolutePath() + "!/" + name
+                + " (" + instrumented.inputLength + " bytes -> " + output.length + " bytes)"
+                + (extraOutputs.isEmpty() ? "" : " with extra files " + extraOutputs.keySet());
+    }
+
+    private static boolean isSignatureFile(String name) {
+        // Signature files sit directly inside META-INF (see JAR file specification)
+        String upperName = name.toUpperCase(Locale.ENGLISH);
+        if (!upperName.startsWith("META-INF/") || upperName.indexOf('/', "META-INF/".length()) != -1) {
+            return false;
+        }
+
+        String fileName = upperName.substring("META-INF/".length());
+        return fileName.endsWith(".SF")
+                || fileName.endsWith(".RSA")
+                || fileName.endsWith(".DSA")
+                || fileName.endsWith(".EC")
+                || fileName.startsWith("SIG-");
+    }
+
+    private static byte[] removeDigests(ZipFile zipFile, ZipArchiveEntry entry) throws IOException {
+        Manifest manifest;
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            manifest = new Manifest(is);
+        }
+
+        // Per-entry sections that only held digests (the usual case) get removed entirely
+        Iterator<Attributes> it = manifest.getEntries().values().iterator();
+        while (it.hasNext()) {
+            Attributes attributes = it.next();
+            attributes.keySet().removeIf(x -> x.toString().toUpperCase(Locale.ENGLISH).endsWith("-DIGEST"));
+            if (attributes.isEmpty()) {
+                it.remove();
+            }
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        manifest.write(baos);
+        return baos.toByteArray();
+    }
+
+    private static void writeNewEntry(ZipArchiveOutputStream zos, String name, long time, byte[] data) throws IOException {
+        ZipArchiveEntry newEntry = new ZipArchiveEntry(name);
+        newEntry.setMethod(ZipArchiveEntry.DEFLATED);
+        newEntry.setTime(time);
+        zos.putArchiveEntry(newEntry);
+        zos.write(data);
+        zos.closeArchiveEntry();
+    }
+
+    private static final class PendingEntry {
+        private final ZipArchiveEntry entry;
+        private final Future<InstrumentedEntry> future; // null if entry isn't a candidate for instrumentation
+
+        PendingEntry(ZipArchiveEntry entry, Future<InstrumentedEntry> future) {
+            this.entry = entry;
+            this.future = future;
+        }
+    }
+
+    private static final class InstrumentedEntry {
+        private final int inputLength;
+        private final InstrumentationResult result;
+
+        InstrumentedEntry(int inputLength, InstrumentationResult result) {
+            this.inputLength = inputLength;
+            this.result = result;
+        }
+    }
+}
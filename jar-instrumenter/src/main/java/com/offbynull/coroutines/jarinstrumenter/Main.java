@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.jarinstrumenter;
+
+import com.offbynull.coroutines.instrumenter.InstrumentationCache;
+import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
+import com.offbynull.coroutines.instrumenter.Instrumenter;
+import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command-line entry point for {@link JarInstrumenter}.
+ * <p>
+ * Usage: {@code java -jar jar-instrumenter-shaded.jar <input jar> <output jar> [key=value]...}, where the optional key/value pairs
+ * are...
+ * <ul>
+ * <li>{@code classpath} -- JARs and folders that the input JAR depends on, separated by the platform's path separator</li>
+ * <li>{@code markerType}, {@code debugMode}, {@code autoSerializable}, {@code methodStateReuse}, {@code typedStateStorage},
+ * {@code outlinedStateSaving}, {@code deadLocalPruning}, {@code invokeArgumentPruning} -- instrumentation settings (same as the build
+ * plugins)</li>
+ * <li>{@code parallelism} -- maximum number of class files to instrument at the same time (defaults to the number of processors)</li>
+ * <li>{@code cacheDirectory} -- directory to cache instrumentation results in (defaults to no caching)</li>
+ * </ul>
+ * @author Kasra Faghihi
+ */
+public final class Main {
+
+    private Main() {
+        // do nothing
+    }
+
+    /**
+     * Entry point.
+     * @param args command-line arguments
+     * @throws IOException on IO error
+     * @throws IllegalArgumentException if the arguments passed in are not in the expected format or could not be parsed
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: <input jar> <output jar> [key=value]...");
+        }
+        
+        File inputJar = new File(args[0]);
+        File outputJar = new File(args[1]);
+        List<File> classpath = new ArrayList<>();
+        MarkerType markerType = MarkerType.NONE;
+        boolean debugMode = false;
+        boolean autoSerializable = true;
+        boolean methodStateReuse = false;
+        boolean typedStateStorage = false;
+        boolean outlinedStateSaving = false;
+        boolean deadLocalPruning = false;
+        boolean invokeArgumentPruning = false;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        File cacheDirectory = null;
+        
+        for (int i = 2; i < args.length; i++) {
+            String[] keyVal = args[i].split("=", 2);
+            if (keyVal.length != 2) {
+                throw new IllegalArgumentException("Unrecognized arg: " + args[i]);
+            }
+
+            String key = keyVal[0];
+            String val = keyVal[1];
+
+            switch (key) {
+                case "classpath":
+                    for (String path : val.split(File.pathSeparator)) {
+                        if (!path.isEmpty()) {
+                            classpath.add(new File(path));
+                        }
+                    }
+                    break;
+                case "markerType":
+                    try {
+                        markerType = MarkerType.valueOf(val);
+                    } catch (IllegalArgumentException iae) {
+                        throw new IllegalArgumentException("Unable to parse marker type -- must be one of the following: "
+                                + Arrays.toString(MarkerType.values()), iae);
+                    }
+                    break;
+                case "debugMode":
+                    debugMode = parseBoolean(key, val);
+                    break;
+                case "autoSerializable":
+                    autoSerializable = parseBoolean(key, val);
+                    break;
+                case "methodStateReuse":
+                    methodStateReuse = parseBoolean(key, val);
+                    break;
+                case "typedStateStorage":
+                    typedStateStorage = parseBoolean(key, val);
+                    break;
+                case "outlinedStateSaving":
+                    outlinedStateSaving = parseBoolean(key, val);
+                    break;
+                case "deadLocalPruning":
+                    deadLocalPruning = parseBoolean(key, val);
+                    break;
+                case "invokeArgumentPruning":
+                    invokeArgumentPruning = parseBoolean(key, val);
+                    break;
+                case "parallelism":
+                    try {
+                        parallelism = Integer.parseInt(val);
+                    } catch (NumberFormatException nfe) {
+                        throw new IllegalArgumentException("Unable to parse parallelism -- must be an integer", nfe);
+                    }
+                    if (parallelism <= 0) {
+                        throw new IllegalArgumentException("Unable to parse parallelism -- must be greater than 0");
+                    }
+                    break;
+                case "cacheDirectory":
+                    cacheDirectory = new File(val);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unrecognized arg: " + args[i]);
+            }
+        }
+        
+        if (!inputJar.isFile()) {
+            throw new IllegalArgumentException("Input JAR does not exist: " + inputJar);
+        }
+        
+        classpath.add(inputJar); // classes in the input JAR need to be resolvable by the instrumenter as well
+        
+        InstrumentationCache cache = cacheDirectory == null ? null : new InstrumentationCache(cacheDirectory);
+        InstrumentationSettings settings = new InstrumentationSettings.Builder(markerType)
+                .debugMode(debugMode)
+                .autoSerializable(autoSerializable)
+                .methodStateReuse(methodStateReuse)
+                .typedStateStorage(typedStateStorage)
+                .outlinedStateSaving(outlinedStateSaving)
+                .deadLocalPruning(deadLocalPruning)
+                .invokeArgumentPruning(invokeArgumentPruning)
+                .build();
+        
+        try (Instrumenter instrumenter = new Instrumenter(classpath, cache == null ? null : cache.getClasspathIndexFile())) {
+            JarInstrumenter.instrument(instrumenter, settings, inputJar, outputJar, System.out::println, parallelism, cache);
+            instrumenter.saveClasspathIndex();
+        }
+    }
+    
+    private static boolean parseBoolean(String key, String val) {
+        if (val.equalsIgnoreCase("true")) {
+            return true;
+        } else if (val.equalsIgnoreCase("false")) {
+            return false;
+        } else {
+            throw new IllegalArgumentException("Unable to parse " + key + " -- must be true or false");
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.offbynull.coroutines.jarinstrumenter;
+
+import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
+import com.offbynull.coroutines.instrumenter.Instrumenter;
+import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class JarInstrumenterTest {
+    
+    private static final byte[] RESOURCE_CONTENT = StringUtils.repeat("hello world\n", 1000).getBytes(StandardCharsets.UTF_8);
+    
+    private File tempDir;
+    private File inputJar;
+    private byte[] inputClass;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        inputClass = readZipFromResource("NormalInvokeTest.zip").get("NormalInvokeTest.class");
+
+        tempDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        inputJar = new File(tempDir, "input.jar");
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(inputJar)) {
+            writeEntry(zos, "META-INF/", ZipArchiveEntry.DEFLATED, new byte[0]);
+            writeEntry(zos, "META-INF/MANIFEST.MF", ZipArchiveEntry.DEFLATED, "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            writeEntry(zos, "NormalInvokeTest.class", ZipArchiveEntry.DEFLATED, inputClass);
+            writeEntry(zos, "res/deflated.txt", ZipArchiveEntry.DEFLATED, RESOURCE_CONTENT);
+            writeEntry(zos, "res/stored.txt", ZipArchiveEntry.STORED, RESOURCE_CONTENT);
+        }
+    }
+    
+    @AfterEach
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void mustInstrumentClassesAndCopyOtherEntriesAsIs() throws Exception {
+        performInstrumentTest(1);
+    }
+
+    @Test
+    public void mustInstrumentClassesAndCopyOtherEntriesAsIsWhenParallel() throws Exception {
+        performInstrumentTest(4);
+    }
+
+    @Test
+    public void mustInstrumentThroughCommandLine() throws Exception {
+        File outputJar = new File(tempDir, "output.jar");
+        Main.main(new String[] { inputJar.getAbsolutePath(), outputJar.getAbsolutePath(), "parallelism=2", "markerType=NONE" });
+        
+        try (ZipFile zipFile = new ZipFile(outputJar)) {
+            ZipArchiveEntry classEntry = zipFile.getEntry("NormalInvokeTest.class");
+            try (InputStream is = zipFile.getInputStream(classEntry)) {
+                assertTrue(IOUtils.toByteArray(is).length > inputClass.length);
+            }
+        }
+    }
+
+    private void performInstrumentTest(int parallelism) throws Exception {
+        File outputJar = new File(tempDir, "output.jar");
+        
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        List<String> messages = new ArrayList<>();
+        try (Instrumenter instrumenter = new Instrumenter(Collections.singletonList(inputJar))) {
+            JarInstrumenter.instrument(instrumenter, settings, inputJar, outputJar, messages::add, parallelism);
+        }
+        
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0).contains("NormalInvokeTest.class"));
+
+        try (ZipFile inZipFile = new ZipFile(inputJar);
+                ZipFile outZipFile = new ZipFile(outputJar)) {
+            // entry order is kept, detail file follows the class it was generated for
+            List<String> names = new ArrayList<>();
+            Collections.list(outZipFile.getEntriesInPhysicalOrder()).forEach(e -> names.add(e.getName()));
+            assertEquals(
+                    List.of("META-INF/", "META-INF/MANIFEST.MF", "NormalInvokeTest.class", "NormalInvokeTest.coroutinesinfo",
+                            "res/deflated.txt", "res/stored.txt"),
+                    names);
+
+            // class got instrumented
+            try (InputStream is = outZipFile.getInputStream(outZipFile.getEntry("NormalInvokeTest.class"))) {
+                assertTrue(IOUtils.toByteArray(is).length > inputClass.length);
+            }
+
+            // everything else got copied over without being recompressed
+            for (String name : List.of("META-INF/MANIFEST.MF", "res/deflated.txt", "res/stored.txt")) {
+                ZipArchiveEntry inEntry = inZipFile.getEntry(name);
+                ZipArchiveEntry outEntry = outZipFile.getEntry(name);
+                assertEquals(inEntry.getMethod(), outEntry.getMethod());
+                assertEquals(inEntry.getCompressedSize(), outEntry.getCompressedSize());
+                assertEquals(inEntry.getCrc(), outEntry.getCrc());
+                try (InputStream inIs = inZipFile.getRawInputStream(inEntry);
+                        InputStream outIs = outZipFile.getRawInputStream(outEntry)) {
+                    assertArrayEquals(IOUtils.toByteArray(inIs), IOUtils.toByteArray(outIs));
+                }
+            }
+            try (InputStream is = outZipFile.getInputStream(outZipFile.getEntry("res/deflated.txt"))) {
+                assertArrayEquals(RESOURCE_CONTENT, IOUtils.toByteArray(is));
+            }
+        }
+    }
+
+    @Test
+    public void mustRemoveSignatureFromSignedJars() throws Exception {
+        String manifest = "Manifest-Version: 1.0\r\n"
+                + "Created-By: test\r\n"
+                + "\r\n"
+                + "Name: NormalInvokeTest.class\r\n"
+                + "SHA-256-Digest: AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=\r\n"
+                + "\r\n"
+                + "Name: res/deflated.txt\r\n"
+                + "SHA-256-Digest: AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=\r\n"
+                + "Custom-Attribute: kept\r\n"
+                + "\r\n";
+        File signedJar = new File(tempDir, "signed.jar");
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(signedJar)) {
+            writeEntry(zos, "META-INF/MANIFEST.MF", ZipArchiveEntry.DEFLATED, manifest.getBytes(StandardCharsets.UTF_8));
+            writeEntry(zos, "META-INF/SIGNER.SF", ZipArchiveEntry.DEFLATED, new byte[] { 1, 2, 3 });
+            writeEntry(zos, "META-INF/SIGNER.RSA", ZipArchiveEntry.DEFLATED, new byte[] { 1, 2, 3 });
+            writeEntry(zos, "META-INF/OTHER.EC", ZipArchiveEntry.DEFLATED, new byte[] { 1, 2, 3 });
+            writeEntry(zos, "META-INF/sub/NOT_A_SIGNATURE.SF", ZipArchiveEntry.DEFLATED, new byte[] { 1, 2, 3 });
+            writeEntry(zos, "NormalInvokeTest.class", ZipArchiveEntry.DEFLATED, inputClass);
+            writeEntry(zos, "res/deflated.txt", ZipArchiveEntry.DEFLATED, RESOURCE_CONTENT);
+        }
+
+        File outputJar = new File(tempDir, "output.jar");
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        try (Instrumenter instrumenter = new Instrumenter(Collections.singletonList(signedJar))) {
+            JarInstrumenter.instrument(instrumenter, settings, signedJar, outputJar, x -> { }, 2);
+        }
+
+        try (ZipFile zipFile = new ZipFile(outputJar)) {
+            List<String> names = new ArrayList<>();
+            Collections.list(zipFile.getEntriesInPhysicalOrder()).forEach(e -> names.add(e.getName()));
+            assertEquals(
+                    List.of("META-INF/MANIFEST.MF", "META-INF/sub/NOT_A_SIGNATURE.SF", "NormalInvokeTest.class",
+                            "NormalInvokeTest.coroutinesinfo", "res/deflated.txt"),
+                    names);
+        }
+
+        // JVM would throw a SecurityException on reading the instrumented class if the digests were still there
+        try (JarFile jarFile = new JarFile(outputJar, true)) {
+            Manifest outManifest = jarFile.getManifest();
+            assertEquals("test", outManifest.getMainAttributes().getValue("Created-By"));
+            assertEquals(Set.of("res/deflated.txt"), outManifest.getEntries().keySet());
+            assertEquals(1, outManifest.getAttributes("res/deflated.txt").size());
+            assertEquals("kept", outManifest.getAttributes("res/deflated.txt").getValue("Custom-Attribute"));
+
+            JarEntry classEntry = jarFile.getJarEntry("NormalInvokeTest.class");
+            try (InputStream is = jarFile.getInputStream(classEntry)) {
+                assertTrue(IOUtils.toByteArray(is).length > inputClass.length);
+            }
+            assertNull(classEntry.getCodeSigners());
+        }
+    }
+
+    @Test
+    public void mustKeepSignatureOfSignedJarsWithNothingToInstrument() throws Exception {
+        String manifest = "Manifest-Version: 1.0\r\n"
+                + "Created-By: test\r\n"
+                + "\r\n"
+                + "Name: res/deflated.txt\r\n"
+                + "SHA-256-Digest: AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=\r\n"
+                + "\r\n";
+        File signedJar = new File(tempDir, "signed.jar");
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(signedJar)) {
+            writeEntry(zos, "META-INF/MANIFEST.MF", ZipArchiveEntry.DEFLATED, manifest.getBytes(StandardCharsets.UTF_8));
+            writeEntry(zos, "META-INF/SIGNER.SF", ZipArchiveEntry.DEFLATED, new byte[] { 1, 2, 3 });
+            writeEntry(zos, "META-INF/SIGNER.RSA", ZipArchiveEntry.DEFLATED, new byte[] { 1, 2, 3 });
+            writeEntry(zos, "res/deflated.txt", ZipArchiveEntry.DEFLATED, RESOURCE_CONTENT);
+            writeEntry(zos, "res/stored.txt", ZipArchiveEntry.STORED, RESOURCE_CONTENT);
+        }
+
+        File outputJar = new File(tempDir, "output.jar");
+        List<String> messages = new ArrayList<>();
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        try (Instrumenter instrumenter = new Instrumenter(Collections.singletonList(signedJar))) {
+            JarInstrumenter.instrument(instrumenter, settings, signedJar, outputJar, messages::add, 2);
+        }
+
+        assertArrayEquals(FileUtils.readFileToByteArray(signedJar), FileUtils.readFileToByteArray(outputJar));
+        assertEquals(List.of(), messages);
+    }
+
+    @Test
+    public void mustLeaveOutputUntouchedOnFailure() throws Exception {
+        File corruptJar = new File(tempDir, "corrupt.jar");
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(corruptJar)) {
+            writeEntry(zos, "NormalInvokeTest.class", ZipArchiveEntry.DEFLATED, inputClass);
+            writeEntry(zos, "Corrupt.class", ZipArchiveEntry.DEFLATED, new byte[] { 1, 2, 3 });
+        }
+
+        File outputJar = new File(tempDir, "output.jar");
+        FileUtils.writeByteArrayToFile(outputJar, new byte[] { 1, 2, 3 });
+        
+        InstrumentationSettings settings = new InstrumentationSettings(MarkerType.NONE, false, true);
+        try (Instrumenter instrumenter = new Instrumenter(Collections.singletonList(corruptJar))) {
+            JarInstrumenter.instrument(instrumenter, settings, corruptJar, outputJar, x -> { }, 2);
+            assertFalse(true);
+        } catch (RuntimeException re) {
+            // expected
+        }
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, FileUtils.readFileToByteArray(outputJar));
+        assertEquals(3, tempDir.listFiles().length); // no temp files left behind
+    }
+    
+    private static void writeEntry(ZipArchiveOutputStream zos, String name, int method, byte[] data) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(method);
+        zos.putArchiveEntry(entry);
+        zos.write(data);
+        zos.closeArchiveEntry();
+    }
+    
+    private Map<String, byte[]> readZipFromResource(String path) throws IOException {
+        ClassLoader cl = ClassLoader.getSystemClassLoader();
+        URL url = cl.getResource(path);
+        Validate.isTrue(url != null);
+        
+        Map<String, byte[]> ret = new LinkedHashMap<>();
+        
+        try (InputStream is = url.openStream();
+                ZipArchiveInputStream zais = new ZipArchiveInputStream(is)) {
+            ZipArchiveEntry entry;
+            while ((entry = zais.getNextZipEntry()) != null) {
+                ret.put(entry.getName(), IOUtils.toByteArray(zais));
+            }
+        }
+        
+        return ret;
+    }
+}
@@ -19,7 +19,7 @@ package com.offbynull.coroutines.javaagent;
 import com.offbynull.coroutines.instrumenter.InstrumentationResult;
 import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
 import com.offbynull.coroutines.instrumenter.Instrumenter;
-import com.offbynull.coroutines.instrumenter.asm.ClassResourceClassInformationRepository;
+import com.offbynull.coroutines.instrumenter.asm.ClassResourceClassInformationCache;
 import com.offbynull.coroutines.instrumenter.generators.DebugGenerators.MarkerType;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
@@ -52,6 +52,11 @@ public final class CoroutinesAgent {
         MarkerType markerType = MarkerType.NONE;
         boolean debugMode = false;
         boolean autoSerializable = true;
+        boolean methodStateReuse = false;
+        boolean typedStateStorage = false;
+        boolean outlinedStateSaving = false;
+        boolean deadLocalPruning = false;
+        boolean invokeArgumentPruning = false;
         if (agentArgs != null && !agentArgs.isEmpty()) {
             String[] splitArgs = agentArgs.split(",");
             for (String splitArg : splitArgs) {
@@ -90,28 +95,82 @@ public final class CoroutinesAgent {
                             throw new IllegalArgumentException("Unable to parse debug mode -- must be true or false");
                         }
                         break;                        
+                    case "methodStateReuse":
+                        if (val.equalsIgnoreCase("true")) {
+                            methodStateReuse = true;
+                        } else if (val.equalsIgnoreCase("false")) {
+                            methodStateReuse = false;
+                        } else {
+                            throw new IllegalArgumentException("Unable to parse method state reuse -- must be true or false");
+                        }
+                        break;
+                    case "typedStateStorage":
+                        if (val.equalsIgnoreCase("true")) {
+                            typedStateStorage = true;
+                        } else if (val.equalsIgnoreCase("false")) {
+                            typedStateStorage = false;
+                        } else {
+                            throw new IllegalArgumentException("Unable to parse typed state storage -- must be true or false");
+                        }
+                        break;
+                    case "outlinedStateSaving":
+                        if (val.equalsIgnoreCase("true")) {
+                            outlinedStateSaving = true;
+                        } else if (val.equalsIgnoreCase("false")) {
+                            outlinedStateSaving = false;
+                        } else {
+                            throw new IllegalArgumentException("Unable to parse outlined state saving -- must be true or false");
+                        }
+                        break;
+                    case "deadLocalPruning":
+                        if (val.equalsIgnoreCase("true")) {
+                            deadLocalPruning = true;
+                        } else if (val.equalsIgnoreCase("false")) {
+                            deadLocalPruning = false;
+                        } else {
+                            throw new IllegalArgumentException("Unable to parse dead local pruning -- must be true or false");
+                        }
+                        break;
+                    case "invokeArgumentPruning":
+                        if (val.equalsIgnoreCase("true")) {
+                            invokeArgumentPruning = true;
+                        } else if (val.equalsIgnoreCase("false")) {
+                            invokeArgumentPruning = false;
+                        } else {
+                            throw new IllegalArgumentException("Unable to parse invoke argument pruning -- must be true or false");
+                        }
+                        break;
                     default:
                         throw new IllegalArgumentException("Unrecognized arg passed to Coroutines Java agent: " + keyVal);
                 }
             }
         }
         
-        inst.addTransformer(new CoroutinesClassFileTransformer(markerType, debugMode, autoSerializable));
+        InstrumentationSettings settings = new InstrumentationSettings.Builder(markerType)
+                .debugMode(debugMode)
+                .autoSerializable(autoSerializable)
+                .methodStateReuse(methodStateReuse)
+                .typedStateStorage(typedStateStorage)
+                .outlinedStateSaving(outlinedStateSaving)
+                .deadLocalPruning(deadLocalPruning)
+                .invokeArgumentPruning(invokeArgumentPruning)
+                .build();
+        inst.addTransformer(new CoroutinesClassFileTransformer(settings));
     }
     
     private static final class CoroutinesClassFileTransformer implements ClassFileTransformer {
-        private final MarkerType markerType;
-        private final boolean debugMode;
-        private final boolean autoSerializable;
+        private static final int MAX_CACHED_CLASSES_PER_CLASSLOADER = 16384;
+        
+        private final InstrumentationSettings settings;
+        private final ClassResourceClassInformationCache classInfoCache;
 
-        CoroutinesClassFileTransformer(MarkerType markerType, boolean debugMode, boolean autoSerializable) {
-            if (markerType == null) {
+        CoroutinesClassFileTransformer(InstrumentationSettings settings) {
+            if (settings == null) {
                 throw new NullPointerException();
             }
 
-            this.markerType = markerType;
-            this.debugMode = debugMode;
-            this.autoSerializable = autoSerializable;
+            this.settings = settings;
+            this.classInfoCache = new ClassResourceClassInformationCache(MAX_CACHED_CLASSES_PER_CLASSLOADER);
         }
 
         @Override
@@ -136,8 +195,9 @@ public final class CoroutinesAgent {
 //            System.out.println(className + " " + (loader == null));
             
             try {
-                InstrumentationSettings settings = new InstrumentationSettings(markerType, debugMode, autoSerializable);
-                Instrumenter instrumenter = new Instrumenter(new ClassResourceClassInformationRepository(loader));
+                // Class information is shared across calls to this method (one call per class loaded), otherwise the same supertypes
+                // would get read and parsed over and over again when computing stack map frames.
+                Instrumenter instrumenter = new Instrumenter(classInfoCache.getRepository(loader));
                 InstrumentationResult result = instrumenter.instrument(classfileBuffer, settings);
                 return result.getInstrumentedClass();
             } catch (Throwable e) {
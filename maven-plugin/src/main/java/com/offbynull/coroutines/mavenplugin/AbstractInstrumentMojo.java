@@ -16,6 +16,7 @@
  */
 package com.offbynull.coroutines.mavenplugin;
 
+import com.offbynull.coroutines.instrumenter.InstrumentationCache;
 import com.offbynull.coroutines.instrumenter.InstrumentationSettings;
 import com.offbynull.coroutines.instrumenter.Instrumenter;
 import com.offbynull.coroutines.instrumenter.PluginHelper;
@@ -46,6 +47,27 @@ public abstract class AbstractInstrumentMojo extends AbstractMojo {
     
     @Parameter(property = "coroutines.autoSerializable", defaultValue = "true")
     private boolean autoSerializable;
+    
+    @Parameter(property = "coroutines.methodStateReuse", defaultValue = "false")
+    private boolean methodStateReuse;
+    
+    @Parameter(property = "coroutines.typedStateStorage", defaultValue = "false")
+    private boolean typedStateStorage;
+    
+    @Parameter(property = "coroutines.outlinedStateSaving", defaultValue = "false")
+    private boolean outlinedStateSaving;
+    
+    @Parameter(property = "coroutines.deadLocalPruning", defaultValue = "false")
+    private boolean deadLocalPruning;
+    
+    @Parameter(property = "coroutines.invokeArgumentPruning", defaultValue = "false")
+    private boolean invokeArgumentPruning;
+    
+    @Parameter(property = "coroutines.parallelism", defaultValue = "1")
+    private int parallelism;
+    
+    @Parameter(property = "coroutines.cacheDirectory")
+    private File cacheDirectory;
 
     /**
      * Instruments all classes in a path recursively.
@@ -57,10 +79,21 @@ public abstract class AbstractInstrumentMojo extends AbstractMojo {
     protected final void instrumentPath(Log log, List<String> classpath, File path)
             throws MojoExecutionException {
         try {
-            Instrumenter instrumenter = getInstrumenter(log, classpath);
-            InstrumentationSettings settings = new InstrumentationSettings(markerType, debugMode, autoSerializable);
+            InstrumentationCache cache = cacheDirectory == null ? null : new InstrumentationCache(cacheDirectory);
+            InstrumentationSettings settings = new InstrumentationSettings.Builder(markerType)
+                    .debugMode(debugMode)
+                    .autoSerializable(autoSerializable)
+                    .methodStateReuse(methodStateReuse)
+                    .typedStateStorage(typedStateStorage)
+                    .outlinedStateSaving(outlinedStateSaving)
+                    .deadLocalPruning(deadLocalPruning)
+                    .invokeArgumentPruning(invokeArgumentPruning)
+                    .build();
 
-            PluginHelper.instrument(instrumenter, settings, path, path, log::info);
+            try (Instrumenter instrumenter = getInstrumenter(log, classpath, cache)) {
+                PluginHelper.instrument(instrumenter, settings, path, path, log::info, parallelism, cache);
+                instrumenter.saveClasspathIndex();
+            }
         } catch (Exception ex) {
             throw new MojoExecutionException("Unable to get compile classpath elements", ex);
         }
@@ -70,10 +103,11 @@ public abstract class AbstractInstrumentMojo extends AbstractMojo {
      * Creates an {@link Instrumenter} instance.
      * @param log maven logger
      * @param classpath classpath for classes being instrumented
+     * @param cache instrumentation cache (can be {@code null})
      * @return a new {@link Instrumenter}
      * @throws MojoExecutionException if any exception occurs
      */
-    private Instrumenter getInstrumenter(Log log, List<String> classpath) throws MojoExecutionException {
+    private Instrumenter getInstrumenter(Log log, List<String> classpath, InstrumentationCache cache) throws MojoExecutionException {
         List<File> classpathFiles;
         try {
             log.debug("Getting compile classpath");
@@ -88,7 +122,7 @@ public abstract class AbstractInstrumentMojo extends AbstractMojo {
         log.debug("Creating instrumenter...");
 
         try {
-            return new Instrumenter(classpathFiles);
+            return new Instrumenter(classpathFiles, cache == null ? null : cache.getClasspathIndexFile());
         } catch (Exception ex) {
             throw new MojoExecutionException("Unable to create instrumenter", ex);
         }
@@ -39,6 +39,7 @@ public final class MainInstrumentMojoTest {
         FieldUtils.writeField(fixture, "project", mavenProject, true);
         FieldUtils.writeField(fixture, "markerType", MarkerType.NONE, true);
         FieldUtils.writeField(fixture, "debugMode", false, true);
+        FieldUtils.writeField(fixture, "parallelism", 1, true);
         FieldUtils.writeField(fixture, "log", log, true);
     }
 
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.user;
+
+import com.offbynull.coroutines.user.BinaryFormat.Input;
+import com.offbynull.coroutines.user.CoroutineReader.CoroutineDeserializer;
+import com.offbynull.coroutines.user.CoroutineReader.StreamingCoroutineDeserializer;
+import com.offbynull.coroutines.user.ObjectCodec.DefaultObjectCodec;
+import com.offbynull.coroutines.user.SerializedState.Data;
+import com.offbynull.coroutines.user.SerializedState.Frame;
+import com.offbynull.coroutines.user.SerializedState.VersionedFrame;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Implementation of {@link CoroutineDeserializer} that reads in data written by {@link BinaryCoroutineSerializer}. The
+ * {@link ObjectCodec} used must be compatible with the one used by the {@link BinaryCoroutineSerializer} that wrote the data.
+ * @author Kasra Faghihi
+ */
+public final class BinaryCoroutineDeserializer implements StreamingCoroutineDeserializer {
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    private static final Object[] NO_MONITORS = new Object[0];
+
+    private final ObjectCodec objectCodec;
+
+    /**
+     * Constructs a {@link BinaryCoroutineDeserializer} object. Equivalent to calling
+     * {@code new BinaryCoroutineDeserializer(new DefaultObjectCodec())}.
+     */
+    public BinaryCoroutineDeserializer() {
+        this(new DefaultObjectCodec());
+    }
+
+    /**
+     * Constructs a {@link BinaryCoroutineDeserializer} object.
+     * @param objectCodec codec to use for user objects
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public BinaryCoroutineDeserializer(ObjectCodec objectCodec) {
+        if (objectCodec == null) {
+            throw new NullPointerException();
+        }
+        this.objectCodec = objectCodec;
+    }
+
+    //CHECKSTYLE.OFF:JavadocMethod - Requires @Override annotation to work, but this is designed for Java 1.4 (no annotations support)
+    public SerializedState deserialize(byte[] data) {
+        if (data == null) {
+            throw new NullPointerException();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            SerializedState ret = read(new Input(buffer));
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing data");
+            }
+            return ret;
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe); // should never happen
+        }
+    }
+
+    public SerializedState deserialize(InputStream is) throws IOException {
+        if (is == null) {
+            throw new NullPointerException();
+        }
+
+        // If reading from a buffer, read from it directly so that its position is left right after the serialized data. Otherwise, the
+        // data is read from the stream chunk by chunk -- nothing past the end of the serialized data gets read.
+        Input in = is instanceof ByteBufferInputStream
+                ? new Input(((ByteBufferInputStream) is).getBuffer())
+                : new Input(is, STREAM_BUFFER_SIZE);
+        return read(in);
+    }
+    //CHECKSTYLE.ON:JavadocMethod
+
+    private SerializedState read(Input in) throws IOException {
+        int magic = (in.readByte() << 8) | in.readByte();
+        if (magic != BinaryFormat.MAGIC) {
+            throw new IllegalArgumentException("Not binary coroutine data");
+        }
+        int version = in.readByte();
+        if (version != BinaryFormat.VERSION) {
+            throw new IllegalArgumentException("Unsupported binary coroutine format version: " + version);
+        }
+        in.startBody();
+
+        String[] classNames = new String[in.readLength()];
+        for (int i = 0; i < classNames.length; i++) {
+            classNames[i] = in.readString();
+        }
+
+        int methodCount = in.readLength();
+        String[] methodClassNames = new String[methodCount];
+        int[] methodIds = new int[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            int classIdx = in.readUnsignedVarInt();
+            if (classIdx < 0 || classIdx >= classNames.length) {
+                throw new IllegalArgumentException("Bad class name index");
+            }
+            methodClassNames[i] = classNames[classIdx];
+            methodIds[i] = in.readVarInt();
+        }
+
+        Object[] objects = objectCodec.decode(in.readBytes(in.readLength()));
+        if (objects == null) {
+            throw new IllegalArgumentException("Object codec returned null");
+        }
+
+        Object coroutine = readObject(in, objects);
+        if (!(coroutine instanceof Coroutine)) {
+            throw new IllegalArgumentException("Bad coroutine");
+        }
+        Object context = readObject(in, objects);
+
+        VersionedFrame[] versionedFrames = new VersionedFrame[in.readLength()];
+        for (int i = 0; i < versionedFrames.length; i++) {
+            Frame[] frames = new Frame[in.readLength()];
+            for (int j = 0; j < frames.length; j++) {
+                int methodIdx = in.readUnsignedVarInt();
+                if (methodIdx < 0 || methodIdx >= methodCount) {
+                    throw new IllegalArgumentException("Bad method index");
+                }
+                int continuationPointId = in.readVarInt();
+                Data variables = readData(in, objects);
+                Data operands = readData(in, objects);
+                frames[j] = new Frame(methodClassNames[methodIdx], methodIds[methodIdx], continuationPointId, NO_MONITORS, variables,
+                        operands);
+            }
+            versionedFrames[i] = new VersionedFrame(frames); // throws IllegalArgumentException if frames are inconsistent
+        }
+        in.finishBody();
+
+        return new SerializedState((Coroutine) coroutine, context, versionedFrames); // throws IllegalArgumentException if inconsistent
+    }
+
+    private static Data readData(Input in, Object[] objects) throws IOException {
+        int[] ints = new int[in.readLength()];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = in.readVarInt();
+        }
+
+        float[] floats = new float[in.readLength()];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = Float.intBitsToFloat(in.readFixedInt());
+        }
+
+        long[] longs = new long[in.readLength()];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = in.readVarLong();
+        }
+
+        double[] doubles = new double[in.readLength()];
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = Double.longBitsToDouble(in.readFixedLong());
+        }
+
+        Object[] objs = new Object[in.readLength()];
+        for (int i = 0; i < objs.length; i++) {
+            objs[i] = readObject(in, objects);
+        }
+
+        int[] continuationIndexes = new int[in.readLength()];
+        for (int i = 0; i < continuationIndexes.length; i++) {
+            continuationIndexes[i] = in.readUnsignedVarInt();
+        }
+
+        return new Data(ints, floats, longs, doubles, objs, continuationIndexes); // throws IllegalArgumentException if inconsistent
+    }
+
+    private static Object readObject(Input in, Object[] objects) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case BinaryFormat.TAG_NULL:
+                return null;
+            case BinaryFormat.TAG_TABLE: {
+                int idx = in.readUnsignedVarInt();
+                if (idx < 0 || idx >= objects.length) {
+                    throw new IllegalArgumentException("Bad object index");
+                }
+                return objects[idx];
+            }
+            case BinaryFormat.TAG_STRING:
+                return in.readString();
+            case BinaryFormat.TAG_INTEGER:
+                return Integer.valueOf(in.readVarInt());
+            case BinaryFormat.TAG_LONG:
+                return Long.valueOf(in.readVarLong());
+            case BinaryFormat.TAG_FLOAT:
+                return Float.valueOf(Float.intBitsToFloat(in.readFixedInt()));
+            case BinaryFormat.TAG_DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(in.readFixedLong()));
+            case BinaryFormat.TAG_TRUE:
+                return Boolean.TRUE;
+            case BinaryFormat.TAG_FALSE:
+                return Boolean.FALSE;
+            case BinaryFormat.TAG_BYTE:
+                return Byte.valueOf((byte) in.readByte());
+            case BinaryFormat.TAG_SHORT:
+                return Short.valueOf((short) in.readVarInt());
+            case BinaryFormat.TAG_CHARACTER:
+                return Character.valueOf((char) in.readUnsignedVarInt());
+            default:
+                throw new IllegalArgumentException("Bad object tag: " + tag);
+        }
+    }
+}
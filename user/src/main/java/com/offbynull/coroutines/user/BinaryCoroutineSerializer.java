@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.user;
+
+import com.offbynull.coroutines.user.BinaryFormat.Output;
+import com.offbynull.coroutines.user.CoroutineWriter.CoroutineSerializer;
+import com.offbynull.coroutines.user.CoroutineWriter.StreamingCoroutineSerializer;
+import com.offbynull.coroutines.user.ObjectCodec.DefaultObjectCodec;
+import com.offbynull.coroutines.user.SerializedState.Data;
+import com.offbynull.coroutines.user.SerializedState.Frame;
+import com.offbynull.coroutines.user.SerializedState.VersionedFrame;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of {@link CoroutineSerializer} that uses a compact binary format instead of Java's built-in serialization mechanism.
+ * Frames are written out directly: class names and methods are written once and referred to by index, ints/longs are written as
+ * variable-length integers, and {@link String}s/boxed primitives are written inline. All other objects (the coroutine, the context, and
+ * any other object variables/operands) are handed off to an {@link ObjectCodec} in a single batch.
+ * <p>
+ * Data written by this class must be read back in using {@link BinaryCoroutineDeserializer}. This implementation has the following
+ * restrictions...
+ * <ol>
+ * <li>Serialization will fail if you have any synchronized blocks (monitor locks).</li>
+ * <li>The objects that make up the current state of your coroutine must be encodable by the {@link ObjectCodec} being used (the
+ * default {@link ObjectCodec} requires them to implement {@link java.io.Serializable}).</li>
+ * </ol>
+ * @author Kasra Faghihi
+ */
+public final class BinaryCoroutineSerializer implements StreamingCoroutineSerializer {
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    private final ObjectCodec objectCodec;
+
+    /**
+     * Constructs a {@link BinaryCoroutineSerializer} object. Equivalent to calling
+     * {@code new BinaryCoroutineSerializer(new DefaultObjectCodec())}.
+     */
+    public BinaryCoroutineSerializer() {
+        this(new DefaultObjectCodec());
+    }
+
+    /**
+     * Constructs a {@link BinaryCoroutineSerializer} object.
+     * @param objectCodec codec to use for user objects
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public BinaryCoroutineSerializer(ObjectCodec objectCodec) {
+        if (objectCodec == null) {
+            throw new NullPointerException();
+        }
+        this.objectCodec = objectCodec;
+    }
+
+    //CHECKSTYLE.OFF:JavadocMethod - Requires @Override annotation to work, but this is designed for Java 1.4 (no annotations support)
+    public byte[] serialize(SerializedState serializedState) {
+        if (serializedState == null) {
+            throw new NullPointerException();
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try {
+            serialize(serializedState, baos);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe); // should never happen
+        }
+        return baos.toByteArray();
+    }
+
+    public void serialize(SerializedState serializedState, OutputStream os) throws IOException {
+        if (serializedState == null || os == null) {
+            throw new NullPointerException();
+        }
+
+        Output out = new Output(os, STREAM_BUFFER_SIZE);
+        write(out, serializedState);
+        out.finish();
+    }
+    //CHECKSTYLE.ON:JavadocMethod
+
+    private void write(Output out, SerializedState serializedState) throws IOException {
+        VersionedFrame[] versionedFrames = serializedState.getFrames();
+        Frame[][] frames = new Frame[versionedFrames.length][];
+        for (int i = 0; i < versionedFrames.length; i++) {
+            frames[i] = versionedFrames[i].getFrames();
+            for (int j = 0; j < frames[i].length; j++) {
+                if (frames[i][j].getMonitors().length > 0) {
+                    throw new IllegalArgumentException("Monitors not allowed in binary serializer");
+                }
+            }
+        }
+
+        
+        // Collect class names, methods, and user objects up front so that they can be written out before the frames that refer to them.
+        // That way the deserializer can resolve references as it reads the frames in.
+        Dictionaries dicts = new Dictionaries();
+        dicts.addObject(serializedState.getCoroutine());
+        dicts.addObject(serializedState.getContext());
+        for (int i = 0; i < frames.length; i++) {
+            for (int j = 0; j < frames[i].length; j++) {
+                Frame frame = frames[i][j];
+                dicts.addMethod(frame.getClassName(), frame.getMethodId());
+                dicts.addObjects(frame.getVariables().getObjects());
+                dicts.addObjects(frame.getOperands().getObjects());
+            }
+        }
+        
+        byte[] encodedObjects = objectCodec.encode(dicts.objects.toArray());
+        if (encodedObjects == null) {
+            throw new IllegalArgumentException("Object codec returned null");
+        }
+
+
+        out.writeByte(BinaryFormat.MAGIC >>> 8);
+        out.writeByte(BinaryFormat.MAGIC);
+        out.writeByte(BinaryFormat.VERSION);
+        out.startBody();
+        
+        out.writeUnsignedVarInt(dicts.classNames.size());
+        for (int i = 0; i < dicts.classNames.size(); i++) {
+            out.writeString((String) dicts.classNames.get(i));
+        }
+        
+        out.writeUnsignedVarInt(dicts.methodClassIndexes.size());
+        for (int i = 0; i < dicts.methodClassIndexes.size(); i++) {
+            out.writeUnsignedVarInt(((Integer) dicts.methodClassIndexes.get(i)).intValue());
+            out.writeVarInt(((Integer) dicts.methodIds.get(i)).intValue());
+        }
+        
+        out.writeUnsignedVarInt(encodedObjects.length);
+        out.writeBytes(encodedObjects);
+        
+        writeObject(out, dicts, serializedState.getCoroutine());
+        writeObject(out, dicts, serializedState.getContext());
+
+        out.writeUnsignedVarInt(frames.length);
+        for (int i = 0; i < frames.length; i++) {
+            out.writeUnsignedVarInt(frames[i].length);
+            for (int j = 0; j < frames[i].length; j++) {
+                Frame frame = frames[i][j];
+                out.writeUnsignedVarInt(dicts.getMethodIndex(frame.getClassName(), frame.getMethodId()));
+                out.writeVarInt(frame.getContinuationPointId());
+                writeData(out, dicts, frame.getVariables());
+                writeData(out, dicts, frame.getOperands());
+            }
+        }
+    }
+
+    private static void writeData(Output out, Dictionaries dicts, Data data) throws IOException {
+        int[] ints = data.getInts();
+        out.writeUnsignedVarInt(ints.length);
+        for (int i = 0; i < ints.length; i++) {
+            out.writeVarInt(ints[i]);
+        }
+
+        float[] floats = data.getFloats();
+        out.writeUnsignedVarInt(floats.length);
+        for (int i = 0; i < floats.length; i++) {
+            out.writeFixedInt(Float.floatToRawIntBits(floats[i]));
+        }
+
+        long[] longs = data.getLongs();
+        out.writeUnsignedVarInt(longs.length);
+        for (int i = 0; i < longs.length; i++) {
+            out.writeVarLong(longs[i]);
+        }
+
+        double[] doubles = data.getDoubles();
+        out.writeUnsignedVarInt(doubles.length);
+        for (int i = 0; i < doubles.length; i++) {
+            out.writeFixedLong(Double.doubleToRawLongBits(doubles[i]));
+        }
+
+        Object[] objects = data.getObjects();
+        out.writeUnsignedVarInt(objects.length);
+        for (int i = 0; i < objects.length; i++) {
+            writeObject(out, dicts, objects[i]);
+        }
+
+        int[] continuationIndexes = data.getContinuationIndexes();
+        out.writeUnsignedVarInt(continuationIndexes.length);
+        for (int i = 0; i < continuationIndexes.length; i++) {
+            out.writeUnsignedVarInt(continuationIndexes[i]);
+        }
+    }
+
+    private static void writeObject(Output out, Dictionaries dicts, Object obj) throws IOException {
+        if (obj == null) {
+            out.writeByte(BinaryFormat.TAG_NULL);
+        } else if (obj instanceof String) {
+            out.writeByte(BinaryFormat.TAG_STRING);
+            out.writeString((String) obj);
+        } else if (obj instanceof Integer) {
+            out.writeByte(BinaryFormat.TAG_INTEGER);
+            out.writeVarInt(((Integer) obj).intValue());
+        } else if (obj instanceof Long) {
+            out.writeByte(BinaryFormat.TAG_LONG);
+            out.writeVarLong(((Long) obj).longValue());
+        } else if (obj instanceof Float) {
+            out.writeByte(BinaryFormat.TAG_FLOAT);
+            out.writeFixedInt(Float.floatToRawIntBits(((Float) obj).floatValue()));
+        } else if (obj instanceof Double) {
+            out.writeByte(BinaryFormat.TAG_DOUBLE);
+            out.writeFixedLong(Double.doubleToRawLongBits(((Double) obj).doubleValue()));
+        } else if (obj instanceof Boolean) {
+            out.writeByte(((Boolean) obj).booleanValue() ? BinaryFormat.TAG_TRUE : BinaryFormat.TAG_FALSE);
+        } else if (obj instanceof Byte) {
+            out.writeByte(BinaryFormat.TAG_BYTE);
+            out.writeByte(((Byte) obj).byteValue());
+        } else if (obj instanceof Short) {
+            out.writeByte(BinaryFormat.TAG_SHORT);
+            out.writeVarInt(((Short) obj).shortValue());
+        } else if (obj instanceof Character) {
+            out.writeByte(BinaryFormat.TAG_CHARACTER);
+            out.writeUnsignedVarInt(((Character) obj).charValue());
+        } else {
+            out.writeByte(BinaryFormat.TAG_TABLE);
+            out.writeUnsignedVarInt(((Integer) dicts.objectIndexes.get(obj)).intValue());
+        }
+    }
+
+    private static final class Dictionaries {
+        private final Map classNameIndexes = new HashMap(); // class name -> Integer
+        private final List classNames = new ArrayList();
+        private final Map methodIndexes = new HashMap(); // Long (class index + method id) -> Integer
+        private final List methodClassIndexes = new ArrayList();
+        private final List methodIds = new ArrayList();
+        private final Map objectIndexes = new IdentityHashMap(); // user object -> Integer
+        private final List objects = new ArrayList();
+
+        void addMethod(String className, int methodId) {
+            Integer classIdx = (Integer) classNameIndexes.get(className);
+            if (classIdx == null) {
+                classIdx = Integer.valueOf(classNames.size());
+                classNameIndexes.put(className, classIdx);
+                classNames.add(className);
+            }
+
+            Long methodKey = toMethodKey(classIdx.intValue(), methodId);
+            if (!methodIndexes.containsKey(methodKey)) {
+                methodIndexes.put(methodKey, Integer.valueOf(methodClassIndexes.size()));
+                methodClassIndexes.add(classIdx);
+                methodIds.add(Integer.valueOf(methodId));
+            }
+        }
+
+        int getMethodIndex(String className, int methodId) {
+            int classIdx = ((Integer) classNameIndexes.get(className)).intValue();
+            return ((Integer) methodIndexes.get(toMethodKey(classIdx, methodId))).intValue();
+        }
+
+        void addObjects(Object[] objs) {
+            for (int i = 0; i < objs.length; i++) {
+                addObject(objs[i]);
+            }
+        }
+
+        void addObject(Object obj) {
+            if (BinaryFormat.isInline(obj) || objectIndexes.containsKey(obj)) {
+                return;
+            }
+            objectIndexes.put(obj, Integer.valueOf(objects.size()));
+            objects.add(obj);
+        }
+
+        private static Long toMethodKey(int classIdx, int methodId) {
+            return Long.valueOf((((long) classIdx) << 32) | (methodId & 0xFFFFFFFFL));
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.user;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+// Constants and low-level encoding/decoding used by BinaryCoroutineSerializer and BinaryCoroutineDeserializer.
+//
+// Layout of a serialized state...
+//   magic (2 bytes) + format version (1 byte)
+//   body, split in to chunks: each chunk is its length (unsigned varint) followed by that many bytes, the last chunk has a length of 0
+//
+// Chunks make it possible to read a state from a stream without reading anything past its end -- the reader always knows how much is
+// left in the current chunk, while the writer doesn't need to know the size of the state up front. The body itself is...
+//   class name dictionary: count, then each class name
+//   method dictionary: count, then each method as class name index + method id
+//   user object table: length, then the bytes produced by ObjectCodec.encode()
+//   coroutine (object reference), context (object reference)
+//   frames: count, then for each versioned frame: count, then for each frame: method index + continuation point id + variables +
+//           operands (each is: ints, floats, longs, doubles, object references, continuation indexes -- all prefixed by their length)
+//
+// Counts/lengths/indexes are unsigned varints, ints/longs are zigzag varints, floats/doubles are fixed width. Object references are a
+// tag byte, optionally followed by the value (for nulls, boxed primitives, and strings, which are encoded inline) or an index in to the
+// user object table (for everything else).
+final class BinaryFormat {
+    static final int MAGIC = 0xC0B1;
+    static final int VERSION = 2;
+
+    static final int TAG_NULL = 0;
+    static final int TAG_TABLE = 1;
+    static final int TAG_STRING = 2;
+    static final int TAG_INTEGER = 3;
+    static final int TAG_LONG = 4;
+    static final int TAG_FLOAT = 5;
+    static final int TAG_DOUBLE = 6;
+    static final int TAG_TRUE = 7;
+    static final int TAG_FALSE = 8;
+    static final int TAG_BYTE = 9;
+    static final int TAG_SHORT = 10;
+    static final int TAG_CHARACTER = 11;
+
+    private BinaryFormat() {
+        // do nothing
+    }
+    
+    static boolean isInline(Object obj) {
+        return obj == null
+                || obj instanceof String
+                || obj instanceof Integer
+                || obj instanceof Long
+                || obj instanceof Float
+                || obj instanceof Double
+                || obj instanceof Boolean
+                || obj instanceof Byte
+                || obj instanceof Short
+                || obj instanceof Character;
+    }
+
+    // Writes data out to a sink. Anything written before startBody() is the header and is written out as-is, anything written after is
+    // part of the body and is written out in chunks (a chunk is written out every time the buffer fills up).
+    static final class Output {
+        private final OutputStream sink;
+        private final byte[] buffer;
+        private int size;
+        private boolean inBody;
+
+        Output(OutputStream sink, int bufferSize) {
+            this.sink = sink;
+            this.buffer = new byte[bufferSize];
+        }
+
+        void startBody() throws IOException {
+            sink.write(buffer, 0, size); // header goes out as-is
+            size = 0;
+            inBody = true;
+        }
+
+        void writeByte(int value) throws IOException {
+            ensureCapacity(1);
+            buffer[size] = (byte) value;
+            size++;
+        }
+
+        void writeBytes(byte[] value) throws IOException {
+            if (value.length > buffer.length) {
+                flush();
+                writeChunk(value, value.length); // too big to go through buffer -- write directly
+                return;
+            }
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, buffer, size, value.length);
+            size += value.length;
+        }
+        
+        void writeUnsignedVarInt(int value) throws IOException {
+            ensureCapacity(5);
+            size = putUnsignedVarInt(buffer, size, value);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            writeUnsignedVarInt((value << 1) ^ (value >> 31)); // zigzag
+        }
+
+        void writeVarLong(long value) throws IOException {
+            ensureCapacity(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0L) {
+                buffer[size] = (byte) ((zigzag & 0x7FL) | 0x80L);
+                size++;
+                zigzag >>>= 7;
+            }
+            buffer[size] = (byte) zigzag;
+            size++;
+        }
+
+        void writeFixedInt(int value) throws IOException {
+            ensureCapacity(4);
+            buffer[size] = (byte) (value >>> 24);
+            buffer[size + 1] = (byte) (value >>> 16);
+            buffer[size + 2] = (byte) (value >>> 8);
+            buffer[size + 3] = (byte) value;
+            size += 4;
+        }
+
+        void writeFixedLong(long value) throws IOException {
+            writeFixedInt((int) (value >>> 32));
+            writeFixedInt((int) value);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] data;
+            try {
+                data = value.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException uee) {
+                throw new IllegalStateException(uee); // should never happen
+            }
+            writeUnsignedVarInt(data.length);
+            writeBytes(data);
+        }
+
+        // Writes out whatever is buffered along with the empty chunk that marks the end of the body.
+        void finish() throws IOException {
+            flush();
+            sink.write(0);
+        }
+
+        private void flush() throws IOException {
+            writeChunk(buffer, size);
+            size = 0;
+        }
+
+        private void writeChunk(byte[] data, int length) throws IOException {
+            if (length == 0) {
+                return; // empty chunk would mark the end of the body
+            }
+            byte[] chunkHeader = new byte[5];
+            sink.write(chunkHeader, 0, putUnsignedVarInt(chunkHeader, 0, length));
+            sink.write(data, 0, length);
+        }
+
+        private void ensureCapacity(int extra) throws IOException {
+            if (buffer.length - size >= extra) {
+                return;
+            }
+
+            if (!inBody) {
+                throw new IllegalStateException(); // should never happen -- header is always smaller than the buffer
+            }
+            flush(); // buffer is always larger than the largest primitive write, and writeBytes() handles large arrays
+        }
+
+        private static int putUnsignedVarInt(byte[] dst, int offset, int value) {
+            while ((value & ~0x7F) != 0) {
+                dst[offset] = (byte) ((value & 0x7F) | 0x80);
+                offset++;
+                value >>>= 7;
+            }
+            dst[offset] = (byte) value;
+            return offset + 1;
+        }
+    }
+
+    // Reads data from memory (if created without a source) or from a source (if created with a source). Anything read before
+    // startBody() is the header and is read as-is, anything read after is part of the body and is read in chunk by chunk. Nothing past
+    // the empty chunk that marks the end of the body is ever read from the source. All read methods throw IllegalArgumentException if
+    // the data is truncated or malformed, and only throw IOException if a source is being used.
+    static final class Input {
+        private final InputStream source;
+        private final ByteBuffer data;
+        private ByteBuffer buffer;
+        private int chunkRemaining; // bytes of current chunk that have yet to be read in from source
+        private boolean inBody;
+
+        Input(ByteBuffer data) {
+            this.source = null;
+            this.data = data;
+            this.buffer = data; // header is read directly from data
+        }
+
+        Input(InputStream source, int bufferSize) {
+            this.source = source;
+            this.data = null;
+            this.buffer = ByteBuffer.allocate(bufferSize);
+            this.buffer.limit(0);
+        }
+
+        void startBody() {
+            if (source == null) {
+                buffer = data.slice();
+                buffer.limit(0);
+            }
+            inBody = true;
+        }
+
+        // Reads the empty chunk that marks the end of the body. Fails if the current chunk hasn't been fully read.
+        void finishBody() throws IOException {
+            if (buffer.hasRemaining() || chunkRemaining > 0 || readChunkLength() != 0) {
+                throw new IllegalArgumentException("Unexpected data at end of body");
+            }
+        }
+
+        int readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                refill();
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            if (length < 0 || (source == null && length > buffer.remaining() + data.remaining())) {
+                throw new IllegalArgumentException("Unexpected end of data");
+            }
+
+            byte[] ret = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                if (!buffer.hasRemaining()) {
+                    refill();
+                }
+                int count = Math.min(length - offset, buffer.remaining());
+                buffer.get(ret, offset, count);
+                offset += count;
+            }
+            return ret;
+        }
+
+        int readUnsignedVarInt() throws IOException {
+            int ret = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                ret |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return ret;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        // Same as readUnsignedVarInt(), but fails if the value can't possibly be the length of something that's still left in the data
+        // (each element takes up at least 1 byte). Stops bad data from causing huge arrays to be allocated. When reading from a source,
+        // the amount of data left is unknown so only negative values are caught.
+        int readLength() throws IOException {
+            int ret = readUnsignedVarInt();
+            if (ret < 0 || (source == null && ret > buffer.remaining() + data.remaining())) {
+                throw new IllegalArgumentException("Bad length");
+            }
+            return ret;
+        }
+
+        int readVarInt() throws IOException {
+            int zigzag = readUnsignedVarInt();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        long readVarLong() throws IOException {
+            long zigzag = 0L;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                zigzag |= ((long) (b & 0x7F)) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1L);
+                }
+            }
+            throw new IllegalArgumentException("Malformed varlong");
+        }
+
+        int readFixedInt() throws IOException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        long readFixedLong() throws IOException {
+            long high = readFixedInt() & 0xFFFFFFFFL;
+            long low = readFixedInt() & 0xFFFFFFFFL;
+            return (high << 32) | low;
+        }
+
+        String readString() throws IOException {
+            byte[] data = readBytes(readLength());
+            try {
+                return new String(data, "UTF-8");
+            } catch (UnsupportedEncodingException uee) {
+                throw new IllegalStateException(uee); // should never happen
+            }
+        }
+
+        private void refill() throws IOException {
+            if (source == null) {
+                if (!inBody) {
+                    throw new IllegalArgumentException("Unexpected end of data");
+                }
+                int length = readChunkLength();
+                if (length == 0 || length > data.remaining()) {
+                    throw new IllegalArgumentException("Unexpected end of data");
+                }
+                buffer = data.slice();
+                buffer.limit(length);
+                data.position(data.position() + length);
+                return;
+            }
+
+            int length;
+            if (!inBody) {
+                length = 1; // header is small, read it one byte at a time so nothing past it gets read
+            } else {
+                if (chunkRemaining == 0) {
+                    chunkRemaining = readChunkLength();
+                    if (chunkRemaining == 0) {
+                        throw new IllegalArgumentException("Unexpected end of data");
+                    }
+                }
+                length = Math.min(chunkRemaining, buffer.capacity());
+                chunkRemaining -= length;
+            }
+
+            buffer.clear();
+            buffer.limit(length);
+            while (buffer.hasRemaining()) {
+                int read = source.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (read == -1) {
+                    buffer.limit(0);
+                    throw new IllegalArgumentException("Unexpected end of data");
+                }
+                buffer.position(buffer.position() + read);
+            }
+            buffer.flip();
+        }
+
+        private int readChunkLength() throws IOException {
+            int ret = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b;
+                if (source == null) {
+                    if (!data.hasRemaining()) {
+                        throw new IllegalArgumentException("Unexpected end of data");
+                    }
+                    b = data.get() & 0xFF;
+                } else {
+                    b = source.read();
+                    if (b == -1) {
+                        throw new IllegalArgumentException("Unexpected end of data");
+                    }
+                }
+                ret |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (ret < 0) {
+                        throw new IllegalArgumentException("Bad chunk length");
+                    }
+                    return ret;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.user;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// Writes to a ByteBuffer, starting at its current position. Throws BufferOverflowException if the buffer runs out of space.
+final class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferOutputStream(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException();
+        }
+        this.buffer = buffer;
+    }
+
+    public void write(int b) {
+        buffer.put((byte) b);
+    }
+
+    public void write(byte[] b, int off, int len) {
+        buffer.put(b, off, len);
+    }
+}
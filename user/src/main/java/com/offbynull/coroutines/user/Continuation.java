@@ -17,6 +17,7 @@
 package com.offbynull.coroutines.user;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * This class is used to store and restore the execution state. Any method that takes in this type as a parameter will be instrumented to
@@ -43,6 +44,9 @@ public final class Continuation implements Serializable {
      */
     public static final int MODE_LOADING = 2;
     
+    private static final int MAX_RECYCLED_METHOD_STATES = 64;
+    private static final int RECYCLED_BUCKET_COUNT = 16; // must be a power of 2
+    
     private MethodState firstPointer;
     
     private MethodState nextLoadPointer;
@@ -50,6 +54,14 @@ public final class Continuation implements Serializable {
 
     private MethodState firstCutpointPointer;
     
+    private transient MethodState[] recycledBuckets; // lazily created, recycled method states keyed by method id + continuation point
+    private transient int recycledCount;
+    private transient boolean recyclingEnabled;
+    
+    private transient boolean checkpointed;
+    private transient int checkpointSize;
+    private transient int checkpointUnchangedSize;
+    
     private int mode = MODE_NORMAL;
     private Object context;
 
@@ -113,12 +125,38 @@ public final class Continuation implements Serializable {
     //    runX() <-- savedMethodState[3] / firstCutpointPointer[0]
     //     runY() <-- savedMethodState[4] / firstCutpointPointer[1]
     //
+    // Note that runA(), runB() and runC() never save their state again -- they're still sitting in the restored invocations when the
+    // suspend happens, so the instrumented code just returns and leaves their existing method states as-is. Only frames that were entered
+    // after the restore (runX() and runY()) create new method states. The cost of suspending again after a restore is proportional to the
+    // number of frames that changed, not the depth of the call chain.
+    //
     //
     // Why do we use a separate list for new invocations (postCutPointMethodState)? Because if there's an uncaught exception, we
     // still want to keep the old one exactly the way it was. That's why technically we kept runD() and runE()s method states and just
     // shift around the pointers. It's only after we're successfuly that we "commit the changes".
     //
     //
+    // RECYCLING
+    // ---------
+    // If the code was instrumented to reuse method states, the method states that get discarded once we "commit the changes" (runD() and
+    // runE() in the example above) are put in to a small recycle table rather than being left for the garbage collector. The next time a
+    // method suspends at the same continuation point, it calls reuseMethodState() and overwrites the storage arrays of the recycled method
+    // state instead of allocating new ones. That means a coroutine that keeps suspending at the same points stops allocating once it warms
+    // up.
+    //
+    // Recycling only happens on commit, never during an execution cycle. Method states in the firstPointer list may still be needed if
+    // there's an uncaught exception (see PHASE3), so they must not be touched until they've been discarded.
+    //
+    //
+    // CHECKPOINTS
+    // -----------
+    // Once the state of this continuation has been written out (or read in), we keep track of how many method states at the bottom of the
+    // chain are still the exact same method states that were there at the time. Frames up to and including nextUnloadPointer are still
+    // sitting in their restored invocations when a cycle is committed, so they're left untouched -- everything after them was either
+    // discarded or newly pushed. The count can only ever shrink between checkpoints, so it's the smallest such prefix seen across all the
+    // cycles that were committed since. CoroutineWriter uses it to write out deltas that skip over those frames.
+    //
+    //
     // ADDITIONAL NOTES
     // ----------------
     // These phases should always be done in order. If you don't do them in order (e.g. if you try to unloadCurrentMethodState() after
@@ -203,6 +241,57 @@ public final class Continuation implements Serializable {
         firstCutpointPointer = methodState;
     }
 
+    /**
+     * Do not use -- for internal use only.
+     * @param className n/a
+     * @param methodId n/a
+     * @param continuationPoint n/a
+     * @param lockState n/a
+     * @return n/a
+     */
+    public MethodState reuseMethodState(String className, int methodId, int continuationPoint, LockState lockState) {
+        // FOR A PRIMER ON WHAT WE'RE DOING HERE, SEE LARGE BLOCK OF COMMENT AT BEGINNING OF CLASS
+        
+        recyclingEnabled = true;
+
+        // The storage arrays of a method state are sized exactly for the continuation point they were saved at, so only a method state
+        // for the same class/method/continuation point can be reused. Recycled method states are bucketed by method id and continuation
+        // point, so only the few in the matching bucket need to be looked at. Class names are compared last, by identity first (the
+        // instrumented code passes in the same constant each time).
+        if (recycledBuckets == null) {
+            return null;
+        }
+
+        int bucket = getRecycledBucket(methodId, continuationPoint);
+        MethodState previous = null;
+        MethodState methodState = recycledBuckets[bucket];
+        while (methodState != null) {
+            if (methodState.getContinuationPoint() == continuationPoint
+                    && methodState.getMethodId() == methodId
+                    && (className == methodState.getClassName() || className.equals(methodState.getClassName()))) {
+                if (previous == null) {
+                    recycledBuckets[bucket] = methodState.getNext();
+                } else {
+                    previous.setNext(methodState.getNext());
+                }
+                recycledCount--;
+                
+                methodState.setNext(null);
+                methodState.setPrevious(null);
+                methodState.setLockState(lockState);
+                return methodState;
+            }
+            previous = methodState;
+            methodState = methodState.getNext();
+        }
+        
+        return null;
+    }
+
+    private static int getRecycledBucket(int methodId, int continuationPoint) {
+        return (methodId * 31 + continuationPoint) & (RECYCLED_BUCKET_COUNT - 1);
+    }
+
     /**
      * Do not use -- for internal use only.
      */
@@ -212,6 +301,8 @@ public final class Continuation implements Serializable {
         nextUnloadPointer = null;
         firstCutpointPointer = null;
         mode = MODE_NORMAL;
+        
+        checkpointUnchangedSize = 0;
     }
 
     /**
@@ -220,17 +311,72 @@ public final class Continuation implements Serializable {
     public void successExecutionCycle() {
         // FOR A PRIMER ON WHAT WE'RE DOING HERE, SEE LARGE BLOCK OF COMMENT AT BEGINNING OF CLASS
 
+        if (checkpointUnchangedSize > 0) {
+            trackUnchangedMethodStates();
+        }
+
+        MethodState discardedPointer;
         if (nextUnloadPointer != null) {
+            discardedPointer = nextUnloadPointer.getNext();
             nextUnloadPointer.setNext(firstCutpointPointer);
         } else {
+            discardedPointer = firstPointer;
             firstPointer = firstCutpointPointer;
         }
         
+        if (recyclingEnabled) {
+            recycleMethodStates(discardedPointer);
+        }
+        
         nextLoadPointer = firstPointer;     // reset next load pointer so we load from the beginning
         nextUnloadPointer = null;           // reset unload pointer
         firstCutpointPointer = null;        // reset cutpoint list
     }
 
+    private void trackUnchangedMethodStates() {
+        // Method states up to and including nextUnloadPointer are kept as-is, no need to look any further than what's already unchanged
+        int unchanged = 0;
+        if (nextUnloadPointer != null) {
+            MethodState methodState = firstPointer;
+            while (unchanged < checkpointUnchangedSize) {
+                unchanged++;
+                if (methodState == nextUnloadPointer) {
+                    break;
+                }
+                methodState = methodState.getNext();
+            }
+        }
+        checkpointUnchangedSize = unchanged;
+    }
+
+    private void recycleMethodStates(MethodState methodState) {
+        while (methodState != null && recycledCount < MAX_RECYCLED_METHOD_STATES) {
+            MethodState next = methodState.getNext();
+            
+            // Clear out object storage arrays so that recycled method states don't keep the objects they reference reachable
+            clearObjectStorageArray(methodState.getLocalObjects());
+            clearObjectStorageArray(methodState.getOperandObjects());
+            methodState.setLockState(null);
+            
+            if (recycledBuckets == null) {
+                recycledBuckets = new MethodState[RECYCLED_BUCKET_COUNT];
+            }
+            int bucket = getRecycledBucket(methodState.getMethodId(), methodState.getContinuationPoint());
+            methodState.setPrevious(null);
+            methodState.setNext(recycledBuckets[bucket]);
+            recycledBuckets[bucket] = methodState;
+            recycledCount++;
+            
+            methodState = next;
+        }
+    }
+    
+    private static void clearObjectStorageArray(Object[] storage) {
+        if (storage != null) {
+            Arrays.fill(storage, null);
+        }
+    }
+
     /**
      * Do not use -- for internal use only.
      */
@@ -279,6 +425,28 @@ public final class Continuation implements Serializable {
     
     
     
+    // Marks the current method states as having been written out / read in. size must be the current number of method states.
+    void markCheckpoint(int size) {
+        checkpointed = true;
+        checkpointSize = size;
+        checkpointUnchangedSize = size;
+    }
+
+    // Whether or not there's been a checkpoint.
+    boolean isCheckpointed() {
+        return checkpointed;
+    }
+
+    // Number of method states at the time of the last checkpoint.
+    int getCheckpointSize() {
+        return checkpointSize;
+    }
+
+    // Number of method states at the bottom of the chain that haven't changed since the last checkpoint.
+    int getCheckpointUnchangedSize() {
+        return checkpointUnchangedSize;
+    }
+
     /**
      * Do not use -- for internal use only. For testing.
      * @param idx n/a
@@ -21,14 +21,20 @@ import com.offbynull.coroutines.user.SerializedState.Frame;
 import com.offbynull.coroutines.user.SerializedState.FrameInterceptPoint;
 import com.offbynull.coroutines.user.SerializedState.FrameUpdatePoint;
 import com.offbynull.coroutines.user.SerializedState.VersionedFrame;
+import com.offbynull.coroutines.user.SerializedStateDelta.FrameObjects;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
 import java.io.OptionalDataException;
 import java.io.Serializable;
 import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,6 +43,8 @@ import java.util.Map;
  * @author Kasra Faghihi
  */
 public final class CoroutineReader {
+    private static final int CHANNEL_BUFFER_SIZE = 8192;
+
     private final CoroutineDeserializer deserializer;
     private final Map updatersMap;
     private final Map interceptersMap;
@@ -132,6 +140,192 @@ public final class CoroutineReader {
         return reconstruct(serializedState);
     }
 
+    /**
+     * Deserializes a {@link CoroutineRunner} object from a stream. If the deserializer this reader was created with is a
+     * {@link StreamingCoroutineDeserializer}, the serialized data is read directly from {@code is} without being collected in to a byte
+     * array first (the deserializers provided don't read anything past the end of the serialized state, so {@code is} may contain more
+     * data after it). Otherwise, {@code is} is read until its end and everything that was read is passed to the deserializer. {@code is}
+     * is not closed.
+     * @param is stream to read the serialized data from
+     * @return deserialized {@link CoroutineRunner} object
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to deserialize or deserialized to a state for an unrecognized method (see
+     * {@link #read(byte[]) })
+     * @throws IOException if {@code is} fails to read
+     */
+    public CoroutineRunner read(InputStream is) throws IOException {
+        if (is == null) {
+            throw new NullPointerException();
+        }
+
+        SerializedState serializedState;
+        if (deserializer instanceof StreamingCoroutineDeserializer) {
+            serializedState = ((StreamingCoroutineDeserializer) deserializer).deserialize(is);
+        } else {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] chunk = new byte[CHANNEL_BUFFER_SIZE];
+            int read;
+            while ((read = is.read(chunk)) != -1) {
+                baos.write(chunk, 0, read);
+            }
+            serializedState = deserializer.deserialize(baos.toByteArray());
+        }
+        return reconstruct(serializedState);
+    }
+
+    /**
+     * Deserializes a {@link CoroutineRunner} object from a buffer (heap or direct), starting at the buffer's current position. See
+     * {@link #read(java.io.InputStream) }. Once this method returns, the buffer's position will be right after the serialized data if
+     * the deserializer this reader was created with supports it (the deserializers provided do), or at the buffer's limit otherwise.
+     * @param buffer buffer to read the serialized data from
+     * @return deserialized {@link CoroutineRunner} object
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to deserialize or deserialized to a state for an unrecognized method (see
+     * {@link #read(byte[]) })
+     */
+    public CoroutineRunner read(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            return read(new ByteBufferInputStream(buffer));
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe); // should never happen
+        }
+    }
+
+    /**
+     * Deserializes a {@link CoroutineRunner} object from a channel. See {@link #read(java.io.InputStream) }. {@code channel} is not
+     * closed.
+     * @param channel channel to read the serialized data from
+     * @return deserialized {@link CoroutineRunner} object
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to deserialize or deserialized to a state for an unrecognized method (see
+     * {@link #read(byte[]) })
+     * @throws IOException if {@code channel} fails to read
+     */
+    public CoroutineRunner read(ReadableByteChannel channel) throws IOException {
+        if (channel == null) {
+            throw new NullPointerException();
+        }
+
+        // Not buffered, otherwise data past the end of the serialized state would get read in to the buffer and lost
+        return read(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Deserializes a {@link CoroutineRunner} object from a byte array followed by a chain of deltas, where {@code data} is a full
+     * checkpoint and each element of {@code deltas} is relative to the checkpoint before it (see
+     * {@link CoroutineWriter#writeDelta(com.offbynull.coroutines.user.CoroutineRunner) }).
+     * @param data byte array to deserialize
+     * @param deltas deltas to apply on top of {@code data}, in the order they were written
+     * @return {@code data} and {@code deltas} deserialized to a {@link CoroutineRunner} object
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if failed to deserialize, if any delta doesn't line up with the checkpoint before it, or if
+     * deserialized to a state for an unrecognized method (see {@link #read(byte[]) })
+     * @throws IllegalStateException if the deserializer this reader was created with isn't a {@link DeltaCoroutineDeserializer}
+     */
+    public CoroutineRunner read(byte[] data, byte[][] deltas) {
+        if (data == null || deltas == null) {
+            throw new NullPointerException();
+        }
+        
+        if (!(deserializer instanceof DeltaCoroutineDeserializer)) {
+            throw new IllegalStateException("Deserializer does not support deltas");
+        }
+
+        SerializedState serializedState = deserializer.deserialize(data);
+        for (int i = 0; i < deltas.length; i++) {
+            if (deltas[i] == null) {
+                throw new NullPointerException();
+            }
+            SerializedStateDelta serializedStateDelta = ((DeltaCoroutineDeserializer) deserializer).deserializeDelta(deltas[i]);
+            serializedState = applyDelta(serializedState, serializedStateDelta);
+        }
+        return reconstruct(serializedState);
+    }
+
+    /**
+     * Combines a serializable state with a delta relative to it (see
+     * {@link CoroutineWriter#deconstructDelta(com.offbynull.coroutines.user.CoroutineRunner) }).
+     * @param state state of the previous checkpoint
+     * @param delta state relative to {@code state}
+     * @return combined state
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code delta} doesn't line up with {@code state}
+     */
+    public SerializedState applyDelta(SerializedState state, SerializedStateDelta delta) {
+        if (state == null || delta == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            state.validateState();
+            delta.validateState();
+        } catch (IllegalStateException ise) {
+            throw new IllegalArgumentException(ise);
+        }
+
+        VersionedFrame[] baseFrames = state.getFrames();
+        if (baseFrames.length != delta.getBaseFrameCount()) {
+            throw new IllegalArgumentException("Delta is for a checkpoint with a different number of frames: "
+                    + "Expected=" + delta.getBaseFrameCount() + ", "
+                    + "Actual=" + baseFrames.length);
+        }
+
+        FrameObjects[] retainedFrames = delta.getRetainedFrames();
+        VersionedFrame[] newFrames = delta.getFrames();
+        
+        VersionedFrame[] frames = new VersionedFrame[retainedFrames.length + newFrames.length];
+        for (int i = 0; i < retainedFrames.length; i++) {
+            // The writer never retains frames that it has multiple versions of, so the previous checkpoint should only have one here
+            Frame[] possibleFrames = baseFrames[i].getFrames();
+            if (possibleFrames.length != 1) {
+                throw new IllegalArgumentException("Delta retains a frame that has multiple versions in checkpoint");
+            }
+            
+            Frame baseFrame = possibleFrames[0];
+            Data variables = baseFrame.getVariables();
+            Data operands = baseFrame.getOperands();
+            FrameObjects frameObjects = retainedFrames[i];
+            
+            try {
+                frames[i] = new VersionedFrame(new Frame(
+                        baseFrame.getClassName(),
+                        baseFrame.getMethodId(),
+                        baseFrame.getContinuationPointId(),
+                        frameObjects.getMonitors(),
+                        new Data(
+                                variables.getInts(),
+                                variables.getFloats(),
+                                variables.getLongs(),
+                                variables.getDoubles(),
+                                toSameLength(frameObjects.getVariables(), variables.getObjects()),
+                                variables.getContinuationIndexes()),
+                        new Data(
+                                operands.getInts(),
+                                operands.getFloats(),
+                                operands.getLongs(),
+                                operands.getDoubles(),
+                                toSameLength(frameObjects.getOperands(), operands.getObjects()),
+                                operands.getContinuationIndexes())));
+            } catch (IllegalArgumentException iae) {
+                throw new IllegalArgumentException("Delta doesn't line up with checkpoint", iae);
+            }
+        }
+        System.arraycopy(newFrames, 0, frames, retainedFrames.length, newFrames.length);
+
+        return new SerializedState(delta.getCoroutine(), delta.getContext(), frames);
+    }
+    
+    private static Object[] toSameLength(Object[] objects, Object[] baseObjects) {
+        if (objects.length != baseObjects.length) {
+            throw new IllegalArgumentException("Retained frame object count mismatch");
+        }
+        return objects;
+    }
+
     /**
      * Reconstructs a {@link CoroutineRunner} object from a serializable state.
      * @param state serialized state to reconstruct
@@ -242,6 +436,36 @@ public final class CoroutineReader {
         SerializedState deserialize(byte[] data);
     }
     
+    /**
+     * Coroutine deserializer that can read directly from a stream.
+     */
+    public interface StreamingCoroutineDeserializer extends CoroutineDeserializer {
+        /**
+         * Deserializes a coroutine from a stream. {@code is} should not be closed, and nothing past the end of the serialized data
+         * should be read from it.
+         * @param is stream to read the serialized data from
+         * @return deserialized state
+         * @throws NullPointerException if any argument is {@code null}
+         * @throws IllegalArgumentException if failed to deserialize
+         * @throws IOException if {@code is} fails to read
+         */
+        SerializedState deserialize(InputStream is) throws IOException;
+    }
+    
+    /**
+     * Coroutine deserializer that can read in deltas.
+     */
+    public interface DeltaCoroutineDeserializer extends CoroutineDeserializer {
+        /**
+         * Deserializes a coroutine's state relative to its previous checkpoint.
+         * @param data byte array to deserialize
+         * @return deserialized state
+         * @throws NullPointerException if any argument is {@code null}
+         * @throws IllegalArgumentException if failed to deserialize
+         */
+        SerializedStateDelta deserializeDelta(byte[] data);
+    }
+    
     /**
      * Default implementation of {@link CoroutineDeserializer} (uses Java's built-in serialization mechanism). This implementation has the
      * the following restrictions...
@@ -252,7 +476,7 @@ public final class CoroutineReader {
      * implement {@link Serializable}).</li>
      * </ol>
      */
-    public static final class DefaultCoroutineDeserializer implements CoroutineDeserializer {
+    public static final class DefaultCoroutineDeserializer implements StreamingCoroutineDeserializer, DeltaCoroutineDeserializer {
 
         //CHECKSTYLE.OFF:JavadocMethod - Requires @Override annotation to work, but this is designed for Java 1.4 (no annotations support)
         public SerializedState deserialize(byte[] data) {
@@ -260,11 +484,72 @@ public final class CoroutineReader {
                 throw new NullPointerException();
             }
 
-            ByteArrayInputStream bais = null;
-            ObjectInputStream ois = null;
             try {
-                bais = new ByteArrayInputStream(data);
-                ois = new ObjectInputStream(bais) {
+                return deserialize(new ByteArrayInputStream(data));
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe); // should never happen
+            }
+        }
+
+        public SerializedState deserialize(InputStream is) throws IOException {
+            if (is == null) {
+                throw new NullPointerException();
+            }
+
+            SerializedState serializedState;
+            try {
+                serializedState = (SerializedState) readObject(is);
+            } catch (ClassCastException cce) {
+                throw new IllegalArgumentException(cce);
+            }
+            
+            validateNoMonitors(serializedState.getFrames());
+
+            return serializedState;
+        }
+
+        public SerializedStateDelta deserializeDelta(byte[] data) {
+            if (data == null) {
+                throw new NullPointerException();
+            }
+
+            SerializedStateDelta serializedStateDelta;
+            try {
+                serializedStateDelta = (SerializedStateDelta) readObject(new ByteArrayInputStream(data));
+            } catch (ClassCastException cce) {
+                throw new IllegalArgumentException(cce);
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe); // should never happen
+            }
+
+            FrameObjects[] retainedFrames = serializedStateDelta.getRetainedFrames();
+            for (int i = 0; i < retainedFrames.length; i++) {
+                if (retainedFrames[i].getMonitors().length > 0) {
+                    throw new IllegalArgumentException("Monitors not allowed in default serializer");
+                }
+            }
+            validateNoMonitors(serializedStateDelta.getFrames());
+
+            return serializedStateDelta;
+        }
+        //CHECKSTYLE.ON:JavadocMethod
+
+        private static void validateNoMonitors(VersionedFrame[] frames) {
+            for (int i = 0; i < frames.length; i++) {
+                Frame[] possibleFrames = frames[i].getFrames();
+                for (int j = 0; j < possibleFrames.length; j++) {
+                    Frame frame = possibleFrames[j];
+                    if (frame.getMonitors().length > 0) {
+                        throw new IllegalArgumentException("Monitors not allowed in default serializer");
+                    }
+                }
+            }
+        }
+
+        private static Object readObject(InputStream is) throws IOException {
+            try {
+                // Not closed, because that would close is
+                ObjectInputStream ois = new ObjectInputStream(is) {
                     protected Class resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
                         try {
                             return super.resolveClass(desc);
@@ -276,20 +561,7 @@ public final class CoroutineReader {
                     }
                 };
 
-                SerializedState serializedState = (SerializedState) ois.readObject();
-
-                VersionedFrame[] frames = serializedState.getFrames();
-                for (int i = 0; i < frames.length; i++) {
-                    Frame[] possibleFrames = frames[i].getFrames();
-                    for (int j = 0; j < possibleFrames.length; j++) {
-                        Frame frame = possibleFrames[j];
-                        if (frame.getMonitors().length > 0) {
-                            throw new IllegalArgumentException("Monitors not allowed in default serializer");
-                        }
-                    }
-                }
-                
-                return serializedState;
+                return ois.readObject();
             } catch (StreamCorruptedException sce) {
                 throw new IllegalArgumentException(sce);
             } catch (OptionalDataException ode) {
@@ -298,27 +570,7 @@ public final class CoroutineReader {
                 throw new IllegalArgumentException(ice);
             } catch (ClassNotFoundException cnfe) {
                 throw new IllegalArgumentException(cnfe);
-            } catch (ClassCastException cce) {
-                throw new IllegalArgumentException(cce);
-            } catch (IOException ioe) {
-                throw new IllegalStateException(ioe); // should never happen
-            } finally {
-                if (ois != null) {
-                    try {
-                        ois.close();
-                    } catch (IOException ioe) {
-                        // do nothing
-                    }
-                }
-                if (bais != null) {
-                    try {
-                        bais.close();
-                    } catch (IOException ioe) {
-                        // do nothing
-                    }
-                }
             }
         }
-        //CHECKSTYLE.ON:JavadocMethod
     }
 }
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.user;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives many {@link CoroutineRunner}s over a fixed set of worker threads. Each time a scheduled runner's
+ * {@link CoroutineRunner#execute() } returns {@code true} (the coroutine suspended), the runner is placed back on to the queue of the
+ * worker that executed it. Once it returns {@code false} (the coroutine finished) or throws, the runner is removed from the scheduler.
+ * <p>
+ * Each worker owns a deque. A worker takes runners from the head of its own deque and re-queues suspended runners at the tail. When its
+ * own deque is empty, it steals from the tail of the other workers' deques. As such, there is no single queue shared by all workers.
+ * <p>
+ * A runner is never executed by more than one thread at a time: a runner can only be scheduled once (attempting to schedule a runner
+ * that's already scheduled results in an exception), and a runner is only ever re-queued after its call to
+ * {@link CoroutineRunner#execute() } has returned. Runners that are scheduled must not be executed directly by other threads.
+ * <p>
+ * Worker threads are not daemon threads -- call {@link #shutdown() } once the scheduler is no longer needed.
+ * @author Kasra Faghihi
+ */
+public final class CoroutineScheduler {
+    private static final long IDLE_PARK_NANOS = 10000000L; // 10ms -- safety net in case an unpark is missed
+
+    private final Worker[] workers;
+    private final Thread[] threads;
+    private final Listener listener;
+
+    private final Map scheduled; // runner -> Boolean.TRUE, runners that are currently queued or executing
+    private final ConcurrentLinkedQueue idleWorkers;
+    private final AtomicInteger nextWorkerIdx;
+    private final ThreadLocal currentWorker;
+
+    private volatile boolean shutdown;
+
+    /**
+     * Constructs a {@link CoroutineScheduler} object with one worker per available processor.
+     */
+    public CoroutineScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a {@link CoroutineScheduler} object.
+     * @param workerCount number of worker threads
+     * @throws IllegalArgumentException if {@code workerCount < 1}
+     */
+    public CoroutineScheduler(int workerCount) {
+        this(workerCount, new Listener() {
+            public void completed(CoroutineRunner runner) {
+                // do nothing
+            }
+
+            public void failed(CoroutineRunner runner, CoroutineException exception) {
+                // do nothing
+            }
+        });
+    }
+
+    /**
+     * Constructs a {@link CoroutineScheduler} object.
+     * @param workerCount number of worker threads
+     * @param listener listener to notify when scheduled runners finish or fail (invoked on worker threads)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code workerCount < 1}
+     */
+    public CoroutineScheduler(int workerCount, Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        if (workerCount < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.listener = listener;
+        this.scheduled = new ConcurrentHashMap();
+        this.idleWorkers = new ConcurrentLinkedQueue();
+        this.nextWorkerIdx = new AtomicInteger();
+        this.currentWorker = new ThreadLocal();
+
+        this.workers = new Worker[workerCount];
+        this.threads = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i);
+            threads[i] = new Thread(workers[i], "coroutine-scheduler-worker-" + i);
+            workers[i].thread = threads[i];
+        }
+        for (int i = 0; i < workerCount; i++) {
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Wraps a coroutine in a new {@link CoroutineRunner} and schedules it.
+     * @param coroutine coroutine to schedule
+     * @return runner that was scheduled
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalStateException if this scheduler has been shutdown
+     */
+    public CoroutineRunner schedule(Coroutine coroutine) {
+        CoroutineRunner runner = new CoroutineRunner(coroutine);
+        schedule(runner);
+        return runner;
+    }
+
+    /**
+     * Schedules a runner. The runner will be repeatedly executed until its coroutine finishes or throws an exception.
+     * <p>
+     * If called from one of this scheduler's worker threads (e.g. from inside a running coroutine), the runner is queued on that worker.
+     * Otherwise, runners are spread across workers in round-robin order.
+     * @param runner runner to schedule
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalStateException if this scheduler has been shutdown, or if {@code runner} is already scheduled
+     */
+    public void schedule(CoroutineRunner runner) {
+        if (runner == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new IllegalStateException("Scheduler shutdown");
+        }
+        if (scheduled.put(runner, Boolean.TRUE) != null) {
+            throw new IllegalStateException("Runner already scheduled");
+        }
+
+        Worker worker = (Worker) currentWorker.get();
+        if (worker == null) {
+            int idx = (nextWorkerIdx.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+            worker = workers[idx];
+        }
+        worker.deque.offerLast(runner);
+        if (shutdown) {
+            // Shutdown happened while this was being queued -- the worker may have already drained its queue, so pull it back out
+            if (worker.deque.remove(runner)) {
+                scheduled.remove(runner);
+            }
+            throw new IllegalStateException("Scheduler shutdown");
+        }
+        wakeIdleWorker();
+    }
+
+    /**
+     * Get the number of runners currently scheduled (queued or executing).
+     * @return number of scheduled runners
+     */
+    public int getScheduledCount() {
+        return scheduled.size();
+    }
+
+    /**
+     * Get the number of worker threads.
+     * @return number of worker threads
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Stops this scheduler. Workers finish the runner they're currently executing and then exit. Runners that are still queued are
+     * discarded without being executed further (they're no longer counted by {@link #getScheduledCount() }).
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].drain();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            LockSupport.unpark(threads[i]);
+        }
+    }
+
+    /**
+     * Waits for worker threads to exit after {@link #shutdown() } has been called.
+     * @param timeoutMillis maximum amount of time to wait in milliseconds
+     * @return {@code true} if all worker threads exited, {@code false} if the timeout elapsed first
+     * @throws IllegalArgumentException if {@code timeoutMillis < 0}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        if (timeoutMillis < 0L) {
+            throw new IllegalArgumentException();
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (int i = 0; i < threads.length; i++) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0L) {
+                return !isAnyThreadAlive();
+            }
+            threads[i].join(remaining);
+        }
+        return !isAnyThreadAlive();
+    }
+
+    private boolean isAnyThreadAlive() {
+        for (int i = 0; i < threads.length; i++) {
+            if (threads[i].isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void wakeIdleWorker() {
+        Worker idleWorker = (Worker) idleWorkers.poll();
+        if (idleWorker != null) {
+            LockSupport.unpark(idleWorker.thread);
+        }
+    }
+
+    private boolean isAnyWorkQueued() {
+        for (int i = 0; i < workers.length; i++) {
+            if (!workers[i].deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Listener for scheduled runners. Methods are invoked on the worker thread that executed the runner, so implementations should be
+     * quick and thread-safe. Exceptions thrown by implementations are ignored.
+     */
+    public interface Listener {
+        /**
+         * Called when a scheduled runner's coroutine has finished executing. The runner is no longer scheduled at this point.
+         * @param runner runner that finished
+         */
+        void completed(CoroutineRunner runner);
+
+        /**
+         * Called when a scheduled runner's coroutine has thrown an exception. The runner is no longer scheduled at this point.
+         * @param runner runner that failed
+         * @param exception exception thrown by {@link CoroutineRunner#execute() } (errors, which {@link CoroutineRunner#execute() }
+         * doesn't wrap, get wrapped in a {@link CoroutineException} before being passed in)
+         */
+        void failed(CoroutineRunner runner, CoroutineException exception);
+    }
+
+    private final class Worker implements Runnable {
+        private final int idx;
+        private final LinkedBlockingDeque deque;
+        private Thread thread;
+
+        Worker(int idx) {
+            this.idx = idx;
+            this.deque = new LinkedBlockingDeque();
+        }
+
+        //CHECKSTYLE.OFF:JavadocMethod - Requires @Override annotation to work, but this is designed for Java 1.4 (no annotations support)
+        public void run() {
+            currentWorker.set(this);
+            try {
+                while (!shutdown) {
+                    CoroutineRunner runner = (CoroutineRunner) deque.pollFirst();
+                    if (runner == null) {
+                        runner = steal();
+                    }
+
+                    if (runner == null) {
+                        idle();
+                        continue;
+                    }
+
+                    executeRunner(runner);
+                }
+            } finally {
+                drain(); // catch anything queued by the runner that was executing when shutdown happened
+                currentWorker.remove();
+            }
+        }
+        //CHECKSTYLE.ON:JavadocMethod
+
+        private void drain() {
+            while (true) {
+                CoroutineRunner runner = (CoroutineRunner) deque.pollFirst();
+                if (runner == null) {
+                    return;
+                }
+                scheduled.remove(runner);
+            }
+        }
+
+        private CoroutineRunner steal() {
+            for (int i = 1; i < workers.length; i++) {
+                Worker victim = workers[(idx + i) % workers.length];
+                CoroutineRunner runner = (CoroutineRunner) victim.deque.pollLast();
+                if (runner != null) {
+                    return runner;
+                }
+            }
+            return null;
+        }
+
+        private void idle() {
+            // Register as idle BEFORE checking for work, so that anything queued after the check is guaranteed to see this worker in the
+            // idle queue and unpark it.
+            idleWorkers.offer(this);
+            if (!shutdown && !isAnyWorkQueued()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            idleWorkers.remove(this);
+        }
+
+        private void executeRunner(CoroutineRunner runner) {
+            boolean suspended;
+            try {
+                suspended = runner.execute();
+            } catch (Throwable t) {
+                // Errors (e.g. StackOverflowError) aren't wrapped by the runner. If they were let through, this worker thread would die and
+                // every runner queued on it would be lost.
+                CoroutineException ce = t instanceof CoroutineException
+                        ? (CoroutineException) t
+                        : new CoroutineException("Error thrown during execution", t);
+                scheduled.remove(runner);
+                try {
+                    listener.failed(runner, ce);
+                } catch (Throwable lt) {
+                    // do nothing
+                }
+                return;
+            }
+
+            if (!suspended) {
+                scheduled.remove(runner);
+                try {
+                    listener.completed(runner);
+                } catch (Throwable lt) {
+                    // do nothing
+                }
+            } else if (shutdown) {
+                scheduled.remove(runner);
+            } else {
+                deque.offerLast(runner);
+                if (deque.size() > 1) { // more work than this worker can immediately handle, let an idle worker steal some
+                    wakeIdleWorker();
+                }
+            }
+        }
+    }
+}
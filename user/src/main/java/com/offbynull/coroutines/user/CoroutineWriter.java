@@ -16,18 +16,27 @@
  */
 package com.offbynull.coroutines.user;
 
+import com.offbynull.coroutines.user.SerializationUtils.FrameUpdatePointKey;
 import com.offbynull.coroutines.user.SerializedState.Data;
 import com.offbynull.coroutines.user.SerializedState.Frame;
 import com.offbynull.coroutines.user.SerializedState.FrameInterceptPoint;
 import com.offbynull.coroutines.user.SerializedState.FrameUpdatePoint;
 import com.offbynull.coroutines.user.SerializedState.VersionedFrame;
+import com.offbynull.coroutines.user.SerializedStateDelta.FrameObjects;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.NotSerializableException;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -35,9 +44,34 @@ import java.util.Map;
  * @author Kasra Faghihi
  */
 public final class CoroutineWriter {
+    private static final int CHANNEL_BUFFER_SIZE = 8192;
+
+    /**
+     * Down-version policy that writes out all possible down-versions of every frame. This is the default.
+     */
+    public static final DownVersionPolicy ALL_DOWN_VERSIONS = new DownVersionPolicy() {
+        //CHECKSTYLE.OFF:JavadocMethod - Requires @Override annotation to work, but this is designed for Java 1.4 (no annotations support)
+        public boolean isPrecomputed(String className, int methodId, int continuationPointId) {
+            return true;
+        }
+        //CHECKSTYLE.ON:JavadocMethod
+    };
+
+    /**
+     * Down-version policy that only writes out the current version of each frame.
+     */
+    public static final DownVersionPolicy NO_DOWN_VERSIONS = new DownVersionPolicy() {
+        //CHECKSTYLE.OFF:JavadocMethod - Requires @Override annotation to work, but this is designed for Java 1.4 (no annotations support)
+        public boolean isPrecomputed(String className, int methodId, int continuationPointId) {
+            return false;
+        }
+        //CHECKSTYLE.ON:JavadocMethod
+    };
+
     private final CoroutineSerializer serializer;
     private final Map updatersMap;
     private final Map interceptersMap;
+    private final DownVersionPolicy downVersionPolicy;
     
     /**
      * Construct a {@link CoroutineWriter} object. Equivalent to calling
@@ -86,7 +120,8 @@ public final class CoroutineWriter {
     }
 
     /**
-     * Constructs a {@link CoroutineWriter} object.
+     * Constructs a {@link CoroutineWriter} object. Equivalent to calling
+     * {@code new CoroutineWriter(serializer, frameUpdatePoints, frameInterceptPoints, ALL_DOWN_VERSIONS)}.
      * @param serializer serializer to write out the coroutine state
      * @param frameUpdatePoints frame update points
      * @param frameInterceptPoints frame intercept points
@@ -98,11 +133,36 @@ public final class CoroutineWriter {
     public CoroutineWriter(CoroutineSerializer serializer,
             FrameUpdatePoint[] frameUpdatePoints,
             FrameInterceptPoint[] frameInterceptPoints) {
-        if (serializer == null || frameUpdatePoints == null || frameInterceptPoints == null) {
+        this(serializer, frameUpdatePoints, frameInterceptPoints, ALL_DOWN_VERSIONS);
+    }
+
+    /**
+     * Constructs a {@link CoroutineWriter} object.
+     * <p>
+     * By default, every frame gets written out along with all of the older versions that {@code frameUpdatePoints} can down-version it
+     * to, such that the state can be read back in by older versions of the code (e.g. after a rollback). If the state will only ever be
+     * read back in by the same version of the code (or a newer version that has its own update points), computing and storing those
+     * down-versions is wasted work. Use {@code downVersionPolicy} to limit down-versioning to only the frames that need it (e.g.
+     * {@link #NO_DOWN_VERSIONS}, or a policy that only accepts the methods of a known rollback target).
+     * @param serializer serializer to write out the coroutine state
+     * @param frameUpdatePoints frame update points
+     * @param frameInterceptPoints frame intercept points
+     * @param downVersionPolicy policy that decides which frames get written out with their down-versions
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if {@code frameUpdatePoints} contains more than one entry for the same identifier
+     * (className/oldMethodId/newMethodId/continuationPoint), or if {@code frameInterceptPoints} contains more than one entry for the same
+     * identifier (className/methodId/continuationPoint)
+     */
+    public CoroutineWriter(CoroutineSerializer serializer,
+            FrameUpdatePoint[] frameUpdatePoints,
+            FrameInterceptPoint[] frameInterceptPoints,
+            DownVersionPolicy downVersionPolicy) {
+        if (serializer == null || frameUpdatePoints == null || frameInterceptPoints == null || downVersionPolicy == null) {
             throw new NullPointerException();
         }
 
         this.serializer = serializer;
+        this.downVersionPolicy = downVersionPolicy;
         this.updatersMap = new HashMap();
         this.interceptersMap = new HashMap();
 
@@ -127,6 +187,112 @@ public final class CoroutineWriter {
         return serializer.serialize(serializeState);
     }
 
+    /**
+     * Serializes a {@link CoroutineRunner} object to a stream. If the serializer this writer was created with is a
+     * {@link StreamingCoroutineSerializer}, the serialized data is written directly to {@code os} without being collected in to a byte
+     * array first. {@code os} is flushed but not closed.
+     * @param runner coroutine runner to serialize
+     * @param os stream to write the serialized data to
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to serialize
+     * @throws IOException if {@code os} fails to write
+     */
+    public void write(CoroutineRunner runner, OutputStream os) throws IOException {
+        if (runner == null || os == null) {
+            throw new NullPointerException();
+        }
+
+        SerializedState serializeState = deconstruct(runner);
+        if (serializer instanceof StreamingCoroutineSerializer) {
+            ((StreamingCoroutineSerializer) serializer).serialize(serializeState, os);
+        } else {
+            os.write(serializer.serialize(serializeState));
+        }
+        os.flush();
+    }
+
+    /**
+     * Serializes a {@link CoroutineRunner} object to a buffer (heap or direct), starting at the buffer's current position. Once this
+     * method returns, the buffer's position will be right after the serialized data. See
+     * {@link #write(com.offbynull.coroutines.user.CoroutineRunner, java.io.OutputStream) }.
+     * @param runner coroutine runner to serialize
+     * @param buffer buffer to write the serialized data to
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to serialize
+     * @throws java.nio.BufferOverflowException if {@code buffer} doesn't have enough space remaining (the buffer's position is undefined
+     * if this happens)
+     */
+    public void write(CoroutineRunner runner, ByteBuffer buffer) {
+        if (runner == null || buffer == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            write(runner, new ByteBufferOutputStream(buffer));
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe); // should never happen
+        }
+    }
+
+    /**
+     * Serializes a {@link CoroutineRunner} object to a channel. See
+     * {@link #write(com.offbynull.coroutines.user.CoroutineRunner, java.io.OutputStream) }. {@code channel} is not closed.
+     * @param runner coroutine runner to serialize
+     * @param channel channel to write the serialized data to
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to serialize
+     * @throws IOException if {@code channel} fails to write
+     */
+    public void write(CoroutineRunner runner, WritableByteChannel channel) throws IOException {
+        if (runner == null || channel == null) {
+            throw new NullPointerException();
+        }
+
+        write(runner, new BufferedOutputStream(Channels.newOutputStream(channel), CHANNEL_BUFFER_SIZE));
+    }
+
+    /**
+     * Serializes a {@link CoroutineRunner} object as a byte array and marks what was serialized as the checkpoint that the next delta of
+     * that same {@link CoroutineRunner} will be relative to. See
+     * {@link #deconstructCheckpoint(com.offbynull.coroutines.user.CoroutineRunner) }.
+     * @param runner coroutine runner to serialize
+     * @return {@code runner} serialized to byte array
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to serialize
+     */
+    public byte[] writeCheckpoint(CoroutineRunner runner) {
+        if (runner == null) {
+            throw new NullPointerException();
+        }
+
+        SerializedState serializeState = deconstructCheckpoint(runner);
+        return serializer.serialize(serializeState);
+    }
+
+    /**
+     * Serializes a {@link CoroutineRunner} object as a byte array, relative to the previous checkpoint of that same
+     * {@link CoroutineRunner}. Only frames that changed since the previous checkpoint are written out in full. See
+     * {@link #deconstructDelta(com.offbynull.coroutines.user.CoroutineRunner) }.
+     * @param runner coroutine runner to serialize
+     * @return {@code runner} serialized to byte array, relative to its previous checkpoint
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to serialize
+     * @throws IllegalStateException if {@code runner} doesn't have a previous checkpoint, or if the serializer this writer was created with
+     * isn't a {@link DeltaCoroutineSerializer}
+     */
+    public byte[] writeDelta(CoroutineRunner runner) {
+        if (runner == null) {
+            throw new NullPointerException();
+        }
+        
+        if (!(serializer instanceof DeltaCoroutineSerializer)) {
+            throw new IllegalStateException("Serializer does not support deltas");
+        }
+
+        SerializedStateDelta serializeStateDelta = deconstructDelta(runner);
+        return ((DeltaCoroutineSerializer) serializer).serialize(serializeStateDelta);
+    }
+
     /**
      * Deconstructs a {@link CoroutineRunner} object to a serializable state.
      * @param runner coroutine runner to deconstruct
@@ -139,6 +305,28 @@ public final class CoroutineWriter {
             throw new NullPointerException();
         }
 
+        return deconstruct(runner, false);
+    }
+
+    /**
+     * Deconstructs a {@link CoroutineRunner} object to a serializable state and marks that state as the checkpoint that the next delta of
+     * that same {@link CoroutineRunner} will be relative to (see
+     * {@link #deconstructDelta(com.offbynull.coroutines.user.CoroutineRunner) }).
+     * {@link #deconstruct(com.offbynull.coroutines.user.CoroutineRunner) } on the other hand leaves the previous checkpoint as-is.
+     * @param runner coroutine runner to deconstruct
+     * @return deconstructed representation of {@link CoroutineRunner}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to deconstruct
+     */
+    public SerializedState deconstructCheckpoint(CoroutineRunner runner) {
+        if (runner == null) {
+            throw new NullPointerException();
+        }
+
+        return deconstruct(runner, true);
+    }
+
+    private SerializedState deconstruct(CoroutineRunner runner, boolean checkpoint) {
         Coroutine coroutine = runner.getCoroutine();
         Continuation cn = runner.getContinuation();
 
@@ -149,65 +337,7 @@ public final class CoroutineWriter {
         
         int idx = 0;
         while (currentMethodState != null) {
-            // Pull out information from MethoState. We should never modify MethodState values, they will be copied by the Data
-            // constructor before being passed to the user for further modification.
-            String className = currentMethodState.getClassName();
-            int methodId = currentMethodState.getMethodId();
-            int continuationPoint = currentMethodState.getContinuationPoint();
-            
-            LockState monitors = currentMethodState.getLockState();
-            
-            int[] intVars = ((int[]) currentMethodState.getData()[0]);
-            float[] floatVars = ((float[]) currentMethodState.getData()[1]);
-            long[] longVars = ((long[]) currentMethodState.getData()[2]);
-            double[] doubleVars = ((double[]) currentMethodState.getData()[3]);
-            Object[] objectVars = ((Object[]) currentMethodState.getData()[4]);
-            
-            int[] intOperands = ((int[]) currentMethodState.getData()[5]);
-            float[] floatOperands = ((float[]) currentMethodState.getData()[6]);
-            long[] longOperands = ((long[]) currentMethodState.getData()[7]);
-            double[] doubleOperands = ((double[]) currentMethodState.getData()[8]);
-            Object[] objectOperands = ((Object[]) currentMethodState.getData()[9]);
-
-
-            // Clone the object[] buffers because we need to remove references to the Continuation object for this coroutine.
-            objectVars = objectVars == null ? new Object[0] : (Object[]) objectVars.clone();
-            int[] continuationPositionsInObjectVars = clearContinuationReferences(objectVars, cn);
-
-            objectOperands = objectOperands == null ? new Object[0] : (Object[]) objectOperands.clone();
-            int[] continuationPositionsInObjectOperands = clearContinuationReferences(objectOperands, cn);
-
-
-            // Create the frame, making sure we create empty arrays for any null references (remember that MethodState var/operand arrays
-            // that don't contain any data are set to null due to an optimization).
-            Frame serializedFrame = new Frame(
-                    className,
-                    methodId,
-                    continuationPoint,
-                    monitors == null ? new Object[0] : monitors.toArray(),
-                    new Data(
-                            intVars == null ? new int[0] : intVars,
-                            floatVars == null ? new float[0] : floatVars,
-                            longVars == null ? new long[0] : longVars,
-                            doubleVars == null ? new double[0] : doubleVars,
-                            objectVars,
-                            continuationPositionsInObjectVars),
-                    new Data(
-                            intOperands == null ? new int[0] : intOperands,
-                            floatOperands == null ? new float[0] : floatOperands,
-                            longOperands == null ? new long[0] : longOperands,
-                            doubleOperands == null ? new double[0] : doubleOperands,
-                            objectOperands,
-                            continuationPositionsInObjectOperands));
-
-            
-            // Add all possible down-versions for frame into a versionedframe object and add it
-            VersionedFrame versionedFrame = SerializationUtils.calculateAllPossibleFrameVersions(
-                    null,
-                    updatersMap,
-                    interceptersMap,
-                    serializedFrame);
-            frames[idx] = versionedFrame;
+            frames[idx] = toVersionedFrame(currentMethodState, cn);
             idx++;
 
             currentMethodState = currentMethodState.getNext();
@@ -215,9 +345,171 @@ public final class CoroutineWriter {
         
         Object context = cn.getContext();
         
+        if (checkpoint) {
+            cn.markCheckpoint(size);
+        }
+        
         return new SerializedState(coroutine, context, frames);
     }
 
+    /**
+     * Deconstructs a {@link CoroutineRunner} object to a serializable state, relative to the previous checkpoint of that same
+     * {@link CoroutineRunner}. The previous checkpoint is the last state that was explicitly checkpointed from {@code runner} (by any of
+     * the {@code writeCheckpoint}, {@code deconstructCheckpoint}, {@code writeDelta}, or {@code deconstructDelta} methods). States written
+     * out by the {@code write} and {@code deconstruct} methods, and states that {@code runner} was read in from by {@link CoroutineReader},
+     * don't change the previous checkpoint.
+     * <p>
+     * Bottom frames that haven't changed since the previous checkpoint are only written out as the objects they reference. Since the
+     * {@link FrameUpdatePoint}s and {@link FrameInterceptPoint}s applied when writing out a frame may depend on those objects, frames that
+     * this writer has update/intercept points for are always written out in full (along with all frames above them). Use
+     * {@link CoroutineReader#applyDelta(SerializedState, SerializedStateDelta) }
+     * to combine the result with the previous checkpoint.
+     * @param runner coroutine runner to deconstruct
+     * @return deconstructed representation of {@link CoroutineRunner}, relative to its previous checkpoint
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to deconstruct
+     * @throws IllegalStateException if {@code runner} doesn't have a previous checkpoint
+     */
+    public SerializedStateDelta deconstructDelta(CoroutineRunner runner) {
+        if (runner == null) {
+            throw new NullPointerException();
+        }
+
+        Coroutine coroutine = runner.getCoroutine();
+        Continuation cn = runner.getContinuation();
+        
+        if (!cn.isCheckpointed()) {
+            throw new IllegalStateException("No previous checkpoint");
+        }
+        
+        int baseSize = cn.getCheckpointSize();
+        int unchangedSize = cn.getCheckpointUnchangedSize();
+        
+        int size = cn.getSize();
+        List retainedFrames = new ArrayList(unchangedSize);
+        List frames = new ArrayList(size - unchangedSize);
+
+        MethodState currentMethodState = cn.getSaved(0);
+        
+        int idx = 0;
+        while (currentMethodState != null) {
+            if (idx < unchangedSize && frames.isEmpty() && !hasUpdateOrInterceptPoint(currentMethodState)) {
+                retainedFrames.add(toFrameObjects(currentMethodState, cn));
+            } else {
+                frames.add(toVersionedFrame(currentMethodState, cn));
+            }
+            idx++;
+
+            currentMethodState = currentMethodState.getNext();
+        }
+        
+        Object context = cn.getContext();
+        
+        cn.markCheckpoint(size);
+        
+        return new SerializedStateDelta(
+                coroutine,
+                context,
+                baseSize,
+                (FrameObjects[]) retainedFrames.toArray(new FrameObjects[retainedFrames.size()]),
+                (VersionedFrame[]) frames.toArray(new VersionedFrame[frames.size()]));
+    }
+    
+    private boolean hasUpdateOrInterceptPoint(MethodState methodState) {
+        FrameUpdatePointKey key = new FrameUpdatePointKey(
+                methodState.getClassName(),
+                methodState.getMethodId(),
+                methodState.getContinuationPoint());
+        return updatersMap.containsKey(key) || interceptersMap.containsKey(key);
+    }
+
+    private VersionedFrame toVersionedFrame(MethodState methodState, Continuation cn) {
+        // Pull out information from MethoState. We should never modify MethodState values, they will be copied by the Data
+        // constructor before being passed to the user for further modification.
+        String className = methodState.getClassName();
+        int methodId = methodState.getMethodId();
+        int continuationPoint = methodState.getContinuationPoint();
+        
+        LockState monitors = methodState.getLockState();
+        
+        int[] intVars = ((int[]) methodState.getData()[0]);
+        float[] floatVars = ((float[]) methodState.getData()[1]);
+        long[] longVars = ((long[]) methodState.getData()[2]);
+        double[] doubleVars = ((double[]) methodState.getData()[3]);
+        Object[] objectVars = ((Object[]) methodState.getData()[4]);
+        
+        int[] intOperands = ((int[]) methodState.getData()[5]);
+        float[] floatOperands = ((float[]) methodState.getData()[6]);
+        long[] longOperands = ((long[]) methodState.getData()[7]);
+        double[] doubleOperands = ((double[]) methodState.getData()[8]);
+        Object[] objectOperands = ((Object[]) methodState.getData()[9]);
+
+
+        // Clone the object[] buffers because we need to remove references to the Continuation object for this coroutine.
+        objectVars = objectVars == null ? new Object[0] : (Object[]) objectVars.clone();
+        int[] continuationPositionsInObjectVars = clearContinuationReferences(objectVars, cn);
+
+        objectOperands = objectOperands == null ? new Object[0] : (Object[]) objectOperands.clone();
+        int[] continuationPositionsInObjectOperands = clearContinuationReferences(objectOperands, cn);
+
+
+        // Create the frame, making sure we create empty arrays for any null references (remember that MethodState var/operand arrays
+        // that don't contain any data are set to null due to an optimization).
+        Frame serializedFrame = new Frame(
+                className,
+                methodId,
+                continuationPoint,
+                monitors == null ? new Object[0] : monitors.toArray(),
+                new Data(
+                        intVars == null ? new int[0] : intVars,
+                        floatVars == null ? new float[0] : floatVars,
+                        longVars == null ? new long[0] : longVars,
+                        doubleVars == null ? new double[0] : doubleVars,
+                        objectVars,
+                        continuationPositionsInObjectVars),
+                new Data(
+                        intOperands == null ? new int[0] : intOperands,
+                        floatOperands == null ? new float[0] : floatOperands,
+                        longOperands == null ? new long[0] : longOperands,
+                        doubleOperands == null ? new double[0] : doubleOperands,
+                        objectOperands,
+                        continuationPositionsInObjectOperands));
+
+        
+        // If the policy says so, add all possible down-versions for frame into a versionedframe object and add it. Otherwise, only add the
+        // current version (an older version reading this frame back in won't be able to load it unless it has its own update points).
+        if (!downVersionPolicy.isPrecomputed(className, methodId, continuationPoint)) {
+            return SerializationUtils.calculateCurrentFrameVersion(
+                    null,
+                    interceptersMap,
+                    serializedFrame);
+        }
+        return SerializationUtils.calculateAllPossibleFrameVersions(
+                null,
+                updatersMap,
+                interceptersMap,
+                serializedFrame);
+    }
+
+    private FrameObjects toFrameObjects(MethodState methodState, Continuation cn) {
+        // Same as what gets pulled out of the MethodState in toVersionedFrame(), but only for the objects
+        LockState monitors = methodState.getLockState();
+        
+        Object[] objectVars = ((Object[]) methodState.getData()[4]);
+        Object[] objectOperands = ((Object[]) methodState.getData()[9]);
+
+        objectVars = objectVars == null ? new Object[0] : (Object[]) objectVars.clone();
+        clearContinuationReferences(objectVars, cn);
+
+        objectOperands = objectOperands == null ? new Object[0] : (Object[]) objectOperands.clone();
+        clearContinuationReferences(objectOperands, cn);
+        
+        return new FrameObjects(
+                monitors == null ? new Object[0] : monitors.toArray(),
+                objectVars,
+                objectOperands);
+    }
+
     private int[] clearContinuationReferences(Object[] objects, Continuation cn) {
         int size = 0;
         for (int i = 0; i < objects.length; i++) {
@@ -239,6 +531,20 @@ public final class CoroutineWriter {
         return indexes;
     }
 
+    /**
+     * Decides which frames get written out with all possible down-versions (versions that older code can load).
+     */
+    public interface DownVersionPolicy {
+        /**
+         * Determines if all possible down-versions should be written out for a frame.
+         * @param className class name of the frame
+         * @param methodId method id of the frame
+         * @param continuationPointId continuation point id of the frame
+         * @return {@code true} to write out all down-versions of the frame, {@code false} to write out only its current version
+         */
+        boolean isPrecomputed(String className, int methodId, int continuationPointId);
+    }
+
     /**
      * Coroutine serializer.
      */
@@ -253,6 +559,35 @@ public final class CoroutineWriter {
         byte[] serialize(SerializedState serializedState);
     }
 
+    /**
+     * Coroutine serializer that can write directly to a stream.
+     */
+    public interface StreamingCoroutineSerializer extends CoroutineSerializer {
+        /**
+         * Serializes a coroutine to a stream. {@code os} should not be closed.
+         * @param serializedState state to serialize
+         * @param os stream to write the serialized data to
+         * @throws NullPointerException if any argument is {@code null}
+         * @throws IllegalArgumentException if failed to serialize
+         * @throws IOException if {@code os} fails to write
+         */
+        void serialize(SerializedState serializedState, OutputStream os) throws IOException;
+    }
+
+    /**
+     * Coroutine serializer that can write out deltas.
+     */
+    public interface DeltaCoroutineSerializer extends CoroutineSerializer {
+        /**
+         * Serializes a coroutine's state relative to its previous checkpoint.
+         * @param serializedStateDelta state to serialize
+         * @return serialized byte array
+         * @throws NullPointerException if any argument is {@code null}
+         * @throws IllegalArgumentException if failed to serialize
+         */
+        byte[] serialize(SerializedStateDelta serializedStateDelta);
+    }
+
     /**
      * Default implementation of {@link CoroutineSerializer} (uses Java's built-in serialization mechanism). This implementation has the
      * following restrictions...
@@ -263,7 +598,7 @@ public final class CoroutineWriter {
      * implement {@link Serializable}).</li>
      * </ol>
      */
-    public static final class DefaultCoroutineSerializer implements CoroutineSerializer {
+    public static final class DefaultCoroutineSerializer implements StreamingCoroutineSerializer, DeltaCoroutineSerializer {
         
         //CHECKSTYLE.OFF:JavadocMethod - Requires @Override annotation to work, but this is designed for Java 1.4 (no annotations support)
         public byte[] serialize(SerializedState serializedState) {
@@ -271,7 +606,48 @@ public final class CoroutineWriter {
                 throw new NullPointerException();
             }
 
-            VersionedFrame[] frames = serializedState.getFrames();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try {
+                serialize(serializedState, baos);
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe); // should never happen
+            }
+            return baos.toByteArray();
+        }
+
+        public void serialize(SerializedState serializedState, OutputStream os) throws IOException {
+            if (serializedState == null || os == null) {
+                throw new NullPointerException();
+            }
+
+            validateNoMonitors(serializedState.getFrames());
+            writeObject(serializedState, os);
+        }
+
+        public byte[] serialize(SerializedStateDelta serializedStateDelta) {
+            if (serializedStateDelta == null) {
+                throw new NullPointerException();
+            }
+
+            FrameObjects[] retainedFrames = serializedStateDelta.getRetainedFrames();
+            for (int i = 0; i < retainedFrames.length; i++) {
+                if (retainedFrames[i].getMonitors().length > 0) {
+                    throw new IllegalArgumentException("Monitors not allowed in default serializer");
+                }
+            }
+            validateNoMonitors(serializedStateDelta.getFrames());
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try {
+                writeObject(serializedStateDelta, baos);
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe); // should never happen
+            }
+            return baos.toByteArray();
+        }
+        //CHECKSTYLE.ON:JavadocMethod
+
+        private static void validateNoMonitors(VersionedFrame[] frames) {
             for (int i = 0; i < frames.length; i++) {
                 Frame[] possibleFrames = frames[i].getFrames();
                 for (int j = 0; j < possibleFrames.length; j++) {
@@ -281,39 +657,19 @@ public final class CoroutineWriter {
                     }
                 }
             }
+        }
 
-            ByteArrayOutputStream baos = null;
-            ObjectOutputStream oos = null;
+        private static void writeObject(Object obj, OutputStream os) throws IOException {
             try {
-                baos = new ByteArrayOutputStream();
-                oos = new ObjectOutputStream(baos);
-
-                oos.writeObject(serializedState);
-
-                return baos.toByteArray();
+                // Not closed, because that would close os
+                ObjectOutputStream oos = new ObjectOutputStream(os);
+                oos.writeObject(obj);
+                oos.flush();
             } catch (NotSerializableException nse) {
                 throw new IllegalArgumentException(nse);
             } catch (InvalidClassException ice) {
                 throw new IllegalArgumentException(ice);
-            } catch (IOException ioe) {
-                throw new IllegalStateException(ioe); // should never happen
-            } finally {
-                if (oos != null) {
-                    try {
-                        oos.close();
-                    } catch (IOException ioe) {
-                        // do nothing
-                    }
-                }
-                if (baos != null) {
-                    try {
-                        baos.close();
-                    } catch (IOException ioe) {
-                        // do nothing
-                    }
-                }
             }
         }
-        //CHECKSTYLE.ON:JavadocMethod
     }
 }
@@ -16,7 +16,16 @@
  */
 package com.offbynull.coroutines.user;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Do not use -- for internal use only.
@@ -27,11 +36,32 @@ import java.io.Serializable;
 public final class MethodState implements Serializable {
     private static final long serialVersionUID = 6L;
 
+    private static final String IDENTIFYING_FIELD_PREFIX = "__COROUTINES_ID_";
+
+    // Caches used by isValid(). Determining if a frame is loadable otherwise means loading the class (possibly failing on the first
+    // classloader and then going to a second one) and reflecting on it (throwing NoSuchFieldException on misses) -- for every frame that
+    // gets written or read. All keys are held weakly so that classes/classloaders can still be unloaded (e.g. on redeploy).
+    private static final Map EXPLICIT_CLASS_CACHE = new WeakHashMap(); // classloader -> (class name -> WeakReference(class))
+    private static final Map IMPLICIT_CLASS_CACHE = new WeakHashMap(); // context classloader -> (class name -> WeakReference(class))
+    private static final Map IDENTIFIER_CACHE = new WeakHashMap(); // class -> set of identifying field names declared in it
+
     private final String className;
     private final int methodId;
     private final int continuationPoint;
-    private final Object[] data;
-    private final LockState lockState;
+    private Object[] data; // not final -- lazily created if this method state was constructed with typed storage arrays
+    // Typed storage arrays -- only set if this method state was constructed with typed storage arrays, otherwise the getters read from
+    // data. Transient so that the serialized form is the same as it was before typed storage existed (data is always written out).
+    private transient int[] localInts;
+    private transient float[] localFloats;
+    private transient long[] localLongs;
+    private transient double[] localDoubles;
+    private transient Object[] localObjects;
+    private transient int[] operandInts;
+    private transient float[] operandFloats;
+    private transient long[] operandLongs;
+    private transient double[] operandDoubles;
+    private transient Object[] operandObjects;
+    private LockState lockState; // not final -- reassigned when a recycled method state is reused (see Continuation)
 
     private MethodState next;
     private MethodState previous;
@@ -61,6 +91,54 @@ public final class MethodState implements Serializable {
         this.lockState = lockState;
     }
 
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Constructs a {@link MethodState} object that keeps its storage arrays in typed fields rather than in an {@code Object[]} container.
+     * Storage arrays must be set via {@link #setLocals(int[], float[], long[], double[], java.lang.Object[]) } and
+     * {@link #setOperands(int[], float[], long[], double[], java.lang.Object[]) }.
+     * @param className name of owner (class) for method at which state was saved
+     * @param methodId identifier for method at which state was saved
+     * @param continuationPoint point in the method at which state was saved (does not refer to offset, just an id that's generated by the
+     * instrumenter to mark that point)
+     * @param lockState monitors entered at the point which state was saved (may be {@code null})
+     */
+    public MethodState(String className, int methodId, int continuationPoint, LockState lockState) {
+        if (continuationPoint < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.className = className;
+        this.methodId = methodId;
+        this.continuationPoint = continuationPoint;
+        this.lockState = lockState;
+    }
+    
+    private void unpackData() {
+        // Move the storage arrays out of the container before it gets discarded, otherwise the half that isn't being set would be lost.
+        if (data == null) {
+            return;
+        }
+        localInts = (int[]) getContainerItem(data, 0);
+        localFloats = (float[]) getContainerItem(data, 1);
+        localLongs = (long[]) getContainerItem(data, 2);
+        localDoubles = (double[]) getContainerItem(data, 3);
+        localObjects = (Object[]) getContainerItem(data, 4);
+        operandInts = (int[]) getContainerItem(data, 5);
+        operandFloats = (float[]) getContainerItem(data, 6);
+        operandLongs = (long[]) getContainerItem(data, 7);
+        operandDoubles = (double[]) getContainerItem(data, 8);
+        operandObjects = (Object[]) getContainerItem(data, 9);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getData(); // make sure the container exists -- the typed storage arrays are transient
+        out.defaultWriteObject();
+    }
+
+    private static Object getContainerItem(Object[] data, int idx) {
+        return data.length > idx ? data[idx] : null;
+    }
+
     /**
      * Do not use -- for internal use only.
      * <p>
@@ -95,13 +173,163 @@ public final class MethodState implements Serializable {
     /**
      * Do not use -- for internal use only.
      * <p>
-     * Get locals and operand stack at the point which state was saved.
+     * Get locals and operand stack at the point which state was saved. If this method state was constructed with typed storage arrays, the
+     * container is created on first call (it holds the same storage arrays, so changes to the arrays are visible both ways).
      * @return locals and operand stack at the point which state was saved
      */
     public Object[] getData() {
+        if (data == null) {
+            data = new Object[] {
+                localInts, localFloats, localLongs, localDoubles, localObjects,
+                operandInts, operandFloats, operandLongs, operandDoubles, operandObjects
+            };
+        }
         return data;
     }
 
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Set the storage arrays for the locals at the point which state was saved. Only used by code instrumented with typed state storage
+     * (before this method state is made available to anything else).
+     * @param localInts int locals (may be {@code null})
+     * @param localFloats float locals (may be {@code null})
+     * @param localLongs long locals (may be {@code null})
+     * @param localDoubles double locals (may be {@code null})
+     * @param localObjects object locals (may be {@code null})
+     */
+    public void setLocals(int[] localInts, float[] localFloats, long[] localLongs, double[] localDoubles, Object[] localObjects) {
+        unpackData();
+        this.localInts = localInts;
+        this.localFloats = localFloats;
+        this.localLongs = localLongs;
+        this.localDoubles = localDoubles;
+        this.localObjects = localObjects;
+        this.data = null;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Set the storage arrays for the operand stack at the point which state was saved. Only used by code instrumented with typed state
+     * storage (before this method state is made available to anything else).
+     * @param operandInts int operands (may be {@code null})
+     * @param operandFloats float operands (may be {@code null})
+     * @param operandLongs long operands (may be {@code null})
+     * @param operandDoubles double operands (may be {@code null})
+     * @param operandObjects object operands (may be {@code null})
+     */
+    public void setOperands(int[] operandInts, float[] operandFloats, long[] operandLongs, double[] operandDoubles,
+            Object[] operandObjects) {
+        unpackData();
+        this.operandInts = operandInts;
+        this.operandFloats = operandFloats;
+        this.operandLongs = operandLongs;
+        this.operandDoubles = operandDoubles;
+        this.operandObjects = operandObjects;
+        this.data = null;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get int locals at the point which state was saved.
+     * @return int locals (may be {@code null})
+     */
+    public int[] getLocalInts() {
+        return data != null ? (int[]) getContainerItem(data, 0) : localInts;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get float locals at the point which state was saved.
+     * @return float locals (may be {@code null})
+     */
+    public float[] getLocalFloats() {
+        return data != null ? (float[]) getContainerItem(data, 1) : localFloats;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get long locals at the point which state was saved.
+     * @return long locals (may be {@code null})
+     */
+    public long[] getLocalLongs() {
+        return data != null ? (long[]) getContainerItem(data, 2) : localLongs;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get double locals at the point which state was saved.
+     * @return double locals (may be {@code null})
+     */
+    public double[] getLocalDoubles() {
+        return data != null ? (double[]) getContainerItem(data, 3) : localDoubles;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get object locals at the point which state was saved.
+     * @return object locals (may be {@code null})
+     */
+    public Object[] getLocalObjects() {
+        return data != null ? (Object[]) getContainerItem(data, 4) : localObjects;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get int operands at the point which state was saved.
+     * @return int operands (may be {@code null})
+     */
+    public int[] getOperandInts() {
+        return data != null ? (int[]) getContainerItem(data, 5) : operandInts;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get float operands at the point which state was saved.
+     * @return float operands (may be {@code null})
+     */
+    public float[] getOperandFloats() {
+        return data != null ? (float[]) getContainerItem(data, 6) : operandFloats;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get long operands at the point which state was saved.
+     * @return long operands (may be {@code null})
+     */
+    public long[] getOperandLongs() {
+        return data != null ? (long[]) getContainerItem(data, 7) : operandLongs;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get double operands at the point which state was saved.
+     * @return double operands (may be {@code null})
+     */
+    public double[] getOperandDoubles() {
+        return data != null ? (double[]) getContainerItem(data, 8) : operandDoubles;
+    }
+
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Get object operands at the point which state was saved.
+     * @return object operands (may be {@code null})
+     */
+    public Object[] getOperandObjects() {
+        return data != null ? (Object[]) getContainerItem(data, 9) : operandObjects;
+    }
+
     /**
      * Do not use -- for internal use only.
      * <p>
@@ -121,6 +349,16 @@ public final class MethodState implements Serializable {
     
     
     
+    /**
+     * Do not use -- for internal use only.
+     * <p>
+     * Set the monitors entered at the point which state was saved. Only used when a recycled method state is being reused.
+     * @param lockState monitors entered at the point which state was saved (may be {@code null})
+     */
+    void setLockState(LockState lockState) {
+        this.lockState = lockState;
+    }
+
     /**
      * Do not use -- for internal use only.
      * <p>
@@ -193,6 +431,54 @@ public final class MethodState implements Serializable {
             throw new IllegalArgumentException();
         }
 
+        Class cls = findClass(classLoader, className);
+        if (cls == null) {
+            throw new IllegalStateException("Class this state is being deserialized for is missing: " + className);
+        }
+
+        String versionField = getIdentifyingFieldName(methodId, continuationPointId);
+        return getIdentifyingFieldNames(cls).contains(versionField);
+    }
+
+    private static Class findClass(ClassLoader classLoader, String className) {
+        // Which class gets found when no classloader is provided depends on the thread's context classloader, so those lookups get cached
+        // separately, keyed by the context classloader.
+        Map cache;
+        ClassLoader cacheKey;
+        if (classLoader == null) {
+            cache = IMPLICIT_CLASS_CACHE;
+            cacheKey = Thread.currentThread().getContextClassLoader();
+        } else {
+            cache = EXPLICIT_CLASS_CACHE;
+            cacheKey = classLoader;
+        }
+
+        synchronized (cache) {
+            Map classes = (Map) cache.get(cacheKey);
+            WeakReference classRef = classes == null ? null : (WeakReference) classes.get(className);
+            Class cls = classRef == null ? null : (Class) classRef.get();
+            if (cls != null) {
+                return cls;
+            }
+        }
+
+        Class cls = loadClass(classLoader, className);
+        if (cls == null) {
+            return null; // misses aren't cached -- the class may become available later on
+        }
+
+        synchronized (cache) {
+            Map classes = (Map) cache.get(cacheKey);
+            if (classes == null) {
+                classes = new HashMap();
+                cache.put(cacheKey, classes);
+            }
+            classes.put(className, new WeakReference(cls)); // weak, otherwise the value would keep its classloader (the key) alive
+        }
+        return cls;
+    }
+
+    private static Class loadClass(ClassLoader classLoader, String className) {
         Class cls = null;
         if (classLoader == null) {
             // Try to find the class from this object's classloader
@@ -218,23 +504,31 @@ public final class MethodState implements Serializable {
                 // do nothing
             }
         }
+        return cls;
+    }
 
-
-
-        if (cls == null) {
-            throw new IllegalStateException("Class this state is being deserialized for is missing: " + className);
+    private static Set getIdentifyingFieldNames(Class cls) {
+        synchronized (IDENTIFIER_CACHE) {
+            Set names = (Set) IDENTIFIER_CACHE.get(cls);
+            if (names != null) {
+                return names;
+            }
         }
 
-
-
-        String versionField = getIdentifyingFieldName(methodId, continuationPointId);
-        try {
-            cls.getDeclaredField(versionField);
-        } catch (NoSuchFieldException nsfe) {
-            return false;
+        // Read all identifying fields in one go, instead of probing for them one at a time
+        Set names = new HashSet();
+        Field[] fields = cls.getDeclaredFields();
+        for (int i = 0; i < fields.length; i++) {
+            String name = fields[i].getName();
+            if (name.startsWith(IDENTIFYING_FIELD_PREFIX)) {
+                names.add(name);
+            }
         }
 
-        return true;
+        synchronized (IDENTIFIER_CACHE) {
+            IDENTIFIER_CACHE.put(cls, names);
+        }
+        return names;
     }
 
     /**
@@ -253,6 +547,6 @@ public final class MethodState implements Serializable {
 
         String methodIdStr = Integer.toString(methodId).replace('-', 'N');
         String continuationPointIdStr = Integer.toString(continuationPointId).replace('-', 'N');
-        return "__COROUTINES_ID_" + methodIdStr + "_" + continuationPointIdStr;
+        return IDENTIFYING_FIELD_PREFIX + methodIdStr + "_" + continuationPointIdStr;
     }
 }
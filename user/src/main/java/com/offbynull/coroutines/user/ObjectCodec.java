@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.user;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OptionalDataException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+
+/**
+ * Encodes and decodes the user objects that make up a {@link SerializedState} for {@link BinaryCoroutineSerializer} and
+ * {@link BinaryCoroutineDeserializer}. User objects are the coroutine, the coroutine context, and any object variables/operands that
+ * aren't {@code null}, {@link String}s, or boxed primitives (those are encoded directly by the binary format).
+ * <p>
+ * All the user objects for a state are passed in together, in a single call, and each object appears only once. Implementations that
+ * preserve object identity within a call (e.g. Java's built-in serialization mechanism) keep objects that are shared between frames as
+ * the same object once decoded.
+ * @author Kasra Faghihi
+ */
+public interface ObjectCodec {
+    /**
+     * Encodes user objects.
+     * @param objects objects to encode (never contains {@code null})
+     * @return encoded objects
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to encode
+     */
+    byte[] encode(Object[] objects);
+
+    /**
+     * Decodes user objects.
+     * @param data data to decode
+     * @return decoded objects, in the same order they were passed in to {@link #encode(java.lang.Object[]) }
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if failed to decode
+     */
+    Object[] decode(byte[] data);
+
+    /**
+     * Default implementation of {@link ObjectCodec} (uses Java's built-in serialization mechanism). All objects are written out to the same
+     * stream, so each class descriptor gets written only once per state. The objects must be serializable (must implement
+     * {@link Serializable}).
+     */
+    final class DefaultObjectCodec implements ObjectCodec {
+
+        //CHECKSTYLE.OFF:JavadocMethod - Requires @Override annotation to work, but this is designed for Java 1.4 (no annotations support)
+        public byte[] encode(Object[] objects) {
+            if (objects == null) {
+                throw new NullPointerException();
+            }
+
+            ByteArrayOutputStream baos = null;
+            ObjectOutputStream oos = null;
+            try {
+                baos = new ByteArrayOutputStream();
+                oos = new ObjectOutputStream(baos);
+
+                oos.writeObject(objects);
+                oos.flush();
+
+                return baos.toByteArray();
+            } catch (NotSerializableException nse) {
+                throw new IllegalArgumentException(nse);
+            } catch (InvalidClassException ice) {
+                throw new IllegalArgumentException(ice);
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe); // should never happen
+            } finally {
+                if (oos != null) {
+                    try {
+                        oos.close();
+                    } catch (IOException ioe) {
+                        // do nothing
+                    }
+                }
+            }
+        }
+
+        public Object[] decode(byte[] data) {
+            if (data == null) {
+                throw new NullPointerException();
+            }
+
+            ObjectInputStream ois = null;
+            try {
+                ois = new ObjectInputStream(new ByteArrayInputStream(data)) {
+                    protected Class resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                        try {
+                            return super.resolveClass(desc);
+                        } catch (ClassNotFoundException cnfe) {
+                            // Same as CoroutineReader.DefaultCoroutineDeserializer -- fall back to the thread's classloader.
+                            return Thread.currentThread().getContextClassLoader().loadClass(desc.getName());
+                        }
+                    }
+                };
+
+                return (Object[]) ois.readObject();
+            } catch (StreamCorruptedException sce) {
+                throw new IllegalArgumentException(sce);
+            } catch (OptionalDataException ode) {
+                throw new IllegalArgumentException(ode);
+            } catch (InvalidClassException ice) {
+                throw new IllegalArgumentException(ice);
+            } catch (ClassNotFoundException cnfe) {
+                throw new IllegalArgumentException(cnfe);
+            } catch (ClassCastException cce) {
+                throw new IllegalArgumentException(cce);
+            } catch (IOException ioe) {
+                throw new IllegalArgumentException(ioe); // truncated data
+            } finally {
+                if (ois != null) {
+                    try {
+                        ois.close();
+                    } catch (IOException ioe) {
+                        // do nothing
+                    }
+                }
+            }
+        }
+        //CHECKSTYLE.ON:JavadocMethod
+    }
+}
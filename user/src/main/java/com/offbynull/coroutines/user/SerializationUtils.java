@@ -22,7 +22,6 @@ import com.offbynull.coroutines.user.SerializedState.FrameModifier;
 import com.offbynull.coroutines.user.SerializedState.FrameUpdatePoint;
 import com.offbynull.coroutines.user.SerializedState.VersionedFrame;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -52,24 +51,20 @@ final class SerializationUtils {
         return null;
     }
 
-    private static Frame findUpdatableFrame(Map frameUpdaterMap, VersionedFrame versionedFrame) {
-        Iterator entryIt = frameUpdaterMap.entrySet().iterator();
-        while (entryIt.hasNext()) {
-            Map.Entry entry = (Map.Entry) entryIt.next();
-            FrameUpdatePointKey key = (FrameUpdatePointKey) entry.getKey();
-            FrameUpdatePointValue value = (FrameUpdatePointValue) entry.getValue();
-
-            Frame[] possibleFrames = versionedFrame.getFrames();
-            for (int i = 0; i < possibleFrames.length; i++) {
-                Frame frame = possibleFrames[i];
+    private static Frame findUpdatableFrame(Map updatersMap, VersionedFrame versionedFrame) {
+        if (updatersMap.isEmpty()) {
+            return null;
+        }
 
-                String className = frame.getClassName();
-                int methodId = frame.getMethodId();
-                int continuationPointId = frame.getContinuationPointId();
+        // Look up each possible frame in the map rather than scanning the map for each possible frame -- the number of possible frames is
+        // small, but the number of updaters can grow large over time (one gets added every time a method changes).
+        Frame[] possibleFrames = versionedFrame.getFrames();
+        for (int i = 0; i < possibleFrames.length; i++) {
+            Frame frame = possibleFrames[i];
 
-                if (methodId == key.methodId && continuationPointId == key.continuationPointId && className.equals(key.className)) {
-                    return frame;
-                }
+            FrameUpdatePointKey key = new FrameUpdatePointKey(frame.getClassName(), frame.getMethodId(), frame.getContinuationPointId());
+            if (updatersMap.containsKey(key)) {
+                return frame;
             }
         }
 
@@ -135,6 +130,10 @@ final class SerializationUtils {
     }
 
     private static Frame[] chainUpdatesOnFrame(Map updatersMap, Map interceptersMap, Frame frame, int mode) {
+        if (updatersMap.isEmpty() && interceptersMap.isEmpty()) {
+            return new Frame[] {frame}; // nothing to chain -- common case, so skip the bookkeeping below
+        }
+
         LinkedHashSet ret = new LinkedHashSet(); // ordered and unique
 
         while (true) {
@@ -237,8 +236,27 @@ final class SerializationUtils {
         return frame;
     }
 
+    static VersionedFrame calculateCurrentFrameVersion(ClassLoader classLoader, Map interceptersMap, Frame frame) {
+        // Ensure frame is for a method that we can save (sanity check)
+        validateWritableFrame(classLoader, frame);
+
+
+        // Intercept but don't update -- this is the first version that calculateAllPossibleFrameVersions() would have added.
+        Frame intercepted = applyIntercept(interceptersMap, frame, FrameModifier.WRITE);
+        return new VersionedFrame(intercepted);
+    }
+
     static VersionedFrame calculateAllPossibleFrameVersions(ClassLoader classLoader, Map updatersMap, Map interceptersMap, Frame frame) {
         // Ensure frame is for a method that we can save (sanity check)
+        validateWritableFrame(classLoader, frame);
+        
+        
+        // We found an updatable frame. Chain updates to get it to a final loadable state.
+        Frame[] frameUpdateChain = chainUpdatesOnFrame(updatersMap, interceptersMap, frame, FrameModifier.WRITE);
+        return new VersionedFrame(frameUpdateChain);
+    }
+
+    private static void validateWritableFrame(ClassLoader classLoader, Frame frame) {
         boolean found = MethodState.isValid(
                 classLoader,
                 frame.getClassName(),
@@ -250,11 +268,6 @@ final class SerializationUtils {
                     + "Frame method ID=" + frame.getMethodId() + ", "
                     + "Frame continuation point ID=" + frame.getContinuationPointId());
         }
-        
-        
-        // We found an updatable frame. Chain updates to get it to a final loadable state.
-        Frame[] frameUpdateChain = chainUpdatesOnFrame(updatersMap, interceptersMap, frame, FrameModifier.WRITE);
-        return new VersionedFrame(frameUpdateChain);
     }
 
     
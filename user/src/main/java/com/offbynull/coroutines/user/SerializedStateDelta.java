@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.coroutines.user;
+
+import com.offbynull.coroutines.user.SerializedState.VersionedFrame;
+import java.io.Serializable;
+
+/**
+ * {@link CoroutineRunner}'s state translated for serialization, relative to a previous checkpoint of that same {@link CoroutineRunner}.
+ * <p>
+ * The bottom frames of a coroutine's call chain that haven't changed since the previous checkpoint (frames for methods that are still
+ * sitting in the same invocation they were in at the time) are retained from that checkpoint -- only the objects they reference are
+ * captured again, since those objects may have been changed in the mean time. All frames above them are captured in full, same as with
+ * {@link SerializedState}.
+ * @author Kasra Faghihi
+ */
+public final class SerializedStateDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final Coroutine coroutine;
+    private final Object context;
+    private final int baseFrameCount;
+    private final FrameObjects[] retainedFrames;
+    private final VersionedFrame[] frames;
+
+    /**
+     * Constructs a {@link SerializedStateDelta} object.
+     * @param coroutine coroutine object
+     * @param context coroutine context
+     * @param baseFrameCount number of frames in the previous checkpoint
+     * @param retainedFrames objects for each of the bottom frames retained from the previous checkpoint
+     * @param frames method states for the frames above the retained frames
+     * @throws NullPointerException if {@code retainedFrames} or {@code frames} is {@code null}
+     * @throws IllegalArgumentException if any elements of {@code retainedFrames} or {@code frames} are {@code null} or are otherwise in an
+     * invalid state, or if {@code retainedFrames} contains more elements than {@code baseFrameCount}
+     */
+    public SerializedStateDelta(Coroutine coroutine, Object context, int baseFrameCount, FrameObjects[] retainedFrames,
+            VersionedFrame[] frames) {
+        if (retainedFrames == null || frames == null) {
+            throw new NullPointerException();
+        }
+
+        this.coroutine = coroutine;
+        this.context = context;
+        this.baseFrameCount = baseFrameCount;
+        this.retainedFrames = (FrameObjects[]) retainedFrames.clone();
+        this.frames = (VersionedFrame[]) frames.clone();
+
+        try {
+            validateState(); // sanity check
+        } catch (IllegalStateException ise) {
+            throw new IllegalArgumentException(ise);
+        }
+    }
+
+    /**
+     * Get coroutine.
+     * @return coroutine
+     */
+    public Coroutine getCoroutine() {
+        return coroutine;
+    }
+
+    /**
+     * Get coroutine context.
+     * @return coroutine context
+     */
+    public Object getContext() {
+        return context;
+    }
+
+    /**
+     * Get the number of frames in the checkpoint that this delta is relative to.
+     * @return number of frames in previous checkpoint
+     */
+    public int getBaseFrameCount() {
+        return baseFrameCount;
+    }
+
+    /**
+     * Get objects for the bottom frames retained from the previous checkpoint.
+     * @return objects for retained frames
+     */
+    public FrameObjects[] getRetainedFrames() {
+        return (FrameObjects[]) retainedFrames.clone();
+    }
+
+    /**
+     * Get coroutine method states for the frames above the retained frames.
+     * @return coroutine method states
+     */
+    public VersionedFrame[] getFrames() {
+        return (VersionedFrame[]) frames.clone();
+    }
+
+    // Because thsi class is being serialized/deserialized, we need to validate that it's correct once we deserialize it. Call this
+    // method to do that.
+    void validateState() {
+        if (retainedFrames == null || frames == null || coroutine == null) {
+            throw new IllegalStateException("Bad state");
+        }
+        
+        if (baseFrameCount < 0 || retainedFrames.length > baseFrameCount) {
+            throw new IllegalStateException("Bad state");
+        }
+
+        for (int i = 0; i < retainedFrames.length; i++) {
+            if (retainedFrames[i] == null) {
+                throw new IllegalStateException("Bad state");
+            }
+            retainedFrames[i].validateState();
+        }
+
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] == null) {
+                throw new IllegalStateException("Bad state");
+            }
+            frames[i].validateState();
+        }
+    }
+
+    
+    /**
+     * Objects referenced by a frame retained from a previous checkpoint. References to the original {@code Continuation} object are
+     * {@code null}ed out, at the same positions they were at in the previous checkpoint.
+     */
+    public static final class FrameObjects implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] monitors;
+        private final Object[] variables;
+        private final Object[] operands;
+
+        /**
+         * Constructs a {@link FrameObjects} object.
+         * @param monitors monitor locks
+         * @param variables local variable table objects
+         * @param operands operand stack objects
+         * @throws NullPointerException if any argument is {@code null}
+         * @throws IllegalArgumentException if any elements in {@code monitors} are {@code null}
+         */
+        public FrameObjects(Object[] monitors, Object[] variables, Object[] operands) {
+            if (monitors == null || variables == null || operands == null) {
+                throw new NullPointerException();
+            }
+
+            this.monitors = (Object[]) monitors.clone();
+            this.variables = (Object[]) variables.clone();
+            this.operands = (Object[]) operands.clone();
+
+            try {
+                validateState(); // sanity check
+            } catch (IllegalStateException ise) {
+                throw new IllegalArgumentException(ise);
+            }
+        }
+
+        /**
+         * Get monitor locks.
+         * @return monitor locks
+         */
+        public Object[] getMonitors() {
+            return (Object[]) monitors.clone();
+        }
+
+        /**
+         * Get local variable table objects.
+         * @return local variable table objects
+         */
+        public Object[] getVariables() {
+            return (Object[]) variables.clone();
+        }
+
+        /**
+         * Get operand stack objects.
+         * @return operand stack objects
+         */
+        public Object[] getOperands() {
+            return (Object[]) operands.clone();
+        }
+
+        void validateState() {
+            if (monitors == null || variables == null || operands == null) {
+                throw new IllegalStateException("Bad state");
+            }
+
+            for (int i = 0; i < monitors.length; i++) {
+                if (monitors[i] == null) {
+                    throw new IllegalStateException("Bad state");
+                }
+            }
+        }
+    }
+}